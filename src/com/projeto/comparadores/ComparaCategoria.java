@@ -1,8 +1,10 @@
 package com.projeto.comparadores;
 
+import java.util.Arrays;
 import java.util.Comparator;
 
 import com.projeto.model.Compra;
+import com.projeto.util.Categoria;
 
 /**
  * Classe que compara dois item atraves das suas categorias
@@ -10,11 +12,32 @@ import com.projeto.model.Compra;
 public class ComparaCategoria implements Comparator<Compra> {
 
 	/**
-	 * Método que compara dois itens baseado na categoria dos mesmos.
+	 * A posicao de cada categoria, indexada pelo ordinal, na ordem alfabetica do
+	 * seu valor textual.
+	 */
+	private static final int[] POSICOES = new int[Categoria.values().length];
+
+	static {
+		Categoria[] categorias = Categoria.values();
+		Arrays.sort(categorias, new Comparator<Categoria>() {
+			@Override
+			public int compare(Categoria categoria1, Categoria categoria2) {
+				return categoria1.get().compareTo(categoria2.get());
+			}
+		});
+		for (int i = 0; i < categorias.length; i++) {
+			POSICOES[categorias[i].ordinal()] = i;
+		}
+	}
+
+	/**
+	 * Método que compara dois itens baseado na categoria dos mesmos, em ordem
+	 * alfabetica inversa do valor textual das categorias.
 	 */
 	@Override
 	public int compare(Compra compra1, Compra compra2) {
-		return compra2.getItem().getCategoria().compareTo(compra1.getItem().getCategoria());
+		return POSICOES[compra2.getItem().getTipoCategoria().ordinal()]
+				- POSICOES[compra1.getItem().getTipoCategoria().ordinal()];
 	}
 
 }
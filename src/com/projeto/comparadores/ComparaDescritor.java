@@ -0,0 +1,23 @@
+package com.projeto.comparadores;
+
+import java.util.Comparator;
+
+import com.projeto.model.ListaDeCompras;
+
+/**
+ * Classe responsavel por comparar duas listas de compras de acordo com seu
+ * descritor, sem diferenciar letras maiusculas de minusculas e desempatando
+ * pelo descritor exato.
+ */
+public class ComparaDescritor implements Comparator<ListaDeCompras> {
+
+	@Override
+	public int compare(ListaDeCompras lista1, ListaDeCompras lista2) {
+		int comparacao = lista1.compareTo(lista2);
+		if (comparacao == 0) {
+			return lista1.getDescritor().compareTo(lista2.getDescritor());
+		}
+		return comparacao;
+	}
+
+}
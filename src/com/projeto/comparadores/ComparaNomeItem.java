@@ -0,0 +1,26 @@
+package com.projeto.comparadores;
+
+import java.util.Comparator;
+
+import com.projeto.model.Item;
+
+/**
+ * Classe que compara dois itens atraves dos seus nomes, desempatando pelo
+ * identificador.
+ */
+public class ComparaNomeItem implements Comparator<Item> {
+
+	/**
+	 * Metodo que compara dois itens baseado no nome e, em caso de empate, no
+	 * identificador dos mesmos.
+	 */
+	@Override
+	public int compare(Item item1, Item item2) {
+		int comparacao = item1.compareTo(item2);
+		if (comparacao == 0) {
+			return item1.getId().compareTo(item2.getId());
+		}
+		return comparacao;
+	}
+
+}
@@ -2,21 +2,25 @@ package com.projeto.comparadores;
 
 import java.util.Comparator;
 
-import com.projeto.model.Item;
+import com.projeto.util.Catalogo;
 
 /**
- * Classe Voltada para a comparacao de dois itens atraves do seu menor preco.
+ * Classe Voltada para a comparacao de dois itens atraves do seu menor preco,
+ * lido da tabela de precos guardada junto com o item no catalogo. Itens com o
+ * mesmo preco sao desempatados pelo identificador.
  */
-public class ComparaValor implements Comparator<Item> {
+public class ComparaValor implements Comparator<Catalogo.PrecoItem> {
 	
 	/**
 	 * Metodo voltado para a comparacao de dois itens atraves dos seus respectivos precos.
 	 */
 	@Override
-	public int compare(Item item1, Item item2) {
-		if (item1.getMenorPreco() == item2.getMenorPreco())
-			return 0;
-		else if (item1.getMenorPreco() > item2.getMenorPreco())
+	public int compare(Catalogo.PrecoItem item1, Catalogo.PrecoItem item2) {
+		double preco1 = item1.getPrecos().getMenorPreco();
+		double preco2 = item2.getPrecos().getMenorPreco();
+		if (preco1 == preco2)
+			return item1.getItem().getId().compareTo(item2.getItem().getId());
+		else if (preco1 > preco2)
 			return 1;
 		else
 			return -1;
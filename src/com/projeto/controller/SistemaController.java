@@ -1,19 +1,21 @@
 package com.projeto.controller;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
-import java.text.SimpleDateFormat;
-import java.util.ArrayList;
+import java.time.LocalDate;
 import java.util.Collections;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
-import com.projeto.comparadores.ComparaValor;
 import com.projeto.excecoes.AtribultoInexistenteException;
 import com.projeto.excecoes.CampoInvalidoException;
 import com.projeto.excecoes.CategoriaInexistenteException;
@@ -21,7 +23,18 @@ import com.projeto.model.Item;
 import com.projeto.model.ProdutoNaoIndustrializadoPorQuilo;
 import com.projeto.model.ProdutoPorUnidade;
 import com.projeto.model.ProdutoQuantidadeFixa;
+import com.projeto.persistencia.ArquivoDados;
+import com.projeto.persistencia.CatalogoMapeado;
+import com.projeto.persistencia.FormatoArmazenamento;
+import com.projeto.persistencia.RetratoSistema;
+import com.projeto.service.CapturaSistema;
+import com.projeto.service.HistoricoListas;
 import com.projeto.service.ListaService;
+import com.projeto.service.PrecoService;
+import com.projeto.util.Catalogo;
+import com.projeto.util.Categoria;
+import com.projeto.util.FormatoData;
+import com.projeto.util.IndiceOrdenado;
 import com.projeto.util.Mensagem;
 import com.projeto.util.ValidadorSistema;
 
@@ -29,6 +42,18 @@ import com.projeto.util.ValidadorSistema;
  * Classe que representa o sistema. Ela e responsavel por realizar grande parte
  * das funcionalidades do sistema.
  *
+ * Uma mesma instancia pode atender varias threads. Os produtos ficam em um mapa
+ * concorrente e os identificadores sao gerados por um contador atomico. As
+ * alteracoes no catalogo (cadastro, atualizacao, precos e remocao de itens)
+ * sao feitas uma de cada vez, com a trava do catalogo, e publicam uma nova
+ * versao dos indices de consulta. As consultas leem a versao publicada e a
+ * representacao textual guardada de cada item, sem nenhuma trava, de forma que
+ * nunca esperam por uma alteracao.
+ *
+ * Um sistema aberto de um {@link CatalogoMapeado} comeca vazio e so cria os
+ * itens quando eles sao usados: a exibicao de um item pelo id cria apenas esse
+ * item, e as demais operacoes, que dependem dos indices ou das listas, criam
+ * todos os itens e as listas de uma vez, na primeira chamada.
  */
 public class SistemaController implements Serializable {
 
@@ -37,6 +62,14 @@ public class SistemaController implements Serializable {
 	 */
 	private static final long serialVersionUID = 4696929296558629304L;
 
+	/**
+	 * Campos gravados no arquivo do sistema. O identificador base continua sendo
+	 * gravado como Integer, para que os arquivos antigos possam ser carregados.
+	 */
+	private static final ObjectStreamField[] serialPersistentFields = {
+			new ObjectStreamField("produtos", Map.class), new ObjectStreamField("listaService", ListaService.class),
+			new ObjectStreamField("identificadorBase", Integer.class) };
+
 	/**
 	 * Um mapa com todos os produtos cadastrados pelo sistema.
 	 */
@@ -45,17 +78,100 @@ public class SistemaController implements Serializable {
 	private ListaService listaService;
 
 	/**
-	 * Um inteiro que representa o id dos produtos que serao cadastrados no sistema.
+	 * Um contador com o id dos produtos que serao cadastrados no sistema.
 	 */
-	private Integer identificadorBase;
+	private transient AtomicInteger identificadorBase;
+
+	/**
+	 * Trava obtida pelas alteracoes no catalogo, que protege os campos dos itens
+	 * cadastrados. As consultas nao a utilizam.
+	 */
+	private transient ReentrantLock travaCatalogo;
+
+	/**
+	 * As copias do sistema em andamento, avisadas antes de cada alteracao em um
+	 * item.
+	 */
+	private transient List<CapturaSistema> capturas;
+
+	/**
+	 * A versao publicada dos indices que mantem os produtos ordenados pelo nome,
+	 * por categoria e pelo menor preco. Ela nao e salva junto com o sistema,
+	 * sendo reconstruida a partir do mapa de produtos.
+	 */
+	private transient volatile Catalogo catalogo;
+
+	/**
+	 * A representacao textual de cada produto, calculada a cada alteracao do
+	 * produto. As consultas usam esse texto em vez de ler os campos do produto,
+	 * que podem estar sendo alterados.
+	 */
+	private transient Map<Integer, String> representacoes;
+
+	/**
+	 * O catalogo de onde os produtos e os indices de consulta ainda serao criados,
+	 * ou null caso os produtos ja estejam todos na memoria. Enquanto isso, as
+	 * consultas de um produto sao feitas direto nos registros do catalogo.
+	 */
+	private transient volatile CatalogoMapeado catalogoMapeado;
+
+	/**
+	 * O catalogo de onde as listas de compras ainda serao criadas, ou null caso
+	 * elas ja estejam todas na memoria.
+	 */
+	private transient volatile CatalogoMapeado listasMapeadas;
 
 	public SistemaController() {
-		this.identificadorBase = 1;
+		this.identificadorBase = new AtomicInteger(1);
+		this.travaCatalogo = new ReentrantLock();
+		this.capturas = new CopyOnWriteArrayList<>();
 		this.listaService = new ListaService();
 		/**
 		 * Mapa
 		 */
-		this.produtos = new HashMap<>();
+		this.produtos = new ConcurrentHashMap<>();
+		this.reconstroiIndices();
+	}
+
+	/**
+	 * Metodo responsavel por recriar um sistema a partir dos dados lidos de um
+	 * arquivo.
+	 * 
+	 * @param produtos
+	 *            : Os produtos cadastrados, indexados pelo id.
+	 * @param listaService
+	 *            : O servico com as listas de compras do sistema.
+	 * @param identificadorBase
+	 *            : O id do proximo produto que sera cadastrado.
+	 */
+	public SistemaController(Map<Integer, Item> produtos, ListaService listaService, int identificadorBase) {
+		this.identificadorBase = new AtomicInteger(identificadorBase);
+		this.travaCatalogo = new ReentrantLock();
+		this.capturas = new CopyOnWriteArrayList<>();
+		this.listaService = listaService;
+		this.produtos = new ConcurrentHashMap<>(produtos);
+		this.reconstroiIndices();
+	}
+
+	/**
+	 * Metodo responsavel por abrir um sistema a partir de um catalogo mapeado,
+	 * sem ler nenhum item. Os produtos sao criados conforme sao consultados, e
+	 * so sao todos criados, junto com os indices, na primeira alteracao ou
+	 * pesquisa por trecho do nome. As listas so sao criadas na primeira operacao
+	 * sobre listas.
+	 * 
+	 * @param catalogoMapeado
+	 *            : O catalogo com os itens e as listas do sistema.
+	 */
+	public SistemaController(CatalogoMapeado catalogoMapeado) {
+		this.identificadorBase = new AtomicInteger(catalogoMapeado.getIdentificadorBase());
+		this.travaCatalogo = new ReentrantLock();
+		this.capturas = new CopyOnWriteArrayList<>();
+		this.listaService = new ListaService(catalogoMapeado.getEstabelecimentos());
+		this.produtos = new ConcurrentHashMap<>();
+		this.reconstroiIndices();
+		this.catalogoMapeado = catalogoMapeado;
+		this.listasMapeadas = catalogoMapeado;
 	}
 
 	/**
@@ -84,12 +200,19 @@ public class SistemaController implements Serializable {
 		try {
 			if (ValidadorSistema.validaItem(nome, categoria)
 					&& ValidadorSistema.validaProdutoQuantidadeFixa(quantidade, unidadeMedida, localCompra, preco)) {
-				ProdutoQuantidadeFixa produto = new ProdutoQuantidadeFixa(this.identificadorBase, nome, categoria,
-						quantidade, unidadeMedida, localCompra, preco);
-				ValidadorSistema.validaProduto(produto, produtos);
+				this.travaCatalogo.lock();
+				try {
+					ProdutoQuantidadeFixa produto = new ProdutoQuantidadeFixa(this.identificadorBase.get(), nome,
+							categoria, quantidade, unidadeMedida, localCompra, preco,
+							this.listaService.getEstabelecimentos());
+					ValidadorSistema.validaProduto(produto, this.produtos());
 
-				this.produtos.put(this.identificadorBase, produto);
-				return this.identificadorBase++;
+					this.produtos.put(produto.getId(), produto);
+					this.indexaItem(produto);
+					return this.identificadorBase.getAndIncrement();
+				} finally {
+					this.travaCatalogo.unlock();
+				}
 			}
 		} catch (CampoInvalidoException e) {
 			throw new CampoInvalidoException(Mensagem.MSG_EXCECAO_CADASTRO.get() + e.getMessage());
@@ -119,12 +242,19 @@ public class SistemaController implements Serializable {
 		try {
 			if (ValidadorSistema.validaItem(nome, categoria)
 					&& ValidadorSistema.validaProdutoNaoIndustrializadoPorQuilo(quilo, localCompra, preco)) {
-				ProdutoNaoIndustrializadoPorQuilo produto = new ProdutoNaoIndustrializadoPorQuilo(
-						this.identificadorBase, nome, categoria, quilo, localCompra, preco);
-				ValidadorSistema.validaProduto(produto, produtos);
+				this.travaCatalogo.lock();
+				try {
+					ProdutoNaoIndustrializadoPorQuilo produto = new ProdutoNaoIndustrializadoPorQuilo(
+							this.identificadorBase.get(), nome, categoria, quilo, localCompra, preco,
+							this.listaService.getEstabelecimentos());
+					ValidadorSistema.validaProduto(produto, this.produtos());
 
-				this.produtos.put(this.identificadorBase, produto);
-				return this.identificadorBase++;
+					this.produtos.put(produto.getId(), produto);
+					this.indexaItem(produto);
+					return this.identificadorBase.getAndIncrement();
+				} finally {
+					this.travaCatalogo.unlock();
+				}
 			}
 		} catch (CampoInvalidoException e) {
 			throw new CampoInvalidoException(Mensagem.MSG_EXCECAO_CADASTRO.get() + e.getMessage());
@@ -153,12 +283,18 @@ public class SistemaController implements Serializable {
 		try {
 			if (ValidadorSistema.validaItem(nome, categoria)
 					&& ValidadorSistema.validaProdutoPorUnidade(unidade, localCompra, preco)) {
-				ProdutoPorUnidade porUnidade = new ProdutoPorUnidade(this.identificadorBase, nome, categoria, unidade,
-						localCompra, preco);
-				ValidadorSistema.validaProduto(porUnidade, produtos);
+				this.travaCatalogo.lock();
+				try {
+					ProdutoPorUnidade porUnidade = new ProdutoPorUnidade(this.identificadorBase.get(), nome, categoria,
+							unidade, localCompra, preco, this.listaService.getEstabelecimentos());
+					ValidadorSistema.validaProduto(porUnidade, this.produtos());
 
-				this.produtos.put(this.identificadorBase, porUnidade);
-				return this.identificadorBase++;
+					this.produtos.put(porUnidade.getId(), porUnidade);
+					this.indexaItem(porUnidade);
+					return this.identificadorBase.getAndIncrement();
+				} finally {
+					this.travaCatalogo.unlock();
+				}
 			}
 		} catch (CampoInvalidoException e) {
 			throw new CampoInvalidoException(Mensagem.MSG_EXCECAO_CADASTRO.get() + e.getMessage());
@@ -177,8 +313,9 @@ public class SistemaController implements Serializable {
 	 * @return : Uma String com a representacao textual do item
 	 */
 	public String exibeItem(Integer key) {
-		ValidadorSistema.validaChave(key, produtos, Mensagem.MSG_EXCECAO_LISTA_ITEM.get());
-		return this.produtos.get(key).toString();
+		Item item = this.produtosConsultados().get(key);
+		ValidadorSistema.validaChave(key, item, Mensagem.MSG_EXCECAO_LISTA_ITEM.get());
+		return this.representa(item);
 	}
 
 	/**
@@ -197,13 +334,26 @@ public class SistemaController implements Serializable {
 	 * @return : Um Inteiro indicando o identificador do item atualizado.
 	 */
 	public int atualizaItem(Integer key, String atribulto, String novoValor) {
-		ValidadorSistema.validaChave(key, produtos, Mensagem.MSG_EXCECAO_ATUALIZA_ITEM.get());
+		ValidadorSistema.validaChave(key, this.produtos(), Mensagem.MSG_EXCECAO_ATUALIZA_ITEM.get());
 
 		Item item = null;
 		try {
 			if (ValidadorSistema.validaAtualizacao(atribulto, novoValor)) {
-				item = produtos.get(key);
-				return item.atualiza(atribulto, novoValor);
+				this.travaCatalogo.lock();
+				try {
+					item = produtos.get(key);
+					ValidadorSistema.validaChave(key, item, Mensagem.MSG_EXCECAO_ATUALIZA_ITEM.get());
+					Catalogo semItem = this.catalogo.remove(item);
+					this.preservaItem(item);
+					try {
+						return item.atualiza(atribulto, novoValor);
+					} finally {
+						this.publicaItem(semItem, item);
+						this.listaService.atualizaItem(key);
+					}
+				} finally {
+					this.travaCatalogo.unlock();
+				}
 			}
 		} catch (CampoInvalidoException e) {
 			throw new CampoInvalidoException(Mensagem.MSG_EXCECAO_ATUALIZA_ITEM.get() + e.getMessage());
@@ -230,10 +380,21 @@ public class SistemaController implements Serializable {
 	 *            adicionado
 	 */
 	public void adicionaPrecoItem(Integer key, String local, double preco) {
-		ValidadorSistema.validaPrecoItem(key, local, preco, produtos);
+		ValidadorSistema.validaPrecoItem(key, local, preco, this.produtos());
 
-		Item item = this.produtos.get(key);
-		item.adicionarLocalCompra(local, preco);
+		this.travaCatalogo.lock();
+		try {
+			Item item = this.produtos.get(key);
+			ValidadorSistema.validaChave(key, item, Mensagem.MSG_EXCECAO_CADASTO_PRECO.get());
+			PrecoService.TabelaPrecos anterior = item.getTabelaPrecos();
+			this.preservaItem(item);
+			item.adicionarLocalCompra(local, preco);
+			this.representacoes.put(item.getId(), item.toString());
+			this.catalogo = this.catalogo.atualizaPrecos(item, anterior);
+			this.listaService.invalidaRankings(key);
+		} finally {
+			this.travaCatalogo.unlock();
+		}
 
 	}
 
@@ -245,9 +406,17 @@ public class SistemaController implements Serializable {
 	 *            Um inteiro que representa o ID do item.
 	 */
 	public void deletaItem(Integer key) {
-		ValidadorSistema.validaInexistenciaDeProduto(key, produtos, Mensagem.MSG_EXCECAO_REMOCAO_ITEM.get());
+		ValidadorSistema.validaInexistenciaDeProduto(key, this.produtos(), Mensagem.MSG_EXCECAO_REMOCAO_ITEM.get());
 
-		this.produtos.remove(key);
+		this.travaCatalogo.lock();
+		try {
+			Item item = this.produtos.remove(key);
+			if (item != null) {
+				this.removeDosIndices(item);
+			}
+		} finally {
+			this.travaCatalogo.unlock();
+		}
 	}
 
 	/**
@@ -260,12 +429,15 @@ public class SistemaController implements Serializable {
 	 * @return : Uma String com a representacao textual do item selecionado
 	 */
 	public String getItem(int position) {
-		List<Item> itens = new ArrayList<Item>(this.produtos.values());
-		Collections.sort(itens);
-		if (itens.isEmpty() || position >= itens.size())
+		CatalogoMapeado pendente = this.catalogoMapeado;
+		if (pendente != null) {
+			return this.representaMapeado(pendente.getPorNome(position));
+		}
+		IndiceOrdenado<Item> itens = this.catalogo.getPorNome();
+		if (position >= itens.tamanho())
 			return "";
 
-		return itens.get(position).toString();
+		return this.representa(itens.get(position));
 	}
 
 	/**
@@ -282,15 +454,13 @@ public class SistemaController implements Serializable {
 	public String getItemPorCategoria(String categoria, int posicao) {
 		try {
 			if (ValidadorSistema.validaCategoria(categoria)) {
-				List<Item> itens = new ArrayList<Item>();
-				for (Item item : produtos.values()) {
-					if (item.getCategoria().equals(categoria)) {
-						itens.add(item);
-					}
+				CatalogoMapeado pendente = this.catalogoMapeado;
+				if (pendente != null) {
+					return this.representaMapeado(pendente.getPorCategoria(Categoria.converte(categoria), posicao));
 				}
-				if (!itens.isEmpty() && posicao < itens.size()) {
-					Collections.sort(itens);
-					return itens.get(posicao).toString();
+				IndiceOrdenado<Item> itens = this.catalogo.getPorCategoria(Categoria.converte(categoria));
+				if (posicao < itens.tamanho()) {
+					return this.representa(itens.get(posicao));
 				}
 			}
 		} catch (CampoInvalidoException e) {
@@ -312,12 +482,18 @@ public class SistemaController implements Serializable {
 	 * @return Uma string com a representacao textual do item indicado
 	 */
 	public String getItemPorMenorPreco(int posicao) {
-		if (posicao >= this.produtos.size() || posicao < 0) {
+		if (posicao < 0) {
+			return "";
+		}
+		CatalogoMapeado pendente = this.catalogoMapeado;
+		if (pendente != null) {
+			return this.representaMapeado(pendente.getPorMenorPreco(posicao));
+		}
+		IndiceOrdenado<Catalogo.PrecoItem> itens = this.catalogo.getPorPreco();
+		if (posicao >= itens.tamanho()) {
 			return "";
 		}
-		ArrayList<Item> itens = new ArrayList<>(produtos.values());
-		Collections.sort(itens, new ComparaValor());
-		return itens.get(posicao).toString();
+		return this.representa(itens.get(posicao).getItem());
 	}
 
 	/**
@@ -333,15 +509,9 @@ public class SistemaController implements Serializable {
 	 *         informada na lista ordenada de todos ios produtos do tipo.
 	 */
 	public String getItemPorPesquisa(String strPesquisa, int posicao) {
-		List<Item> itens = new ArrayList<Item>();
-		for (Item item : produtos.values()) {
-			if (item.getNome().toLowerCase().contains(strPesquisa.toLowerCase())) {
-				itens.add(item);
-			}
-		}
-		if (!itens.isEmpty() && posicao < itens.size() && posicao >= 0) {
-			Collections.sort(itens);
-			return itens.get(posicao).toString();
+		Item item = this.catalogo().getPesquisa().busca(strPesquisa, posicao);
+		if (item != null && posicao >= 0) {
+			return this.representa(item);
 		}
 		return "";
 	}
@@ -355,7 +525,21 @@ public class SistemaController implements Serializable {
 	 * @return representacao textual do nome do descritor
 	 */
 	public String adicionaListaDeCompras(String descritor) {
-		return this.listaService.adicionaListaDeCompras(descritor);
+		return this.adicionaListaDeCompras(descritor, new Date());
+	}
+
+	/**
+	 * Metodo responsavel por criar uma lista de compras com um nome e a data/hora
+	 * em que ela foi criada.
+	 * 
+	 * @param descritor
+	 *            : descritor da lista de compras
+	 * @param dataCriacao
+	 *            : data/hora de criacao da lista de compras
+	 * @return representacao textual do nome do descritor
+	 */
+	public String adicionaListaDeCompras(String descritor, Date dataCriacao) {
+		return this.listas().adicionaListaDeCompras(descritor, dataCriacao);
 	}
 
 	/**
@@ -371,8 +555,9 @@ public class SistemaController implements Serializable {
 	 */
 	public void adicionaCompraALista(String descritor, int quantidade, Integer idItem) {
 		ValidadorSistema.validaDescritor(descritor, Mensagem.MSG_EXCECAO_COMPRA_ITEM.get());
-		ValidadorSistema.validaInexistenciaDeProduto(idItem, this.produtos, Mensagem.MSG_EXCECAO_COMPRA_ITEM.get());
-		this.listaService.adicionaCompraALista(descritor, quantidade, this.produtos.get(idItem));
+		Item item = this.produtos().get(idItem);
+		ValidadorSistema.validaInexistenciaDeProduto(item, Mensagem.MSG_EXCECAO_COMPRA_ITEM.get());
+		this.listas().adicionaCompraALista(descritor, quantidade, item);
 	}
 
 	/**
@@ -390,7 +575,7 @@ public class SistemaController implements Serializable {
 		ValidadorSistema.validaLocalCompra(localCompra, Mensagem.MSG_EXCECAO_FINALIZACAO_LISTA_COMPRAS.get());
 		ValidadorSistema.validaValorFinalDaCompra(valorFinalDaCompra,
 				Mensagem.MSG_EXCECAO_FINALIZACAO_LISTA_COMPRAS.get());
-		this.listaService.finalizarListaDeCompras(descritor, localCompra, valorFinalDaCompra);
+		this.listas().finalizarListaDeCompras(descritor, localCompra, valorFinalDaCompra);
 	}
 
 	/**
@@ -405,7 +590,7 @@ public class SistemaController implements Serializable {
 	public String pesquisaCompraEmLista(String descritor, Integer idItem) {
 		ValidadorSistema.validaIdItem(idItem, Mensagem.MSG_EXCECAO_PESQUISA_COMPRA.get());
 		ValidadorSistema.validaDescritor(descritor, Mensagem.MSG_EXCECAO_PESQUISA_COMPRA.get());
-		return this.listaService.pesquisaCompraEmLista(descritor, idItem);
+		return this.listas().pesquisaCompraEmLista(descritor, idItem);
 	}
 
 	/**
@@ -423,7 +608,7 @@ public class SistemaController implements Serializable {
 	 */
 	public void atualizaCompraDeLista(String descritorLista, Integer idItem, String operacao, int quantidade) {
 		ValidadorSistema.validaDescritor(descritorLista, Mensagem.MSG_EXCECAO_ATUALIZA_COMPRA.get());
-		this.listaService.atualizaCompraDeLista(descritorLista, idItem, operacao, quantidade);
+		this.listas().atualizaCompraDeLista(descritorLista, idItem, operacao, quantidade);
 	}
 
 	/**
@@ -437,7 +622,7 @@ public class SistemaController implements Serializable {
 	 */
 	public String getItemLista(String descritor, int posicao) {
 		ValidadorSistema.validaDescritor(descritor, Mensagem.MSG_EXCECAO_PESQUISA_COMPRA.get());
-		return this.listaService.getItemLista(descritor, posicao);
+		return this.listas().getItemLista(descritor, posicao);
 	}
 
 	/**
@@ -450,9 +635,10 @@ public class SistemaController implements Serializable {
 	 */
 	public void deletaCompraDeLista(String descritor, Integer idItem) {
 		ValidadorSistema.validaDescritor(descritor, Mensagem.MSG_EXCECAO_EXCLUSAO_COMPRA.get());
-		ValidadorSistema.validaInexistenciaDeProduto(idItem, produtos, Mensagem.MSG_EXCECAO_EXCLUSAO_COMPRA.get());
+		ValidadorSistema.validaInexistenciaDeProduto(idItem, this.produtos(),
+				Mensagem.MSG_EXCECAO_EXCLUSAO_COMPRA.get());
 
-		this.listaService.deletaCompraDeLista(descritor, idItem);
+		this.listas().deletaCompraDeLista(descritor, idItem);
 	}
 
 	/**
@@ -461,8 +647,7 @@ public class SistemaController implements Serializable {
 	 * @return : Retorna a data atual.
 	 */
 	public String dataAtual() {
-		SimpleDateFormat dateFormat = new SimpleDateFormat("dd/MM/yyyy");
-		return dateFormat.format(new Date());
+		return FormatoData.formata(LocalDate.now());
 	}
 
 	/**
@@ -479,7 +664,7 @@ public class SistemaController implements Serializable {
 	public String getItemListaPorData(String dataString, int posicao) {
 		try {
 			if (ValidadorSistema.validaData(dataString)) {
-				return this.listaService.getItemListaPorData(dataString, posicao);
+				return this.listas().getItemListaPorData(dataString, posicao);
 			}
 		} catch (CampoInvalidoException e) {
 			throw new CampoInvalidoException(Mensagem.MSG_EXCECAO_PESQUISA_COMPRA.get() + e.getMessage());
@@ -500,7 +685,7 @@ public class SistemaController implements Serializable {
 	 * @return : Retorna a data de criacao e o descritor da lista de compras.
 	 */
 	public String getItemListaPorItem(Integer idItem, int posicao) {
-		return this.listaService.getItemListaPorItem(idItem, posicao);
+		return this.listas().getItemListaPorItem(idItem, posicao);
 	}
 
 	/**
@@ -513,7 +698,7 @@ public class SistemaController implements Serializable {
 	 */
 	public String pesquisaListaDeCompras(String descritor) {
 		ValidadorSistema.validaDescritor(descritor, Mensagem.MSG_EXCECAO_PESQUISA_COMPRA.get());
-		return this.listaService.pesquisaListaDeCompras(descritor);
+		return this.listas().pesquisaListaDeCompras(descritor);
 	}
 
 	/**
@@ -525,7 +710,80 @@ public class SistemaController implements Serializable {
 	 * @return : Retorna a representacao textual das listas de compra.
 	 */
 	public String pesquisaListasDeComprasPorData(String dataString) {
-		return this.listaService.pesquisaListasDeComprasPorData(dataString);
+		return this.listas().pesquisaListasDeComprasPorData(dataString);
+	}
+
+	/**
+	 * Escreve a pesquisa de listas de compras por data em um destino de texto, sem
+	 * montar a resposta inteira em memoria.
+	 * 
+	 * @param dataString
+	 *            : data a ser pesquisada.
+	 * @param saida
+	 *            : destino onde a pesquisa sera escrita.
+	 * @throws IOException
+	 *             : caso ocorra um erro ao escrever no destino.
+	 */
+	public void escreveListasDeComprasPorData(String dataString, Appendable saida) throws IOException {
+		this.listas().escreveListasDeComprasPorData(dataString, saida);
+	}
+
+	/**
+	 * Retorna as listas de compras criadas entre duas datas, inclusive.
+	 * 
+	 * @param dataInicial
+	 *            : primeiro dia do periodo pesquisado.
+	 * @param dataFinal
+	 *            : ultimo dia do periodo pesquisado.
+	 *            
+	 * @return : Retorna a data de criacao e o descritor de cada lista, uma por linha.
+	 */
+	public String pesquisaListasDeComprasPorPeriodo(String dataInicial, String dataFinal) {
+		return this.listas().pesquisaListasDeComprasPorPeriodo(dataInicial, dataFinal);
+	}
+
+	/**
+	 * Escreve as listas de compras criadas entre duas datas, inclusive, em um
+	 * destino de texto.
+	 * 
+	 * @param dataInicial
+	 *            : primeiro dia do periodo pesquisado.
+	 * @param dataFinal
+	 *            : ultimo dia do periodo pesquisado.
+	 * @param saida
+	 *            : destino onde as listas serao escritas.
+	 * @throws IOException
+	 *             : caso ocorra um erro ao escrever no destino.
+	 */
+	public void escreveListasDeComprasPorPeriodo(String dataInicial, String dataFinal, Appendable saida)
+			throws IOException {
+		this.listas().escreveListasDeComprasPorPeriodo(dataInicial, dataFinal, saida);
+	}
+
+	/**
+	 * Metodo responsavel por alterar a quantidade de compras de uma lista a partir
+	 * da qual a sugestao de melhor estabelecimento e calculada em paralelo.
+	 * 
+	 * @param limiarParalelo
+	 *            : a quantidade minima de compras para o calculo paralelo.
+	 */
+	public void setLimiarParalelo(int limiarParalelo) {
+		this.listaService.setLimiarParalelo(limiarParalelo);
+	}
+
+	/**
+	 * Metodo responsavel por passar a guardar as listas de compras finalizadas em
+	 * um historico fora da memoria. As listas lidas do historico usam os produtos
+	 * cadastrados no sistema.
+	 * 
+	 * @param historico
+	 *            : O armazenamento das listas finalizadas.
+	 * @param capacidade
+	 *            : A quantidade de listas do historico mantidas na memoria
+	 *            depois de consultadas.
+	 */
+	public void ativaHistorico(HistoricoListas historico, int capacidade) {
+		this.listaService.ativaHistorico(historico, capacidade, Collections.unmodifiableMap(this.produtos));
 	}
 
 	/**
@@ -536,7 +794,21 @@ public class SistemaController implements Serializable {
 	 * @return representacao textual das listas que contem o produto
 	 */
 	public String pesquisaListasDeComprasPorItem(int id) {
-		return this.listaService.pesquisaListasDeComprasPorItem(id);
+		return this.listas().pesquisaListasDeComprasPorItem(id);
+	}
+
+	/**
+	 * Escreve as listas que possuem tal produto em um destino de texto.
+	 * 
+	 * @param id
+	 *            :indentificador do produto.
+	 * @param saida
+	 *            : destino onde as listas serao escritas.
+	 * @throws IOException
+	 *             : caso ocorra um erro ao escrever no destino.
+	 */
+	public void escreveListasDeComprasPorItem(int id, Appendable saida) throws IOException {
+		this.listas().escreveListasDeComprasPorItem(id, saida);
 	}
 
 	/**
@@ -546,7 +818,19 @@ public class SistemaController implements Serializable {
 	 * @return : representacao textual do dia em que foi realizada a ultima compra
 	 */
 	public String geraAutomaticaUltimaLista() {
-		return this.listaService.geraAutomaticaUltimaLista(this.dataAtual());
+		return this.geraAutomaticaUltimaLista(new Date());
+	}
+
+	/**
+	 * Metodo responsavel por gerar automaticamente, com uma data de criacao, uma
+	 * lista com as compras da ultima lista cadastrada.
+	 * 
+	 * @param dataCriacao
+	 *            : data/hora de criacao da lista gerada.
+	 * @return : representacao textual do dia em que foi realizada a ultima compra
+	 */
+	public String geraAutomaticaUltimaLista(Date dataCriacao) {
+		return this.listas().geraAutomaticaUltimaLista(dataCriacao);
 	}
 
 	/**
@@ -558,7 +842,21 @@ public class SistemaController implements Serializable {
 	 * @return representacao textual do ultimo dia em que o item foi comprado.
 	 */
 	public String geraAutomaticaItem(String descritorItem) {
-		return this.listaService.geraAutomaticaItem(descritorItem, this.dataAtual());
+		return this.geraAutomaticaItem(descritorItem, new Date());
+	}
+
+	/**
+	 * Metodo responsavel por gerar automaticamente, com uma data de criacao, uma
+	 * lista com as compras da ultima lista que possui o item.
+	 * 
+	 * @param descritorItem
+	 *            : Item a ser procurado.
+	 * @param dataCriacao
+	 *            : data/hora de criacao da lista gerada.
+	 * @return representacao textual do ultimo dia em que o item foi comprado.
+	 */
+	public String geraAutomaticaItem(String descritorItem, Date dataCriacao) {
+		return this.listas().geraAutomaticaItem(descritorItem, dataCriacao);
 	}
 
 	/**
@@ -568,7 +866,19 @@ public class SistemaController implements Serializable {
 	 * @return representacao textual do dia em que a lista ocorre.
 	 */
 	public String geraAutomaticaItensMaisPresentes() {
-		return this.listaService.geraAutomaticaItensMaisPresentes(this.produtos.values(), this.dataAtual());
+		return this.geraAutomaticaItensMaisPresentes(new Date());
+	}
+
+	/**
+	 * Metodo responsavel por gerar automaticamente, com uma data de criacao, uma
+	 * lista com os itens mais presentes nas listas de compras anteriores.
+	 * 
+	 * @param dataCriacao
+	 *            : data/hora de criacao da lista gerada.
+	 * @return representacao textual do dia em que a lista ocorre.
+	 */
+	public String geraAutomaticaItensMaisPresentes(Date dataCriacao) {
+		return this.listas().geraAutomaticaItensMaisPresentes(this.produtos().values(), dataCriacao);
 	}
 
 	/**
@@ -579,24 +889,310 @@ public class SistemaController implements Serializable {
 	 * @return Uma string contendo a representacao textual do melhor estabelecimento
 	 */
 	public String sugereMelhorEstabelecimento(String descritor, int posicaoEstabelecimento, int posicaoLista) {
-		return this.listaService.sugereMelhorEstabelecimento(descritor, posicaoEstabelecimento, posicaoLista);
+		return this.listas().sugereMelhorEstabelecimento(descritor, posicaoEstabelecimento, posicaoLista);
 	}
 
 	/**
 	 * Metodo responsavel por fechar um sistema salvando os seus dados em um arquivo
+	 * no formato padrao.
 	 */
 	public void fechaSistema() {
+		this.fechaSistema(FormatoArmazenamento.padrao());
+	}
 
+	/**
+	 * Metodo responsavel por fechar um sistema salvando os seus dados em um arquivo
+	 * no formato informado.
+	 * 
+	 * @param formato
+	 *            : O formato usado para gravar o sistema.
+	 */
+	public void fechaSistema(FormatoArmazenamento formato) {
 		try {
-			File file = new File("dados.txt");
-			FileOutputStream fileOutputStream = new FileOutputStream(file);
-			ObjectOutputStream objectOutputStream = new ObjectOutputStream(fileOutputStream);
-			objectOutputStream.writeObject(this);
-			objectOutputStream.close();
-			fileOutputStream.close();
+			ArquivoDados.grava(this, formato, new File("dados.txt"));
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
 	}
 
+	/**
+	 * Metodo responsavel por copiar o estado do sistema para ser gravado. A
+	 * gravacao e feita depois, sobre a copia, sem trava nenhuma.
+	 * 
+	 * @return O retrato do sistema.
+	 */
+	public RetratoSistema retrata() {
+		return this.iniciaRetrato().conclui();
+	}
+
+	/**
+	 * Metodo responsavel por marcar o momento de uma copia do estado do sistema.
+	 * Com a trava do catalogo sao guardados apenas a versao publicada do
+	 * catalogo, o id do proximo produto e os descritores das listas, em tempo
+	 * constante; os itens e as listas sao copiados depois, sem trava, quando a
+	 * captura e concluida. Ate la, cada item e cada lista e avisado a captura
+	 * antes de ser alterado.
+	 * 
+	 * @return A captura, que deve ser concluida.
+	 */
+	public RetratoSistema.Captura iniciaRetrato() {
+		ListaService listas = this.listas();
+		this.travaCatalogo.lock();
+		try {
+			RetratoSistema.Captura captura = new RetratoSistema.Captura(this, this.catalogo,
+					this.identificadorBase.get(), listas.getDescritores());
+			this.capturas.add(captura);
+			listas.adicionaCaptura(captura);
+			return captura;
+		} finally {
+			this.travaCatalogo.unlock();
+		}
+	}
+
+	/**
+	 * Metodo responsavel por deixar de avisar uma captura concluida.
+	 * 
+	 * @param captura
+	 *            : A captura concluida.
+	 */
+	public void encerraRetrato(CapturaSistema captura) {
+		this.capturas.remove(captura);
+		this.listaService.removeCaptura(captura);
+	}
+
+	/**
+	 * Metodo responsavel por retornar os produtos cadastrados no sistema.
+	 * 
+	 * @return Um mapa, que nao pode ser alterado, com os produtos indexados pelo
+	 *         id.
+	 */
+	public Map<Integer, Item> getProdutos() {
+		return Collections.unmodifiableMap(this.produtos());
+	}
+
+	/**
+	 * Metodo responsavel por retornar o servico de listas do sistema.
+	 * 
+	 * @return O servico de listas.
+	 */
+	public ListaService getListaService() {
+		return this.listas();
+	}
+
+	/**
+	 * Metodo responsavel por retornar o id do proximo produto que sera cadastrado.
+	 * 
+	 * @return Um inteiro com o id.
+	 */
+	public int getIdentificadorBase() {
+		return this.identificadorBase.get();
+	}
+
+	/**
+	 * Metodo responsavel por adicionar um item aos indices de consulta do sistema.
+	 * Deve ser chamado com a trava do catalogo.
+	 * 
+	 * @param item
+	 *            : O item que sera indexado.
+	 */
+	private void indexaItem(Item item) {
+		this.publicaItem(this.catalogo, item);
+	}
+
+	/**
+	 * Metodo responsavel por publicar uma nova versao do catalogo, com um item
+	 * acrescentado a versao informada, e a nova representacao textual do item.
+	 * Deve ser chamado com a trava do catalogo.
+	 * 
+	 * @param base
+	 *            : A versao do catalogo onde o item sera acrescentado.
+	 * @param item
+	 *            : O item que sera indexado.
+	 */
+	private void publicaItem(Catalogo base, Item item) {
+		this.representacoes.put(item.getId(), item.toString());
+		this.catalogo = base.adiciona(item);
+	}
+
+	/**
+	 * Metodo responsavel por retirar um item dos indices de consulta do sistema.
+	 * Deve ser chamado com a trava do catalogo.
+	 * 
+	 * @param item
+	 *            : O item que sera retirado dos indices.
+	 */
+	private void removeDosIndices(Item item) {
+		this.catalogo = this.catalogo.remove(item);
+		this.representacoes.remove(item.getId());
+	}
+
+	/**
+	 * Metodo responsavel por avisar as capturas em andamento de que um item sera
+	 * alterado. Deve ser chamado com a trava do catalogo.
+	 * 
+	 * @param item
+	 *            : O item que sera alterado.
+	 */
+	private void preservaItem(Item item) {
+		for (CapturaSistema captura : this.capturas) {
+			captura.preservaItem(item);
+		}
+	}
+
+	/**
+	 * Metodo responsavel por retornar a representacao textual de um item guardada
+	 * na ultima alteracao do item.
+	 * 
+	 * @param item
+	 *            : O item consultado.
+	 * @return Uma String com a representacao textual do item.
+	 */
+	private String representa(Item item) {
+		String representacao = this.representacoes.get(item.getId());
+		if (representacao == null) {
+			return item.toString();
+		}
+		return representacao;
+	}
+
+	/**
+	 * Metodo responsavel por retornar o mapa de produtos, criando na primeira
+	 * chamada todos os produtos do catalogo mapeado de onde o sistema foi aberto,
+	 * e os indices de consulta. As chamadas seguintes apenas leem um campo
+	 * volatil.
+	 * 
+	 * @return O mapa de produtos.
+	 */
+	private Map<Integer, Item> produtos() {
+		if (this.catalogoMapeado != null) {
+			this.travaCatalogo.lock();
+			try {
+				CatalogoMapeado pendente = this.catalogoMapeado;
+				if (pendente != null) {
+					pendente.preencheProdutos(this.produtos);
+					this.reconstroiIndices();
+					this.catalogoMapeado = null;
+				}
+			} finally {
+				this.travaCatalogo.unlock();
+			}
+		}
+		return this.produtos;
+	}
+
+	/**
+	 * Metodo responsavel por retornar a versao publicada dos indices de consulta,
+	 * criando antes os produtos do catalogo mapeado.
+	 * 
+	 * @return Os indices de consulta.
+	 */
+	private Catalogo catalogo() {
+		this.produtos();
+		return this.catalogo;
+	}
+
+	/**
+	 * Metodo responsavel por retornar o servico de listas, criando na primeira
+	 * chamada os produtos e as listas do catalogo mapeado de onde o sistema foi
+	 * aberto. Os produtos sao criados antes, pois as listas do historico sao
+	 * lidas a partir do mapa de produtos.
+	 * 
+	 * @return O servico de listas.
+	 */
+	private ListaService listas() {
+		if (this.listasMapeadas != null) {
+			this.produtos();
+			this.travaCatalogo.lock();
+			try {
+				CatalogoMapeado pendente = this.listasMapeadas;
+				if (pendente != null) {
+					pendente.preencheListas(this.listaService);
+					this.listasMapeadas = null;
+				}
+			} finally {
+				this.travaCatalogo.unlock();
+			}
+		}
+		return this.listaService;
+	}
+
+	/**
+	 * Metodo responsavel por retornar a representacao textual de um item lido do
+	 * catalogo mapeado, ou uma String vazia caso nao exista item.
+	 */
+	private String representaMapeado(Item item) {
+		if (item == null) {
+			return "";
+		}
+		return this.representa(item);
+	}
+
+	/**
+	 * Metodo responsavel por retornar o mapa usado nas consultas de um item pelo
+	 * id: os produtos do catalogo mapeado, enquanto ele nao foi todo criado, ou o
+	 * mapa de produtos.
+	 */
+	private Map<Integer, Item> produtosConsultados() {
+		CatalogoMapeado pendente = this.catalogoMapeado;
+		if (pendente != null) {
+			return pendente.getProdutos();
+		}
+		return this.produtos;
+	}
+
+	/**
+	 * Metodo responsavel por criar os indices de consulta a partir do mapa de
+	 * produtos. Os itens carregados de um arquivo passam a registrar os seus
+	 * locais de compra no dicionario do sistema.
+	 */
+	private void reconstroiIndices() {
+		this.catalogo = new Catalogo();
+		this.representacoes = new ConcurrentHashMap<>();
+		for (Item item : this.produtos.values()) {
+			item.usaEstabelecimentos(this.listaService.getEstabelecimentos());
+			this.indexaItem(item);
+		}
+	}
+
+	/**
+	 * Metodo responsavel por gravar o sistema em um arquivo. Os itens sao gravados
+	 * com a trava do catalogo, para que nenhum deles seja alterado no meio da
+	 * gravacao.
+	 * 
+	 * @param saida
+	 *            : O fluxo onde o sistema sera gravado.
+	 */
+	private void writeObject(ObjectOutputStream saida) throws IOException {
+		ListaService listas = this.listas();
+		this.travaCatalogo.lock();
+		try {
+			ObjectOutputStream.PutField campos = saida.putFields();
+			campos.put("produtos", this.produtos);
+			campos.put("listaService", listas);
+			campos.put("identificadorBase", Integer.valueOf(this.identificadorBase.get()));
+			saida.writeFields();
+		} finally {
+			this.travaCatalogo.unlock();
+		}
+	}
+
+	/**
+	 * Metodo responsavel por carregar o sistema de um arquivo, reconstruindo os
+	 * indices que nao sao salvos. O mapa de produtos dos arquivos antigos e
+	 * trocado por um mapa concorrente.
+	 * 
+	 * @param entrada
+	 *            : O fluxo de onde o sistema sera lido.
+	 */
+	@SuppressWarnings("unchecked")
+	private void readObject(ObjectInputStream entrada) throws IOException, ClassNotFoundException {
+		ObjectInputStream.GetField campos = entrada.readFields();
+		this.produtos = new ConcurrentHashMap<>((Map<Integer, Item>) campos.get("produtos", null));
+		this.listaService = (ListaService) campos.get("listaService", null);
+		this.identificadorBase = new AtomicInteger((Integer) campos.get("identificadorBase", Integer.valueOf(1)));
+		this.travaCatalogo = new ReentrantLock();
+		this.capturas = new CopyOnWriteArrayList<>();
+		this.reconstroiIndices();
+	}
+
 }
@@ -100,37 +100,16 @@ public class Compra implements Comparable<Compra>, Serializable {
 
 	/**
 	 * Metodo responsavel por comparar duas compras em 2 niveis: 1) baseado nas
-	 * categorias dos itens e 2) ordem lexicografica.
+	 * categorias dos itens, na ordem em que sao declaradas em Categoria, e 2) ordem
+	 * lexicografica.
 	 */
 	@Override
 	public int compareTo(Compra compra) {
-		int valor1 = this.getCategoria(compra.getItem().getCategoria());
-		int valor2 = this.getCategoria(this.item.getCategoria());
+		int valor1 = compra.getItem().getTipoCategoria().ordinal();
+		int valor2 = this.item.getTipoCategoria().ordinal();
 		if (valor1 == valor2) {
 			return this.getItem().getNome().compareTo(compra.getItem().getNome());
 		}
 		return valor2 - valor1;
 	}
-
-	/**
-	 * Metodo auxiliar(usado no compareTo) que retorna um inteiro associado a cada
-	 * categoria disponivel.
-	 * 
-	 * @param categoria
-	 *            String que representa a categoria de um item.
-	 * @return inteiro que sera usado no compareTo.
-	 */
-	private int getCategoria(String categoria) {
-		switch (categoria) {
-		case "higiene pessoal":
-			return 1;
-		case "limpeza":
-			return 2;
-		case "alimento industrializado":
-			return 3;
-		case "alimento nao industrializado":
-			return 4;
-		}
-		return 0;
-	}
 }
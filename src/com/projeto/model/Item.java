@@ -1,9 +1,15 @@
 package com.projeto.model;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 import java.util.Map;
 
+import com.projeto.service.EstabelecimentoRegistry;
 import com.projeto.service.PrecoService;
+import com.projeto.util.Categoria;
 import com.projeto.util.ValidadorSistema;
 
 /**
@@ -15,6 +21,14 @@ public abstract class Item implements Comparable<Item>,Serializable {
 
 	private static final long serialVersionUID = -104549067010026348L;
 
+	/**
+	 * Campos gravados quando o item e salvo. A categoria continua sendo gravada
+	 * pelo texto exibido, como nos arquivos salvos antes da adocao do enum.
+	 */
+	private static final ObjectStreamField[] serialPersistentFields = { new ObjectStreamField("id", int.class),
+			new ObjectStreamField("nome", String.class), new ObjectStreamField("categoria", String.class),
+			new ObjectStreamField("precoService", PrecoService.class) };
+
 	/**
 	 * Um inteiro representando a identificacao do item.
 	 */
@@ -26,9 +40,15 @@ public abstract class Item implements Comparable<Item>,Serializable {
 	private String nome;
 
 	/**
-	 * Uma String representando a qual categoria o item pertence.
+	 * A categoria a qual o item pertence.
 	 */
-	private String categoria;
+	private Categoria categoria;
+
+	/**
+	 * O texto da categoria como foi informado, guardado apenas quando difere do
+	 * valor textual da categoria, como em "Higiene Pessoal".
+	 */
+	private String textoCategoria;
 
 	/**
 	 * Controlador dos precos e respectivos locais de compras que um produto possui
@@ -36,7 +56,8 @@ public abstract class Item implements Comparable<Item>,Serializable {
 	private PrecoService precoService;
 
 	/**
-	 * Metodo reponsavel por inicializar um item no sistema.
+	 * Metodo reponsavel por inicializar um item fora de um sistema, com um
+	 * dicionario de locais de compra proprio.
 	 * 
 	 * @param id
 	 *            : O identificador do item.
@@ -46,11 +67,27 @@ public abstract class Item implements Comparable<Item>,Serializable {
 	 *            : A categoria do item.
 	 */
 	public Item(int id, String nome, String categoria) {
+		this(id, nome, categoria, new EstabelecimentoRegistry());
+	}
+
+	/**
+	 * Metodo reponsavel por inicializar um item no sistema.
+	 * 
+	 * @param id
+	 *            : O identificador do item.
+	 * @param nome
+	 *            : O nome do item.
+	 * @param categoria
+	 *            : A categoria do item.
+	 * @param estabelecimentos
+	 *            : O dicionario de locais de compra do sistema.
+	 */
+	public Item(int id, String nome, String categoria, EstabelecimentoRegistry estabelecimentos) {
 		if (ValidadorSistema.validaItem(nome, categoria)) {
 			this.id = id;
 			this.nome = nome;
-			this.categoria = categoria;
-			this.precoService = new PrecoService();
+			this.alteraCategoria(categoria);
+			this.precoService = new PrecoService(estabelecimentos);
 		}
 	}
 
@@ -77,7 +114,7 @@ public abstract class Item implements Comparable<Item>,Serializable {
 	public int hashCode() {
 		final int prime = 31;
 		int result = 1;
-		result = prime * result + ((categoria == null) ? 0 : categoria.hashCode());
+		result = prime * result + ((categoria == null) ? 0 : categoria.get().hashCode());
 		result = prime * result + ((nome == null) ? 0 : nome.hashCode());
 		return result;
 	}
@@ -85,7 +122,9 @@ public abstract class Item implements Comparable<Item>,Serializable {
 	/**
 	 * Metodo responsavel por comparar dois objetos e verificar se ele e um item.
 	 * Caso seja um item ele verifica se sao iguais de acordo com seu nome e
-	 * categoria.
+	 * categoria. A categoria e comparada pelo enum, de forma que "Higiene
+	 * Pessoal" e "higiene pessoal" sao a mesma categoria, e um item cadastrado
+	 * com uma delas impede o cadastro do mesmo nome com a outra.
 	 * 
 	 * @return : um valor bolleano que indica se os objetos sao iguais ou nao
 	 */
@@ -98,10 +137,7 @@ public abstract class Item implements Comparable<Item>,Serializable {
 		if (getClass() != obj.getClass())
 			return false;
 		Item other = (Item) obj;
-		if (categoria == null) {
-			if (other.categoria != null)
-				return false;
-		} else if (!categoria.equals(other.categoria))
+		if (categoria != other.categoria)
 			return false;
 		if (nome == null) {
 			if (other.nome != null)
@@ -133,11 +169,21 @@ public abstract class Item implements Comparable<Item>,Serializable {
 	}
 
 	/**
-	 * Metodo acessivel que permite a recuperacao da categoria do item.
+	 * Metodo acessivel que permite a recuperacao da categoria do item, escrita
+	 * como foi informada.
 	 * 
 	 * @return : uma String que representa a categoria do item.
 	 */
 	public String getCategoria() {
+		return textoCategoria == null ? categoria.get() : textoCategoria;
+	}
+
+	/**
+	 * Metodo responsavel por retornar a categoria do item como enum.
+	 * 
+	 * @return : a categoria do item
+	 */
+	public Categoria getTipoCategoria() {
 		return categoria;
 	}
 
@@ -155,7 +201,7 @@ public abstract class Item implements Comparable<Item>,Serializable {
 	 */
 	@Override
 	public String toString() {
-		return this.id + ". " + this.nome + ", " + this.categoria;
+		return this.id + ". " + this.nome + ", " + this.getCategoria();
 	}
 
 	/**
@@ -168,6 +214,17 @@ public abstract class Item implements Comparable<Item>,Serializable {
 		return this.precoService.getListaPrecos();
 	}
 
+	/**
+	 * Metodo responsavel por invocar o controlador de precos para escrever a lista
+	 * de locais de compra e precos em um destino de texto
+	 * 
+	 * @param saida : o destino onde os precos serao escritos.
+	 * @throws IOException : caso ocorra um erro ao escrever no destino.
+	 */
+	public void escreveListaPrecos(Appendable saida) throws IOException {
+		this.precoService.escreveListaPrecos(saida);
+	}
+
 	/**
 	 * Metodo acessivel que altera a categoria do item.
 	 * 
@@ -176,7 +233,23 @@ public abstract class Item implements Comparable<Item>,Serializable {
 	 */
 	public void setCategoria(String categoria) {
 		if (ValidadorSistema.validaCategoria(categoria)) {
-			this.categoria = categoria;
+			this.alteraCategoria(categoria);
+		}
+	}
+
+	/**
+	 * Metodo auxiliar que converte a categoria informada para o enum, guardando o
+	 * texto informado quando ele difere do valor textual da categoria.
+	 * 
+	 * @param categoria
+	 *            : o texto da categoria, ja validado.
+	 */
+	private void alteraCategoria(String categoria) {
+		this.categoria = Categoria.converte(categoria);
+		if (this.categoria == null || this.categoria.get().equals(categoria)) {
+			this.textoCategoria = null;
+		} else {
+			this.textoCategoria = categoria;
 		}
 	}
 
@@ -235,4 +308,53 @@ public abstract class Item implements Comparable<Item>,Serializable {
 	public Map<String,Double> getPrecos() {
 		return precoService.getPrecos();
 	}
+
+	/**
+	 * Metodo responsavel por retornar a tabela atual de locais de compra e precos do item,
+	 * que nao muda depois de retornada
+	 * @return
+	 */
+	public PrecoService.TabelaPrecos getTabelaPrecos() {
+		return precoService.getTabela();
+	}
+
+	/**
+	 * Metodo responsavel por passar a registrar os locais de compra do item no dicionario
+	 * de locais do sistema onde ele foi carregado
+	 * @param estabelecimentos : o dicionario de locais do sistema
+	 */
+	public void usaEstabelecimentos(EstabelecimentoRegistry estabelecimentos) {
+		precoService.usaEstabelecimentos(estabelecimentos);
+	}
+
+	/**
+	 * Metodo responsavel por salvar o item em um arquivo, gravando a categoria pelo
+	 * texto exibido.
+	 * 
+	 * @param saida
+	 *            : O fluxo onde o item sera gravado.
+	 */
+	private void writeObject(ObjectOutputStream saida) throws IOException {
+		ObjectOutputStream.PutField campos = saida.putFields();
+		campos.put("id", this.id);
+		campos.put("nome", this.nome);
+		campos.put("categoria", this.categoria == null ? null : this.getCategoria());
+		campos.put("precoService", this.precoService);
+		saida.writeFields();
+	}
+
+	/**
+	 * Metodo responsavel por carregar o item de um arquivo, convertendo o texto
+	 * gravado para a categoria.
+	 * 
+	 * @param entrada
+	 *            : O fluxo de onde o item sera lido.
+	 */
+	private void readObject(ObjectInputStream entrada) throws IOException, ClassNotFoundException {
+		ObjectInputStream.GetField campos = entrada.readFields();
+		this.id = campos.get("id", 0);
+		this.nome = (String) campos.get("nome", null);
+		this.alteraCategoria((String) campos.get("categoria", null));
+		this.precoService = (PrecoService) campos.get("precoService", null);
+	}
 }
@@ -1,17 +1,26 @@
 package com.projeto.model;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.time.ZoneId;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
-import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.projeto.excecoes.CampoInvalidoException;
 import com.projeto.excecoes.CompraNaoCadastradaException;
+import com.projeto.service.EstabelecimentoRegistry;
+import com.projeto.util.Categoria;
+import com.projeto.util.Estabelecimento;
+import com.projeto.util.FormatoData;
+import com.projeto.util.IndiceOrdenado;
 import com.projeto.util.Mensagem;
 import com.projeto.util.ValidadorSistema;
 
@@ -20,11 +29,55 @@ import com.projeto.util.ValidadorSistema;
  * coleção de itens a comprar. Alem disso possui atributos que representam a
  * data de criacao, local de compra, se a mesma foi finalizada e o seu valor
  * final.
+ *
+ * As alteracoes nas compras de uma lista sao sincronizadas na propria lista,
+ * de forma que listas diferentes podem ser alteradas ao mesmo tempo. As compras
+ * e os nomes dos itens ficam em mapas concorrentes, que podem ser consultados
+ * sem bloquear.
  */
 public class ListaDeCompras implements Comparable<ListaDeCompras>, Serializable {
 
 	private static final long serialVersionUID = 2980988884358572850L;
 
+	/**
+	 * Uma compra na ordem da lista, com a categoria e o nome que o item possuia
+	 * quando a compra foi ordenada. Assim a ordem nao e desfeita quando o item e
+	 * alterado fora da lista: a compra so muda de lugar em
+	 * {@link ListaDeCompras#atualizaItem(Integer)}.
+	 */
+	private static final class CompraOrdenada {
+
+		private final Compra compra;
+
+		private final Categoria categoria;
+
+		private final String nome;
+
+		private CompraOrdenada(Compra compra) {
+			this.compra = compra;
+			this.categoria = compra.getItem().getTipoCategoria();
+			this.nome = compra.getItem().getNome();
+		}
+	}
+
+	/**
+	 * A ordem das compras, pela categoria, pelo nome e, em caso de empate, pelo
+	 * id do item.
+	 */
+	private static final Comparator<CompraOrdenada> ORDEM_COMPRAS = new Comparator<CompraOrdenada>() {
+		@Override
+		public int compare(CompraOrdenada compra1, CompraOrdenada compra2) {
+			if (compra1.categoria != compra2.categoria) {
+				return compra1.categoria.ordinal() - compra2.categoria.ordinal();
+			}
+			int comparacao = compra1.nome.compareTo(compra2.nome);
+			if (comparacao == 0) {
+				return compra1.compra.getItem().getId().compareTo(compra2.compra.getItem().getId());
+			}
+			return comparacao;
+		}
+	};
+
 	/**
 	 * String com o descritor da lista de compras. Um descritor de uma lista tem o
 	 * papel de descrever a compra.(ex "feira 23/05/2018")
@@ -36,11 +89,45 @@ public class ListaDeCompras implements Comparable<ListaDeCompras>, Serializable
 	 */
 	private Date dataCriacao;
 
+	/**
+	 * O dia em que a lista de compras foi criada, calculado uma unica vez a partir
+	 * da data de criacao. Reconstruido quando a lista e carregada.
+	 */
+	private transient LocalDate dia;
+
 	/**
 	 * Mapa que associa o id de um Item a uma Compra.
 	 */
 	private Map<Integer, Compra> compras;
 
+	/**
+	 * Mapa que associa o nome de cada item comprado a quantidade de compras da
+	 * lista com um item desse nome. Os nomes sao os usados na ordem das compras.
+	 * Nao e salvo junto com a lista: e reconstruido a partir das compras quando a
+	 * lista e carregada.
+	 */
+	private transient Map<String, Integer> nomesItens;
+
+	/**
+	 * As compras da lista ordenadas pela categoria e pelo nome do item, mantidas a
+	 * cada compra adicionada ou removida. Reconstruidas a partir das compras quando
+	 * a lista e carregada.
+	 */
+	private transient volatile IndiceOrdenado<CompraOrdenada> comprasOrdenadas;
+
+	/**
+	 * Mapa que associa o id de cada item comprado a entrada da sua compra na
+	 * ordem das compras. Reconstruido junto com a ordem.
+	 */
+	private transient Map<Integer, CompraOrdenada> ordemPorItem;
+
+	/**
+	 * Ranking dos estabelecimentos para esta lista, ordenado pelo valor, guardado
+	 * depois de calculado. Vale null enquanto nao for calculado ou depois que as
+	 * compras da lista ou os precos dos seus itens mudarem.
+	 */
+	private transient volatile List<Estabelecimento> rankingEstabelecimentos;
+
 	/**
 	 * Boolean que indica se a lista de compras foi finalziada.
 	 */
@@ -63,12 +150,29 @@ public class ListaDeCompras implements Comparable<ListaDeCompras>, Serializable
 	 *            String que representa o descritor da lista de compras.
 	 */
 	public ListaDeCompras(String descritor) {
+		this(descritor, new Date());
+	}
+
+	/**
+	 * Constroi uma listaDeCompras a partir de um descritor e da data em que ela foi
+	 * criada. Usado para recriar listas salvas.
+	 * 
+	 * @param descritor
+	 *            String que representa o descritor da lista de compras.
+	 * @param dataCriacao
+	 *            Date com a data/hora em que a lista de compras foi criada.
+	 */
+	public ListaDeCompras(String descritor, Date dataCriacao) {
 		ValidadorSistema.validaDescritor(descritor, "Erro em lista de compra: Descritor invalido.");
 
-		dataCriacao = new Date();
+		this.dataCriacao = new Date(dataCriacao.getTime());
+		this.dia = calculaDia(this.dataCriacao);
 
 		this.descritor = descritor;
-		this.compras = new HashMap<>();
+		this.compras = new ConcurrentHashMap<>();
+		this.nomesItens = new ConcurrentHashMap<>();
+		this.comprasOrdenadas = new IndiceOrdenado<>(ORDEM_COMPRAS);
+		this.ordemPorItem = new ConcurrentHashMap<>();
 		this.finalizada = false;
 	}
 
@@ -81,12 +185,15 @@ public class ListaDeCompras implements Comparable<ListaDeCompras>, Serializable
 	 * @param item
 	 *            instancia de Item.
 	 */
-	public void adicionaCompraALista(int quantidade, Item item) {
+	public synchronized void adicionaCompraALista(int quantidade, Item item) {
 		if (this.compras.keySet().contains(item.getId())) {
 			throw new CampoInvalidoException("Item ja cadastrado");
 		}
 		ValidadorSistema.validaQuantidade(quantidade);
-		this.compras.put(item.getId(), new Compra(item, quantidade));
+		Compra compra = new Compra(item, quantidade);
+		this.compras.put(item.getId(), compra);
+		this.ordenaCompra(compra);
+		this.invalidaRanking();
 	}
 
 	/**
@@ -101,7 +208,7 @@ public class ListaDeCompras implements Comparable<ListaDeCompras>, Serializable
 	 *            Inteiro com a qtd a ser removida ou adicionada no atributo
 	 *            quantidade.
 	 */
-	public void atualizaCompraDeLista(Integer idItem, String operacao, int quantidade) {
+	public synchronized void atualizaCompraDeLista(Integer idItem, String operacao, int quantidade) {
 		try {
 			if (ValidadorSistema.validaOperacao(operacao)) {
 				if (!this.compras.containsKey(idItem)) {
@@ -112,9 +219,10 @@ public class ListaDeCompras implements Comparable<ListaDeCompras>, Serializable
 			throw new CampoInvalidoException(Mensagem.MSG_EXCECAO_ATUALIZA_COMPRA.get() + e.getMessage());
 		}
 		ValidadorSistema.validaQuantidade(quantidade);
+		this.invalidaRanking();
 		this.compras.get(idItem).atualizar(operacao, quantidade);
 		if (this.compras.get(idItem).getQuantidade() <= 0)
-			this.compras.remove(idItem);
+			this.retiraCompra(idItem);
 	}
 
 	/**
@@ -126,14 +234,41 @@ public class ListaDeCompras implements Comparable<ListaDeCompras>, Serializable
 	 * @return String com o toString da Compra ou "" se a posicao for invalida.
 	 */
 	public String getItemLista(int posicao) {
-		List<Compra> listaOrdenada = new ArrayList<>(this.compras.values());
-		Collections.sort(listaOrdenada);
-		if (posicao < listaOrdenada.size()) {
-			return listaOrdenada.get(posicao).toString();
+		IndiceOrdenado<CompraOrdenada> ordenadas = this.comprasOrdenadas.copia();
+		if (posicao < ordenadas.tamanho()) {
+			return ordenadas.get(posicao).compra.toString();
 		}
 		return "";
 	}
 
+	/**
+	 * Metodo que permite percorrer as compras da lista na mesma ordem usada em
+	 * getItemLista, sem copia-las nem ordena-las. O percurso enxerga as compras
+	 * existentes quando ele comecou, mesmo que a lista seja alterada ao mesmo
+	 * tempo.
+	 * 
+	 * @return As compras ordenadas pela categoria e pelo nome do item.
+	 */
+	public Iterable<Compra> getComprasOrdenadas() {
+		return new Iterable<Compra>() {
+			@Override
+			public Iterator<Compra> iterator() {
+				final Iterator<CompraOrdenada> ordenadas = comprasOrdenadas.iterator();
+				return new Iterator<Compra>() {
+					@Override
+					public boolean hasNext() {
+						return ordenadas.hasNext();
+					}
+
+					@Override
+					public Compra next() {
+						return ordenadas.next().compra;
+					}
+				};
+			}
+		};
+	}
+
 	/**
 	 * Metodo que retorna uma String com o toString de todas as Compras da
 	 * listaDeCompras.
@@ -141,11 +276,28 @@ public class ListaDeCompras implements Comparable<ListaDeCompras>, Serializable
 	 * @return String com o toString de todas as compras da lista.
 	 */
 	public String buscaTodosItens() {
-		String itens = "";
+		StringBuilder itens = new StringBuilder();
+		try {
+			this.escreveTodosItens(itens);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return itens.toString();
+	}
+
+	/**
+	 * Metodo que escreve a descricao de todas as Compras da listaDeCompras em um
+	 * destino de texto, uma por linha, na mesma ordem de buscaTodosItens.
+	 * 
+	 * @param saida
+	 *            Destino onde as compras serao escritas.
+	 * @throws IOException
+	 *             Caso ocorra um erro ao escrever no destino.
+	 */
+	public void escreveTodosItens(Appendable saida) throws IOException {
 		for (Compra compra : this.compras.values()) {
-			itens += compra.getDescricao() + System.lineSeparator();
+			saida.append(compra.getDescricao()).append(System.lineSeparator());
 		}
-		return itens;
 	}
 
 	/**
@@ -171,9 +323,25 @@ public class ListaDeCompras implements Comparable<ListaDeCompras>, Serializable
 	 * @param valorFinal
 	 *            Inteiro com o alor final da compra.
 	 */
-	public void finalizar(String local, int valorFinal) {
+	public synchronized void finalizar(String local, int valorFinal) {
+		this.finalizar(local, valorFinal, null);
+	}
+
+	/**
+	 * Metodo responsavel por finalizar a lista de compras, guardando a instancia
+	 * canonica do local no dicionario de locais do sistema.
+	 * 
+	 * @param local
+	 *            String com o local onde as compras foram efetuadas.
+	 * @param valorFinal
+	 *            Inteiro com o alor final da compra.
+	 * @param estabelecimentos
+	 *            O dicionario de locais do sistema, ou null para guardar o local
+	 *            recebido.
+	 */
+	public synchronized void finalizar(String local, int valorFinal, EstabelecimentoRegistry estabelecimentos) {
 		ValidadorSistema.validaLocalCompra(local, "Erro ao finalixar lista de compra");
-		this.local = local;
+		this.local = estabelecimentos == null ? local : estabelecimentos.canonico(local);
 		this.valorFinal = valorFinal;
 		this.finalizada = true;
 	}
@@ -193,11 +361,11 @@ public class ListaDeCompras implements Comparable<ListaDeCompras>, Serializable
 	 * @param idItem
 	 *            Id do item associado a compra a ser deletada.
 	 */
-	public void deletaCompraDeLista(Integer idItem) {
+	public synchronized void deletaCompraDeLista(Integer idItem) {
 		if (!this.compras.containsKey(idItem)) {
 			throw new CompraNaoCadastradaException(Mensagem.MSG_EXCECAO_EXCLUSAO_COMPRA.get());
 		}
-		this.compras.remove(idItem);
+		this.retiraCompra(idItem);
 	}
 
 	/**
@@ -209,6 +377,16 @@ public class ListaDeCompras implements Comparable<ListaDeCompras>, Serializable
 		return this.dataCriacao;
 	}
 
+	/**
+	 * Metodo acessor que retorna o dia em que a lista de compras foi criada, sem o
+	 * horario.
+	 * 
+	 * @return LocalDate com o dia de criacao da lista de compras.
+	 */
+	public LocalDate getDia() {
+		return this.dia;
+	}
+
 	/**
 	 * Metodo acessor que retorna o descritor da lista de compras.
 	 * 
@@ -244,12 +422,7 @@ public class ListaDeCompras implements Comparable<ListaDeCompras>, Serializable
 	 *         nao.
 	 */
 	public boolean possuiCompra(int idItem) {
-		for (Compra compra : this.compras.values()) {
-			if (compra.getItem().getId() == idItem) {
-				return true;
-			}
-		}
-		return false;
+		return this.compras.containsKey(idItem);
 	}
 
 	/**
@@ -258,15 +431,7 @@ public class ListaDeCompras implements Comparable<ListaDeCompras>, Serializable
 	 * @return String com a data formatada.
 	 */
 	public Date getDataFormatada() {
-		SimpleDateFormat dateFormat = new SimpleDateFormat("dd/MM/yyyy");
-		try {
-			String date = dateFormat.format(this.dataCriacao);
-			return dateFormat.parse(date);
-
-		} catch (ParseException e) {
-			e.printStackTrace();
-		}
-		return null;
+		return Date.from(this.dia.atStartOfDay(ZoneId.systemDefault()).toInstant());
 	}
 
 	/**
@@ -275,8 +440,7 @@ public class ListaDeCompras implements Comparable<ListaDeCompras>, Serializable
 	 * @return String com a data em formato textual.
 	 */
 	public String getDataTextual() {
-		SimpleDateFormat dateFormat = new SimpleDateFormat("dd/MM/yyyy");
-		return dateFormat.format(this.dataCriacao);
+		return FormatoData.formata(this.dia);
 	}
 
 	/**
@@ -294,8 +458,27 @@ public class ListaDeCompras implements Comparable<ListaDeCompras>, Serializable
 	 * @param compras
 	 *            Map da nova lista de compras.
 	 */
-	public void setCompras(Map<Integer, Compra> compras) {
-		this.compras = compras;
+	public synchronized void setCompras(Map<Integer, Compra> compras) {
+		this.compras = new ConcurrentHashMap<>(compras);
+		this.reconstroiIndices();
+		this.invalidaRanking();
+	}
+
+	/**
+	 * Metodo responsavel por substituir as compras da lista por copias das compras
+	 * de outra lista, de forma que alteracoes em uma das listas nao afetem a outra.
+	 * 
+	 * @param compras
+	 *            Map com as compras que serao copiadas.
+	 */
+	public synchronized void copiaCompras(Map<Integer, Compra> compras) {
+		this.compras = new ConcurrentHashMap<>();
+		for (Map.Entry<Integer, Compra> compra : compras.entrySet()) {
+			this.compras.put(compra.getKey(),
+					new Compra(compra.getValue().getItem(), compra.getValue().getQuantidade()));
+		}
+		this.reconstroiIndices();
+		this.invalidaRanking();
 	}
 
 	/**
@@ -326,12 +509,29 @@ public class ListaDeCompras implements Comparable<ListaDeCompras>, Serializable
 	 * @return valor boleano indicando se a lista de compras contem este item.
 	 */
 	public boolean contemItem(String nomeItem) {
-		for (Compra compra : this.compras.values()) {
-			if (compra.getItem().getNome().equals(nomeItem)) {
-				return true;
-			}
+		return this.nomesItens.containsKey(nomeItem);
+	}
+
+	/**
+	 * Metodo responsavel por atualizar a lista depois que um item comprado nela foi
+	 * alterado, corrigindo o nome do item e a posicao da compra na ordem da lista
+	 * caso a categoria ou o nome do item tenham mudado desde que a compra foi
+	 * ordenada. Deve ser chamado sempre que um item da lista for alterado.
+	 * 
+	 * @param idItem
+	 *            Id do item alterado.
+	 */
+	public synchronized void atualizaItem(Integer idItem) {
+		CompraOrdenada ordenada = this.ordemPorItem.get(idItem);
+		if (ordenada == null) {
+			return;
 		}
-		return false;
+		Item item = ordenada.compra.getItem();
+		if (ordenada.categoria != item.getTipoCategoria() || !ordenada.nome.equals(item.getNome())) {
+			this.desordenaCompra(idItem);
+			this.ordenaCompra(ordenada.compra);
+		}
+		this.invalidaRanking();
 	}
 
 	/**
@@ -343,12 +543,38 @@ public class ListaDeCompras implements Comparable<ListaDeCompras>, Serializable
 	 * @return retorna a Compra, se esta estiver na lista de compras.
 	 */
 	public Compra getCompra(Integer id) {
-		for (Compra compra : this.compras.values()) {
-			if (compra.getItem().getId().equals(id)) {
-				return compra;
-			}
-		}
-		return null;
+		return this.compras.get(id);
+	}
+
+	/**
+	 * Metodo acessor que retorna o ranking de estabelecimentos calculado para a
+	 * lista.
+	 * 
+	 * @return Lista de estabelecimentos ordenada pelo valor, ou null caso o ranking
+	 *         precise ser calculado.
+	 */
+	public List<Estabelecimento> getRankingEstabelecimentos() {
+		return this.rankingEstabelecimentos;
+	}
+
+	/**
+	 * Metodo acessor que guarda o ranking de estabelecimentos calculado para a
+	 * lista.
+	 * 
+	 * @param rankingEstabelecimentos
+	 *            Lista de estabelecimentos ordenada pelo valor.
+	 */
+	public void setRankingEstabelecimentos(List<Estabelecimento> rankingEstabelecimentos) {
+		this.rankingEstabelecimentos = rankingEstabelecimentos;
+	}
+
+	/**
+	 * Metodo responsavel por descartar o ranking de estabelecimentos guardado, que
+	 * deve ser chamado sempre que as compras da lista ou os precos dos seus itens
+	 * mudarem.
+	 */
+	public void invalidaRanking() {
+		this.rankingEstabelecimentos = null;
 	}
 
 	/**
@@ -357,7 +583,7 @@ public class ListaDeCompras implements Comparable<ListaDeCompras>, Serializable
 	 * @param maisComprados
 	 *            : mapa com todos os itens mais comprados.
 	 */
-	public void adicionaCompras(Map<Item, Integer> maisComprados) {
+	public synchronized void adicionaCompras(Map<Item, Integer> maisComprados) {
 		for (Item item : maisComprados.keySet()) {
 			this.adicionaCompraALista(maisComprados.get(item), item);
 		}
@@ -396,4 +622,108 @@ public class ListaDeCompras implements Comparable<ListaDeCompras>, Serializable
 		}
 		return lista;
 	}
+
+	/**
+	 * Metodo responsavel por carregar a lista de compras de um arquivo. Arquivos
+	 * antigos guardam as compras em um HashMap, que e trocado por um mapa
+	 * concorrente.
+	 * 
+	 * @param entrada
+	 *            : O fluxo de onde a lista sera lida.
+	 */
+	private void readObject(ObjectInputStream entrada) throws IOException, ClassNotFoundException {
+		entrada.defaultReadObject();
+		this.dia = calculaDia(this.dataCriacao);
+		this.compras = new ConcurrentHashMap<>(this.compras);
+		this.reconstroiIndices();
+	}
+
+	/**
+	 * Metodo auxiliar que calcula o dia de uma data no fuso horario do sistema.
+	 * 
+	 * @param data
+	 *            Data que sera convertida.
+	 * @return LocalDate com o dia da data.
+	 */
+	private static LocalDate calculaDia(Date data) {
+		return data.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+	}
+
+	/**
+	 * Metodo auxiliar que soma uma compra ao contador de um nome de item.
+	 * 
+	 * @param nome
+	 *            Nome do item comprado.
+	 */
+	private void contaNome(String nome) {
+		Integer quantidade = this.nomesItens.get(nome);
+		this.nomesItens.put(nome, quantidade == null ? 1 : quantidade + 1);
+	}
+
+	/**
+	 * Metodo auxiliar que retira uma compra do contador de um nome de item.
+	 * 
+	 * @param nome
+	 *            Nome do item que deixou de ser comprado.
+	 */
+	private void descontaNome(String nome) {
+		Integer quantidade = this.nomesItens.get(nome);
+		if (quantidade == null || quantidade <= 1) {
+			this.nomesItens.remove(nome);
+		} else {
+			this.nomesItens.put(nome, quantidade - 1);
+		}
+	}
+
+	/**
+	 * Metodo auxiliar que retira uma compra da lista e da ordem das compras.
+	 * 
+	 * @param idItem
+	 *            Id do item associado a compra.
+	 */
+	private void retiraCompra(Integer idItem) {
+		this.compras.remove(idItem);
+		this.desordenaCompra(idItem);
+		this.invalidaRanking();
+	}
+
+	/**
+	 * Metodo auxiliar que coloca uma compra na ordem das compras, com a categoria
+	 * e o nome atuais do item, e conta o nome do item.
+	 * 
+	 * @param compra
+	 *            A compra que sera ordenada.
+	 */
+	private void ordenaCompra(Compra compra) {
+		CompraOrdenada ordenada = new CompraOrdenada(compra);
+		this.ordemPorItem.put(compra.getItem().getId(), ordenada);
+		this.comprasOrdenadas.adiciona(ordenada);
+		this.contaNome(ordenada.nome);
+	}
+
+	/**
+	 * Metodo auxiliar que retira uma compra da ordem das compras e desconta o nome
+	 * com que ela foi ordenada.
+	 * 
+	 * @param idItem
+	 *            Id do item associado a compra.
+	 */
+	private void desordenaCompra(Integer idItem) {
+		CompraOrdenada ordenada = this.ordemPorItem.remove(idItem);
+		this.comprasOrdenadas.remove(ordenada);
+		this.descontaNome(ordenada.nome);
+	}
+
+	/**
+	 * Metodo auxiliar que recalcula os contadores de nomes e a ordem das compras a
+	 * partir do mapa de compras.
+	 */
+	private void reconstroiIndices() {
+		this.nomesItens = new ConcurrentHashMap<>();
+		this.comprasOrdenadas = new IndiceOrdenado<>(ORDEM_COMPRAS);
+		this.ordemPorItem = new ConcurrentHashMap<>();
+		for (Compra compra : this.compras.values()) {
+			this.ordenaCompra(compra);
+		}
+	}
 }
@@ -1,6 +1,7 @@
 package com.projeto.model;
 
 import com.projeto.excecoes.AtribultoInexistenteException;
+import com.projeto.service.EstabelecimentoRegistry;
 import com.projeto.util.ValidadorSistema;
 
 /**
@@ -37,7 +38,31 @@ public class ProdutoNaoIndustrializadoPorQuilo extends Item {
 	 */
 	public ProdutoNaoIndustrializadoPorQuilo(int id, String nome, String categoria, double quilo, String localCompra,
 			double preco) {
-		super(id, nome, categoria);
+		this(id, nome, categoria, quilo, localCompra, preco, new EstabelecimentoRegistry());
+	}
+
+	/**
+	 * Construtor que constroi um produto nao industrializado por quilo de um
+	 * sistema, registrando o local de compra no dicionario de locais do sistema.
+	 * 
+	 * @param id
+	 *            : um inteiro que representa o id do produto.
+	 * @param nome
+	 *            : uma string que representa o nome do produto.
+	 * @param categoria
+	 *            : uma string que representa a categoria do produto.
+	 * @param quilo
+	 *            : um double que representa a quantidade em quilos do produto.
+	 * @param localCompra
+	 *            : uma string que representa o local de compra.
+	 * @param preco
+	 *            : um double que representa o preco do produto.
+	 * @param estabelecimentos
+	 *            : o dicionario de locais de compra do sistema.
+	 */
+	public ProdutoNaoIndustrializadoPorQuilo(int id, String nome, String categoria, double quilo, String localCompra,
+			double preco, EstabelecimentoRegistry estabelecimentos) {
+		super(id, nome, categoria, estabelecimentos);
 		if (ValidadorSistema.validaProdutoNaoIndustrializadoPorQuilo(quilo, localCompra, preco)) {
 			this.quilo = quilo;
 			super.adicionarLocalCompra(localCompra, preco);
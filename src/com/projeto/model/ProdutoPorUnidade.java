@@ -1,6 +1,7 @@
 package com.projeto.model;
 
 import com.projeto.excecoes.AtribultoInexistenteException;
+import com.projeto.service.EstabelecimentoRegistry;
 import com.projeto.util.ValidadorSistema;
 
 /**
@@ -35,7 +36,31 @@ public class ProdutoPorUnidade extends Item {
 	 *            : preco do produto.
 	 */
 	public ProdutoPorUnidade(int id, String nome, String categoria, int unidade, String localCompra, double preco) {
-		super(id, nome, categoria);
+		this(id, nome, categoria, unidade, localCompra, preco, new EstabelecimentoRegistry());
+	}
+
+	/**
+	 * Construtor do ProdutoPorUnidade de um sistema, que registra o local de
+	 * compra no dicionario de locais do sistema.
+	 * 
+	 * @param id
+	 *            : indentificacao do produto.
+	 * @param nome
+	 *            : nome do produto.
+	 * @param categoria
+	 *            : categoria em que o produto esta.
+	 * @param unidade
+	 *            : quantidade de unidades do produto.
+	 * @param localCompra
+	 *            : local onde foi comprado o produto.
+	 * @param preco
+	 *            : preco do produto.
+	 * @param estabelecimentos
+	 *            : dicionario de locais de compra do sistema.
+	 */
+	public ProdutoPorUnidade(int id, String nome, String categoria, int unidade, String localCompra, double preco,
+			EstabelecimentoRegistry estabelecimentos) {
+		super(id, nome, categoria, estabelecimentos);
 		if (ValidadorSistema.validaProdutoPorUnidade(unidade, localCompra, preco)) {
 			this.unidade = unidade;
 			super.adicionarLocalCompra(localCompra, preco);
@@ -1,6 +1,7 @@
 package com.projeto.model;
 
 import com.projeto.excecoes.AtribultoInexistenteException;
+import com.projeto.service.EstabelecimentoRegistry;
 import com.projeto.util.ValidadorSistema;
 
 /**
@@ -46,7 +47,33 @@ public class ProdutoQuantidadeFixa extends Item {
 	 */
 	public ProdutoQuantidadeFixa(int id, String nome, String categoria, int quantidade, String unidadeMedida,
 			String localCompra, double preco) {
-		super(id, nome, categoria);
+		this(id, nome, categoria, quantidade, unidadeMedida, localCompra, preco, new EstabelecimentoRegistry());
+	}
+
+	/**
+	 * Contrói um produto por quantidade fixa de um sistema, registrando o local
+	 * de compra no dicionario de locais do sistema.
+	 * 
+	 * @param id
+	 *            : identificador unico de um produto.
+	 * @param nome
+	 *            : nome do produto.
+	 * @param categoria
+	 *            : categoria do produto.
+	 * @param quantidade
+	 *            : quantidade do produto.
+	 * @param unidadeMedida
+	 *            : unidade de medida do produto.
+	 * @param localCompra
+	 *            : local de compra do produto.
+	 * @param preco
+	 *            : preco do produto.
+	 * @param estabelecimentos
+	 *            : dicionario de locais de compra do sistema.
+	 */
+	public ProdutoQuantidadeFixa(int id, String nome, String categoria, int quantidade, String unidadeMedida,
+			String localCompra, double preco, EstabelecimentoRegistry estabelecimentos) {
+		super(id, nome, categoria, estabelecimentos);
 		if (ValidadorSistema.validaProdutoQuantidadeFixa(quantidade, unidadeMedida, localCompra, preco)) {
 			this.quantidade = quantidade;
 			this.unidadeMedida = unidadeMedida;
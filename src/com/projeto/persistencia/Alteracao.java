@@ -0,0 +1,694 @@
+package com.projeto.persistencia;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+import com.projeto.controller.SistemaController;
+
+/**
+ * Classe que representa uma alteracao do sistema registrada no {@link Diario}.
+ * Cada tipo de alteracao guarda os argumentos do metodo correspondente do
+ * {@link SistemaController}, com os mesmos tipos, e sabe se aplicar ao sistema
+ * tanto quando e executada pela fachada quanto quando o diario e reaplicado.
+ *
+ * As alteracoes que criam listas de compras guardam tambem a data de criacao,
+ * para que a lista reaplicada tenha a mesma data da original.
+ *
+ * No diario, cada argumento e gravado precedido pelo seu tipo, e a leitura
+ * confere o tipo de cada argumento com o esperado pela operacao.
+ *
+ * @param <R>
+ *            : O tipo do valor retornado pelo sistema.
+ */
+public abstract class Alteracao<R> {
+
+	private static final byte NULO = 0;
+
+	private static final byte INTEIRO = 1;
+
+	private static final byte REAL = 2;
+
+	private static final byte TEXTO = 3;
+
+	private static final byte DATA = 4;
+
+	private final Operacao operacao;
+
+	private Alteracao(Operacao operacao) {
+		this.operacao = operacao;
+	}
+
+	/**
+	 * Metodo responsavel por retornar a operacao da alteracao, cujo codigo e
+	 * gravado no diario.
+	 *
+	 * @return A operacao.
+	 */
+	public Operacao getOperacao() {
+		return this.operacao;
+	}
+
+	/**
+	 * Metodo responsavel por aplicar a alteracao ao sistema.
+	 *
+	 * @param sistema
+	 *            : O sistema que sera alterado.
+	 * @return O valor retornado pelo sistema, ou null caso a operacao nao retorne
+	 *         valor.
+	 */
+	public abstract R aplica(SistemaController sistema);
+
+	/**
+	 * Metodo auxiliar que grava a quantidade de argumentos e os argumentos da
+	 * alteracao.
+	 */
+	abstract void escreveArgumentos(DataOutputStream dados) throws IOException;
+
+	/**
+	 * Alteracao que cadastra um produto com quantidade fixa.
+	 */
+	public static final class AdicionaItemPorQtd extends Alteracao<Integer> {
+
+		private final String nome;
+
+		private final String categoria;
+
+		private final int quantidade;
+
+		private final String unidadeMedida;
+
+		private final String localCompra;
+
+		private final double preco;
+
+		public AdicionaItemPorQtd(String nome, String categoria, int quantidade, String unidadeMedida,
+				String localCompra, double preco) {
+			super(Operacao.ADICIONA_ITEM_POR_QTD);
+			this.nome = nome;
+			this.categoria = categoria;
+			this.quantidade = quantidade;
+			this.unidadeMedida = unidadeMedida;
+			this.localCompra = localCompra;
+			this.preco = preco;
+		}
+
+		static AdicionaItemPorQtd le(DataInputStream dados) throws IOException {
+			leQuantidade(dados, 6);
+			return new AdicionaItemPorQtd(leTexto(dados), leTexto(dados), leInt(dados), leTexto(dados),
+					leTexto(dados), leReal(dados));
+		}
+
+		@Override
+		void escreveArgumentos(DataOutputStream dados) throws IOException {
+			dados.writeByte(6);
+			escreveTexto(dados, this.nome);
+			escreveTexto(dados, this.categoria);
+			escreveInteiro(dados, this.quantidade);
+			escreveTexto(dados, this.unidadeMedida);
+			escreveTexto(dados, this.localCompra);
+			escreveReal(dados, this.preco);
+		}
+
+		@Override
+		public Integer aplica(SistemaController sistema) {
+			return sistema.adicionaItemPorQtd(this.nome, this.categoria, this.quantidade, this.unidadeMedida,
+					this.localCompra, this.preco);
+		}
+	}
+
+	/**
+	 * Alteracao que cadastra um produto nao industrializado por quilo.
+	 */
+	public static final class AdicionaItemPorQuilo extends Alteracao<Integer> {
+
+		private final String nome;
+
+		private final String categoria;
+
+		private final double quilo;
+
+		private final String localCompra;
+
+		private final double preco;
+
+		public AdicionaItemPorQuilo(String nome, String categoria, double quilo, String localCompra, double preco) {
+			super(Operacao.ADICIONA_ITEM_POR_QUILO);
+			this.nome = nome;
+			this.categoria = categoria;
+			this.quilo = quilo;
+			this.localCompra = localCompra;
+			this.preco = preco;
+		}
+
+		static AdicionaItemPorQuilo le(DataInputStream dados) throws IOException {
+			leQuantidade(dados, 5);
+			return new AdicionaItemPorQuilo(leTexto(dados), leTexto(dados), leReal(dados), leTexto(dados),
+					leReal(dados));
+		}
+
+		@Override
+		void escreveArgumentos(DataOutputStream dados) throws IOException {
+			dados.writeByte(5);
+			escreveTexto(dados, this.nome);
+			escreveTexto(dados, this.categoria);
+			escreveReal(dados, this.quilo);
+			escreveTexto(dados, this.localCompra);
+			escreveReal(dados, this.preco);
+		}
+
+		@Override
+		public Integer aplica(SistemaController sistema) {
+			return sistema.adicionaItemPorQuilo(this.nome, this.categoria, this.quilo, this.localCompra, this.preco);
+		}
+	}
+
+	/**
+	 * Alteracao que cadastra um produto por unidade.
+	 */
+	public static final class AdicionaItemPorUnidade extends Alteracao<Integer> {
+
+		private final String nome;
+
+		private final String categoria;
+
+		private final int unidade;
+
+		private final String localCompra;
+
+		private final double preco;
+
+		public AdicionaItemPorUnidade(String nome, String categoria, int unidade, String localCompra, double preco) {
+			super(Operacao.ADICIONA_ITEM_POR_UNIDADE);
+			this.nome = nome;
+			this.categoria = categoria;
+			this.unidade = unidade;
+			this.localCompra = localCompra;
+			this.preco = preco;
+		}
+
+		static AdicionaItemPorUnidade le(DataInputStream dados) throws IOException {
+			leQuantidade(dados, 5);
+			return new AdicionaItemPorUnidade(leTexto(dados), leTexto(dados), leInt(dados), leTexto(dados),
+					leReal(dados));
+		}
+
+		@Override
+		void escreveArgumentos(DataOutputStream dados) throws IOException {
+			dados.writeByte(5);
+			escreveTexto(dados, this.nome);
+			escreveTexto(dados, this.categoria);
+			escreveInteiro(dados, this.unidade);
+			escreveTexto(dados, this.localCompra);
+			escreveReal(dados, this.preco);
+		}
+
+		@Override
+		public Integer aplica(SistemaController sistema) {
+			return sistema.adicionaItemPorUnidade(this.nome, this.categoria, this.unidade, this.localCompra,
+					this.preco);
+		}
+	}
+
+	/**
+	 * Alteracao que atualiza um atributo de um item.
+	 */
+	public static final class AtualizaItem extends Alteracao<Integer> {
+
+		private final Integer id;
+
+		private final String atributo;
+
+		private final String novoValor;
+
+		public AtualizaItem(Integer id, String atributo, String novoValor) {
+			super(Operacao.ATUALIZA_ITEM);
+			this.id = id;
+			this.atributo = atributo;
+			this.novoValor = novoValor;
+		}
+
+		static AtualizaItem le(DataInputStream dados) throws IOException {
+			leQuantidade(dados, 3);
+			return new AtualizaItem(leInteiro(dados), leTexto(dados), leTexto(dados));
+		}
+
+		@Override
+		void escreveArgumentos(DataOutputStream dados) throws IOException {
+			dados.writeByte(3);
+			escreveInteiro(dados, this.id);
+			escreveTexto(dados, this.atributo);
+			escreveTexto(dados, this.novoValor);
+		}
+
+		@Override
+		public Integer aplica(SistemaController sistema) {
+			return sistema.atualizaItem(this.id, this.atributo, this.novoValor);
+		}
+	}
+
+	/**
+	 * Alteracao que cadastra o preco de um item em um local de compra.
+	 */
+	public static final class AdicionaPrecoItem extends Alteracao<Void> {
+
+		private final Integer id;
+
+		private final String local;
+
+		private final double preco;
+
+		public AdicionaPrecoItem(Integer id, String local, double preco) {
+			super(Operacao.ADICIONA_PRECO_ITEM);
+			this.id = id;
+			this.local = local;
+			this.preco = preco;
+		}
+
+		static AdicionaPrecoItem le(DataInputStream dados) throws IOException {
+			leQuantidade(dados, 3);
+			return new AdicionaPrecoItem(leInteiro(dados), leTexto(dados), leReal(dados));
+		}
+
+		@Override
+		void escreveArgumentos(DataOutputStream dados) throws IOException {
+			dados.writeByte(3);
+			escreveInteiro(dados, this.id);
+			escreveTexto(dados, this.local);
+			escreveReal(dados, this.preco);
+		}
+
+		@Override
+		public Void aplica(SistemaController sistema) {
+			sistema.adicionaPrecoItem(this.id, this.local, this.preco);
+			return null;
+		}
+	}
+
+	/**
+	 * Alteracao que remove um item.
+	 */
+	public static final class DeletaItem extends Alteracao<Void> {
+
+		private final Integer id;
+
+		public DeletaItem(Integer id) {
+			super(Operacao.DELETA_ITEM);
+			this.id = id;
+		}
+
+		static DeletaItem le(DataInputStream dados) throws IOException {
+			leQuantidade(dados, 1);
+			return new DeletaItem(leInteiro(dados));
+		}
+
+		@Override
+		void escreveArgumentos(DataOutputStream dados) throws IOException {
+			dados.writeByte(1);
+			escreveInteiro(dados, this.id);
+		}
+
+		@Override
+		public Void aplica(SistemaController sistema) {
+			sistema.deletaItem(this.id);
+			return null;
+		}
+	}
+
+	/**
+	 * Alteracao que cria uma lista de compras.
+	 */
+	public static final class AdicionaListaDeCompras extends Alteracao<String> {
+
+		private final String descritor;
+
+		private final Date dataCriacao;
+
+		public AdicionaListaDeCompras(String descritor, Date dataCriacao) {
+			super(Operacao.ADICIONA_LISTA_DE_COMPRAS);
+			this.descritor = descritor;
+			this.dataCriacao = dataCriacao;
+		}
+
+		static AdicionaListaDeCompras le(DataInputStream dados) throws IOException {
+			leQuantidade(dados, 2);
+			return new AdicionaListaDeCompras(leTexto(dados), leData(dados));
+		}
+
+		@Override
+		void escreveArgumentos(DataOutputStream dados) throws IOException {
+			dados.writeByte(2);
+			escreveTexto(dados, this.descritor);
+			escreveData(dados, this.dataCriacao);
+		}
+
+		@Override
+		public String aplica(SistemaController sistema) {
+			return sistema.adicionaListaDeCompras(this.descritor, this.dataCriacao);
+		}
+	}
+
+	/**
+	 * Alteracao que adiciona uma compra a uma lista de compras.
+	 */
+	public static final class AdicionaCompraALista extends Alteracao<Void> {
+
+		private final String descritor;
+
+		private final int quantidade;
+
+		private final Integer idItem;
+
+		public AdicionaCompraALista(String descritor, int quantidade, Integer idItem) {
+			super(Operacao.ADICIONA_COMPRA_A_LISTA);
+			this.descritor = descritor;
+			this.quantidade = quantidade;
+			this.idItem = idItem;
+		}
+
+		static AdicionaCompraALista le(DataInputStream dados) throws IOException {
+			leQuantidade(dados, 3);
+			return new AdicionaCompraALista(leTexto(dados), leInt(dados), leInteiro(dados));
+		}
+
+		@Override
+		void escreveArgumentos(DataOutputStream dados) throws IOException {
+			dados.writeByte(3);
+			escreveTexto(dados, this.descritor);
+			escreveInteiro(dados, this.quantidade);
+			escreveInteiro(dados, this.idItem);
+		}
+
+		@Override
+		public Void aplica(SistemaController sistema) {
+			sistema.adicionaCompraALista(this.descritor, this.quantidade, this.idItem);
+			return null;
+		}
+	}
+
+	/**
+	 * Alteracao que finaliza uma lista de compras.
+	 */
+	public static final class FinalizaListaDeCompras extends Alteracao<Void> {
+
+		private final String descritor;
+
+		private final String localCompra;
+
+		private final int valorFinalDaCompra;
+
+		public FinalizaListaDeCompras(String descritor, String localCompra, int valorFinalDaCompra) {
+			super(Operacao.FINALIZA_LISTA_DE_COMPRAS);
+			this.descritor = descritor;
+			this.localCompra = localCompra;
+			this.valorFinalDaCompra = valorFinalDaCompra;
+		}
+
+		static FinalizaListaDeCompras le(DataInputStream dados) throws IOException {
+			leQuantidade(dados, 3);
+			return new FinalizaListaDeCompras(leTexto(dados), leTexto(dados), leInt(dados));
+		}
+
+		@Override
+		void escreveArgumentos(DataOutputStream dados) throws IOException {
+			dados.writeByte(3);
+			escreveTexto(dados, this.descritor);
+			escreveTexto(dados, this.localCompra);
+			escreveInteiro(dados, this.valorFinalDaCompra);
+		}
+
+		@Override
+		public Void aplica(SistemaController sistema) {
+			sistema.finalizarListaDeCompras(this.descritor, this.localCompra, this.valorFinalDaCompra);
+			return null;
+		}
+	}
+
+	/**
+	 * Alteracao que atualiza a quantidade de uma compra de uma lista de compras.
+	 */
+	public static final class AtualizaCompraDeLista extends Alteracao<Void> {
+
+		private final String descritor;
+
+		private final Integer idItem;
+
+		private final String operacao;
+
+		private final int quantidade;
+
+		public AtualizaCompraDeLista(String descritor, Integer idItem, String operacao, int quantidade) {
+			super(Operacao.ATUALIZA_COMPRA_DE_LISTA);
+			this.descritor = descritor;
+			this.idItem = idItem;
+			this.operacao = operacao;
+			this.quantidade = quantidade;
+		}
+
+		static AtualizaCompraDeLista le(DataInputStream dados) throws IOException {
+			leQuantidade(dados, 4);
+			return new AtualizaCompraDeLista(leTexto(dados), leInteiro(dados), leTexto(dados), leInt(dados));
+		}
+
+		@Override
+		void escreveArgumentos(DataOutputStream dados) throws IOException {
+			dados.writeByte(4);
+			escreveTexto(dados, this.descritor);
+			escreveInteiro(dados, this.idItem);
+			escreveTexto(dados, this.operacao);
+			escreveInteiro(dados, this.quantidade);
+		}
+
+		@Override
+		public Void aplica(SistemaController sistema) {
+			sistema.atualizaCompraDeLista(this.descritor, this.idItem, this.operacao, this.quantidade);
+			return null;
+		}
+	}
+
+	/**
+	 * Alteracao que remove uma compra de uma lista de compras.
+	 */
+	public static final class DeletaCompraDeLista extends Alteracao<Void> {
+
+		private final String descritor;
+
+		private final Integer idItem;
+
+		public DeletaCompraDeLista(String descritor, Integer idItem) {
+			super(Operacao.DELETA_COMPRA_DE_LISTA);
+			this.descritor = descritor;
+			this.idItem = idItem;
+		}
+
+		static DeletaCompraDeLista le(DataInputStream dados) throws IOException {
+			leQuantidade(dados, 2);
+			return new DeletaCompraDeLista(leTexto(dados), leInteiro(dados));
+		}
+
+		@Override
+		void escreveArgumentos(DataOutputStream dados) throws IOException {
+			dados.writeByte(2);
+			escreveTexto(dados, this.descritor);
+			escreveInteiro(dados, this.idItem);
+		}
+
+		@Override
+		public Void aplica(SistemaController sistema) {
+			sistema.deletaCompraDeLista(this.descritor, this.idItem);
+			return null;
+		}
+	}
+
+	/**
+	 * Alteracao que gera uma lista com as compras da ultima lista.
+	 */
+	public static final class GeraAutomaticaUltimaLista extends Alteracao<String> {
+
+		private final Date dataCriacao;
+
+		public GeraAutomaticaUltimaLista(Date dataCriacao) {
+			super(Operacao.GERA_AUTOMATICA_ULTIMA_LISTA);
+			this.dataCriacao = dataCriacao;
+		}
+
+		static GeraAutomaticaUltimaLista le(DataInputStream dados) throws IOException {
+			leQuantidade(dados, 1);
+			return new GeraAutomaticaUltimaLista(leData(dados));
+		}
+
+		@Override
+		void escreveArgumentos(DataOutputStream dados) throws IOException {
+			dados.writeByte(1);
+			escreveData(dados, this.dataCriacao);
+		}
+
+		@Override
+		public String aplica(SistemaController sistema) {
+			return sistema.geraAutomaticaUltimaLista(this.dataCriacao);
+		}
+	}
+
+	/**
+	 * Alteracao que gera uma lista com as compras da ultima lista que possui um
+	 * item.
+	 */
+	public static final class GeraAutomaticaItem extends Alteracao<String> {
+
+		private final String descritorItem;
+
+		private final Date dataCriacao;
+
+		public GeraAutomaticaItem(String descritorItem, Date dataCriacao) {
+			super(Operacao.GERA_AUTOMATICA_ITEM);
+			this.descritorItem = descritorItem;
+			this.dataCriacao = dataCriacao;
+		}
+
+		static GeraAutomaticaItem le(DataInputStream dados) throws IOException {
+			leQuantidade(dados, 2);
+			return new GeraAutomaticaItem(leTexto(dados), leData(dados));
+		}
+
+		@Override
+		void escreveArgumentos(DataOutputStream dados) throws IOException {
+			dados.writeByte(2);
+			escreveTexto(dados, this.descritorItem);
+			escreveData(dados, this.dataCriacao);
+		}
+
+		@Override
+		public String aplica(SistemaController sistema) {
+			return sistema.geraAutomaticaItem(this.descritorItem, this.dataCriacao);
+		}
+	}
+
+	/**
+	 * Alteracao que gera uma lista com os itens mais presentes nas listas.
+	 */
+	public static final class GeraAutomaticaItensMaisPresentes extends Alteracao<String> {
+
+		private final Date dataCriacao;
+
+		public GeraAutomaticaItensMaisPresentes(Date dataCriacao) {
+			super(Operacao.GERA_AUTOMATICA_ITENS_MAIS_PRESENTES);
+			this.dataCriacao = dataCriacao;
+		}
+
+		static GeraAutomaticaItensMaisPresentes le(DataInputStream dados) throws IOException {
+			leQuantidade(dados, 1);
+			return new GeraAutomaticaItensMaisPresentes(leData(dados));
+		}
+
+		@Override
+		void escreveArgumentos(DataOutputStream dados) throws IOException {
+			dados.writeByte(1);
+			escreveData(dados, this.dataCriacao);
+		}
+
+		@Override
+		public String aplica(SistemaController sistema) {
+			return sistema.geraAutomaticaItensMaisPresentes(this.dataCriacao);
+		}
+	}
+
+	/**
+	 * Metodo auxiliar que confere a quantidade de argumentos gravada.
+	 */
+	private static void leQuantidade(DataInputStream dados, int esperada) throws IOException {
+		int quantidade = dados.readUnsignedByte();
+		if (quantidade != esperada) {
+			throw new StreamCorruptedException(
+					"Quantidade de argumentos invalida no diario: " + quantidade + ", esperada: " + esperada);
+		}
+	}
+
+	/**
+	 * Metodo auxiliar que le o tipo de um argumento e confere se ele e o
+	 * esperado ou, quando permitido, nulo.
+	 *
+	 * @return true caso o argumento seja nulo.
+	 */
+	private static boolean leTipo(DataInputStream dados, byte esperado, boolean aceitaNulo) throws IOException {
+		byte tipo = dados.readByte();
+		if (tipo == NULO && aceitaNulo) {
+			return true;
+		}
+		if (tipo != esperado) {
+			throw new StreamCorruptedException("Tipo de argumento invalido no diario: " + tipo + ", esperado: "
+					+ esperado);
+		}
+		return false;
+	}
+
+	private static void escreveTexto(DataOutputStream dados, String texto) throws IOException {
+		if (texto == null) {
+			dados.writeByte(NULO);
+			return;
+		}
+		byte[] bytes = texto.getBytes(StandardCharsets.UTF_8);
+		dados.writeByte(TEXTO);
+		dados.writeInt(bytes.length);
+		dados.write(bytes);
+	}
+
+	private static String leTexto(DataInputStream dados) throws IOException {
+		if (leTipo(dados, TEXTO, true)) {
+			return null;
+		}
+		byte[] bytes = new byte[dados.readInt()];
+		dados.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static void escreveInteiro(DataOutputStream dados, Integer inteiro) throws IOException {
+		if (inteiro == null) {
+			dados.writeByte(NULO);
+			return;
+		}
+		dados.writeByte(INTEIRO);
+		dados.writeInt(inteiro);
+	}
+
+	private static Integer leInteiro(DataInputStream dados) throws IOException {
+		if (leTipo(dados, INTEIRO, true)) {
+			return null;
+		}
+		return dados.readInt();
+	}
+
+	private static int leInt(DataInputStream dados) throws IOException {
+		leTipo(dados, INTEIRO, false);
+		return dados.readInt();
+	}
+
+	private static void escreveReal(DataOutputStream dados, double real) throws IOException {
+		dados.writeByte(REAL);
+		dados.writeDouble(real);
+	}
+
+	private static double leReal(DataInputStream dados) throws IOException {
+		leTipo(dados, REAL, false);
+		return dados.readDouble();
+	}
+
+	private static void escreveData(DataOutputStream dados, Date data) throws IOException {
+		if (data == null) {
+			dados.writeByte(NULO);
+			return;
+		}
+		dados.writeByte(DATA);
+		dados.writeLong(data.getTime());
+	}
+
+	private static Date leData(DataInputStream dados) throws IOException {
+		if (leTipo(dados, DATA, true)) {
+			return null;
+		}
+		return new Date(dados.readLong());
+	}
+
+}
@@ -0,0 +1,601 @@
+package com.projeto.persistencia;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.OpenOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+import com.projeto.model.Compra;
+import com.projeto.model.Item;
+import com.projeto.model.ListaDeCompras;
+import com.projeto.persistencia.RetratoSistema.RetratoItem;
+import com.projeto.persistencia.RetratoSistema.RetratoLista;
+import com.projeto.service.EstabelecimentoRegistry;
+import com.projeto.service.HistoricoListas;
+
+/**
+ * Classe responsavel por guardar as listas de compras finalizadas em arquivos
+ * de segmentos, para que elas nao precisem ficar na memoria. Cada lista e
+ * gravada ao final do segmento atual como um registro com o tamanho, os dados e
+ * o CRC32 dos dados; um novo segmento e iniciado quando o atual atinge o
+ * tamanho maximo. A posicao do registro de cada lista fica em um indice pelo
+ * descritor.
+ *
+ * Uma lista gravada de novo ou descartada deixa o registro anterior sem uso.
+ * Um segmento sem nenhum registro em uso e apagado, e um segmento com mais da
+ * metade dos bytes sem uso tem os seus registros copiados para o segmento
+ * atual antes de ser apagado.
+ *
+ * Os registros guardam uma copia de cada item comprado, de forma que a lista
+ * pode ser recriada mesmo que o item tenha sido removido do sistema. Os
+ * segmentos sao apenas uma extensao da memoria: cada armazem grava os seus em
+ * um diretorio proprio, apagado ao fechar o armazem, e os dados do sistema
+ * continuam sendo gravados no arquivo de dados e no diario.
+ *
+ * O diretorio proprio fica travado por um arquivo de trava enquanto o armazem
+ * esta aberto, de forma que varios armazens podem usar o mesmo diretorio. Ao
+ * abrir um armazem, os diretorios deixados por armazens que nao foram fechados
+ * e cuja trava esta livre sao apagados.
+ */
+public final class ArmazemListas implements HistoricoListas {
+
+	/**
+	 * Propriedade do sistema com a quantidade de listas finalizadas mantidas na
+	 * memoria. Com um valor maior que zero, as listas finalizadas sao guardadas
+	 * no armazem.
+	 */
+	public static final String PROPRIEDADE = "listapramim.historico";
+
+	/**
+	 * O tamanho maximo padrao, em bytes, de um segmento.
+	 */
+	public static final long TAMANHO_SEGMENTO_PADRAO = 4L << 20;
+
+	private static final String PREFIXO = "segmento-";
+
+	private static final String SUFIXO = ".lpm";
+
+	private static final String PREFIXO_DIRETORIO = "armazem-";
+
+	private static final String ARQUIVO_TRAVA = "armazem.trava";
+
+	/**
+	 * O tamanho em bytes do tamanho e do CRC32 de um registro.
+	 */
+	private static final int TAMANHO_MOLDURA = 8;
+
+	/**
+	 * Um arquivo de segmento aberto.
+	 */
+	private static final class Segmento {
+
+		final File arquivo;
+
+		final FileChannel canal;
+
+		/**
+		 * A quantidade de bytes gravados no segmento.
+		 */
+		long tamanho;
+
+		/**
+		 * A quantidade de bytes dos registros em uso.
+		 */
+		long ocupados;
+
+		Segmento(File arquivo) throws IOException {
+			this.arquivo = arquivo;
+			this.canal = FileChannel.open(arquivo.toPath(), StandardOpenOption.CREATE,
+					StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		}
+	}
+
+	/**
+	 * A posicao do registro de uma lista.
+	 */
+	private static final class Posicao {
+
+		final Segmento segmento;
+
+		final long inicio;
+
+		final int tamanho;
+
+		Posicao(Segmento segmento, long inicio, int tamanho) {
+			this.segmento = segmento;
+			this.inicio = inicio;
+			this.tamanho = tamanho;
+		}
+	}
+
+	/**
+	 * O diretorio proprio do armazem, onde ficam os segmentos.
+	 */
+	private final File diretorio;
+
+	/**
+	 * A trava do diretorio proprio, mantida enquanto o armazem esta aberto.
+	 */
+	private final FileLock travaDiretorio;
+
+	private final long tamanhoSegmento;
+
+	/**
+	 * Trava que protege o indice e os segmentos. As leituras usam a trava de
+	 * leitura, e as gravacoes, a de escrita.
+	 */
+	private final ReentrantReadWriteLock trava;
+
+	private final Map<String, Posicao> posicoes;
+
+	private final List<Segmento> segmentos;
+
+	private Segmento atual;
+
+	private int proximoSegmento;
+
+	private boolean fechado;
+
+	/**
+	 * Metodo responsavel por abrir um armazem vazio em um diretorio, com
+	 * segmentos do tamanho padrao.
+	 *
+	 * @param diretorio
+	 *            : O diretorio onde e criado o diretorio dos segmentos.
+	 * @throws IOException
+	 *             : caso o diretorio nao possa ser criado.
+	 */
+	public ArmazemListas(File diretorio) throws IOException {
+		this(diretorio, TAMANHO_SEGMENTO_PADRAO);
+	}
+
+	/**
+	 * Metodo responsavel por abrir um armazem vazio em um diretorio proprio,
+	 * criado dentro do diretorio informado. Os diretorios deixados ali por
+	 * armazens que nao foram fechados sao apagados.
+	 *
+	 * @param diretorio
+	 *            : O diretorio onde e criado o diretorio dos segmentos.
+	 * @param tamanhoSegmento
+	 *            : O tamanho, em bytes, a partir do qual um novo segmento e
+	 *            iniciado.
+	 * @throws IOException
+	 *             : caso o diretorio nao possa ser criado.
+	 */
+	public ArmazemListas(File diretorio, long tamanhoSegmento) throws IOException {
+		if (!diretorio.isDirectory() && !diretorio.mkdirs()) {
+			throw new IOException("Nao foi possivel criar o diretorio " + diretorio);
+		}
+		apagaAbandonados(diretorio);
+		File proprio;
+		FileLock travaDiretorio;
+		do {
+			proprio = Files.createTempDirectory(diretorio.toPath(), PREFIXO_DIRETORIO).toFile();
+			travaDiretorio = trava(new File(proprio, ARQUIVO_TRAVA), StandardOpenOption.CREATE);
+		} while (travaDiretorio == null);
+		this.diretorio = proprio;
+		this.travaDiretorio = travaDiretorio;
+		this.tamanhoSegmento = tamanhoSegmento;
+		this.trava = new ReentrantReadWriteLock();
+		this.posicoes = new HashMap<>();
+		this.segmentos = new ArrayList<>();
+		this.atual = this.novoSegmento();
+	}
+
+	@Override
+	public void guarda(ListaDeCompras lista) throws IOException {
+		byte[] registro = codifica(lista);
+		this.trava.writeLock().lock();
+		try {
+			this.confereAberto();
+			Posicao posicao = this.grava(registro);
+			Posicao anterior = this.posicoes.put(lista.getDescritor(), posicao);
+			if (anterior != null) {
+				this.libera(anterior);
+			}
+		} finally {
+			this.trava.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public ListaDeCompras le(String descritor, Map<Integer, Item> itens) throws IOException {
+		ByteBuffer registro;
+		this.trava.readLock().lock();
+		try {
+			this.confereAberto();
+			Posicao posicao = this.posicoes.get(descritor);
+			if (posicao == null) {
+				return null;
+			}
+			registro = this.leRegistro(posicao);
+		} finally {
+			this.trava.readLock().unlock();
+		}
+		return decodifica(registro, itens);
+	}
+
+	@Override
+	public boolean remove(String descritor) throws IOException {
+		this.trava.writeLock().lock();
+		try {
+			this.confereAberto();
+			Posicao posicao = this.posicoes.remove(descritor);
+			if (posicao == null) {
+				return false;
+			}
+			this.libera(posicao);
+			return true;
+		} finally {
+			this.trava.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Metodo responsavel por retornar a quantidade de listas guardadas.
+	 *
+	 * @return A quantidade de listas.
+	 */
+	public int quantidade() {
+		this.trava.readLock().lock();
+		try {
+			return this.posicoes.size();
+		} finally {
+			this.trava.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Metodo responsavel por retornar a quantidade de segmentos abertos.
+	 *
+	 * @return A quantidade de segmentos.
+	 */
+	public int quantidadeSegmentos() {
+		this.trava.readLock().lock();
+		try {
+			return this.segmentos.size();
+		} finally {
+			this.trava.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Metodo responsavel por fechar o armazem, apagando todos os segmentos e o
+	 * diretorio proprio.
+	 */
+	@Override
+	public void close() throws IOException {
+		this.trava.writeLock().lock();
+		try {
+			if (this.fechado) {
+				return;
+			}
+			this.fechado = true;
+			this.posicoes.clear();
+			for (Segmento segmento : new ArrayList<>(this.segmentos)) {
+				this.apaga(segmento);
+			}
+			this.travaDiretorio.channel().close();
+			apagaDiretorio(this.diretorio);
+		} finally {
+			this.trava.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Metodo auxiliar que lanca uma excecao caso o armazem ja tenha sido fechado.
+	 */
+	private void confereAberto() throws IOException {
+		if (this.fechado) {
+			throw new IOException("Armazem de listas fechado.");
+		}
+	}
+
+	/**
+	 * Metodo auxiliar que cria um segmento vazio e o torna o segmento atual.
+	 * Deve ser chamado com a trava de escrita.
+	 */
+	private Segmento novoSegmento() throws IOException {
+		Segmento segmento = new Segmento(new File(this.diretorio, PREFIXO + this.proximoSegmento++ + SUFIXO));
+		this.segmentos.add(segmento);
+		this.atual = segmento;
+		return segmento;
+	}
+
+	/**
+	 * Metodo auxiliar que grava um registro ao final do segmento atual. Deve ser
+	 * chamado com a trava de escrita.
+	 */
+	private Posicao grava(byte[] registro) throws IOException {
+		if (this.atual.tamanho > 0 && this.atual.tamanho + registro.length > this.tamanhoSegmento) {
+			Segmento anterior = this.atual;
+			this.novoSegmento();
+			this.recicla(anterior);
+		}
+		Segmento segmento = this.atual;
+		ByteBuffer dados = ByteBuffer.wrap(registro);
+		long inicio = segmento.tamanho;
+		while (dados.hasRemaining()) {
+			segmento.canal.write(dados, inicio + dados.position());
+		}
+		segmento.tamanho += registro.length;
+		segmento.ocupados += registro.length;
+		return new Posicao(segmento, inicio, registro.length);
+	}
+
+	/**
+	 * Metodo auxiliar que le um registro inteiro, conferindo o tamanho e o CRC32.
+	 */
+	private ByteBuffer leRegistro(Posicao posicao) throws IOException {
+		ByteBuffer registro = ByteBuffer.allocate(posicao.tamanho);
+		while (registro.hasRemaining()) {
+			int lidos = posicao.segmento.canal.read(registro, posicao.inicio + registro.position());
+			if (lidos == -1) {
+				throw new StreamCorruptedException("Registro incompleto em " + posicao.segmento.arquivo);
+			}
+		}
+		registro.flip();
+		int tamanho = registro.getInt(0);
+		if (tamanho != posicao.tamanho - TAMANHO_MOLDURA) {
+			throw new StreamCorruptedException("Tamanho de registro invalido: " + tamanho);
+		}
+		CRC32 crc = new CRC32();
+		crc.update(registro.array(), 4, tamanho);
+		if ((int) crc.getValue() != registro.getInt(4 + tamanho)) {
+			throw new StreamCorruptedException("CRC32 invalido em " + posicao.segmento.arquivo);
+		}
+		registro.position(4);
+		registro.limit(4 + tamanho);
+		return registro;
+	}
+
+	/**
+	 * Metodo auxiliar que marca um registro como sem uso. O segmento atual so e
+	 * reciclado quando deixa de ser o atual. Deve ser chamado com a trava de
+	 * escrita.
+	 */
+	private void libera(Posicao posicao) throws IOException {
+		Segmento segmento = posicao.segmento;
+		segmento.ocupados -= posicao.tamanho;
+		if (segmento != this.atual) {
+			this.recicla(segmento);
+		}
+	}
+
+	/**
+	 * Metodo auxiliar que apaga um segmento vazio, ou compacta um segmento com
+	 * mais da metade dos bytes sem uso. Deve ser chamado com a trava de escrita.
+	 */
+	private void recicla(Segmento segmento) throws IOException {
+		if (segmento.ocupados == 0) {
+			this.apaga(segmento);
+		} else if (segmento.ocupados * 2 < segmento.tamanho) {
+			this.compacta(segmento);
+		}
+	}
+
+	/**
+	 * Metodo auxiliar que copia os registros em uso de um segmento para o
+	 * segmento atual e apaga o segmento. Os registros sao escolhidos antes de
+	 * serem copiados, porque a copia pode iniciar um novo segmento e compactar o
+	 * anterior, alterando o indice. Deve ser chamado com a trava de escrita.
+	 */
+	private void compacta(Segmento segmento) throws IOException {
+		List<String> descritores = new ArrayList<>();
+		for (Map.Entry<String, Posicao> entrada : this.posicoes.entrySet()) {
+			if (entrada.getValue().segmento == segmento) {
+				descritores.add(entrada.getKey());
+			}
+		}
+		for (String descritor : descritores) {
+			Posicao posicao = this.posicoes.get(descritor);
+			if (posicao != null && posicao.segmento == segmento) {
+				this.posicoes.put(descritor, this.grava(this.leRegistro(posicao).array()));
+			}
+		}
+		this.apaga(segmento);
+	}
+
+	/**
+	 * Metodo auxiliar que fecha e apaga o arquivo de um segmento.
+	 */
+	private void apaga(Segmento segmento) throws IOException {
+		this.segmentos.remove(segmento);
+		segmento.canal.close();
+		segmento.arquivo.delete();
+	}
+
+	/**
+	 * Metodo auxiliar que trava um arquivo sem esperar. O arquivo fica aberto
+	 * enquanto a trava e mantida.
+	 *
+	 * @return A trava, ou null caso o arquivo ja esteja travado, por outro
+	 *         processo ou por outro armazem deste.
+	 */
+	private static FileLock trava(File arquivo, OpenOption abertura) throws IOException {
+		FileChannel canal = FileChannel.open(arquivo.toPath(), abertura, StandardOpenOption.WRITE);
+		try {
+			FileLock trava = canal.tryLock();
+			if (trava != null) {
+				return trava;
+			}
+		} catch (OverlappingFileLockException e) {
+			// o arquivo ja esta travado por outro armazem aberto neste processo
+		}
+		canal.close();
+		return null;
+	}
+
+	/**
+	 * Metodo auxiliar que apaga os diretorios de armazens que nao foram fechados.
+	 * Um diretorio so e apagado caso a sua trava exista e esteja livre; um
+	 * diretorio sem trava pode estar sendo criado.
+	 */
+	private static void apagaAbandonados(File diretorio) throws IOException {
+		File[] proprios = diretorio.listFiles();
+		if (proprios == null) {
+			return;
+		}
+		for (File proprio : proprios) {
+			if (!proprio.isDirectory() || !proprio.getName().startsWith(PREFIXO_DIRETORIO)) {
+				continue;
+			}
+			FileLock trava;
+			try {
+				trava = trava(new File(proprio, ARQUIVO_TRAVA), StandardOpenOption.WRITE);
+			} catch (NoSuchFileException e) {
+				continue;
+			}
+			if (trava != null) {
+				trava.channel().close();
+				apagaDiretorio(proprio);
+			}
+		}
+	}
+
+	/**
+	 * Metodo auxiliar que apaga o diretorio proprio de um armazem, com os
+	 * arquivos que estao nele.
+	 */
+	private static void apagaDiretorio(File diretorio) {
+		File[] arquivos = diretorio.listFiles();
+		if (arquivos != null) {
+			for (File arquivo : arquivos) {
+				arquivo.delete();
+			}
+		}
+		diretorio.delete();
+	}
+
+	/**
+	 * Metodo auxiliar que grava os campos e as compras de uma lista em um
+	 * registro. Cada compra e gravada com a quantidade e uma copia do item.
+	 */
+	private static byte[] codifica(ListaDeCompras lista) throws IOException {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		DataOutputStream dados = new DataOutputStream(buffer);
+		dados.writeInt(0);
+		RetratoSistema.escreveTexto(dados, lista.getDescritor());
+		dados.writeLong(lista.getData().getTime());
+		dados.writeBoolean(lista.isFinalizada());
+		RetratoSistema.escreveTexto(dados, lista.getLocal());
+		dados.writeInt(lista.getValorFinal());
+		dados.writeInt(lista.getCompras().size());
+		for (Compra compra : lista.getCompras().values()) {
+			dados.writeInt(compra.getQuantidade());
+			escreveItem(dados, RetratoSistema.retrataItem(compra.getItem(), false));
+		}
+		dados.writeInt(0);
+		dados.flush();
+
+		byte[] registro = buffer.toByteArray();
+		int tamanho = registro.length - TAMANHO_MOLDURA;
+		CRC32 crc = new CRC32();
+		crc.update(registro, 4, tamanho);
+		ByteBuffer moldura = ByteBuffer.wrap(registro);
+		moldura.putInt(0, tamanho);
+		moldura.putInt(4 + tamanho, (int) crc.getValue());
+		return registro;
+	}
+
+	/**
+	 * Metodo auxiliar que grava a copia de um item, com os nomes dos locais.
+	 */
+	private static void escreveItem(DataOutputStream dados, RetratoItem item) throws IOException {
+		dados.writeByte(item.tipo);
+		dados.writeInt(item.id);
+		RetratoSistema.escreveTexto(dados, item.nome);
+		RetratoSistema.escreveTexto(dados, item.categoria);
+		dados.writeInt(item.quantidade);
+		RetratoSistema.escreveTexto(dados, item.unidadeMedida);
+		dados.writeDouble(item.quilo);
+		dados.writeInt(item.locais.length);
+		for (int i = 0; i < item.locais.length; i++) {
+			RetratoSistema.escreveTexto(dados, item.locais[i]);
+			dados.writeDouble(item.precos[i]);
+		}
+	}
+
+	/**
+	 * Metodo auxiliar que recria uma lista de compras a partir dos dados de um
+	 * registro. As compras de itens presentes no mapa usam o item do mapa; os
+	 * demais itens sao criados com um dicionario de locais da propria lista.
+	 */
+	private static ListaDeCompras decodifica(ByteBuffer registro, Map<Integer, Item> itens) throws IOException {
+		DataInputStream dados = new DataInputStream(
+				new ByteArrayInputStream(registro.array(), registro.position(), registro.remaining()));
+		String descritor = RetratoSistema.leTexto(dados);
+		long dataCriacao = dados.readLong();
+		boolean finalizada = dados.readBoolean();
+		String local = RetratoSistema.leTexto(dados);
+		int valorFinal = dados.readInt();
+		int quantidadeCompras = RetratoSistema.leTamanho(dados);
+		List<Item> comprados = new ArrayList<>();
+		EstabelecimentoRegistry estabelecimentos = null;
+		int[] posicoesItens = new int[quantidadeCompras];
+		int[] quantidades = new int[quantidadeCompras];
+		for (int i = 0; i < quantidadeCompras; i++) {
+			quantidades[i] = dados.readInt();
+			RetratoItem retrato = leItem(dados);
+			Item item = itens.get(retrato.id);
+			if (item == null) {
+				if (estabelecimentos == null) {
+					estabelecimentos = new EstabelecimentoRegistry();
+				}
+				item = RetratoSistema.criaItem(retrato, estabelecimentos);
+			}
+			comprados.add(item);
+			posicoesItens[i] = i;
+		}
+		return RetratoSistema.criaLista(
+				new RetratoLista(descritor, dataCriacao, finalizada, local, valorFinal, posicoesItens, quantidades),
+				comprados);
+	}
+
+	/**
+	 * Metodo auxiliar que le a copia de um item gravada por
+	 * {@link #escreveItem(DataOutputStream, RetratoItem)}.
+	 */
+	private static RetratoItem leItem(DataInputStream dados) throws IOException {
+		byte tipo = dados.readByte();
+		if (tipo != RetratoSistema.QUANTIDADE_FIXA && tipo != RetratoSistema.POR_QUILO
+				&& tipo != RetratoSistema.POR_UNIDADE) {
+			throw new StreamCorruptedException("Tipo de item invalido: " + tipo);
+		}
+		int id = dados.readInt();
+		String nome = RetratoSistema.leTexto(dados);
+		String categoria = RetratoSistema.leTexto(dados);
+		int quantidade = dados.readInt();
+		String unidadeMedida = RetratoSistema.leTexto(dados);
+		double quilo = dados.readDouble();
+		int quantidadeLocais = RetratoSistema.leTamanho(dados);
+		if (quantidadeLocais == 0) {
+			throw new StreamCorruptedException("Item sem locais de compra: " + id);
+		}
+		String[] locais = new String[quantidadeLocais];
+		double[] precos = new double[quantidadeLocais];
+		for (int i = 0; i < quantidadeLocais; i++) {
+			locais[i] = RetratoSistema.leTexto(dados);
+			precos[i] = dados.readDouble();
+		}
+		return new RetratoItem(false, tipo, id, nome, categoria, quantidade, unidadeMedida, quilo, locais, precos);
+	}
+
+}
@@ -0,0 +1,45 @@
+package com.projeto.persistencia;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import com.projeto.controller.SistemaController;
+
+/**
+ * Interface que representa um formato de gravacao dos dados do sistema. Cada
+ * implementacao grava um retrato do sistema (os produtos, as listas de compras
+ * e o id do proximo produto) em um fluxo e sabe recriar o sistema a partir
+ * dele.
+ *
+ * Os fluxos recebidos ja sao bufferizados e verificados por
+ * {@link ArquivoDados}, que tambem os fecha: as implementacoes devem apenas
+ * descarregar o que escreveram.
+ */
+public interface Armazenamento {
+
+	/**
+	 * Metodo responsavel por gravar um retrato do sistema em um fluxo. Como o
+	 * retrato nao muda, a gravacao nao precisa de nenhuma trava do sistema.
+	 * 
+	 * @param retrato
+	 *            : O retrato do sistema que sera gravado.
+	 * @param saida
+	 *            : O fluxo onde o sistema sera gravado.
+	 * @throws IOException
+	 *             : caso ocorra um erro na gravacao.
+	 */
+	void grava(RetratoSistema retrato, OutputStream saida) throws IOException;
+
+	/**
+	 * Metodo responsavel por recriar o sistema a partir de um fluxo.
+	 * 
+	 * @param entrada
+	 *            : O fluxo de onde o sistema sera lido.
+	 * @return O sistema lido.
+	 * @throws IOException
+	 *             : caso ocorra um erro na leitura ou os dados sejam invalidos.
+	 */
+	SistemaController le(InputStream entrada) throws IOException;
+
+}
@@ -0,0 +1,45 @@
+package com.projeto.persistencia;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import com.projeto.controller.SistemaController;
+
+/**
+ * Armazenamento que grava o sistema em um formato binario compacto. Apenas os
+ * campos que definem o estado do sistema sao gravados, na seguinte ordem:
+ *
+ * <ul>
+ * <li>o id do proximo produto;</li>
+ * <li>a tabela com os nomes dos locais de compra citados nos precos;</li>
+ * <li>a tabela de itens: os produtos cadastrados e, depois deles, os itens ja
+ * removidos do sistema que ainda estao em alguma lista de compras. Os precos de
+ * cada item sao gravados como pares (posicao do local na tabela, preco);</li>
+ * <li>as listas de compras, com cada compra gravada como um par (posicao do
+ * item na tabela, quantidade).</li>
+ * </ul>
+ *
+ * Os indices de consulta nao sao gravados: eles sao reconstruidos quando o
+ * sistema e recriado.
+ */
+public class ArmazenamentoBinario implements Armazenamento {
+
+	@Override
+	public void grava(RetratoSistema retrato, OutputStream saida) throws IOException {
+		retrato.escreve(new DataOutputStream(saida));
+	}
+
+	@Override
+	public SistemaController le(InputStream entrada) throws IOException {
+		RetratoSistema retrato = RetratoSistema.le(new DataInputStream(entrada));
+		try {
+			return retrato.recria();
+		} catch (RuntimeException e) {
+			throw new IOException("Dados invalidos no arquivo do sistema.", e);
+		}
+	}
+
+}
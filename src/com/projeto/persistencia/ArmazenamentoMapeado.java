@@ -0,0 +1,38 @@
+package com.projeto.persistencia;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import com.projeto.controller.SistemaController;
+
+/**
+ * Armazenamento que grava o sistema como um {@link CatalogoMapeado}. O
+ * {@link ArquivoDados} mapeia esse formato direto do arquivo, sem le-lo; a
+ * leitura por um fluxo, feita por este armazenamento, copia os dados para a
+ * memoria antes de abrir o catalogo.
+ */
+public class ArmazenamentoMapeado implements Armazenamento {
+
+	private static final int TAMANHO_BLOCO = 1 << 16;
+
+	@Override
+	public void grava(RetratoSistema retrato, OutputStream saida) throws IOException {
+		CatalogoMapeado.escreve(retrato, new DataOutputStream(saida));
+	}
+
+	@Override
+	public SistemaController le(InputStream entrada) throws IOException {
+		ByteArrayOutputStream dados = new ByteArrayOutputStream();
+		byte[] bloco = new byte[TAMANHO_BLOCO];
+		int lido;
+		while ((lido = entrada.read(bloco)) != -1) {
+			dados.write(bloco, 0, lido);
+		}
+		return new SistemaController(CatalogoMapeado.abre(ByteBuffer.wrap(dados.toByteArray())));
+	}
+
+}
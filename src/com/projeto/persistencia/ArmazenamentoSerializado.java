@@ -0,0 +1,45 @@
+package com.projeto.persistencia;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+
+import com.projeto.controller.SistemaController;
+
+/**
+ * Armazenamento que grava o sistema com a serializacao do Java. O retrato e
+ * serializado diretamente, sem recriar o sistema, e o sistema so e recriado na
+ * leitura. Os arquivos salvos antes da adocao dos formatos, que contem o
+ * proprio sistema serializado, continuam sendo lidos.
+ */
+public class ArmazenamentoSerializado implements Armazenamento {
+
+	@Override
+	public void grava(RetratoSistema retrato, OutputStream saida) throws IOException {
+		ObjectOutputStream objetos = new ObjectOutputStream(saida);
+		objetos.writeObject(retrato);
+		objetos.flush();
+	}
+
+	@Override
+	public SistemaController le(InputStream entrada) throws IOException {
+		ObjectInputStream objetos = new ObjectInputStream(entrada);
+		Object lido;
+		try {
+			lido = objetos.readObject();
+		} catch (ClassNotFoundException e) {
+			throw new IOException(e);
+		}
+		if (lido instanceof RetratoSistema) {
+			return ((RetratoSistema) lido).recria();
+		}
+		try {
+			return (SistemaController) lido;
+		} catch (ClassCastException e) {
+			throw new IOException(e);
+		}
+	}
+
+}
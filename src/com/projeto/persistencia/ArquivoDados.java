@@ -0,0 +1,352 @@
+package com.projeto.persistencia;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import com.projeto.controller.SistemaController;
+
+/**
+ * Classe responsavel por gravar e carregar o arquivo de dados do sistema. O
+ * arquivo possui um cabecalho, com a assinatura "LPMD", a versao do arquivo, o
+ * codigo do formato dos dados e a posicao do {@link Diario} ate onde as
+ * operacoes estao incluidas no arquivo (a geracao do diario e o numero do
+ * ultimo registro incluido, ou zero quando o arquivo nao foi gravado por um
+ * diario). Depois do cabecalho vem os dados gravados pelo
+ * {@link Armazenamento} do formato e o CRC32 do cabecalho e dos dados.
+ *
+ * A gravacao e feita em um arquivo temporario, que so substitui o arquivo
+ * anterior depois de gravado por completo. Na leitura, o formato e identificado
+ * pelo cabecalho e o CRC32 e conferido mesmo quando os dados nao puderam ser
+ * lidos, de forma que um arquivo alterado e sempre informado como corrompido.
+ * Arquivos sem cabecalho, salvos antes da adocao dos formatos, sao lidos com a
+ * serializacao do Java.
+ *
+ * O formato {@link FormatoArmazenamento#MAPEADO} nao e lido: o arquivo e
+ * mapeado em memoria e os itens sao criados conforme sao consultados. Nesse
+ * formato o CRC32 do arquivo inteiro nao e conferido, o que exigiria ler o
+ * arquivo na abertura. Antes do CRC32 e gravada uma tabela com o CRC32 de cada
+ * bloco de {@value #TAMANHO_BLOCO_MAPEADO} bytes, e os {@link BlocosConferidos}
+ * conferem o cabecalho na abertura e cada bloco na primeira leitura do bloco
+ * pelo {@link CatalogoMapeado}.
+ */
+public final class ArquivoDados {
+
+	/**
+	 * A assinatura gravada no inicio do arquivo.
+	 */
+	private static final int ASSINATURA = 0x4C504D44;
+
+	/**
+	 * A versao do cabecalho do arquivo.
+	 */
+	private static final int VERSAO = 1;
+
+	/**
+	 * O tamanho em bytes do cabecalho: assinatura, versao, formato, geracao do
+	 * diario e numero do registro.
+	 */
+	private static final int TAMANHO_CABECALHO = 22;
+
+	/**
+	 * O tamanho em bytes do CRC32 gravado ao final do arquivo.
+	 */
+	private static final int TAMANHO_CRC = 8;
+
+	/**
+	 * O inicio dos arquivos gravados pela serializacao do Java.
+	 */
+	private static final int INICIO_SERIALIZACAO = 0xACED;
+
+	private static final int TAMANHO_BUFFER = 1 << 16;
+
+	/**
+	 * O tamanho em bytes dos blocos do formato mapeado, cujo CRC32 e conferido
+	 * separadamente.
+	 */
+	static final int TAMANHO_BLOCO_MAPEADO = 1 << 16;
+
+	private ArquivoDados() {
+	}
+
+	/**
+	 * Metodo responsavel por gravar o sistema em um arquivo. O sistema e copiado
+	 * e a gravacao e feita sobre a copia, sem trava.
+	 * 
+	 * @param sistema
+	 *            : O sistema que sera gravado.
+	 * @param formato
+	 *            : O formato dos dados.
+	 * @param arquivo
+	 *            : O arquivo onde o sistema sera gravado.
+	 * @return O CRC32 gravado no arquivo, que o identifica.
+	 * @throws IOException
+	 *             : caso ocorra um erro na gravacao.
+	 */
+	public static long grava(SistemaController sistema, FormatoArmazenamento formato, File arquivo)
+			throws IOException {
+		return grava(sistema.retrata(), formato, arquivo, 0, 0);
+	}
+
+	/**
+	 * Metodo responsavel por gravar um retrato do sistema em um arquivo.
+	 * 
+	 * @param retrato
+	 *            : O retrato que sera gravado.
+	 * @param formato
+	 *            : O formato dos dados.
+	 * @param arquivo
+	 *            : O arquivo onde o retrato sera gravado.
+	 * @param geracao
+	 *            : A geracao do diario em que o retrato foi tirado, ou zero.
+	 * @param sequencia
+	 *            : O numero do ultimo registro do diario incluido no retrato.
+	 * @return O CRC32 gravado no arquivo, que o identifica.
+	 * @throws IOException
+	 *             : caso ocorra um erro na gravacao.
+	 */
+	public static long grava(RetratoSistema retrato, FormatoArmazenamento formato, File arquivo, long geracao,
+			long sequencia) throws IOException {
+		return grava(retrato, formato, arquivo, geracao, sequencia, TAMANHO_BLOCO_MAPEADO);
+	}
+
+	/**
+	 * Metodo auxiliar que grava um retrato do sistema em um arquivo, com o
+	 * tamanho dos blocos informado caso o formato seja o mapeado.
+	 */
+	static long grava(RetratoSistema retrato, FormatoArmazenamento formato, File arquivo, long geracao,
+			long sequencia, int tamanhoBloco) throws IOException {
+		File temporario = new File(arquivo.getAbsoluteFile().getParentFile(), arquivo.getName() + ".tmp");
+		long crc;
+		try (FileOutputStream arquivoSaida = new FileOutputStream(temporario)) {
+			BufferedOutputStream buffer = new BufferedOutputStream(arquivoSaida, TAMANHO_BUFFER);
+			CheckedOutputStream verificado = new CheckedOutputStream(buffer, new CRC32());
+			BlocosConferidos.Gravacao blocos = null;
+			OutputStream dados = verificado;
+			if (formato == FormatoArmazenamento.MAPEADO) {
+				blocos = new BlocosConferidos.Gravacao(verificado, tamanhoBloco);
+				dados = blocos;
+			}
+			DataOutputStream cabecalho = new DataOutputStream(dados);
+			cabecalho.writeInt(ASSINATURA);
+			cabecalho.writeByte(VERSAO);
+			cabecalho.writeByte(formato.getCodigo());
+			cabecalho.writeLong(geracao);
+			cabecalho.writeLong(sequencia);
+			formato.getArmazenamento().grava(retrato, dados);
+			if (blocos != null) {
+				blocos.escreveTabela();
+			}
+			verificado.flush();
+
+			crc = verificado.getChecksum().getValue();
+			new DataOutputStream(buffer).writeLong(crc);
+			buffer.flush();
+			arquivoSaida.getFD().sync();
+		}
+		try {
+			Files.move(temporario.toPath(), arquivo.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temporario.toPath(), arquivo.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		return crc;
+	}
+
+	/**
+	 * Metodo responsavel por carregar o sistema de um arquivo, em qualquer um dos
+	 * formatos.
+	 * 
+	 * @param arquivo
+	 *            : O arquivo de onde o sistema sera lido.
+	 * @return O sistema lido.
+	 * @throws IOException
+	 *             : caso ocorra um erro na leitura ou o arquivo esteja corrompido.
+	 */
+	public static SistemaController carrega(File arquivo) throws IOException {
+		return carregaInstantaneo(arquivo).getSistema();
+	}
+
+	/**
+	 * Metodo responsavel por carregar o sistema de um arquivo junto com o
+	 * identificador do arquivo, que e o CRC32 dos seus dados, e a posicao do
+	 * diario gravada no cabecalho.
+	 * 
+	 * @param arquivo
+	 *            : O arquivo de onde o sistema sera lido.
+	 * @return O sistema lido e o identificador do arquivo.
+	 * @throws IOException
+	 *             : caso ocorra um erro na leitura ou o arquivo esteja corrompido.
+	 */
+	public static Instantaneo carregaInstantaneo(File arquivo) throws IOException {
+		long tamanho = arquivo.length();
+		try (InputStream entrada = new BufferedInputStream(new FileInputStream(arquivo), TAMANHO_BUFFER)) {
+			entrada.mark(2);
+			int inicio = (entrada.read() << 8) | entrada.read();
+			entrada.reset();
+			if (inicio == INICIO_SERIALIZACAO) {
+				CheckedInputStream antigo = new CheckedInputStream(entrada, new CRC32());
+				SistemaController sistema = new ArmazenamentoSerializado().le(antigo);
+				return new Instantaneo(sistema, antigo.getChecksum().getValue(), 0, 0);
+			}
+			if (tamanho < TAMANHO_CABECALHO + TAMANHO_CRC) {
+				throw new StreamCorruptedException("Arquivo de dados incompleto.");
+			}
+
+			CheckedInputStream verificado = new CheckedInputStream(
+					new EntradaLimitada(entrada, tamanho - TAMANHO_CRC), new CRC32());
+			DataInputStream cabecalho = new DataInputStream(verificado);
+			if (cabecalho.readInt() != ASSINATURA) {
+				throw new StreamCorruptedException("Arquivo de dados desconhecido.");
+			}
+			int versao = cabecalho.readUnsignedByte();
+			if (versao != VERSAO) {
+				throw new StreamCorruptedException("Versao do arquivo de dados desconhecida: " + versao);
+			}
+			int codigo = cabecalho.readUnsignedByte();
+			FormatoArmazenamento formato = FormatoArmazenamento.doCodigo(codigo);
+			if (formato == null) {
+				throw new StreamCorruptedException("Formato do arquivo de dados desconhecido: " + codigo);
+			}
+			long geracao = cabecalho.readLong();
+			long sequencia = cabecalho.readLong();
+			if (formato == FormatoArmazenamento.MAPEADO) {
+				return carregaMapeado(arquivo, tamanho, TAMANHO_CABECALHO, geracao, sequencia);
+			}
+
+			SistemaController sistema = null;
+			IOException erro = null;
+			try {
+				sistema = formato.getArmazenamento().le(verificado);
+			} catch (IOException e) {
+				erro = e;
+			}
+			byte[] restante = new byte[TAMANHO_BUFFER];
+			while (verificado.read(restante) != -1) {
+				// o CRC32 cobre os dados que o formato nao leu
+			}
+			long crc = new DataInputStream(entrada).readLong();
+			if (crc != verificado.getChecksum().getValue()) {
+				StreamCorruptedException corrompido = new StreamCorruptedException("Arquivo de dados corrompido.");
+				if (erro != null) {
+					corrompido.initCause(erro);
+				}
+				throw corrompido;
+			}
+			if (erro != null) {
+				throw erro;
+			}
+			return new Instantaneo(sistema, crc, geracao, sequencia);
+		}
+	}
+
+	/**
+	 * Metodo auxiliar que mapeia em memoria os dados de um arquivo no formato
+	 * mapeado, sem le-los. Apenas o bloco com o cabecalho do arquivo e do
+	 * catalogo e conferido; os demais sao conferidos pelo catalogo quando forem
+	 * lidos.
+	 */
+	private static Instantaneo carregaMapeado(File arquivo, long tamanho, int inicioDados, long geracao,
+			long sequencia) throws IOException {
+		if (tamanho > Integer.MAX_VALUE) {
+			throw new StreamCorruptedException("Arquivo de dados maior que o limite do formato mapeado.");
+		}
+		try (FileChannel canal = FileChannel.open(arquivo.toPath(), StandardOpenOption.READ)) {
+			MappedByteBuffer mapa = canal.map(FileChannel.MapMode.READ_ONLY, 0, tamanho);
+			long crc = mapa.getLong((int) tamanho - TAMANHO_CRC);
+			BlocosConferidos blocos = BlocosConferidos.le(mapa, (int) tamanho - TAMANHO_CRC);
+			if (blocos.getTamanhoCoberto() < inicioDados) {
+				throw new StreamCorruptedException("Arquivo de dados incompleto.");
+			}
+			mapa.limit(blocos.getTamanhoCoberto());
+			mapa.position(inicioDados);
+			try {
+				blocos.confere(0, inicioDados);
+				CatalogoMapeado catalogo = CatalogoMapeado.abre(mapa.slice(), blocos, inicioDados);
+				return new Instantaneo(new SistemaController(catalogo), crc, geracao, sequencia);
+			} catch (UncheckedIOException e) {
+				throw e.getCause();
+			}
+		}
+	}
+
+	/**
+	 * Fluxo que permite ler apenas uma quantidade de bytes de outro fluxo, sem
+	 * fecha-lo.
+	 */
+	private static class EntradaLimitada extends FilterInputStream {
+
+		private long restante;
+
+		EntradaLimitada(InputStream entrada, long limite) {
+			super(entrada);
+			this.restante = limite;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (this.restante <= 0) {
+				return -1;
+			}
+			int lido = super.read();
+			if (lido != -1) {
+				this.restante--;
+			}
+			return lido;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (this.restante <= 0) {
+				return -1;
+			}
+			int lido = super.read(b, off, (int) Math.min(len, this.restante));
+			if (lido != -1) {
+				this.restante -= lido;
+			}
+			return lido;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long pulado = super.skip(Math.min(n, this.restante));
+			this.restante -= pulado;
+			return pulado;
+		}
+
+		@Override
+		public int available() throws IOException {
+			return (int) Math.min(super.available(), this.restante);
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+
+		@Override
+		public void close() {
+		}
+
+	}
+
+}
@@ -0,0 +1,240 @@
+package com.projeto.persistencia;
+
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.zip.CRC32;
+
+/**
+ * Classe responsavel por conferir o CRC32 de um arquivo mapeado em memoria por
+ * blocos de tamanho fixo, conforme os blocos sao lidos. O arquivo e dividido em
+ * blocos a partir do inicio, e o CRC32 de cada bloco e gravado em uma tabela ao
+ * final dos dados, seguida pelo tamanho dos blocos e pela quantidade de blocos.
+ *
+ * Cada bloco e conferido uma unica vez, na primeira leitura de um trecho que o
+ * contem, de forma que a primeira consulta custa apenas os blocos que ela le.
+ * Um bloco corrompido continua sendo informado nas leituras seguintes.
+ */
+final class BlocosConferidos {
+
+	/**
+	 * O tamanho em bytes do tamanho dos blocos e da quantidade de blocos gravados
+	 * depois da tabela.
+	 */
+	private static final int TAMANHO_RODAPE = 8;
+
+	private static final int NAO_CONFERIDO = 0;
+
+	private static final int CONFERIDO = 1;
+
+	private static final int CORROMPIDO = 2;
+
+	/**
+	 * Os bytes cobertos pelos blocos, do inicio do arquivo ate a tabela.
+	 */
+	private final ByteBuffer dados;
+
+	private final int tamanhoBloco;
+
+	private final int[] somas;
+
+	/**
+	 * A situacao de cada bloco: nao conferido, conferido ou corrompido. Dois
+	 * leitores podem conferir o mesmo bloco ao mesmo tempo, sem prejuizo.
+	 */
+	private final AtomicIntegerArray situacao;
+
+	private BlocosConferidos(ByteBuffer dados, int tamanhoBloco, int[] somas) {
+		this.dados = dados;
+		this.tamanhoBloco = tamanhoBloco;
+		this.somas = somas;
+		this.situacao = new AtomicIntegerArray(somas.length);
+	}
+
+	/**
+	 * Metodo responsavel por ler a tabela de blocos gravada ao final dos dados
+	 * de um arquivo mapeado. Nenhum bloco e conferido.
+	 *
+	 * @param arquivo
+	 *            : Os bytes do arquivo, mapeados em memoria.
+	 * @param fim
+	 *            : A posicao seguinte ao fim da tabela.
+	 * @return Os blocos do arquivo.
+	 * @throws StreamCorruptedException
+	 *             : caso a tabela seja invalida.
+	 */
+	static BlocosConferidos le(ByteBuffer arquivo, int fim) throws StreamCorruptedException {
+		if (fim < TAMANHO_RODAPE) {
+			throw new StreamCorruptedException("Tabela de blocos inexistente.");
+		}
+		int tamanhoBloco = arquivo.getInt(fim - TAMANHO_RODAPE);
+		int quantidade = arquivo.getInt(fim - 4);
+		long coberto = fim - TAMANHO_RODAPE - 4L * quantidade;
+		if (tamanhoBloco <= 0 || quantidade < 0 || coberto < 0
+				|| quantidade != (coberto + tamanhoBloco - 1) / tamanhoBloco) {
+			throw new StreamCorruptedException("Tabela de blocos invalida.");
+		}
+		int[] somas = new int[quantidade];
+		for (int i = 0; i < quantidade; i++) {
+			somas[i] = arquivo.getInt((int) coberto + 4 * i);
+		}
+		ByteBuffer dados = arquivo.duplicate();
+		dados.position(0);
+		dados.limit((int) coberto);
+		return new BlocosConferidos(dados.slice(), tamanhoBloco, somas);
+	}
+
+	/**
+	 * Metodo responsavel por retornar a quantidade de bytes cobertos pelos
+	 * blocos, que e a posicao onde a tabela comeca.
+	 *
+	 * @return A quantidade de bytes.
+	 */
+	int getTamanhoCoberto() {
+		return this.dados.limit();
+	}
+
+	/**
+	 * Metodo responsavel por conferir os blocos que contem um trecho do arquivo
+	 * e que ainda nao foram conferidos.
+	 *
+	 * @param inicio
+	 *            : A posicao do primeiro byte do trecho no arquivo.
+	 * @param fim
+	 *            : A posicao seguinte ao ultimo byte do trecho.
+	 * @throws UncheckedIOException
+	 *             : caso algum dos blocos esteja corrompido.
+	 */
+	void confere(long inicio, long fim) {
+		if (fim <= inicio) {
+			return;
+		}
+		int ultimo = (int) Math.min((fim - 1) / this.tamanhoBloco, this.somas.length - 1);
+		for (int bloco = (int) (inicio / this.tamanhoBloco); bloco <= ultimo; bloco++) {
+			int atual = this.situacao.get(bloco);
+			if (atual == NAO_CONFERIDO) {
+				atual = this.confereBloco(bloco);
+			}
+			if (atual == CORROMPIDO) {
+				throw new UncheckedIOException(
+						new StreamCorruptedException("Arquivo de dados corrompido no bloco " + bloco + "."));
+			}
+		}
+	}
+
+	/**
+	 * Metodo auxiliar que calcula o CRC32 de um bloco e guarda a situacao do
+	 * bloco.
+	 */
+	private int confereBloco(int bloco) {
+		ByteBuffer leitura = this.dados.duplicate();
+		int inicio = bloco * this.tamanhoBloco;
+		leitura.limit((int) Math.min((long) inicio + this.tamanhoBloco, this.dados.limit()));
+		leitura.position(inicio);
+		CRC32 crc = new CRC32();
+		crc.update(leitura);
+		int resultado = (int) crc.getValue() == this.somas[bloco] ? CONFERIDO : CORROMPIDO;
+		this.situacao.set(bloco, resultado);
+		return resultado;
+	}
+
+	/**
+	 * Fluxo que calcula o CRC32 de cada bloco dos bytes gravados e, ao final,
+	 * grava a tabela de blocos lida por {@link BlocosConferidos#le(ByteBuffer, int)}.
+	 */
+	static final class Gravacao extends FilterOutputStream {
+
+		private final int tamanhoBloco;
+
+		private final CRC32 crcBloco = new CRC32();
+
+		private int[] somas = new int[16];
+
+		private int quantidade;
+
+		/**
+		 * A quantidade de bytes gravados no bloco atual.
+		 */
+		private int noBloco;
+
+		/**
+		 * Metodo responsavel por criar o fluxo.
+		 *
+		 * @param saida
+		 *            : O fluxo onde os bytes e a tabela sao gravados.
+		 * @param tamanhoBloco
+		 *            : O tamanho em bytes de cada bloco.
+		 */
+		Gravacao(OutputStream saida, int tamanhoBloco) {
+			super(saida);
+			this.tamanhoBloco = tamanhoBloco;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			this.out.write(b);
+			this.crcBloco.update(b);
+			this.avanca(1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			this.out.write(b, off, len);
+			while (len > 0) {
+				int trecho = Math.min(len, this.tamanhoBloco - this.noBloco);
+				this.crcBloco.update(b, off, trecho);
+				this.avanca(trecho);
+				off += trecho;
+				len -= trecho;
+			}
+		}
+
+		/**
+		 * Metodo responsavel por gravar a tabela com o CRC32 de cada bloco, o
+		 * tamanho dos blocos e a quantidade de blocos. Os bytes da tabela nao
+		 * pertencem a nenhum bloco.
+		 *
+		 * @throws IOException
+		 *             : caso ocorra um erro na gravacao.
+		 */
+		void escreveTabela() throws IOException {
+			if (this.noBloco > 0) {
+				this.fechaBloco();
+			}
+			DataOutputStream tabela = new DataOutputStream(this.out);
+			for (int i = 0; i < this.quantidade; i++) {
+				tabela.writeInt(this.somas[i]);
+			}
+			tabela.writeInt(this.tamanhoBloco);
+			tabela.writeInt(this.quantidade);
+			tabela.flush();
+		}
+
+		/**
+		 * Metodo auxiliar que conta os bytes gravados no bloco atual, fechando-o
+		 * quando fica completo.
+		 */
+		private void avanca(int gravados) {
+			this.noBloco += gravados;
+			if (this.noBloco == this.tamanhoBloco) {
+				this.fechaBloco();
+			}
+		}
+
+		private void fechaBloco() {
+			if (this.quantidade == this.somas.length) {
+				this.somas = Arrays.copyOf(this.somas, this.quantidade * 2);
+			}
+			this.somas[this.quantidade++] = (int) this.crcBloco.getValue();
+			this.crcBloco.reset();
+			this.noBloco = 0;
+		}
+	}
+
+}
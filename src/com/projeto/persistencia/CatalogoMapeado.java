@@ -0,0 +1,803 @@
+package com.projeto.persistencia;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.projeto.model.Item;
+import com.projeto.persistencia.RetratoSistema.RetratoItem;
+import com.projeto.persistencia.RetratoSistema.RetratoLista;
+import com.projeto.service.EstabelecimentoRegistry;
+import com.projeto.service.ListaService;
+import com.projeto.util.Categoria;
+
+/**
+ * Classe que representa o catalogo de itens gravado em colunas de tamanho
+ * fixo, que pode ser lido diretamente de um arquivo mapeado em memoria. Os
+ * dados sao organizados em tabelas, na seguinte ordem:
+ *
+ * <ul>
+ * <li>o cabecalho, com a assinatura "LPMC", o id do proximo produto, a
+ * quantidade de produtos cadastrados, de itens e de locais e a posicao de cada
+ * tabela;</li>
+ * <li>os registros dos itens, com {@value #TAMANHO_REGISTRO} bytes cada: os
+ * produtos cadastrados, ordenados pelo id, e depois os itens ja removidos que
+ * ainda estao em alguma lista. Os textos sao gravados como a sua posicao na
+ * tabela de textos;</li>
+ * <li>a tabela de precos, com pares (id do local, preco). Os precos de cada
+ * item ficam juntos, e o registro do item guarda a posicao do primeiro e a
+ * quantidade;</li>
+ * <li>a tabela de locais, com a posicao do nome de cada local na tabela de
+ * textos;</li>
+ * <li>a tabela de textos, onde cada texto diferente aparece uma unica vez,
+ * precedido pelo seu tamanho em bytes;</li>
+ * <li>as listas de compras, gravadas como no {@link ArmazenamentoBinario}.</li>
+ * </ul>
+ *
+ * Abrir o catalogo apenas confere o cabecalho e os limites das tabelas. Cada
+ * item so e criado quando e consultado pela primeira vez, e a busca pelo id e
+ * uma busca binaria nos registros. As consultas pelo nome, pela categoria e
+ * pelo menor preco ordenam as posicoes dos registros, sem criar nenhum item,
+ * e criam apenas o item retornado. As listas de compras so sao lidas por
+ * {@link #preencheListas(ListaService)}. Quando os blocos do arquivo sao
+ * informados na abertura, cada leitura confere antes os blocos do trecho que
+ * le, de forma que a primeira consulta so confere os blocos que usa.
+ */
+public final class CatalogoMapeado {
+
+	/**
+	 * A assinatura gravada no inicio do catalogo.
+	 */
+	private static final int ASSINATURA = 0x4C504D43;
+
+	private static final int TAMANHO_CABECALHO = 40;
+
+	/**
+	 * O tamanho em bytes do registro de um item.
+	 */
+	static final int TAMANHO_REGISTRO = 40;
+
+	private static final int TAMANHO_PRECO = 12;
+
+	private static final int TAMANHO_LOCAL = 4;
+
+	/**
+	 * A posicao dos textos nulos.
+	 */
+	private static final int SEM_TEXTO = -1;
+
+	private final ByteBuffer dados;
+
+	private final int identificadorBase;
+
+	private final int quantidadeCadastrados;
+
+	private final int quantidadeItens;
+
+	private final int quantidadeLocais;
+
+	private final int inicioPrecos;
+
+	private final int inicioLocais;
+
+	private final int inicioTextos;
+
+	private final int inicioListas;
+
+	/**
+	 * Os itens ja criados, indexados pela posicao do registro. Todas as consultas
+	 * a um mesmo registro retornam a mesma instancia.
+	 */
+	private final Map<Integer, Item> materializados;
+
+	/**
+	 * O dicionario onde os itens criados registram os seus locais de compra, que
+	 * passa a ser o do sistema aberto a partir do catalogo.
+	 */
+	private final EstabelecimentoRegistry estabelecimentos;
+
+	/**
+	 * Os blocos do arquivo de onde o catalogo foi mapeado, conferidos conforme
+	 * sao lidos, ou null caso o catalogo nao seja conferido, e a posicao do
+	 * catalogo no arquivo.
+	 */
+	private final BlocosConferidos blocos;
+
+	private final int inicioNoArquivo;
+
+	/**
+	 * As posicoes dos produtos cadastrados ordenadas pelo nome, separadas por
+	 * categoria e ordenadas pelo menor preco, calculadas na primeira consulta de
+	 * cada ordem.
+	 */
+	private volatile int[] ordemNome;
+
+	private volatile Map<Categoria, int[]> ordemCategoria;
+
+	private volatile int[] ordemPreco;
+
+	private CatalogoMapeado(ByteBuffer dados, BlocosConferidos blocos, int inicioNoArquivo)
+			throws StreamCorruptedException {
+		this.dados = dados;
+		this.blocos = blocos;
+		this.inicioNoArquivo = inicioNoArquivo;
+		if (dados.limit() < TAMANHO_CABECALHO) {
+			throw new StreamCorruptedException("Catalogo desconhecido.");
+		}
+		this.confere(0, TAMANHO_CABECALHO);
+		if (dados.getInt(0) != ASSINATURA) {
+			throw new StreamCorruptedException("Catalogo desconhecido.");
+		}
+		this.identificadorBase = dados.getInt(4);
+		this.quantidadeCadastrados = dados.getInt(8);
+		this.quantidadeItens = dados.getInt(12);
+		this.quantidadeLocais = dados.getInt(16);
+		this.inicioPrecos = dados.getInt(20);
+		this.inicioLocais = dados.getInt(24);
+		this.inicioTextos = dados.getInt(28);
+		this.inicioListas = dados.getInt(32);
+		int tamanho = dados.getInt(36);
+
+		if (this.quantidadeCadastrados < 0 || this.quantidadeItens < this.quantidadeCadastrados
+				|| this.quantidadeLocais < 0
+				|| TAMANHO_CABECALHO + (long) TAMANHO_REGISTRO * this.quantidadeItens != this.inicioPrecos
+				|| this.inicioLocais < this.inicioPrecos || (this.inicioLocais - this.inicioPrecos) % TAMANHO_PRECO != 0
+				|| this.inicioLocais + (long) TAMANHO_LOCAL * this.quantidadeLocais != this.inicioTextos
+				|| this.inicioListas < this.inicioTextos || tamanho < this.inicioListas + 4
+				|| tamanho != dados.limit()) {
+			throw new StreamCorruptedException("Tabelas do catalogo invalidas.");
+		}
+		this.materializados = new ConcurrentHashMap<>();
+		this.estabelecimentos = new EstabelecimentoRegistry();
+	}
+
+	/**
+	 * Metodo responsavel por abrir um catalogo gravado. Nenhum item e lido.
+	 *
+	 * @param dados
+	 *            : Os bytes do catalogo, geralmente mapeados de um arquivo. O
+	 *            buffer nao deve ser alterado depois de aberto.
+	 * @return O catalogo.
+	 * @throws StreamCorruptedException
+	 *             : caso o cabecalho ou as tabelas sejam invalidos.
+	 */
+	public static CatalogoMapeado abre(ByteBuffer dados) throws StreamCorruptedException {
+		return new CatalogoMapeado(dados.duplicate(), null, 0);
+	}
+
+	/**
+	 * Metodo responsavel por abrir um catalogo gravado em um arquivo, cujos
+	 * blocos serao conferidos conforme forem lidos. Apenas o cabecalho do
+	 * catalogo e lido.
+	 *
+	 * @param dados
+	 *            : Os bytes do catalogo, mapeados do arquivo.
+	 * @param blocos
+	 *            : Os blocos do arquivo.
+	 * @param inicioNoArquivo
+	 *            : A posicao do catalogo no arquivo.
+	 * @return O catalogo.
+	 * @throws StreamCorruptedException
+	 *             : caso o cabecalho ou as tabelas sejam invalidos.
+	 * @throws UncheckedIOException
+	 *             : caso o bloco do cabecalho esteja corrompido.
+	 */
+	static CatalogoMapeado abre(ByteBuffer dados, BlocosConferidos blocos, int inicioNoArquivo)
+			throws StreamCorruptedException {
+		return new CatalogoMapeado(dados.duplicate(), blocos, inicioNoArquivo);
+	}
+
+	/**
+	 * Metodo responsavel por gravar um retrato do sistema no formato do catalogo.
+	 *
+	 * @param retrato
+	 *            : O retrato que sera gravado.
+	 * @param saida
+	 *            : O fluxo onde o catalogo sera gravado.
+	 * @throws IOException
+	 *             : caso ocorra um erro na gravacao.
+	 */
+	public static void escreve(RetratoSistema retrato, DataOutputStream saida) throws IOException {
+		List<RetratoItem> itens = retrato.getItens();
+		List<Integer> ordem = new ArrayList<>(itens.size());
+		for (int i = 0; i < itens.size(); i++) {
+			ordem.add(i);
+		}
+		final List<RetratoItem> tabela = itens;
+		Collections.sort(ordem, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer primeiro, Integer segundo) {
+				RetratoItem item1 = tabela.get(primeiro);
+				RetratoItem item2 = tabela.get(segundo);
+				if (item1.cadastrado != item2.cadastrado) {
+					return item1.cadastrado ? -1 : 1;
+				}
+				return item1.cadastrado ? Integer.compare(item1.id, item2.id) : Integer.compare(primeiro, segundo);
+			}
+		});
+		int[] novaPosicao = new int[itens.size()];
+		int quantidadeCadastrados = 0;
+		for (int i = 0; i < ordem.size(); i++) {
+			novaPosicao[ordem.get(i)] = i;
+			if (itens.get(ordem.get(i)).cadastrado) {
+				quantidadeCadastrados++;
+			}
+		}
+
+		TabelaTextos textos = new TabelaTextos();
+		Map<String, Integer> locais = new HashMap<>();
+		List<String> tabelaLocais = new ArrayList<>();
+		ByteArrayOutputStream registros = new ByteArrayOutputStream(TAMANHO_REGISTRO * itens.size());
+		ByteArrayOutputStream precos = new ByteArrayOutputStream();
+		DataOutputStream registro = new DataOutputStream(registros);
+		DataOutputStream preco = new DataOutputStream(precos);
+		int quantidadePrecos = 0;
+		for (int posicao : ordem) {
+			RetratoItem item = itens.get(posicao);
+			registro.writeInt(item.id);
+			registro.writeByte(item.tipo);
+			registro.writeByte(0);
+			registro.writeShort(0);
+			registro.writeInt(textos.posicao(item.nome));
+			registro.writeInt(textos.posicao(item.categoria));
+			registro.writeInt(textos.posicao(item.unidadeMedida));
+			registro.writeInt(item.quantidade);
+			registro.writeDouble(item.quilo);
+			registro.writeInt(quantidadePrecos);
+			registro.writeInt(item.locais.length);
+			for (int i = 0; i < item.locais.length; i++) {
+				Integer local = locais.get(item.locais[i]);
+				if (local == null) {
+					local = tabelaLocais.size();
+					locais.put(item.locais[i], local);
+					tabelaLocais.add(item.locais[i]);
+				}
+				preco.writeInt(local);
+				preco.writeDouble(item.precos[i]);
+				quantidadePrecos++;
+			}
+		}
+		ByteArrayOutputStream tabelaNomesLocais = new ByteArrayOutputStream(TAMANHO_LOCAL * tabelaLocais.size());
+		DataOutputStream nomeLocal = new DataOutputStream(tabelaNomesLocais);
+		for (String local : tabelaLocais) {
+			nomeLocal.writeInt(textos.posicao(local));
+		}
+
+		ByteArrayOutputStream listas = new ByteArrayOutputStream();
+		DataOutputStream lista = new DataOutputStream(listas);
+		lista.writeInt(retrato.getListas().size());
+		for (RetratoLista retratoLista : retrato.getListas()) {
+			int[] posicoes = new int[retratoLista.itens.length];
+			for (int i = 0; i < posicoes.length; i++) {
+				posicoes[i] = novaPosicao[retratoLista.itens[i]];
+			}
+			RetratoSistema.escreveLista(lista, new RetratoLista(retratoLista.descritor, retratoLista.dataCriacao,
+					retratoLista.finalizada, retratoLista.local, retratoLista.valorFinal, posicoes,
+					retratoLista.quantidades));
+		}
+
+		long inicioPrecos = TAMANHO_CABECALHO + (long) registros.size();
+		long inicioLocais = inicioPrecos + precos.size();
+		long inicioTextos = inicioLocais + tabelaNomesLocais.size();
+		long inicioListas = inicioTextos + textos.tamanho();
+		long tamanho = inicioListas + listas.size();
+		if (tamanho > Integer.MAX_VALUE) {
+			throw new IOException("Catalogo maior que o limite do formato mapeado.");
+		}
+		saida.writeInt(ASSINATURA);
+		saida.writeInt(retrato.getIdentificadorBase());
+		saida.writeInt(quantidadeCadastrados);
+		saida.writeInt(itens.size());
+		saida.writeInt(tabelaLocais.size());
+		saida.writeInt((int) inicioPrecos);
+		saida.writeInt((int) inicioLocais);
+		saida.writeInt((int) inicioTextos);
+		saida.writeInt((int) inicioListas);
+		saida.writeInt((int) tamanho);
+		registros.writeTo(saida);
+		precos.writeTo(saida);
+		tabelaNomesLocais.writeTo(saida);
+		textos.escreve(saida);
+		listas.writeTo(saida);
+		saida.flush();
+	}
+
+	/**
+	 * Metodo responsavel por retornar o id do proximo produto que sera cadastrado.
+	 *
+	 * @return Um inteiro com o id.
+	 */
+	public int getIdentificadorBase() {
+		return this.identificadorBase;
+	}
+
+	/**
+	 * Metodo responsavel por retornar o dicionario onde os itens do catalogo
+	 * registram os seus locais de compra.
+	 *
+	 * @return O dicionario de locais de compra.
+	 */
+	public EstabelecimentoRegistry getEstabelecimentos() {
+		return this.estabelecimentos;
+	}
+
+	/**
+	 * Metodo responsavel por retornar os produtos cadastrados no catalogo. O mapa
+	 * nao pode ser alterado, e cada item so e criado quando e obtido do mapa.
+	 *
+	 * @return Um mapa com os produtos indexados pelo id.
+	 */
+	public Map<Integer, Item> getProdutos() {
+		return new ProdutosMapeados();
+	}
+
+	/**
+	 * Metodo responsavel por retornar o produto cadastrado em uma posicao da ordem
+	 * pelo nome, desempatada pelo id. Apenas o item retornado e criado.
+	 *
+	 * @param posicao
+	 *            : A posicao do produto na ordem.
+	 * @return O produto, ou null caso a posicao passe do ultimo produto.
+	 * @throws UncheckedIOException
+	 *             : caso o catalogo esteja corrompido.
+	 */
+	public Item getPorNome(int posicao) {
+		return this.itemNaOrdem(this.ordemNome(), posicao);
+	}
+
+	/**
+	 * Metodo responsavel por retornar o produto em uma posicao da ordem pelo nome
+	 * dos produtos de uma categoria. Apenas o item retornado e criado.
+	 *
+	 * @param categoria
+	 *            : A categoria dos produtos.
+	 * @param posicao
+	 *            : A posicao do produto na ordem.
+	 * @return O produto, ou null caso a posicao passe do ultimo produto.
+	 * @throws UncheckedIOException
+	 *             : caso o catalogo esteja corrompido.
+	 */
+	public Item getPorCategoria(Categoria categoria, int posicao) {
+		return this.itemNaOrdem(this.ordemCategoria().get(categoria), posicao);
+	}
+
+	/**
+	 * Metodo responsavel por retornar o produto em uma posicao da ordem pelo
+	 * menor preco, desempatada pelo id. Apenas o item retornado e criado.
+	 *
+	 * @param posicao
+	 *            : A posicao do produto na ordem.
+	 * @return O produto, ou null caso a posicao passe do ultimo produto.
+	 * @throws UncheckedIOException
+	 *             : caso o catalogo esteja corrompido.
+	 */
+	public Item getPorMenorPreco(int posicao) {
+		return this.itemNaOrdem(this.ordemPreco(), posicao);
+	}
+
+	/**
+	 * Metodo responsavel por criar todos os produtos cadastrados no catalogo,
+	 * colocando-os no mapa informado.
+	 *
+	 * @param produtos
+	 *            : O mapa onde os produtos serao colocados.
+	 * @throws UncheckedIOException
+	 *             : caso o catalogo esteja corrompido.
+	 */
+	public void preencheProdutos(Map<Integer, Item> produtos) {
+		for (int posicao = 0; posicao < this.quantidadeCadastrados; posicao++) {
+			Item item = this.getItem(posicao);
+			produtos.put(item.getId(), item);
+		}
+	}
+
+	/**
+	 * Metodo responsavel por recriar as listas de compras do catalogo. As compras
+	 * usam os mesmos itens retornados pelas consultas ao catalogo, criando os que
+	 * ainda nao foram consultados.
+	 *
+	 * @param listaService
+	 *            : O servico onde as listas serao restauradas.
+	 * @throws UncheckedIOException
+	 *             : caso o catalogo esteja corrompido.
+	 */
+	public void preencheListas(ListaService listaService) {
+		this.confere(this.inicioListas, this.dados.limit() - this.inicioListas);
+		byte[] bytesListas = new byte[this.dados.limit() - this.inicioListas];
+		ByteBuffer leitura = this.dados.duplicate();
+		leitura.position(this.inicioListas);
+		leitura.get(bytesListas);
+		DataInputStream listas = new DataInputStream(new ByteArrayInputStream(bytesListas));
+		List<Item> itens = new AbstractList<Item>() {
+			@Override
+			public Item get(int posicao) {
+				return getItem(posicao);
+			}
+
+			@Override
+			public int size() {
+				return quantidadeItens;
+			}
+		};
+		try {
+			int quantidadeListas = RetratoSistema.leTamanho(listas);
+			for (int i = 0; i < quantidadeListas; i++) {
+				listaService.restauraLista(RetratoSistema.criaLista(RetratoSistema.leLista(listas, this.quantidadeItens),
+						itens));
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Metodo auxiliar que retorna o item de uma posicao de uma ordem de registros.
+	 */
+	private Item itemNaOrdem(int[] ordem, int posicao) {
+		if (posicao >= ordem.length) {
+			return null;
+		}
+		return this.getItem(ordem[posicao]);
+	}
+
+	/**
+	 * Metodo auxiliar que retorna as posicoes dos produtos cadastrados ordenadas
+	 * pelo nome, lendo apenas os nomes dos registros.
+	 */
+	private int[] ordemNome() {
+		int[] ordem = this.ordemNome;
+		if (ordem == null) {
+			this.confere(TAMANHO_CABECALHO, (long) this.quantidadeCadastrados * TAMANHO_REGISTRO);
+			final String[] nomes = new String[this.quantidadeCadastrados];
+			for (int posicao = 0; posicao < nomes.length; posicao++) {
+				nomes[posicao] = this.texto(this.dados.getInt(TAMANHO_CABECALHO + posicao * TAMANHO_REGISTRO + 8));
+				if (nomes[posicao] == null) {
+					throw corrompido("Item sem nome: " + posicao);
+				}
+			}
+			ordem = this.ordena(new Comparator<Integer>() {
+				@Override
+				public int compare(Integer posicao1, Integer posicao2) {
+					int comparacao = nomes[posicao1].compareTo(nomes[posicao2]);
+					if (comparacao == 0) {
+						return posicao1.compareTo(posicao2);
+					}
+					return comparacao;
+				}
+			});
+			this.ordemNome = ordem;
+		}
+		return ordem;
+	}
+
+	/**
+	 * Metodo auxiliar que retorna as posicoes dos produtos de cada categoria
+	 * ordenadas pelo nome, lendo apenas as categorias dos registros.
+	 */
+	private Map<Categoria, int[]> ordemCategoria() {
+		Map<Categoria, int[]> ordens = this.ordemCategoria;
+		if (ordens == null) {
+			int[] porNome = this.ordemNome();
+			Categoria[] categorias = new Categoria[porNome.length];
+			int[] quantidades = new int[Categoria.values().length];
+			for (int i = 0; i < porNome.length; i++) {
+				int inicio = TAMANHO_CABECALHO + porNome[i] * TAMANHO_REGISTRO;
+				categorias[i] = Categoria.converte(this.texto(this.dados.getInt(inicio + 12)));
+				if (categorias[i] == null) {
+					throw corrompido("Categoria invalida no item: " + porNome[i]);
+				}
+				quantidades[categorias[i].ordinal()]++;
+			}
+			ordens = new EnumMap<>(Categoria.class);
+			for (Categoria categoria : Categoria.values()) {
+				ordens.put(categoria, new int[quantidades[categoria.ordinal()]]);
+			}
+			Arrays.fill(quantidades, 0);
+			for (int i = 0; i < porNome.length; i++) {
+				ordens.get(categorias[i])[quantidades[categorias[i].ordinal()]++] = porNome[i];
+			}
+			this.ordemCategoria = ordens;
+		}
+		return ordens;
+	}
+
+	/**
+	 * Metodo auxiliar que retorna as posicoes dos produtos cadastrados ordenadas
+	 * pelo menor preco, lendo apenas a tabela de precos.
+	 */
+	private int[] ordemPreco() {
+		int[] ordem = this.ordemPreco;
+		if (ordem == null) {
+			this.confere(TAMANHO_CABECALHO, (long) this.quantidadeCadastrados * TAMANHO_REGISTRO);
+			this.confere(this.inicioPrecos, this.inicioLocais - this.inicioPrecos);
+			final double[] menores = new double[this.quantidadeCadastrados];
+			for (int posicao = 0; posicao < menores.length; posicao++) {
+				int inicio = TAMANHO_CABECALHO + posicao * TAMANHO_REGISTRO;
+				int primeiroPreco = this.dados.getInt(inicio + 32);
+				int quantidadePrecos = this.dados.getInt(inicio + 36);
+				if (quantidadePrecos < 1 || primeiroPreco < 0 || this.inicioPrecos
+						+ ((long) primeiroPreco + quantidadePrecos) * TAMANHO_PRECO > this.inicioLocais) {
+					throw corrompido("Precos invalidos no item: " + posicao);
+				}
+				double menor = Double.MAX_VALUE;
+				for (int i = 0; i < quantidadePrecos; i++) {
+					menor = Math.min(menor,
+							this.dados.getDouble(this.inicioPrecos + (primeiroPreco + i) * TAMANHO_PRECO + 4));
+				}
+				menores[posicao] = menor;
+			}
+			ordem = this.ordena(new Comparator<Integer>() {
+				@Override
+				public int compare(Integer posicao1, Integer posicao2) {
+					double preco1 = menores[posicao1];
+					double preco2 = menores[posicao2];
+					if (preco1 == preco2) {
+						return posicao1.compareTo(posicao2);
+					}
+					return preco1 > preco2 ? 1 : -1;
+				}
+			});
+			this.ordemPreco = ordem;
+		}
+		return ordem;
+	}
+
+	/**
+	 * Metodo auxiliar que ordena as posicoes dos produtos cadastrados. Como os
+	 * registros estao ordenados pelo id, desempatar pela posicao e desempatar
+	 * pelo id.
+	 */
+	private int[] ordena(Comparator<Integer> comparador) {
+		Integer[] posicoes = new Integer[this.quantidadeCadastrados];
+		for (int i = 0; i < posicoes.length; i++) {
+			posicoes[i] = i;
+		}
+		Arrays.sort(posicoes, comparador);
+		int[] ordem = new int[posicoes.length];
+		for (int i = 0; i < ordem.length; i++) {
+			ordem[i] = posicoes[i];
+		}
+		return ordem;
+	}
+
+	/**
+	 * Metodo auxiliar que retorna a posicao do registro de um produto cadastrado,
+	 * ou -1 caso o id nao esteja cadastrado.
+	 */
+	private int posicaoDoId(int id) {
+		int inicio = 0;
+		int fim = this.quantidadeCadastrados - 1;
+		while (inicio <= fim) {
+			int meio = (inicio + fim) >>> 1;
+			int registro = TAMANHO_CABECALHO + meio * TAMANHO_REGISTRO;
+			this.confere(registro, 4);
+			int idMeio = this.dados.getInt(registro);
+			if (idMeio < id) {
+				inicio = meio + 1;
+			} else if (idMeio > id) {
+				fim = meio - 1;
+			} else {
+				return meio;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Metodo auxiliar que retorna o item de um registro, criando-o na primeira
+	 * consulta.
+	 */
+	private Item getItem(int posicao) {
+		Item item = this.materializados.get(posicao);
+		if (item == null) {
+			Item criado = RetratoSistema.criaItem(this.leRegistro(posicao), this.estabelecimentos);
+			item = this.materializados.putIfAbsent(posicao, criado);
+			if (item == null) {
+				item = criado;
+			}
+		}
+		return item;
+	}
+
+	/**
+	 * Metodo auxiliar que le os campos e os precos do registro de um item.
+	 */
+	private RetratoItem leRegistro(int posicao) {
+		if (posicao < 0 || posicao >= this.quantidadeItens) {
+			throw corrompido("Item inexistente: " + posicao);
+		}
+		int inicio = TAMANHO_CABECALHO + posicao * TAMANHO_REGISTRO;
+		this.confere(inicio, TAMANHO_REGISTRO);
+		byte tipo = this.dados.get(inicio + 4);
+		if (tipo != RetratoSistema.QUANTIDADE_FIXA && tipo != RetratoSistema.POR_QUILO
+				&& tipo != RetratoSistema.POR_UNIDADE) {
+			throw corrompido("Tipo de item desconhecido: " + tipo);
+		}
+		int primeiroPreco = this.dados.getInt(inicio + 32);
+		int quantidadePrecos = this.dados.getInt(inicio + 36);
+		if (quantidadePrecos < 1 || primeiroPreco < 0
+				|| this.inicioPrecos + ((long) primeiroPreco + quantidadePrecos) * TAMANHO_PRECO > this.inicioLocais) {
+			throw corrompido("Precos invalidos no item: " + posicao);
+		}
+		this.confere(this.inicioPrecos + (long) primeiroPreco * TAMANHO_PRECO, (long) quantidadePrecos * TAMANHO_PRECO);
+		String[] locais = new String[quantidadePrecos];
+		double[] precos = new double[quantidadePrecos];
+		for (int i = 0; i < quantidadePrecos; i++) {
+			int preco = this.inicioPrecos + (primeiroPreco + i) * TAMANHO_PRECO;
+			locais[i] = this.local(this.dados.getInt(preco));
+			precos[i] = this.dados.getDouble(preco + 4);
+		}
+		return new RetratoItem(posicao < this.quantidadeCadastrados, tipo, this.dados.getInt(inicio),
+				this.texto(this.dados.getInt(inicio + 8)), this.texto(this.dados.getInt(inicio + 12)),
+				this.dados.getInt(inicio + 20), this.texto(this.dados.getInt(inicio + 16)),
+				this.dados.getDouble(inicio + 24), locais, precos);
+	}
+
+	/**
+	 * Metodo auxiliar que confere os blocos do arquivo que contem um trecho do
+	 * catalogo, antes de o trecho ser lido.
+	 */
+	private void confere(long inicio, long tamanho) {
+		if (this.blocos != null) {
+			this.blocos.confere(this.inicioNoArquivo + inicio, this.inicioNoArquivo + inicio + tamanho);
+		}
+	}
+
+	/**
+	 * Metodo auxiliar que retorna o nome de um local da tabela de locais.
+	 */
+	private String local(int id) {
+		if (id < 0 || id >= this.quantidadeLocais) {
+			throw corrompido("Local inexistente: " + id);
+		}
+		this.confere(this.inicioLocais + id * TAMANHO_LOCAL, TAMANHO_LOCAL);
+		return this.texto(this.dados.getInt(this.inicioLocais + id * TAMANHO_LOCAL));
+	}
+
+	/**
+	 * Metodo auxiliar que le um texto da tabela de textos.
+	 */
+	private String texto(int deslocamento) {
+		if (deslocamento == SEM_TEXTO) {
+			return null;
+		}
+		long inicio = (long) this.inicioTextos + deslocamento;
+		if (deslocamento < 0 || inicio + 4 > this.inicioListas) {
+			throw corrompido("Texto inexistente: " + deslocamento);
+		}
+		this.confere(inicio, 4);
+		int tamanho = this.dados.getInt((int) inicio);
+		if (tamanho < 0 || inicio + 4 + tamanho > this.inicioListas) {
+			throw corrompido("Tamanho invalido: " + tamanho);
+		}
+		this.confere(inicio + 4, tamanho);
+		byte[] bytes = new byte[tamanho];
+		ByteBuffer leitura = this.dados.duplicate();
+		leitura.position((int) inicio + 4);
+		leitura.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Metodo auxiliar que cria a excecao lancada quando um registro lido sob
+	 * demanda esta corrompido.
+	 */
+	private static UncheckedIOException corrompido(String mensagem) {
+		return new UncheckedIOException(new StreamCorruptedException(mensagem));
+	}
+
+	/**
+	 * Tabela de textos em construcao, onde cada texto diferente e gravado uma
+	 * unica vez.
+	 */
+	private static final class TabelaTextos {
+
+		private final Map<String, Integer> posicoes = new HashMap<>();
+
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+		private final DataOutputStream saida = new DataOutputStream(this.bytes);
+
+		private int posicao(String texto) throws IOException {
+			if (texto == null) {
+				return SEM_TEXTO;
+			}
+			Integer posicao = this.posicoes.get(texto);
+			if (posicao == null) {
+				posicao = this.bytes.size();
+				byte[] codificado = texto.getBytes(StandardCharsets.UTF_8);
+				this.saida.writeInt(codificado.length);
+				this.saida.write(codificado);
+				this.posicoes.put(texto, posicao);
+			}
+			return posicao;
+		}
+
+		private int tamanho() {
+			return this.bytes.size();
+		}
+
+		private void escreve(DataOutputStream destino) throws IOException {
+			this.bytes.writeTo(destino);
+		}
+	}
+
+	/**
+	 * Mapa, que nao pode ser alterado, dos produtos cadastrados no catalogo.
+	 */
+	private final class ProdutosMapeados extends AbstractMap<Integer, Item> {
+
+		@Override
+		public boolean containsKey(Object chave) {
+			return chave instanceof Integer && posicaoDoId((Integer) chave) >= 0;
+		}
+
+		@Override
+		public Item get(Object chave) {
+			if (!(chave instanceof Integer)) {
+				return null;
+			}
+			int posicao = posicaoDoId((Integer) chave);
+			return posicao < 0 ? null : getItem(posicao);
+		}
+
+		@Override
+		public int size() {
+			return quantidadeCadastrados;
+		}
+
+		@Override
+		public Set<Map.Entry<Integer, Item>> entrySet() {
+			return new AbstractSet<Map.Entry<Integer, Item>>() {
+				@Override
+				public Iterator<Map.Entry<Integer, Item>> iterator() {
+					return new Iterator<Map.Entry<Integer, Item>>() {
+
+						private int posicao;
+
+						@Override
+						public boolean hasNext() {
+							return this.posicao < quantidadeCadastrados;
+						}
+
+						@Override
+						public Map.Entry<Integer, Item> next() {
+							if (!this.hasNext()) {
+								throw new NoSuchElementException();
+							}
+							Item item = getItem(this.posicao++);
+							return new AbstractMap.SimpleImmutableEntry<>(item.getId(), item);
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					return quantidadeCadastrados;
+				}
+			};
+		}
+	}
+
+}
@@ -0,0 +1,925 @@
+package com.projeto.persistencia;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+import com.projeto.controller.SistemaController;
+
+/**
+ * Classe que representa o diario do sistema: um arquivo onde cada operacao que
+ * altera o sistema e acrescentada, depois de aplicada e antes de a chamada
+ * retornar. Assim os dados sobrevivem a uma queda do programa sem que o sistema
+ * inteiro seja gravado a cada alteracao.
+ *
+ * Cada diario pertence a uma geracao, iniciada sobre um arquivo de dados (ou
+ * sobre um sistema novo) e identificada por um numero aleatorio. Os registros
+ * de uma geracao sao numerados em sequencia. Quando o sistema e gravado, o
+ * arquivo de dados guarda a geracao e o numero do ultimo registro incluido
+ * nele, e o diario passa a comecar depois desse registro. Na recuperacao, o
+ * sistema e carregado e apenas os registros posteriores sao reaplicados. Como
+ * o arquivo de dados e gravado antes de o diario ser encurtado, uma queda entre
+ * as duas etapas nao perde nenhuma operacao. Cada registro guarda o seu tamanho
+ * e o seu CRC32, de forma que um registro gravado pela metade e descartado.
+ *
+ * As operacoes sao aplicadas e registradas uma de cada vez, na mesma ordem em
+ * que serao reaplicadas. A reaplicacao so reproduz o sistema se cada registro
+ * tiver sido aplicado sobre o estado deixado pelo anterior: os codigos dos
+ * itens sao sequenciais e as operacoes sobre uma mesma lista nao comutam. Por
+ * isso, com o diario ativo, as alteracoes do sistema sao serializadas pela
+ * trava de ordem e deixam de ser concorrentes entre si; apenas as consultas
+ * continuam em paralelo com elas. A gravacao no disco fica fora dessa trava e
+ * e feita em grupo: a primeira thread que precisa esperar grava e sincroniza
+ * com o disco todos os registros pendentes, inclusive os das outras threads,
+ * que so precisam aguardar.
+ *
+ * Com a compactacao ativa, o sistema e gravado em segundo plano a cada
+ * quantidade de registros. As operacoes ficam paradas apenas enquanto o
+ * momento do {@link RetratoSistema} e marcado, em tempo constante; a copia dos
+ * itens e das listas e a gravacao do arquivo de dados nao bloqueiam nenhuma
+ * chamada, e as consultas nunca esperam.
+ */
+public class Diario implements Closeable {
+
+	/**
+	 * Propriedade do sistema que ativa o diario quando vale "true".
+	 */
+	public static final String PROPRIEDADE = "listapramim.diario";
+
+	/**
+	 * Propriedade do sistema com a quantidade de registros entre duas gravacoes
+	 * do sistema em segundo plano.
+	 */
+	public static final String PROPRIEDADE_COMPACTACAO = "listapramim.compactacao";
+
+	/**
+	 * Quantidade padrao de registros entre duas gravacoes do sistema em segundo
+	 * plano.
+	 */
+	public static final int LIMITE_COMPACTACAO_PADRAO = 10000;
+
+	/**
+	 * Base dos diarios iniciados em um sistema que nao foi carregado de um
+	 * arquivo.
+	 */
+	public static final long SISTEMA_NOVO = -1;
+
+	/**
+	 * A assinatura gravada no inicio do diario.
+	 */
+	private static final int ASSINATURA = 0x4C504D4A;
+
+	/**
+	 * A versao do cabecalho do diario.
+	 */
+	private static final int VERSAO = 1;
+
+	/**
+	 * O tamanho em bytes do cabecalho: assinatura, versao, geracao, base e numero
+	 * do primeiro registro.
+	 */
+	private static final int TAMANHO_CABECALHO = 29;
+
+	/**
+	 * Campos do cabecalho de um diario gravado.
+	 */
+	private static final class Cabecalho {
+
+		private final long geracao;
+
+		private final long base;
+
+		/**
+		 * O numero do registro anterior ao primeiro registro do arquivo.
+		 */
+		private final long primeira;
+
+		private Cabecalho(long geracao, long base, long primeira) {
+			this.geracao = geracao;
+			this.base = base;
+			this.primeira = primeira;
+		}
+	}
+
+	private final File arquivo;
+
+	/**
+	 * Trava que mantem a ordem entre a aplicacao e o registro das operacoes.
+	 */
+	private final ReentrantLock ordem;
+
+	/**
+	 * Trava obtida durante toda a gravacao do sistema, para que duas gravacoes nao
+	 * sejam feitas ao mesmo tempo.
+	 */
+	private final ReentrantLock gravacaoSistema;
+
+	/**
+	 * Monitor que protege os registros pendentes e o estado da gravacao.
+	 */
+	private final Object monitor;
+
+	/**
+	 * O sistema cujas operacoes sao registradas.
+	 */
+	private SistemaController sistema;
+
+	private FileChannel canal;
+
+	/**
+	 * A geracao, a base e o numero do registro anterior ao primeiro registro do
+	 * arquivo atual.
+	 */
+	private long geracao;
+
+	private long base;
+
+	private long primeira;
+
+	/**
+	 * A quantidade de bytes ja gravados no arquivo e a quantidade que o arquivo
+	 * tera quando os registros pendentes e em gravacao forem gravados.
+	 */
+	private long bytesGravados;
+
+	private long bytesRegistrados;
+
+	/**
+	 * Os registros ainda nao gravados no disco.
+	 */
+	private ByteArrayOutputStream pendentes;
+
+	/**
+	 * A quantidade de registros feitos e a quantidade ja sincronizada com o disco,
+	 * contados desde a criacao do diario.
+	 */
+	private long registrados;
+
+	private long duraveis;
+
+	/**
+	 * A diferenca entre a contagem de registros em memoria e o numero dos
+	 * registros no arquivo.
+	 */
+	private long deslocamento;
+
+	/**
+	 * Indica se alguma thread esta gravando os registros pendentes.
+	 */
+	private boolean gravando;
+
+	/**
+	 * O erro da ultima gravacao, que impede novas operacoes ate o diario ser
+	 * reiniciado ou o sistema ser gravado.
+	 */
+	private IOException falha;
+
+	/**
+	 * O erro da ultima recuperacao do sistema. Enquanto ele existir o diario nao
+	 * e reiniciado nem recebe operacoes, para que o arquivo que nao pode ser
+	 * recuperado nao seja sobrescrito.
+	 */
+	private IOException falhaRecuperacao;
+
+	/**
+	 * O formato e o arquivo usados na compactacao, e a quantidade de registros
+	 * entre duas compactacoes. Um limite zero desativa a compactacao.
+	 */
+	private volatile FormatoArmazenamento formatoCompactacao;
+
+	private volatile File dadosCompactacao;
+
+	private volatile long limiteCompactacao;
+
+	/**
+	 * A contagem de registros na ultima gravacao do sistema.
+	 */
+	private long ultimaGravacao;
+
+	private final AtomicBoolean compactando;
+
+	/**
+	 * O erro da ultima compactacao em segundo plano, lancado pela proxima
+	 * gravacao do sistema ou pelo fechamento do diario. Uma compactacao que
+	 * termina com sucesso descarta o erro da anterior. Guardado com o monitor de
+	 * compactando.
+	 */
+	private IOException falhaCompactacao;
+
+	private ExecutorService executor;
+
+	/**
+	 * Metodo responsavel por criar um diario. O arquivo so e aberto quando o
+	 * sistema e recuperado ou quando a primeira operacao e executada.
+	 * 
+	 * @param arquivo
+	 *            : O arquivo do diario.
+	 */
+	public Diario(File arquivo) {
+		this.arquivo = arquivo;
+		this.ordem = new ReentrantLock();
+		this.gravacaoSistema = new ReentrantLock();
+		this.monitor = new Object();
+		this.pendentes = new ByteArrayOutputStream();
+		this.compactando = new AtomicBoolean();
+	}
+
+	/**
+	 * Metodo responsavel por ativar a gravacao do sistema em segundo plano a cada
+	 * quantidade de registros.
+	 * 
+	 * @param formato
+	 *            : O formato do arquivo de dados.
+	 * @param dados
+	 *            : O arquivo de dados.
+	 * @param limiteRegistros
+	 *            : A quantidade de registros entre duas gravacoes. Zero desativa
+	 *            a gravacao em segundo plano.
+	 */
+	public void ativaCompactacao(FormatoArmazenamento formato, File dados, int limiteRegistros) {
+		this.formatoCompactacao = formato;
+		this.dadosCompactacao = dados;
+		this.limiteCompactacao = Math.max(0, limiteRegistros);
+	}
+
+	/**
+	 * Metodo responsavel por aplicar uma alteracao ao sistema e registra-la no
+	 * diario. A chamada so retorna depois que o registro esta no disco. Caso a
+	 * alteracao lance uma excecao, nada e registrado.
+	 * 
+	 * @param sistema
+	 *            : O sistema que sera alterado.
+	 * @param alteracao
+	 *            : A alteracao aplicada.
+	 * @return O valor retornado pelo sistema.
+	 * @throws UncheckedIOException
+	 *             : caso o diario nao possa ser gravado.
+	 */
+	public <R> R executa(SistemaController sistema, Alteracao<R> alteracao) {
+		byte[] registro = codifica(alteracao);
+		R resultado;
+		long sequencia;
+		this.ordem.lock();
+		try {
+			if (this.canal == null) {
+				this.iniciaSistemaNovo();
+			}
+			synchronized (this.monitor) {
+				if (this.falha != null) {
+					throw new UncheckedIOException(this.falha);
+				}
+			}
+			this.sistema = sistema;
+			resultado = alteracao.aplica(sistema);
+			sequencia = this.registra(registro);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			this.ordem.unlock();
+		}
+		this.aguarda(sequencia);
+		this.verificaCompactacao();
+		return resultado;
+	}
+
+	/**
+	 * Metodo responsavel por gravar o sistema em um arquivo de dados e encurtar o
+	 * diario, que passa a ter apenas as operacoes feitas depois da copia do
+	 * sistema. As operacoes ficam paradas apenas enquanto o momento da copia e
+	 * marcado; a copia e feita depois, junto com as novas operacoes.
+	 * 
+	 * @param sistema
+	 *            : O sistema que sera gravado, ou null para gravar o sistema da
+	 *            ultima operacao registrada.
+	 * @param formato
+	 *            : O formato do arquivo de dados.
+	 * @param dados
+	 *            : O arquivo de dados.
+	 * @throws IOException
+	 *             : caso ocorra um erro na gravacao, ou caso a ultima compactacao
+	 *             em segundo plano tenha falhado. Nesse caso o sistema nao e
+	 *             gravado e o erro so e lancado uma vez.
+	 */
+	public void salva(SistemaController sistema, FormatoArmazenamento formato, File dados) throws IOException {
+		this.lancaFalhaCompactacao();
+		this.gravaSistema(sistema, formato, dados);
+	}
+
+	/**
+	 * Metodo auxiliar que grava o sistema e encurta o diario, como descrito em
+	 * {@link #salva(SistemaController, FormatoArmazenamento, File)}.
+	 */
+	private void gravaSistema(SistemaController sistema, FormatoArmazenamento formato, File dados)
+			throws IOException {
+		this.gravacaoSistema.lock();
+		try {
+			RetratoSistema.Captura captura;
+			long geracaoRetrato;
+			long sequencia;
+			long sequenciaArquivo;
+			long fim;
+			this.ordem.lock();
+			try {
+				if (sistema == null) {
+					sistema = this.sistema;
+					if (sistema == null || this.canal == null) {
+						return;
+					}
+				}
+				if (this.canal == null) {
+					this.iniciaSistemaNovo();
+				}
+				this.sistema = sistema;
+				captura = sistema.iniciaRetrato();
+				synchronized (this.monitor) {
+					geracaoRetrato = this.geracao;
+					sequencia = this.registrados;
+					sequenciaArquivo = sequencia - this.deslocamento;
+					fim = this.bytesRegistrados;
+				}
+			} finally {
+				this.ordem.unlock();
+			}
+
+			RetratoSistema retrato = captura.conclui();
+			ArquivoDados.grava(retrato, formato, dados, geracaoRetrato, sequenciaArquivo);
+
+			this.ordem.lock();
+			try {
+				if (this.geracao == geracaoRetrato) {
+					this.descartaAte(sequencia, fim);
+				}
+			} finally {
+				this.ordem.unlock();
+			}
+		} finally {
+			this.gravacaoSistema.unlock();
+		}
+	}
+
+	/**
+	 * Metodo responsavel por recuperar o sistema: carrega o arquivo de dados e
+	 * reaplica as operacoes do diario que nao estao nele. Um diario iniciado em
+	 * um sistema novo, e que nunca gravou o sistema, e reaplicado sobre um
+	 * sistema vazio. Depois da recuperacao, as novas operacoes sao acrescentadas
+	 * ao diario.
+	 * 
+	 * Caso a recuperacao falhe, o diario passa a recusar operacoes e gravacoes
+	 * do sistema ate que uma nova recuperacao tenha sucesso, e o arquivo do
+	 * diario e mantido como estava.
+	 * 
+	 * @param dados
+	 *            : O arquivo de dados.
+	 * @return O sistema recuperado, ou null caso nao exista arquivo de dados nem
+	 *         diario de um sistema novo.
+	 * @throws IOException
+	 *             : caso ocorra um erro na leitura ou na reaplicacao.
+	 */
+	public SistemaController recupera(File dados) throws IOException {
+		this.gravacaoSistema.lock();
+		this.ordem.lock();
+		try {
+			SistemaController recuperado = this.recuperaSistema(dados);
+			this.falhaRecuperacao = null;
+			return recuperado;
+		} catch (IOException e) {
+			this.falhaRecuperacao = e;
+			throw e;
+		} catch (RuntimeException e) {
+			this.falhaRecuperacao = new IOException("O sistema nao pode ser recuperado.", e);
+			throw e;
+		} finally {
+			this.ordem.unlock();
+			this.gravacaoSistema.unlock();
+		}
+	}
+
+	/**
+	 * Metodo responsavel por fechar o arquivo do diario, esperando o fim de uma
+	 * gravacao do sistema em andamento.
+	 * 
+	 * @throws IOException
+	 *             : caso ocorra um erro ao fechar o arquivo, ou caso a ultima
+	 *             compactacao em segundo plano tenha falhado.
+	 */
+	@Override
+	public void close() throws IOException {
+		ExecutorService tarefas;
+		synchronized (this.compactando) {
+			tarefas = this.executor;
+			this.executor = null;
+			this.limiteCompactacao = 0;
+		}
+		if (tarefas != null) {
+			tarefas.shutdown();
+			try {
+				tarefas.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		this.gravacaoSistema.lock();
+		this.ordem.lock();
+		try {
+			synchronized (this.monitor) {
+				this.esperaGravacao();
+				if (this.canal != null) {
+					this.canal.close();
+					this.canal = null;
+				}
+			}
+		} finally {
+			this.ordem.unlock();
+			this.gravacaoSistema.unlock();
+		}
+		this.lancaFalhaCompactacao();
+	}
+
+	/**
+	 * Metodo auxiliar que lanca, uma unica vez, o erro da ultima compactacao em
+	 * segundo plano.
+	 */
+	private void lancaFalhaCompactacao() throws IOException {
+		IOException erro;
+		synchronized (this.compactando) {
+			erro = this.falhaCompactacao;
+			this.falhaCompactacao = null;
+		}
+		if (erro != null) {
+			throw erro;
+		}
+	}
+
+	/**
+	 * Metodo auxiliar que carrega o arquivo de dados e reaplica o diario. Deve ser
+	 * chamado com a trava de ordem e a de gravacao do sistema.
+	 */
+	private SistemaController recuperaSistema(File dados) throws IOException {
+		Cabecalho cabecalho = this.leCabecalho();
+		Instantaneo instantaneo = null;
+		if (dados.exists()) {
+			instantaneo = ArquivoDados.carregaInstantaneo(dados);
+		}
+
+		SistemaController recuperado;
+		long aPartirDe = 0;
+		if (cabecalho != null && instantaneo != null && cabecalho.geracao != 0
+				&& instantaneo.getGeracao() == cabecalho.geracao) {
+			recuperado = instantaneo.getSistema();
+			aPartirDe = instantaneo.getSequencia();
+		} else if (cabecalho != null && cabecalho.base == SISTEMA_NOVO) {
+			recuperado = new SistemaController();
+		} else if (cabecalho != null && instantaneo != null && cabecalho.base == instantaneo.getIdentificador()) {
+			recuperado = instantaneo.getSistema();
+		} else if (instantaneo != null) {
+			this.reinicia(instantaneo.getIdentificador());
+			this.sistema = instantaneo.getSistema();
+			return this.sistema;
+		} else {
+			return null;
+		}
+
+		if (cabecalho.primeira > aPartirDe) {
+			throw new StreamCorruptedException("O diario nao possui as operacoes posteriores ao arquivo de dados.");
+		}
+		this.reaplica(recuperado, cabecalho, aPartirDe);
+		this.sistema = recuperado;
+		return recuperado;
+	}
+
+	/**
+	 * Metodo auxiliar que inicia a gravacao do sistema em segundo plano quando a
+	 * quantidade de registros desde a ultima gravacao atinge o limite.
+	 */
+	private void verificaCompactacao() {
+		long limite = this.limiteCompactacao;
+		if (limite <= 0) {
+			return;
+		}
+		synchronized (this.monitor) {
+			if (this.registrados - this.ultimaGravacao < limite) {
+				return;
+			}
+		}
+		if (!this.compactando.compareAndSet(false, true)) {
+			return;
+		}
+		synchronized (this.compactando) {
+			if (this.limiteCompactacao <= 0) {
+				this.compactando.set(false);
+				return;
+			}
+			if (this.executor == null) {
+				this.executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable tarefa) {
+						Thread thread = new Thread(tarefa, "listapramim-compactacao");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+			}
+			this.executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					IOException erro = null;
+					try {
+						gravaSistema(null, formatoCompactacao, dadosCompactacao);
+					} catch (IOException e) {
+						erro = e;
+					} finally {
+						synchronized (compactando) {
+							falhaCompactacao = erro;
+						}
+						compactando.set(false);
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * Metodo auxiliar que codifica o registro de uma alteracao: o tamanho do
+	 * corpo, o corpo, com o codigo da operacao e os argumentos, e o CRC32 do
+	 * corpo. A codificacao e feita antes de a trava de ordem ser tomada.
+	 */
+	private static byte[] codifica(Alteracao<?> alteracao) {
+		try {
+			ByteArrayOutputStream corpo = new ByteArrayOutputStream();
+			DataOutputStream dados = new DataOutputStream(corpo);
+			dados.writeByte(alteracao.getOperacao().getCodigo());
+			alteracao.escreveArgumentos(dados);
+			byte[] bytes = corpo.toByteArray();
+			CRC32 crc = new CRC32();
+			crc.update(bytes);
+
+			ByteArrayOutputStream registro = new ByteArrayOutputStream(bytes.length + 8);
+			DataOutputStream saida = new DataOutputStream(registro);
+			saida.writeInt(bytes.length);
+			saida.write(bytes);
+			saida.writeInt((int) crc.getValue());
+			return registro.toByteArray();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Metodo auxiliar que acrescenta um registro aos pendentes e retorna o seu
+	 * numero de sequencia. Deve ser chamado com a trava de ordem.
+	 */
+	private long registra(byte[] registro) {
+		synchronized (this.monitor) {
+			this.pendentes.write(registro, 0, registro.length);
+			this.bytesRegistrados += registro.length;
+			return ++this.registrados;
+		}
+	}
+
+	/**
+	 * Metodo auxiliar que espera ate que um registro esteja no disco. Se ninguem
+	 * estiver gravando, a thread grava todos os registros pendentes de uma vez.
+	 */
+	private void aguarda(long sequencia) {
+		while (true) {
+			byte[] lote;
+			long ate;
+			FileChannel destino;
+			synchronized (this.monitor) {
+				boolean interrompida = false;
+				while (this.gravando && this.duraveis < sequencia && this.falha == null) {
+					try {
+						this.monitor.wait();
+					} catch (InterruptedException e) {
+						interrompida = true;
+					}
+				}
+				if (interrompida) {
+					Thread.currentThread().interrupt();
+				}
+				if (this.duraveis >= sequencia) {
+					return;
+				}
+				if (this.falha != null) {
+					throw new UncheckedIOException(this.falha);
+				}
+				this.gravando = true;
+				lote = this.pendentes.toByteArray();
+				this.pendentes.reset();
+				ate = this.registrados;
+				destino = this.canal;
+			}
+
+			IOException erro = null;
+			try {
+				ByteBuffer buffer = ByteBuffer.wrap(lote);
+				while (buffer.hasRemaining()) {
+					destino.write(buffer);
+				}
+				destino.force(false);
+			} catch (IOException e) {
+				erro = e;
+			}
+
+			synchronized (this.monitor) {
+				this.gravando = false;
+				if (erro == null) {
+					this.duraveis = ate;
+					this.bytesGravados += lote.length;
+				} else {
+					// Os registros voltam para os pendentes, para que a proxima
+					// gravacao do sistema possa descarta-los ou copia-los.
+					ByteArrayOutputStream restantes = new ByteArrayOutputStream(lote.length + this.pendentes.size());
+					restantes.write(lote, 0, lote.length);
+					restantes.write(this.pendentes.toByteArray(), 0, this.pendentes.size());
+					this.pendentes = restantes;
+					this.falha = erro;
+				}
+				this.monitor.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Metodo auxiliar que espera o fim de uma gravacao em andamento. Deve ser
+	 * chamado com o monitor.
+	 */
+	private void esperaGravacao() {
+		boolean interrompida = false;
+		while (this.gravando) {
+			try {
+				this.monitor.wait();
+			} catch (InterruptedException e) {
+				interrompida = true;
+			}
+		}
+		if (interrompida) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Metodo auxiliar que inicia o diario de um sistema novo, quando a primeira
+	 * operacao e executada sem que o sistema tenha sido recuperado. O diario
+	 * existente so e descartado caso o seu cabecalho possa ser lido e ele nao
+	 * possua nenhum registro, e nunca depois de uma recuperacao que falhou: um
+	 * diario com registros guarda operacoes que nao estao no arquivo de dados e
+	 * precisa ser recuperado antes. Deve ser chamado com a trava de ordem.
+	 */
+	private void iniciaSistemaNovo() throws IOException {
+		if (this.falhaRecuperacao != null) {
+			throw new IOException("O diario nao pode ser usado porque o sistema nao foi recuperado.",
+					this.falhaRecuperacao);
+		}
+		Cabecalho cabecalho = this.leCabecalho();
+		if (cabecalho != null && this.arquivo.length() > TAMANHO_CABECALHO) {
+			throw new IOException("O diario possui operacoes que nao foram recuperadas: " + this.arquivo);
+		}
+		this.reinicia(SISTEMA_NOVO);
+	}
+
+	/**
+	 * Metodo auxiliar que inicia uma nova geracao do diario sobre um arquivo de
+	 * dados. Os registros pendentes sao descartados, pois fazem parte do sistema
+	 * que sera substituido ou do arquivo de dados. Deve ser chamado com a trava de
+	 * ordem.
+	 */
+	private void reinicia(long novaBase) throws IOException {
+		synchronized (this.monitor) {
+			this.esperaGravacao();
+			if (this.canal != null) {
+				this.canal.close();
+				this.canal = null;
+			}
+			this.pendentes.reset();
+			this.duraveis = this.registrados;
+			this.falha = null;
+
+			long novaGeracao = 0;
+			while (novaGeracao == 0) {
+				novaGeracao = ThreadLocalRandom.current().nextLong();
+			}
+			FileChannel novo = FileChannel.open(this.arquivo.toPath(), StandardOpenOption.CREATE,
+					StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+			try {
+				escreveCabecalho(novo, novaGeracao, novaBase, 0);
+				novo.force(true);
+			} catch (IOException e) {
+				novo.close();
+				throw e;
+			}
+			this.canal = novo;
+			this.geracao = novaGeracao;
+			this.base = novaBase;
+			this.primeira = 0;
+			this.deslocamento = this.registrados;
+			this.bytesGravados = TAMANHO_CABECALHO;
+			this.bytesRegistrados = TAMANHO_CABECALHO;
+			this.ultimaGravacao = this.registrados;
+			this.monitor.notifyAll();
+		}
+	}
+
+	/**
+	 * Metodo auxiliar que retira do diario os registros ate uma posicao, ja
+	 * incluidos no arquivo de dados. O restante do diario e copiado para um novo
+	 * arquivo, que substitui o anterior. Deve ser chamado com a trava de ordem.
+	 * 
+	 * @param sequencia
+	 *            : A contagem de registros incluidos no arquivo de dados.
+	 * @param fim
+	 *            : A posicao, no diario, do fim do ultimo registro incluido.
+	 */
+	private void descartaAte(long sequencia, long fim) throws IOException {
+		synchronized (this.monitor) {
+			this.esperaGravacao();
+			long novaPrimeira = sequencia - this.deslocamento;
+			File temporario = new File(this.arquivo.getAbsoluteFile().getParentFile(),
+					this.arquivo.getName() + ".tmp");
+			long copiados = 0;
+			try (FileChannel novo = FileChannel.open(temporario.toPath(), StandardOpenOption.CREATE,
+					StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+				escreveCabecalho(novo, this.geracao, this.base, novaPrimeira);
+				while (fim + copiados < this.bytesGravados) {
+					copiados += this.canal.transferTo(fim + copiados, this.bytesGravados - fim - copiados, novo);
+				}
+				novo.force(true);
+			}
+
+			if (fim > this.bytesGravados) {
+				byte[] restantes = this.pendentes.toByteArray();
+				int descartados = (int) (fim - this.bytesGravados);
+				this.pendentes.reset();
+				this.pendentes.write(restantes, descartados, restantes.length - descartados);
+			}
+			this.canal.close();
+			this.canal = null;
+			this.substitui(temporario);
+			this.canal = FileChannel.open(this.arquivo.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+			this.canal.position(this.canal.size());
+			this.bytesGravados = TAMANHO_CABECALHO + copiados;
+			this.bytesRegistrados = this.bytesGravados + this.pendentes.size();
+			this.primeira = novaPrimeira;
+			this.duraveis = Math.max(this.duraveis, sequencia);
+			this.falha = null;
+			this.ultimaGravacao = sequencia;
+			this.monitor.notifyAll();
+		}
+	}
+
+	/**
+	 * Metodo auxiliar que substitui o arquivo do diario por outro arquivo.
+	 */
+	private void substitui(File temporario) throws IOException {
+		try {
+			Files.move(temporario.toPath(), this.arquivo.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temporario.toPath(), this.arquivo.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Metodo auxiliar que grava o cabecalho do diario no inicio de um arquivo.
+	 */
+	private static void escreveCabecalho(FileChannel destino, long geracao, long base, long primeira)
+			throws IOException {
+		ByteBuffer cabecalho = ByteBuffer.allocate(TAMANHO_CABECALHO);
+		cabecalho.putInt(ASSINATURA).put((byte) VERSAO).putLong(geracao).putLong(base).putLong(primeira).flip();
+		while (cabecalho.hasRemaining()) {
+			destino.write(cabecalho);
+		}
+	}
+
+	/**
+	 * Metodo auxiliar que le o cabecalho do diario gravado.
+	 * 
+	 * @return O cabecalho, ou null caso nao exista diario ou o arquivo seja menor
+	 *         que um cabecalho, o que so acontece quando a criacao do diario foi
+	 *         interrompida antes de qualquer registro.
+	 * @throws StreamCorruptedException
+	 *             : caso o arquivo nao seja um diario ou seja de uma versao
+	 *             desconhecida.
+	 */
+	private Cabecalho leCabecalho() throws IOException {
+		if (!this.arquivo.exists() || this.arquivo.length() < TAMANHO_CABECALHO) {
+			return null;
+		}
+		try (DataInputStream entrada = new DataInputStream(new FileInputStream(this.arquivo))) {
+			if (entrada.readInt() != ASSINATURA) {
+				throw new StreamCorruptedException("O arquivo nao e um diario do sistema: " + this.arquivo);
+			}
+			int versao = entrada.readUnsignedByte();
+			if (versao != VERSAO) {
+				throw new StreamCorruptedException("Versao desconhecida do diario: " + versao);
+			}
+			return new Cabecalho(entrada.readLong(), entrada.readLong(), entrada.readLong());
+		}
+	}
+
+	/**
+	 * Metodo auxiliar que reaplica ao sistema os registros validos do diario
+	 * posteriores a um registro, descarta o que vier depois dos registros validos
+	 * e abre o diario para novos registros. Deve ser chamado com a trava de ordem.
+	 */
+	private void reaplica(SistemaController recuperado, Cabecalho cabecalho, long aPartirDe) throws IOException {
+		long tamanho = this.arquivo.length();
+		long valido = TAMANHO_CABECALHO;
+		long numero = cabecalho.primeira;
+		try (DataInputStream entrada = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(this.arquivo), 1 << 16))) {
+			entrada.skipBytes(TAMANHO_CABECALHO);
+			while (true) {
+				byte[] corpo;
+				int crc;
+				try {
+					int tamanhoCorpo = entrada.readInt();
+					if (tamanhoCorpo <= 0 || tamanhoCorpo > tamanho - valido - 8) {
+						break;
+					}
+					corpo = new byte[tamanhoCorpo];
+					entrada.readFully(corpo);
+					crc = entrada.readInt();
+				} catch (EOFException e) {
+					break;
+				}
+				CRC32 verificacao = new CRC32();
+				verificacao.update(corpo);
+				if ((int) verificacao.getValue() != crc) {
+					break;
+				}
+				numero++;
+				if (numero > aPartirDe) {
+					this.aplicaRegistro(recuperado, corpo);
+				}
+				valido += corpo.length + 8;
+			}
+		}
+
+		synchronized (this.monitor) {
+			this.esperaGravacao();
+			if (this.canal != null) {
+				this.canal.close();
+				this.canal = null;
+			}
+			this.pendentes.reset();
+			this.duraveis = this.registrados;
+			this.falha = null;
+
+			this.canal = FileChannel.open(this.arquivo.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+			this.canal.truncate(valido);
+			this.canal.position(valido);
+			this.canal.force(true);
+			this.geracao = cabecalho.geracao;
+			this.base = cabecalho.base;
+			this.primeira = cabecalho.primeira;
+			this.deslocamento = this.registrados - numero;
+			this.bytesGravados = valido;
+			this.bytesRegistrados = valido;
+			this.ultimaGravacao = this.registrados - (numero - aPartirDe);
+		}
+	}
+
+	/**
+	 * Metodo auxiliar que decodifica um registro e aplica a sua alteracao ao
+	 * sistema.
+	 */
+	private void aplicaRegistro(SistemaController sistema, byte[] corpo) throws IOException {
+		DataInputStream dados = new DataInputStream(new ByteArrayInputStream(corpo));
+		int codigo = dados.readUnsignedByte();
+		Operacao operacao = Operacao.doCodigo(codigo);
+		if (operacao == null) {
+			throw new StreamCorruptedException("Operacao desconhecida no diario: " + codigo);
+		}
+		Alteracao<?> alteracao = operacao.le(dados);
+		try {
+			alteracao.aplica(sistema);
+		} catch (RuntimeException e) {
+			throw new IOException("Operacao do diario nao pode ser reaplicada: " + operacao, e);
+		}
+	}
+
+}
@@ -0,0 +1,130 @@
+package com.projeto.persistencia;
+
+/**
+ * Enum que representa os formatos em que os dados do sistema podem ser
+ * gravados. Cada formato possui um codigo, gravado no cabecalho do arquivo, e
+ * um nome, usado para escolher o formato na inicializacao do sistema.
+ */
+public enum FormatoArmazenamento {
+
+	/**
+	 * Formato que grava o sistema com a serializacao do Java.
+	 */
+	SERIALIZACAO(1, "serializacao") {
+		@Override
+		public Armazenamento getArmazenamento() {
+			return new ArmazenamentoSerializado();
+		}
+	},
+
+	/**
+	 * Formato binario compacto, que grava apenas os campos dos itens e das listas.
+	 */
+	BINARIO(2, "binario") {
+		@Override
+		public Armazenamento getArmazenamento() {
+			return new ArmazenamentoBinario();
+		}
+	},
+
+	/**
+	 * Formato em colunas de tamanho fixo, que e mapeado em memoria na leitura e
+	 * cujos itens so sao criados quando consultados.
+	 */
+	MAPEADO(3, "mapeado") {
+		@Override
+		public Armazenamento getArmazenamento() {
+			return new ArmazenamentoMapeado();
+		}
+	};
+
+	/**
+	 * Propriedade do sistema que define o formato usado quando nenhum e
+	 * informado.
+	 */
+	public static final String PROPRIEDADE = "listapramim.formato";
+
+	private final int codigo;
+
+	private final String nome;
+
+	private FormatoArmazenamento(int codigo, String nome) {
+		this.codigo = codigo;
+		this.nome = nome;
+	}
+
+	/**
+	 * Metodo responsavel por criar o armazenamento que grava e le o formato.
+	 * 
+	 * @return O armazenamento do formato.
+	 */
+	public abstract Armazenamento getArmazenamento();
+
+	/**
+	 * Metodo responsavel por retornar o codigo do formato gravado no arquivo.
+	 * 
+	 * @return Um inteiro com o codigo.
+	 */
+	public int getCodigo() {
+		return this.codigo;
+	}
+
+	/**
+	 * Metodo responsavel por retornar o nome do formato.
+	 * 
+	 * @return Uma String com o nome.
+	 */
+	public String get() {
+		return this.nome;
+	}
+
+	/**
+	 * Metodo responsavel por converter o nome de um formato no formato
+	 * correspondente.
+	 * 
+	 * @param nome
+	 *            : O nome do formato.
+	 * @return O formato com o nome informado.
+	 * @throws IllegalArgumentException
+	 *             : caso nao exista formato com o nome.
+	 */
+	public static FormatoArmazenamento converte(String nome) {
+		for (FormatoArmazenamento formato : values()) {
+			if (formato.nome.equalsIgnoreCase(nome.trim())) {
+				return formato;
+			}
+		}
+		throw new IllegalArgumentException("Formato de armazenamento inexistente: " + nome);
+	}
+
+	/**
+	 * Metodo responsavel por retornar o formato com um codigo.
+	 * 
+	 * @param codigo
+	 *            : O codigo gravado no arquivo.
+	 * @return O formato com o codigo, ou null caso nao exista.
+	 */
+	public static FormatoArmazenamento doCodigo(int codigo) {
+		for (FormatoArmazenamento formato : values()) {
+			if (formato.codigo == codigo) {
+				return formato;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Metodo responsavel por retornar o formato padrao, definido pela propriedade
+	 * {@value #PROPRIEDADE}. Sem a propriedade, o padrao e a serializacao.
+	 * 
+	 * @return O formato padrao.
+	 */
+	public static FormatoArmazenamento padrao() {
+		String nome = System.getProperty(PROPRIEDADE);
+		if (nome == null || nome.trim().isEmpty()) {
+			return SERIALIZACAO;
+		}
+		return converte(nome);
+	}
+
+}
@@ -0,0 +1,77 @@
+package com.projeto.persistencia;
+
+import com.projeto.controller.SistemaController;
+
+/**
+ * Classe que representa o sistema carregado de um arquivo de dados, junto com o
+ * identificador do arquivo e a posicao do diario gravada nele. Eles sao usados
+ * pelo {@link Diario} para saber quais operacoes registradas ainda nao estao no
+ * arquivo.
+ */
+public final class Instantaneo {
+
+	private final SistemaController sistema;
+
+	private final long identificador;
+
+	private final long geracao;
+
+	private final long sequencia;
+
+	/**
+	 * Metodo responsavel por criar um instantaneo.
+	 * 
+	 * @param sistema
+	 *            : O sistema carregado.
+	 * @param identificador
+	 *            : O identificador do arquivo de onde o sistema foi carregado.
+	 * @param geracao
+	 *            : A geracao do diario que gravou o arquivo, ou zero.
+	 * @param sequencia
+	 *            : O numero do ultimo registro do diario incluido no arquivo.
+	 */
+	public Instantaneo(SistemaController sistema, long identificador, long geracao, long sequencia) {
+		this.sistema = sistema;
+		this.identificador = identificador;
+		this.geracao = geracao;
+		this.sequencia = sequencia;
+	}
+
+	/**
+	 * Metodo responsavel por retornar o sistema carregado.
+	 * 
+	 * @return O sistema.
+	 */
+	public SistemaController getSistema() {
+		return this.sistema;
+	}
+
+	/**
+	 * Metodo responsavel por retornar o identificador do arquivo.
+	 * 
+	 * @return Um long com o identificador.
+	 */
+	public long getIdentificador() {
+		return this.identificador;
+	}
+
+	/**
+	 * Metodo responsavel por retornar a geracao do diario que gravou o arquivo.
+	 * 
+	 * @return Um long com a geracao, ou zero.
+	 */
+	public long getGeracao() {
+		return this.geracao;
+	}
+
+	/**
+	 * Metodo responsavel por retornar o numero do ultimo registro do diario
+	 * incluido no arquivo.
+	 * 
+	 * @return Um long com o numero do registro.
+	 */
+	public long getSequencia() {
+		return this.sequencia;
+	}
+
+}
@@ -0,0 +1,198 @@
+package com.projeto.persistencia;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+
+/**
+ * Enum que representa as operacoes que alteram o sistema e que sao registradas
+ * no {@link Diario}. Cada operacao possui um codigo, gravado no registro, e sabe
+ * ler do diario a {@link Alteracao} correspondente, com os argumentos ja nos
+ * tipos esperados pelo sistema.
+ */
+public enum Operacao {
+
+	/**
+	 * Cadastro de um produto com quantidade fixa.
+	 */
+	ADICIONA_ITEM_POR_QTD(1) {
+		@Override
+		Alteracao<?> le(DataInputStream dados) throws IOException {
+			return Alteracao.AdicionaItemPorQtd.le(dados);
+		}
+	},
+
+	/**
+	 * Cadastro de um produto nao industrializado por quilo.
+	 */
+	ADICIONA_ITEM_POR_QUILO(2) {
+		@Override
+		Alteracao<?> le(DataInputStream dados) throws IOException {
+			return Alteracao.AdicionaItemPorQuilo.le(dados);
+		}
+	},
+
+	/**
+	 * Cadastro de um produto por unidade.
+	 */
+	ADICIONA_ITEM_POR_UNIDADE(3) {
+		@Override
+		Alteracao<?> le(DataInputStream dados) throws IOException {
+			return Alteracao.AdicionaItemPorUnidade.le(dados);
+		}
+	},
+
+	/**
+	 * Atualizacao de um atributo de um item.
+	 */
+	ATUALIZA_ITEM(4) {
+		@Override
+		Alteracao<?> le(DataInputStream dados) throws IOException {
+			return Alteracao.AtualizaItem.le(dados);
+		}
+	},
+
+	/**
+	 * Cadastro do preco de um item em um local de compra.
+	 */
+	ADICIONA_PRECO_ITEM(5) {
+		@Override
+		Alteracao<?> le(DataInputStream dados) throws IOException {
+			return Alteracao.AdicionaPrecoItem.le(dados);
+		}
+	},
+
+	/**
+	 * Remocao de um item.
+	 */
+	DELETA_ITEM(6) {
+		@Override
+		Alteracao<?> le(DataInputStream dados) throws IOException {
+			return Alteracao.DeletaItem.le(dados);
+		}
+	},
+
+	/**
+	 * Criacao de uma lista de compras.
+	 */
+	ADICIONA_LISTA_DE_COMPRAS(7) {
+		@Override
+		Alteracao<?> le(DataInputStream dados) throws IOException {
+			return Alteracao.AdicionaListaDeCompras.le(dados);
+		}
+	},
+
+	/**
+	 * Adicao de uma compra a uma lista de compras.
+	 */
+	ADICIONA_COMPRA_A_LISTA(8) {
+		@Override
+		Alteracao<?> le(DataInputStream dados) throws IOException {
+			return Alteracao.AdicionaCompraALista.le(dados);
+		}
+	},
+
+	/**
+	 * Finalizacao de uma lista de compras.
+	 */
+	FINALIZA_LISTA_DE_COMPRAS(9) {
+		@Override
+		Alteracao<?> le(DataInputStream dados) throws IOException {
+			return Alteracao.FinalizaListaDeCompras.le(dados);
+		}
+	},
+
+	/**
+	 * Atualizacao da quantidade de uma compra de uma lista de compras.
+	 */
+	ATUALIZA_COMPRA_DE_LISTA(10) {
+		@Override
+		Alteracao<?> le(DataInputStream dados) throws IOException {
+			return Alteracao.AtualizaCompraDeLista.le(dados);
+		}
+	},
+
+	/**
+	 * Remocao de uma compra de uma lista de compras.
+	 */
+	DELETA_COMPRA_DE_LISTA(11) {
+		@Override
+		Alteracao<?> le(DataInputStream dados) throws IOException {
+			return Alteracao.DeletaCompraDeLista.le(dados);
+		}
+	},
+
+	/**
+	 * Geracao de uma lista com as compras da ultima lista.
+	 */
+	GERA_AUTOMATICA_ULTIMA_LISTA(12) {
+		@Override
+		Alteracao<?> le(DataInputStream dados) throws IOException {
+			return Alteracao.GeraAutomaticaUltimaLista.le(dados);
+		}
+	},
+
+	/**
+	 * Geracao de uma lista com as compras da ultima lista que possui um item.
+	 */
+	GERA_AUTOMATICA_ITEM(13) {
+		@Override
+		Alteracao<?> le(DataInputStream dados) throws IOException {
+			return Alteracao.GeraAutomaticaItem.le(dados);
+		}
+	},
+
+	/**
+	 * Geracao de uma lista com os itens mais presentes nas listas.
+	 */
+	GERA_AUTOMATICA_ITENS_MAIS_PRESENTES(14) {
+		@Override
+		Alteracao<?> le(DataInputStream dados) throws IOException {
+			return Alteracao.GeraAutomaticaItensMaisPresentes.le(dados);
+		}
+	};
+
+	private final int codigo;
+
+	private Operacao(int codigo) {
+		this.codigo = codigo;
+	}
+
+	/**
+	 * Metodo responsavel por ler os argumentos de uma alteracao com esta
+	 * operacao, gravados logo apos o codigo.
+	 * 
+	 * @param dados
+	 *            : Os dados do registro.
+	 * @return A alteracao lida.
+	 * @throws IOException
+	 *             : caso a quantidade ou o tipo dos argumentos nao seja o da
+	 *             operacao.
+	 */
+	abstract Alteracao<?> le(DataInputStream dados) throws IOException;
+
+	/**
+	 * Metodo responsavel por retornar o codigo da operacao gravado no diario.
+	 * 
+	 * @return Um inteiro com o codigo.
+	 */
+	public int getCodigo() {
+		return this.codigo;
+	}
+
+	/**
+	 * Metodo responsavel por retornar a operacao com um codigo.
+	 * 
+	 * @param codigo
+	 *            : O codigo gravado no diario.
+	 * @return A operacao com o codigo, ou null caso nao exista.
+	 */
+	public static Operacao doCodigo(int codigo) {
+		for (Operacao operacao : values()) {
+			if (operacao.codigo == codigo) {
+				return operacao;
+			}
+		}
+		return null;
+	}
+
+}
@@ -0,0 +1,704 @@
+package com.projeto.persistencia;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.StreamCorruptedException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.projeto.controller.SistemaController;
+import com.projeto.model.Compra;
+import com.projeto.model.Item;
+import com.projeto.model.ListaDeCompras;
+import com.projeto.model.ProdutoNaoIndustrializadoPorQuilo;
+import com.projeto.model.ProdutoPorUnidade;
+import com.projeto.model.ProdutoQuantidadeFixa;
+import com.projeto.service.CapturaSistema;
+import com.projeto.service.EstabelecimentoRegistry;
+import com.projeto.service.ListaService;
+import com.projeto.service.PrecoService;
+import com.projeto.util.Catalogo;
+import com.projeto.util.IndiceOrdenado;
+
+/**
+ * Classe que representa uma copia do estado do sistema em um momento: o id do
+ * proximo produto, os campos e precos de cada item e as listas de compras. O
+ * retrato nao compartilha nenhum objeto alteravel com o sistema, de forma que
+ * pode ser gravado em outra thread enquanto o sistema continua sendo alterado.
+ *
+ * Os itens ficam em uma tabela: primeiro os produtos cadastrados e, depois
+ * deles, os itens ja removidos do sistema que ainda estao em alguma lista. As
+ * compras das listas se referem aos itens pela posicao na tabela, o que
+ * preserva o compartilhamento dos itens entre as listas.
+ *
+ * O retrato e tirado por uma {@link Captura}: o momento da copia e marcado com
+ * a trava do catalogo, em tempo constante, e os itens e as listas sao copiados
+ * depois, sem trava.
+ *
+ * O retrato tambem pode ser gravado com a serializacao do Java, que grava
+ * apenas as copias dos campos, sem recriar o sistema.
+ */
+public final class RetratoSistema implements Serializable {
+
+	private static final long serialVersionUID = 6117302384720119584L;
+
+	static final byte QUANTIDADE_FIXA = 1;
+
+	static final byte POR_QUILO = 2;
+
+	static final byte POR_UNIDADE = 3;
+
+	private static final int TAMANHO_BLOCO = 1 << 12;
+
+	/**
+	 * Copia dos campos de um item.
+	 */
+	static final class RetratoItem implements Serializable {
+
+		private static final long serialVersionUID = -3180475923460971652L;
+
+		final boolean cadastrado;
+
+		final byte tipo;
+
+		final int id;
+
+		final String nome;
+
+		final String categoria;
+
+		/**
+		 * A quantidade, para os produtos com quantidade fixa, ou a unidade, para os
+		 * produtos por unidade.
+		 */
+		final int quantidade;
+
+		final String unidadeMedida;
+
+		final double quilo;
+
+		final String[] locais;
+
+		final double[] precos;
+
+		RetratoItem(boolean cadastrado, byte tipo, int id, String nome, String categoria, int quantidade,
+				String unidadeMedida, double quilo, String[] locais, double[] precos) {
+			this.cadastrado = cadastrado;
+			this.tipo = tipo;
+			this.id = id;
+			this.nome = nome;
+			this.categoria = categoria;
+			this.quantidade = quantidade;
+			this.unidadeMedida = unidadeMedida;
+			this.quilo = quilo;
+			this.locais = locais;
+			this.precos = precos;
+		}
+	}
+
+	/**
+	 * Copia dos campos de uma lista de compras.
+	 */
+	static final class RetratoLista implements Serializable {
+
+		private static final long serialVersionUID = 2261930512398574015L;
+
+		final String descritor;
+
+		final long dataCriacao;
+
+		final boolean finalizada;
+
+		final String local;
+
+		final int valorFinal;
+
+		/**
+		 * A posicao do item de cada compra na tabela de itens.
+		 */
+		final int[] itens;
+
+		final int[] quantidades;
+
+		RetratoLista(String descritor, long dataCriacao, boolean finalizada, String local, int valorFinal,
+				int[] itens, int[] quantidades) {
+			this.descritor = descritor;
+			this.dataCriacao = dataCriacao;
+			this.finalizada = finalizada;
+			this.local = local;
+			this.valorFinal = valorFinal;
+			this.itens = itens;
+			this.quantidades = quantidades;
+		}
+	}
+
+	private final int identificadorBase;
+
+	private final List<RetratoItem> itens;
+
+	private final List<RetratoLista> listas;
+
+	private RetratoSistema(int identificadorBase, List<RetratoItem> itens, List<RetratoLista> listas) {
+		this.identificadorBase = identificadorBase;
+		this.itens = Collections.unmodifiableList(itens);
+		this.listas = Collections.unmodifiableList(listas);
+	}
+
+	/**
+	 * Metodo responsavel por retornar o id do proximo produto.
+	 * 
+	 * @return Um inteiro com o id.
+	 */
+	int getIdentificadorBase() {
+		return this.identificadorBase;
+	}
+
+	/**
+	 * Metodo responsavel por retornar a tabela de itens do retrato.
+	 * 
+	 * @return Uma lista, que nao pode ser alterada, com os itens.
+	 */
+	List<RetratoItem> getItens() {
+		return this.itens;
+	}
+
+	/**
+	 * Metodo responsavel por retornar as listas de compras do retrato.
+	 * 
+	 * @return Uma lista, que nao pode ser alterada, com as listas de compras.
+	 */
+	List<RetratoLista> getListas() {
+		return this.listas;
+	}
+
+	/**
+	 * Copia do estado do sistema em andamento. A captura e iniciada pelo
+	 * {@link SistemaController} com a trava do catalogo e guarda apenas a versao
+	 * publicada do catalogo, o id do proximo produto e os descritores das
+	 * listas, em tempo constante. Os campos dos itens e as compras das listas sao
+	 * copiados em {@link #conclui()}, sem nenhuma trava do sistema; um item ou
+	 * uma lista alterado antes disso tem o estado anterior guardado pela propria
+	 * alteracao. Os estados copiados sao acessados sincronizados na captura.
+	 */
+	public static final class Captura implements CapturaSistema {
+
+		private final SistemaController sistema;
+
+		private final Catalogo catalogo;
+
+		private final int identificadorBase;
+
+		private final IndiceOrdenado<String> descritores;
+
+		/**
+		 * Os itens cadastrados ja copiados, com os campos do momento da captura.
+		 */
+		private final Map<Item, RetratoItem> itens;
+
+		/**
+		 * As listas de compras ja copiadas, indexadas pelo descritor.
+		 */
+		private final Map<String, ListaCapturada> listas;
+
+		/**
+		 * Metodo responsavel por marcar o momento de uma copia do sistema. Deve ser
+		 * chamado com a trava do catalogo do sistema.
+		 * 
+		 * @param sistema
+		 *            : O sistema copiado.
+		 * @param catalogo
+		 *            : A versao publicada do catalogo, com os itens cadastrados.
+		 * @param identificadorBase
+		 *            : O id do proximo produto.
+		 * @param descritores
+		 *            : Os descritores das listas de compras existentes.
+		 */
+		public Captura(SistemaController sistema, Catalogo catalogo, int identificadorBase,
+				IndiceOrdenado<String> descritores) {
+			this.sistema = sistema;
+			this.catalogo = catalogo;
+			this.identificadorBase = identificadorBase;
+			this.descritores = descritores;
+			this.itens = new IdentityHashMap<>();
+			this.listas = new HashMap<>();
+		}
+
+		@Override
+		public synchronized void preservaItem(Item item) {
+			if (item.getId() < this.identificadorBase && !this.itens.containsKey(item)) {
+				this.itens.put(item, retrataItem(item, true));
+			}
+		}
+
+		@Override
+		public synchronized void preservaLista(ListaDeCompras lista) {
+			String descritor = lista.getDescritor();
+			if (!this.listas.containsKey(descritor) && this.descritores.contem(descritor)) {
+				this.listas.put(descritor, new ListaCapturada(lista));
+			}
+		}
+
+		@Override
+		public synchronized boolean copiaLista(String descritor, ListaDeCompras lista) {
+			if (this.listas.containsKey(descritor)) {
+				return true;
+			}
+			if (lista == null) {
+				return false;
+			}
+			this.listas.put(descritor, new ListaCapturada(lista));
+			return true;
+		}
+
+		/**
+		 * Metodo responsavel por copiar os itens e as listas de compras marcados e
+		 * encerrar a captura. As listas do historico sao lidas aqui, sem trava.
+		 * 
+		 * @return O retrato do sistema no momento da captura.
+		 */
+		public RetratoSistema conclui() {
+			try {
+				Map<Integer, Item> cadastrados = new HashMap<>();
+				Map<Item, Integer> posicoes = new IdentityHashMap<>();
+				List<RetratoItem> tabela = new ArrayList<>();
+				for (Item item : this.catalogo.getPorNome()) {
+					cadastrados.put(item.getId(), item);
+					posicoes.put(item, tabela.size());
+					tabela.add(this.retrataCadastrado(item));
+				}
+
+				this.sistema.getListaService().copiaListas(this, this.descritores, cadastrados);
+				List<RetratoLista> retratosListas = new ArrayList<>(this.descritores.tamanho());
+				for (String descritor : this.descritores) {
+					ListaCapturada lista;
+					synchronized (this) {
+						lista = this.listas.get(descritor);
+					}
+					retratosListas.add(lista.retrata(posicoes, tabela, this.identificadorBase));
+				}
+				return new RetratoSistema(this.identificadorBase, tabela, retratosListas);
+			} finally {
+				this.sistema.encerraRetrato(this);
+			}
+		}
+
+		/**
+		 * Metodo auxiliar que retorna a copia de um item cadastrado, copiando-o
+		 * caso o seu estado ainda nao tenha sido guardado.
+		 */
+		private synchronized RetratoItem retrataCadastrado(Item item) {
+			RetratoItem retrato = this.itens.get(item);
+			if (retrato == null) {
+				retrato = retrataItem(item, true);
+				this.itens.put(item, retrato);
+			}
+			return retrato;
+		}
+	}
+
+	/**
+	 * Copia dos campos e das compras de uma lista de compras, com as referencias
+	 * aos itens comprados.
+	 */
+	private static final class ListaCapturada {
+
+		private final String descritor;
+
+		private final long dataCriacao;
+
+		private final boolean finalizada;
+
+		private final String local;
+
+		private final int valorFinal;
+
+		private final Item[] itens;
+
+		private final int[] quantidades;
+
+		/**
+		 * Deve ser chamado sincronizado na lista.
+		 */
+		ListaCapturada(ListaDeCompras lista) {
+			Map<Integer, Compra> compras = lista.getCompras();
+			this.descritor = lista.getDescritor();
+			this.dataCriacao = lista.getData().getTime();
+			this.finalizada = lista.isFinalizada();
+			this.local = lista.getLocal();
+			this.valorFinal = lista.getValorFinal();
+			this.itens = new Item[compras.size()];
+			this.quantidades = new int[compras.size()];
+			int i = 0;
+			for (Compra compra : compras.values()) {
+				this.itens[i] = compra.getItem();
+				this.quantidades[i] = compra.getQuantidade();
+				i++;
+			}
+		}
+
+		/**
+		 * Metodo auxiliar que cria a copia da lista com as posicoes dos itens na
+		 * tabela. Os itens que nao estao na tabela sao itens ja removidos, que
+		 * sao acrescentados a ela. Sem o diario, uma compra pode ter sido
+		 * adicionada depois da captura com um item cadastrado depois dela; essa
+		 * compra fica de fora.
+		 */
+		RetratoLista retrata(Map<Item, Integer> posicoes, List<RetratoItem> tabela, int identificadorBase) {
+			int[] posicoesItens = new int[this.itens.length];
+			int[] quantidadesItens = new int[this.itens.length];
+			int quantidade = 0;
+			for (int i = 0; i < this.itens.length; i++) {
+				Item item = this.itens[i];
+				Integer posicao = posicoes.get(item);
+				if (posicao == null) {
+					if (item.getId() >= identificadorBase) {
+						continue;
+					}
+					posicao = tabela.size();
+					posicoes.put(item, posicao);
+					tabela.add(retrataItem(item, false));
+				}
+				posicoesItens[quantidade] = posicao;
+				quantidadesItens[quantidade] = this.quantidades[i];
+				quantidade++;
+			}
+			return new RetratoLista(this.descritor, this.dataCriacao, this.finalizada, this.local, this.valorFinal,
+					Arrays.copyOf(posicoesItens, quantidade), Arrays.copyOf(quantidadesItens, quantidade));
+		}
+	}
+
+	/**
+	 * Metodo auxiliar que copia os campos e os precos de um item.
+	 */
+	static RetratoItem retrataItem(Item item, boolean cadastrado) {
+		PrecoService.TabelaPrecos tabela = item.getTabelaPrecos();
+		String[] locais = new String[tabela.getQuantidadeLocais()];
+		double[] precos = new double[locais.length];
+		for (int i = 0; i < locais.length; i++) {
+			locais[i] = tabela.getLocal(i);
+			precos[i] = tabela.getPreco(i);
+		}
+		if (item instanceof ProdutoQuantidadeFixa) {
+			ProdutoQuantidadeFixa produto = (ProdutoQuantidadeFixa) item;
+			return new RetratoItem(cadastrado, QUANTIDADE_FIXA, item.getId(), item.getNome(), item.getCategoria(),
+					produto.getQuantidade(), produto.getUnidadeMedida(), 0, locais, precos);
+		} else if (item instanceof ProdutoNaoIndustrializadoPorQuilo) {
+			return new RetratoItem(cadastrado, POR_QUILO, item.getId(), item.getNome(), item.getCategoria(), 0, null,
+					((ProdutoNaoIndustrializadoPorQuilo) item).getQuilo(), locais, precos);
+		} else if (item instanceof ProdutoPorUnidade) {
+			return new RetratoItem(cadastrado, POR_UNIDADE, item.getId(), item.getNome(), item.getCategoria(),
+					((ProdutoPorUnidade) item).getUnidade(), null, 0, locais, precos);
+		}
+		throw new IllegalArgumentException("Tipo de item desconhecido: " + item.getClass().getName());
+	}
+
+	/**
+	 * Metodo responsavel por recriar um sistema com o estado do retrato.
+	 * 
+	 * @return Um novo sistema.
+	 */
+	public SistemaController recria() {
+		ListaService listaService = new ListaService();
+		List<Item> recriados = new ArrayList<>(this.itens.size());
+		Map<Integer, Item> produtos = new HashMap<>();
+		for (RetratoItem retrato : this.itens) {
+			Item item = criaItem(retrato, listaService.getEstabelecimentos());
+			recriados.add(item);
+			if (retrato.cadastrado) {
+				produtos.put(item.getId(), item);
+			}
+		}
+
+		for (RetratoLista retrato : this.listas) {
+			listaService.restauraLista(criaLista(retrato, recriados));
+		}
+		return new SistemaController(produtos, listaService, this.identificadorBase);
+	}
+
+	/**
+	 * Metodo responsavel por criar um item com os campos e os precos copiados.
+	 * 
+	 * @param retrato
+	 *            : A copia dos campos do item.
+	 * @param estabelecimentos
+	 *            : O dicionario onde os locais de compra do item sao registrados.
+	 * @return Um novo item.
+	 */
+	static Item criaItem(RetratoItem retrato, EstabelecimentoRegistry estabelecimentos) {
+		Item item;
+		if (retrato.tipo == QUANTIDADE_FIXA) {
+			item = new ProdutoQuantidadeFixa(retrato.id, retrato.nome, retrato.categoria, retrato.quantidade,
+					retrato.unidadeMedida, retrato.locais[0], retrato.precos[0], estabelecimentos);
+		} else if (retrato.tipo == POR_QUILO) {
+			item = new ProdutoNaoIndustrializadoPorQuilo(retrato.id, retrato.nome, retrato.categoria, retrato.quilo,
+					retrato.locais[0], retrato.precos[0], estabelecimentos);
+		} else {
+			item = new ProdutoPorUnidade(retrato.id, retrato.nome, retrato.categoria, retrato.quantidade,
+					retrato.locais[0], retrato.precos[0], estabelecimentos);
+		}
+		for (int i = 1; i < retrato.locais.length; i++) {
+			item.adicionarLocalCompra(retrato.locais[i], retrato.precos[i]);
+		}
+		return item;
+	}
+
+	/**
+	 * Metodo responsavel por criar uma lista de compras com os campos copiados.
+	 * 
+	 * @param retrato
+	 *            : A copia dos campos da lista.
+	 * @param itens
+	 *            : Os itens recriados, na ordem da tabela de itens.
+	 * @return Uma nova lista de compras.
+	 */
+	static ListaDeCompras criaLista(RetratoLista retrato, List<Item> itens) {
+		ListaDeCompras lista = new ListaDeCompras(retrato.descritor, new Date(retrato.dataCriacao));
+		if (retrato.finalizada) {
+			lista.finalizar(retrato.local, retrato.valorFinal);
+		} else {
+			lista.setValorFinal(retrato.valorFinal);
+		}
+		for (int i = 0; i < retrato.itens.length; i++) {
+			lista.adicionaCompraALista(retrato.quantidades[i], itens.get(retrato.itens[i]));
+		}
+		return lista;
+	}
+
+	/**
+	 * Metodo responsavel por gravar o retrato no formato descrito em
+	 * {@link ArmazenamentoBinario}.
+	 * 
+	 * @param dados
+	 *            : O fluxo onde o retrato sera gravado.
+	 * @throws IOException
+	 *             : caso ocorra um erro na gravacao.
+	 */
+	public void escreve(DataOutputStream dados) throws IOException {
+		Map<String, Integer> locais = new HashMap<>();
+		List<String> tabelaLocais = new ArrayList<>();
+		for (RetratoItem item : this.itens) {
+			for (String local : item.locais) {
+				if (!locais.containsKey(local)) {
+					locais.put(local, tabelaLocais.size());
+					tabelaLocais.add(local);
+				}
+			}
+		}
+
+		dados.writeInt(this.identificadorBase);
+		dados.writeInt(tabelaLocais.size());
+		for (String local : tabelaLocais) {
+			escreveTexto(dados, local);
+		}
+		dados.writeInt(this.itens.size());
+		for (RetratoItem item : this.itens) {
+			dados.writeBoolean(item.cadastrado);
+			dados.writeByte(item.tipo);
+			dados.writeInt(item.id);
+			escreveTexto(dados, item.nome);
+			escreveTexto(dados, item.categoria);
+			if (item.tipo == QUANTIDADE_FIXA) {
+				dados.writeInt(item.quantidade);
+				escreveTexto(dados, item.unidadeMedida);
+			} else if (item.tipo == POR_QUILO) {
+				dados.writeDouble(item.quilo);
+			} else {
+				dados.writeInt(item.quantidade);
+			}
+			dados.writeInt(item.locais.length);
+			for (int i = 0; i < item.locais.length; i++) {
+				dados.writeInt(locais.get(item.locais[i]));
+				dados.writeDouble(item.precos[i]);
+			}
+		}
+		dados.writeInt(this.listas.size());
+		for (RetratoLista lista : this.listas) {
+			escreveLista(dados, lista);
+		}
+		dados.flush();
+	}
+
+	/**
+	 * Metodo auxiliar que grava os campos e as compras de uma lista de compras.
+	 */
+	static void escreveLista(DataOutputStream dados, RetratoLista lista) throws IOException {
+		escreveTexto(dados, lista.descritor);
+		dados.writeLong(lista.dataCriacao);
+		dados.writeBoolean(lista.finalizada);
+		escreveTexto(dados, lista.local);
+		dados.writeInt(lista.valorFinal);
+		dados.writeInt(lista.itens.length);
+		for (int i = 0; i < lista.itens.length; i++) {
+			dados.writeInt(lista.itens[i]);
+			dados.writeInt(lista.quantidades[i]);
+		}
+	}
+
+	/**
+	 * Metodo responsavel por ler um retrato gravado por
+	 * {@link #escreve(DataOutputStream)}.
+	 * 
+	 * @param dados
+	 *            : O fluxo de onde o retrato sera lido.
+	 * @return O retrato lido.
+	 * @throws IOException
+	 *             : caso ocorra um erro na leitura ou os dados sejam invalidos.
+	 */
+	public static RetratoSistema le(DataInputStream dados) throws IOException {
+		int identificadorBase = dados.readInt();
+
+		List<String> locais = new ArrayList<>();
+		int quantidadeLocais = leTamanho(dados);
+		for (int i = 0; i < quantidadeLocais; i++) {
+			locais.add(leTexto(dados));
+		}
+
+		List<RetratoItem> itens = new ArrayList<>();
+		int quantidadeItens = leTamanho(dados);
+		for (int i = 0; i < quantidadeItens; i++) {
+			itens.add(leItem(dados, locais));
+		}
+
+		List<RetratoLista> listas = new ArrayList<>();
+		int quantidadeListas = leTamanho(dados);
+		for (int i = 0; i < quantidadeListas; i++) {
+			listas.add(leLista(dados, itens.size()));
+		}
+		return new RetratoSistema(identificadorBase, itens, listas);
+	}
+
+	/**
+	 * Metodo auxiliar que le os campos e os precos de um item.
+	 */
+	private static RetratoItem leItem(DataInputStream dados, List<String> locais) throws IOException {
+		boolean cadastrado = dados.readBoolean();
+		byte tipo = dados.readByte();
+		int id = dados.readInt();
+		String nome = leTexto(dados);
+		String categoria = leTexto(dados);
+		int quantidade = 0;
+		String unidadeMedida = null;
+		double quilo = 0;
+		if (tipo == QUANTIDADE_FIXA) {
+			quantidade = dados.readInt();
+			unidadeMedida = leTexto(dados);
+		} else if (tipo == POR_QUILO) {
+			quilo = dados.readDouble();
+		} else if (tipo == POR_UNIDADE) {
+			quantidade = dados.readInt();
+		} else {
+			throw new StreamCorruptedException("Tipo de item desconhecido: " + tipo);
+		}
+
+		int quantidadeLocais = leTamanho(dados);
+		if (quantidadeLocais < 1) {
+			throw new StreamCorruptedException("Item sem preco: " + id);
+		}
+		List<String> locaisItem = new ArrayList<>();
+		List<Double> precos = new ArrayList<>();
+		for (int i = 0; i < quantidadeLocais; i++) {
+			int posicao = dados.readInt();
+			if (posicao < 0 || posicao >= locais.size()) {
+				throw new StreamCorruptedException("Local inexistente: " + posicao);
+			}
+			locaisItem.add(locais.get(posicao));
+			precos.add(dados.readDouble());
+		}
+		double[] valores = new double[precos.size()];
+		for (int i = 0; i < valores.length; i++) {
+			valores[i] = precos.get(i);
+		}
+		return new RetratoItem(cadastrado, tipo, id, nome, categoria, quantidade, unidadeMedida, quilo,
+				locaisItem.toArray(new String[0]), valores);
+	}
+
+	/**
+	 * Metodo auxiliar que le os campos e as compras de uma lista de compras.
+	 */
+	static RetratoLista leLista(DataInputStream dados, int quantidadeItens) throws IOException {
+		String descritor = leTexto(dados);
+		long dataCriacao = dados.readLong();
+		boolean finalizada = dados.readBoolean();
+		String local = leTexto(dados);
+		int valorFinal = dados.readInt();
+		int quantidadeCompras = leTamanho(dados);
+		int[] itens = new int[Math.min(quantidadeCompras, TAMANHO_BLOCO)];
+		int[] quantidades = new int[itens.length];
+		for (int i = 0; i < quantidadeCompras; i++) {
+			if (i == itens.length) {
+				itens = Arrays.copyOf(itens, (int) Math.min(quantidadeCompras, 2L * itens.length));
+				quantidades = Arrays.copyOf(quantidades, itens.length);
+			}
+			itens[i] = dados.readInt();
+			if (itens[i] < 0 || itens[i] >= quantidadeItens) {
+				throw new StreamCorruptedException("Item inexistente: " + itens[i]);
+			}
+			quantidades[i] = dados.readInt();
+		}
+		return new RetratoLista(descritor, dataCriacao, finalizada, local, valorFinal, itens, quantidades);
+	}
+
+	/**
+	 * Metodo auxiliar que le a quantidade de elementos de uma tabela.
+	 */
+	static int leTamanho(DataInputStream dados) throws IOException {
+		int tamanho = dados.readInt();
+		if (tamanho < 0) {
+			throw new StreamCorruptedException("Tamanho invalido: " + tamanho);
+		}
+		return tamanho;
+	}
+
+	/**
+	 * Metodo auxiliar que grava um texto em UTF-8, precedido pelo seu tamanho em
+	 * bytes. Um texto nulo e gravado com o tamanho -1.
+	 */
+	static void escreveTexto(DataOutputStream dados, String texto) throws IOException {
+		if (texto == null) {
+			dados.writeInt(-1);
+			return;
+		}
+		byte[] bytes = texto.getBytes(StandardCharsets.UTF_8);
+		dados.writeInt(bytes.length);
+		dados.write(bytes);
+	}
+
+	/**
+	 * Metodo auxiliar que le um texto gravado por
+	 * {@link #escreveTexto(DataOutputStream, String)}. O texto e lido em blocos,
+	 * para que um tamanho corrompido nao reserve mais memoria que o arquivo.
+	 */
+	static String leTexto(DataInputStream dados) throws IOException {
+		int tamanho = dados.readInt();
+		if (tamanho == -1) {
+			return null;
+		}
+		if (tamanho < 0) {
+			throw new StreamCorruptedException("Tamanho invalido: " + tamanho);
+		}
+		byte[] bytes = new byte[Math.min(tamanho, TAMANHO_BLOCO)];
+		int lidos = 0;
+		while (lidos < tamanho) {
+			if (lidos == bytes.length) {
+				bytes = Arrays.copyOf(bytes, (int) Math.min(tamanho, 2L * bytes.length));
+			}
+			int lido = dados.read(bytes, lidos, bytes.length - lidos);
+			if (lido == -1) {
+				throw new EOFException();
+			}
+			lidos += lido;
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+}
@@ -304,6 +304,17 @@ public interface ListaPraMim {
 	 */
 	public String pesquisaListasDeComprasPorData(String data);
 
+	/**
+	 * Retorna as listas de compras criadas entre duas datas, inclusive.
+	 * 
+	 * @param dataInicial:
+	 *            primeiro dia do periodo pesquisado.
+	 * @param dataFinal:
+	 *            ultimo dia do periodo pesquisado.
+	 * @return a data de criacao e o descritor de cada lista, uma por linha.
+	 */
+	public String pesquisaListasDeComprasPorPeriodo(String dataInicial, String dataFinal);
+
 	/**
 	 * Retorna as listas que possuem tal produto.
 	 * 
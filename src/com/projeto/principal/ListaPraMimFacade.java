@@ -1,12 +1,17 @@
 package com.projeto.principal;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
+import java.io.UncheckedIOException;
+import java.util.Date;
 
 import com.projeto.controller.SistemaController;
 import com.projeto.excecoes.CampoInvalidoException;
+import com.projeto.persistencia.Alteracao;
+import com.projeto.persistencia.ArmazemListas;
+import com.projeto.persistencia.ArquivoDados;
+import com.projeto.persistencia.Diario;
+import com.projeto.persistencia.FormatoArmazenamento;
 
 import easyaccept.EasyAccept;
 
@@ -40,10 +45,82 @@ public class ListaPraMimFacade implements ListaPraMim {
 	private SistemaController sistemaController;
 
 	/**
-	 * Metodo responsavel por inicializar a facade no sistema.
+	 * O arquivo onde os dados do sistema sao gravados.
+	 */
+	private static final String ARQUIVO_DADOS = "dados.txt";
+
+	/**
+	 * O arquivo do diario de alteracoes do sistema.
+	 */
+	private static final String ARQUIVO_DIARIO = "dados.diario";
+
+	/**
+	 * O diretorio onde ficam as listas finalizadas quando o historico em disco
+	 * esta ativo.
+	 */
+	private static final String DIRETORIO_HISTORICO = "dados.historico";
+
+	/**
+	 * O formato em que os dados do sistema sao gravados ao fechar o sistema.
+	 */
+	private FormatoArmazenamento formato;
+
+	/**
+	 * O diario onde as alteracoes do sistema sao registradas, ou null caso o
+	 * diario nao esteja ativo.
+	 */
+	private Diario diario;
+
+	/**
+	 * O armazem das listas finalizadas do sistema, ou null caso todas as listas
+	 * fiquem na memoria.
+	 */
+	private ArmazemListas armazemListas;
+
+	/**
+	 * Metodo responsavel por inicializar a facade no sistema, gravando os dados no
+	 * formato padrao. O diario e ativado pela propriedade
+	 * {@value com.projeto.persistencia.Diario#PROPRIEDADE}.
 	 */
 	public ListaPraMimFacade() {
+		this(FormatoArmazenamento.padrao(), Boolean.getBoolean(Diario.PROPRIEDADE));
+	}
+
+	/**
+	 * Metodo responsavel por inicializar a facade no sistema, gravando os dados no
+	 * formato informado.
+	 * 
+	 * @param formato
+	 *            : O formato em que os dados serao gravados.
+	 */
+	public ListaPraMimFacade(FormatoArmazenamento formato) {
+		this(formato, Boolean.getBoolean(Diario.PROPRIEDADE));
+	}
+
+	/**
+	 * Metodo responsavel por inicializar a facade no sistema, gravando os dados no
+	 * formato informado e, opcionalmente, registrando cada alteracao em um diario.
+	 * Com o diario ativo, o sistema e gravado em segundo plano a cada quantidade
+	 * de registros definida pela propriedade
+	 * {@value com.projeto.persistencia.Diario#PROPRIEDADE_COMPACTACAO}. As listas
+	 * finalizadas saem da memoria quando a propriedade
+	 * {@value com.projeto.persistencia.ArmazemListas#PROPRIEDADE} define quantas
+	 * delas ficam no cache.
+	 * 
+	 * @param formato
+	 *            : O formato em que os dados serao gravados.
+	 * @param diario
+	 *            : Indica se as alteracoes serao registradas no diario.
+	 */
+	public ListaPraMimFacade(FormatoArmazenamento formato, boolean diario) {
 		this.sistemaController = new SistemaController();
+		this.formato = formato;
+		if (diario) {
+			this.diario = new Diario(new File(ARQUIVO_DIARIO));
+			this.diario.ativaCompactacao(formato, new File(ARQUIVO_DADOS),
+					Integer.getInteger(Diario.PROPRIEDADE_COMPACTACAO, Diario.LIMITE_COMPACTACAO_PADRAO));
+		}
+		this.ativaHistorico();
 	}
 
 	/**
@@ -69,8 +146,8 @@ public class ListaPraMimFacade implements ListaPraMim {
 	@Override
 	public int adicionaItemPorQtd(String nome, String categoria, int quantidade, String unidadeMedida,
 			String localCompra, double preco) {
-		return this.sistemaController.adicionaItemPorQtd(nome, categoria, quantidade, unidadeMedida, localCompra,
-				preco);
+		return this.executa(
+				new Alteracao.AdicionaItemPorQtd(nome, categoria, quantidade, unidadeMedida, localCompra, preco));
 	}
 
 	/**
@@ -92,7 +169,7 @@ public class ListaPraMimFacade implements ListaPraMim {
 	 */
 	@Override
 	public int adicionaItemPorQuilo(String nome, String categoria, double quilo, String localCompra, double preco) {
-		return this.sistemaController.adicionaItemPorQuilo(nome, categoria, quilo, localCompra, preco);
+		return this.executa(new Alteracao.AdicionaItemPorQuilo(nome, categoria, quilo, localCompra, preco));
 	}
 
 	/**
@@ -114,7 +191,7 @@ public class ListaPraMimFacade implements ListaPraMim {
 	 */
 	@Override
 	public int adicionaItemPorUnidade(String nome, String categoria, int unidade, String localCompra, double preco) {
-		return this.sistemaController.adicionaItemPorUnidade(nome, categoria, unidade, localCompra, preco);
+		return this.executa(new Alteracao.AdicionaItemPorUnidade(nome, categoria, unidade, localCompra, preco));
 	}
 
 	/**
@@ -145,7 +222,7 @@ public class ListaPraMimFacade implements ListaPraMim {
 	 */
 	@Override
 	public int atualizaItem(Integer key, String atributo, String novoValor) {
-		return this.sistemaController.atualizaItem(key, atributo, novoValor);
+		return this.executa(new Alteracao.AtualizaItem(key, atributo, novoValor));
 	}
 
 	/**
@@ -164,7 +241,7 @@ public class ListaPraMimFacade implements ListaPraMim {
 	 */
 	@Override
 	public void adicionaPrecoItem(Integer key, String local, double preco) {
-		this.sistemaController.adicionaPrecoItem(key, local, preco);
+		this.executa(new Alteracao.AdicionaPrecoItem(key, local, preco));
 
 	}
 
@@ -177,7 +254,7 @@ public class ListaPraMimFacade implements ListaPraMim {
 	 */
 	@Override
 	public void deletaItem(Integer key) {
-		this.sistemaController.deletaItem(key);
+		this.executa(new Alteracao.DeletaItem(key));
 	}
 
 	/**
@@ -248,7 +325,7 @@ public class ListaPraMimFacade implements ListaPraMim {
 	 */
 	@Override
 	public String adicionaListaDeCompras(String descritor) {
-		return this.sistemaController.adicionaListaDeCompras(descritor);
+		return this.executa(new Alteracao.AdicionaListaDeCompras(descritor, new Date()));
 	}
 
 	/**
@@ -264,7 +341,7 @@ public class ListaPraMimFacade implements ListaPraMim {
 	 */
 	@Override
 	public void adicionaCompraALista(String descritor, int quantidade, Integer idItem) {
-		this.sistemaController.adicionaCompraALista(descritor, quantidade, idItem);
+		this.executa(new Alteracao.AdicionaCompraALista(descritor, quantidade, idItem));
 	}
 
 	/**
@@ -279,7 +356,7 @@ public class ListaPraMimFacade implements ListaPraMim {
 	 */
 	@Override
 	public void finalizarListaDeCompras(String descritor, String localCompra, int valorFinalDaCompra) {
-		this.sistemaController.finalizarListaDeCompras(descritor, localCompra, valorFinalDaCompra);
+		this.executa(new Alteracao.FinalizaListaDeCompras(descritor, localCompra, valorFinalDaCompra));
 	}
 
 	/**
@@ -336,7 +413,7 @@ public class ListaPraMimFacade implements ListaPraMim {
 	 */
 	@Override
 	public void atualizaCompraDeLista(String descritor, Integer itemId, String operacao, int quantidade) {
-		this.sistemaController.atualizaCompraDeLista(descritor, itemId, operacao, quantidade);
+		this.executa(new Alteracao.AtualizaCompraDeLista(descritor, itemId, operacao, quantidade));
 	}
 
 	/**
@@ -349,7 +426,7 @@ public class ListaPraMimFacade implements ListaPraMim {
 	 */
 	@Override
 	public void deletaCompraDeLista(String descritor, Integer idItem) {
-		this.sistemaController.deletaCompraDeLista(descritor, idItem);
+		this.executa(new Alteracao.DeletaCompraDeLista(descritor, idItem));
 
 	}
 
@@ -406,6 +483,20 @@ public class ListaPraMimFacade implements ListaPraMim {
 		return this.sistemaController.pesquisaListasDeComprasPorData(data);
 	}
 
+	/**
+	 * Retorna as listas de compras criadas entre duas datas, inclusive.
+	 * 
+	 * @param dataInicial:
+	 *            primeiro dia do periodo pesquisado.
+	 * @param dataFinal:
+	 *            ultimo dia do periodo pesquisado.
+	 * @return a data de criacao e o descritor de cada lista, uma por linha.
+	 */
+	@Override
+	public String pesquisaListasDeComprasPorPeriodo(String dataInicial, String dataFinal) {
+		return this.sistemaController.pesquisaListasDeComprasPorPeriodo(dataInicial, dataFinal);
+	}
+
 	/**
 	 * Retorna as listas que possuem tal produto.
 	 * 
@@ -426,7 +517,7 @@ public class ListaPraMimFacade implements ListaPraMim {
 	 */
 	@Override
 	public String geraAutomaticaUltimaLista() {
-		return this.sistemaController.geraAutomaticaUltimaLista();
+		return this.executa(new Alteracao.GeraAutomaticaUltimaLista(new Date()));
 	}
 
 	/**
@@ -439,7 +530,7 @@ public class ListaPraMimFacade implements ListaPraMim {
 	 */
 	@Override
 	public String geraAutomaticaItem(String descritorItem) {
-		return this.sistemaController.geraAutomaticaItem(descritorItem);
+		return this.executa(new Alteracao.GeraAutomaticaItem(descritorItem, new Date()));
 	}
 
 	/**
@@ -450,7 +541,7 @@ public class ListaPraMimFacade implements ListaPraMim {
 	 */
 	@Override
 	public String geraAutomaticaItensMaisPresentes() {
-		return this.sistemaController.geraAutomaticaItensMaisPresentes();
+		return this.executa(new Alteracao.GeraAutomaticaItensMaisPresentes(new Date()));
 	}
 
 	/**
@@ -466,34 +557,103 @@ public class ListaPraMimFacade implements ListaPraMim {
 	}
 
 	/**
-	 * Metodo responsavel por fechar o sistema e salvar os dados em arquivo
+	 * Metodo responsavel por fechar o sistema e salvar os dados em arquivo. Depois
+	 * que os dados sao salvos, o armazem das listas finalizadas e fechado. Uma
+	 * falha na gravacao e repassada, e o armazem continua aberto para que as
+	 * listas guardadas nele nao sejam perdidas.
 	 */
 	@Override
 	public void fechaSistema() {
-		this.sistemaController.fechaSistema();
+		try {
+			if (this.diario == null) {
+				ArquivoDados.grava(this.sistemaController, this.formato, new File(ARQUIVO_DADOS));
+			} else {
+				this.diario.salva(this.sistemaController, this.formato, new File(ARQUIVO_DADOS));
+			}
+			if (this.armazemListas != null) {
+				this.armazemListas.close();
+				this.armazemListas = null;
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
 	}
 
 	/**
-	 * Metodo responsavel por carregar os dados de um arquivo inicializado o sistema
+	 * Metodo responsavel por carregar os dados de um arquivo inicializado o sistema.
+	 * O formato do arquivo e identificado pelo seu cabecalho. Com o diario ativo,
+	 * as alteracoes registradas depois da gravacao do arquivo sao reaplicadas.
 	 */
 	@Override
 	public void iniciaSistema() {
-		File file = new File("dados.txt");
-		if (!file.exists()) {
+		File file = new File(ARQUIVO_DADOS);
+		if (this.diario != null) {
+			this.recuperaSistema(file);
+		} else if (!file.exists()) {
 			throw new CampoInvalidoException("Sistema iniciado pela primeira vez. Arquivo criado.");
 		} else {
 			try {
-
-				FileInputStream fileInputStream = new FileInputStream(file);
-				ObjectInputStream inputStream = new ObjectInputStream(fileInputStream);
-				this.sistemaController = (SistemaController) inputStream.readObject();
-				inputStream.close();
-				fileInputStream.close();
+				this.sistemaController = ArquivoDados.carrega(file);
+				this.ativaHistorico();
 			} catch (IOException e) {
 				e.printStackTrace();
-			} catch (ClassNotFoundException e) {
-				e.printStackTrace();
 			}
 		}
 	}
+
+	/**
+	 * Metodo auxiliar que recupera o sistema a partir do arquivo de dados e do
+	 * diario. Uma falha na recuperacao e repassada, e o diario passa a recusar
+	 * novas alteracoes, para que o sistema nao continue vazio gravando sobre o
+	 * diario que nao foi lido.
+	 */
+	private void recuperaSistema(File file) {
+		SistemaController recuperado;
+		try {
+			recuperado = this.diario.recupera(file);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		if (recuperado == null) {
+			throw new CampoInvalidoException("Sistema iniciado pela primeira vez. Arquivo criado.");
+		}
+		this.sistemaController = recuperado;
+		this.ativaHistorico();
+	}
+
+	/**
+	 * Metodo auxiliar que passa a guardar as listas finalizadas do sistema atual
+	 * em um armazem em disco, caso a propriedade
+	 * {@value com.projeto.persistencia.ArmazemListas#PROPRIEDADE} seja maior que
+	 * zero. O armazem do sistema anterior e fechado. Uma falha ao abrir o armazem
+	 * e repassada.
+	 */
+	private void ativaHistorico() {
+		int capacidade = Integer.getInteger(ArmazemListas.PROPRIEDADE, 0);
+		if (capacidade <= 0) {
+			return;
+		}
+		try {
+			if (this.armazemListas != null) {
+				ArmazemListas anterior = this.armazemListas;
+				this.armazemListas = null;
+				anterior.close();
+			}
+			this.armazemListas = new ArmazemListas(new File(DIRETORIO_HISTORICO));
+			this.sistemaController.ativaHistorico(this.armazemListas, capacidade);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Metodo auxiliar que aplica uma alteracao ao sistema, registrando-a no
+	 * diario quando ele esta ativo.
+	 */
+	private <R> R executa(Alteracao<R> alteracao) {
+		if (this.diario == null) {
+			return alteracao.aplica(this.sistemaController);
+		}
+		return this.diario.executa(this.sistemaController, alteracao);
+	}
 }
@@ -0,0 +1,47 @@
+package com.projeto.service;
+
+import com.projeto.model.Item;
+import com.projeto.model.ListaDeCompras;
+
+/**
+ * Interface de uma copia do estado do sistema em andamento. A copia marca um
+ * momento, em tempo constante, e depois copia os itens e as listas de compras
+ * aos poucos, sem trava. Antes de alterar um item ou uma lista de compras, o
+ * sistema avisa as copias em andamento, que guardam o estado anterior caso
+ * ainda nao o tenham copiado.
+ */
+public interface CapturaSistema {
+
+	/**
+	 * Metodo responsavel por guardar o estado de um item que sera alterado. Deve
+	 * ser chamado com a trava do catalogo, antes da alteracao.
+	 *
+	 * @param item
+	 *            : O item que sera alterado.
+	 */
+	void preservaItem(Item item);
+
+	/**
+	 * Metodo responsavel por guardar o estado de uma lista de compras que sera
+	 * alterada ou substituida. Deve ser chamado sincronizado na lista, antes da
+	 * alteracao.
+	 *
+	 * @param lista
+	 *            : A lista de compras que sera alterada.
+	 */
+	void preservaLista(ListaDeCompras lista);
+
+	/**
+	 * Metodo responsavel por copiar uma lista de compras, caso o seu estado ainda
+	 * nao tenha sido guardado. Deve ser chamado sincronizado na lista.
+	 *
+	 * @param descritor
+	 *            : O descritor da lista de compras.
+	 * @param lista
+	 *            : A lista de compras, ou null caso ela nao tenha sido
+	 *            encontrada.
+	 * @return true caso o estado da lista esteja guardado na copia.
+	 */
+	boolean copiaLista(String descritor, ListaDeCompras lista);
+
+}
@@ -0,0 +1,108 @@
+package com.projeto.service;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Classe responsavel por manter o dicionario de locais de compra de um sistema.
+ * Cada nome de local recebe um identificador inteiro sequencial (a partir de
+ * zero) e uma instancia canonica de String, compartilhada pelas tabelas de
+ * precos, listas de compras e estabelecimentos que se referem ao mesmo local.
+ *
+ * Cada {@link ListaService} possui o seu dicionario, e os identificadores existem
+ * apenas enquanto o programa esta em execucao: os arquivos salvos guardam os
+ * nomes dos locais, que sao registrados novamente quando o sistema e carregado.
+ * As consultas nao usam trava; apenas o registro de um local novo e
+ * sincronizado.
+ */
+public final class EstabelecimentoRegistry {
+
+	/**
+	 * Mapa que associa o nome de cada local registrado ao seu identificador.
+	 */
+	private final ConcurrentMap<String, Integer> identificadores = new ConcurrentHashMap<>();
+
+	/**
+	 * Os nomes canonicos dos locais, na posicao do seu identificador. As posicoes
+	 * so sao acrescentadas, e o vetor e publicado novamente a cada registro.
+	 */
+	private volatile String[] nomes = new String[16];
+
+	/**
+	 * A quantidade de locais registrados.
+	 */
+	private volatile int quantidade;
+
+	/**
+	 * Metodo responsavel por registrar um local de compra, caso ele ainda nao
+	 * tenha sido registrado, e retornar o seu identificador.
+	 *
+	 * @param local
+	 *            : O nome do local de compra.
+	 * @return Um inteiro com o identificador do local.
+	 */
+	public int registra(String local) {
+		Integer id = this.identificadores.get(local);
+		if (id != null) {
+			return id;
+		}
+		synchronized (this) {
+			id = this.identificadores.get(local);
+			if (id != null) {
+				return id;
+			}
+			int novo = this.quantidade;
+			String[] atuais = this.nomes;
+			if (novo == atuais.length) {
+				atuais = Arrays.copyOf(atuais, novo * 2);
+			}
+			atuais[novo] = local;
+			this.nomes = atuais;
+			this.quantidade = novo + 1;
+			this.identificadores.put(local, novo);
+			return novo;
+		}
+	}
+
+	/**
+	 * Metodo responsavel por retornar o nome canonico de um local registrado.
+	 *
+	 * @param id
+	 *            : O identificador do local.
+	 * @return Uma String com o nome do local.
+	 */
+	public String getNome(int id) {
+		String[] atuais = this.nomes;
+		if (id < 0 || id >= atuais.length || atuais[id] == null) {
+			throw new IndexOutOfBoundsException("Local: " + id + ", Quantidade: " + this.quantidade);
+		}
+		return atuais[id];
+	}
+
+	/**
+	 * Metodo responsavel por retornar a instancia canonica do nome de um local,
+	 * registrando-o caso necessario.
+	 *
+	 * @param local
+	 *            : O nome do local de compra.
+	 * @return A instancia canonica do nome, ou null caso o nome seja null.
+	 */
+	public String canonico(String local) {
+		if (local == null) {
+			return null;
+		}
+		return this.getNome(this.registra(local));
+	}
+
+	/**
+	 * Metodo responsavel por retornar a quantidade de locais registrados. Todos os
+	 * identificadores ja atribuidos sao menores que esse valor.
+	 *
+	 * @return Um inteiro com a quantidade de locais.
+	 */
+	public int quantidade() {
+		return this.quantidade;
+	}
+
+}
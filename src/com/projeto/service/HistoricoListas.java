@@ -0,0 +1,57 @@
+package com.projeto.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+
+import com.projeto.model.Item;
+import com.projeto.model.ListaDeCompras;
+
+/**
+ * Interface de um armazenamento fora da memoria para as listas de compras
+ * finalizadas. O {@link ListaService} guarda nele as listas que so sao lidas e
+ * as le de volta quando sao consultadas.
+ */
+public interface HistoricoListas extends Closeable {
+
+	/**
+	 * Metodo responsavel por guardar uma lista de compras, substituindo a copia
+	 * guardada anteriormente com o mesmo descritor. Deve ser chamado sincronizado
+	 * na lista.
+	 *
+	 * @param lista
+	 *            : A lista de compras que sera guardada.
+	 * @throws IOException
+	 *             : caso ocorra um erro na gravacao.
+	 */
+	void guarda(ListaDeCompras lista) throws IOException;
+
+	/**
+	 * Metodo responsavel por ler uma lista de compras guardada. As compras se
+	 * referem aos itens do mapa informado; os itens que nao estao no mapa sao
+	 * recriados.
+	 *
+	 * @param descritor
+	 *            : O descritor da lista de compras.
+	 * @param itens
+	 *            : Os itens cadastrados no sistema, indexados pelo id.
+	 * @return Uma nova lista de compras, ou null caso nenhuma lista com o
+	 *         descritor esteja guardada.
+	 * @throws IOException
+	 *             : caso ocorra um erro na leitura ou os dados sejam invalidos.
+	 */
+	ListaDeCompras le(String descritor, Map<Integer, Item> itens) throws IOException;
+
+	/**
+	 * Metodo responsavel por descartar a lista de compras guardada com um
+	 * descritor.
+	 *
+	 * @param descritor
+	 *            : O descritor da lista de compras.
+	 * @return true caso alguma lista tenha sido descartada.
+	 * @throws IOException
+	 *             : caso ocorra um erro ao liberar o espaco da lista.
+	 */
+	boolean remove(String descritor) throws IOException;
+
+}
@@ -1,29 +1,67 @@
 package com.projeto.service;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.projeto.comparadores.ComparaData;
+import com.projeto.comparadores.ComparaDescritor;
 import com.projeto.excecoes.CampoInvalidoException;
 import com.projeto.model.Compra;
 import com.projeto.model.Item;
 import com.projeto.model.ListaDeCompras;
 import com.projeto.util.Estabelecimento;
 import com.projeto.util.Estrategia;
+import com.projeto.util.FormatoData;
+import com.projeto.util.IndiceOrdenado;
 import com.projeto.util.Mensagem;
 import com.projeto.util.ValidadorSistema;
 
 /**
  * Classe responsavel por realizar os servicos de listas.
  *
+ * O servico pode ser usado por varias threads ao mesmo tempo. As listas ficam
+ * em um mapa concorrente e as alteracoes nas compras de uma lista sao
+ * sincronizadas apenas nela, junto com a atualizacao dos indices, de forma que
+ * listas diferentes podem ser alteradas em paralelo. As consultas nao bloqueiam.
+ *
+ * Com o historico ativo, as listas finalizadas saem da memoria e ficam em um
+ * {@link HistoricoListas}; apenas o descritor e a data de cada uma continuam na
+ * memoria, nos indices. As listas do historico consultadas mais recentemente
+ * ficam em um cache de tamanho limitado, e uma lista do historico volta para a
+ * memoria quando e alterada. As leituras e gravacoes no historico sao feitas
+ * fora do mapa de listas e do cache, que ficam travados apenas para atualizar
+ * os indices.
+ *
+ * Os descritores de todas as listas ficam tambem em um indice persistente, de
+ * forma que uma {@link CapturaSistema} marca as listas existentes em tempo
+ * constante. Enquanto ela esta em andamento, cada lista e avisada a ela antes de
+ * ser alterada ou substituida.
  */
 public class ListaService implements Serializable {
 
@@ -31,15 +69,227 @@ public class ListaService implements Serializable {
 	private static final long serialVersionUID = -2134795757559679940L;
 
 	/**
-	 * Uma lista com todas as listaDeCompras do sistema.
+	 * Campos gravados quando o servico e salvo: as listas da memoria e a
+	 * quantidade de listas do historico gravadas em seguida, uma a uma. Os
+	 * arquivos antigos so possuem o mapa de listas.
+	 */
+	private static final ObjectStreamField[] serialPersistentFields = {
+			new ObjectStreamField("listas", Map.class), new ObjectStreamField("quantidadeHistorico", int.class) };
+
+	/**
+	 * Quantidade de compras de uma lista a partir da qual o calculo dos
+	 * estabelecimentos e dividido entre varias threads.
+	 */
+	public static final int LIMIAR_PARALELO_PADRAO = 1000;
+
+	/**
+	 * As listas de compras do sistema que estao na memoria: todas as listas, ou
+	 * apenas as que nao estao no historico quando ele esta ativo.
 	 */
 	private Map<String, ListaDeCompras> listas;
 
+	/**
+	 * Indice invertido que associa o id de cada item aos descritores das listas de
+	 * compras que possuem uma compra do item, na ordem em que o item foi adicionado
+	 * a cada lista. Nao e salvo junto com o servico: e reconstruido a partir das
+	 * listas quando o servico e carregado. Os conjuntos de descritores sao
+	 * sincronizados e nunca sao retirados do mapa, mesmo vazios, para que uma
+	 * compra indexada ao mesmo tempo nao se perca.
+	 */
+	private transient Map<Integer, Set<String>> listasPorItem;
+
+	/**
+	 * Indice que agrupa os descritores das listas de compras pelo dia de criacao,
+	 * com os descritores de cada dia na ordem de {@link ComparaDescritor}. Assim
+	 * como o indice invertido, e reconstruido quando o servico e carregado.
+	 */
+	private transient ConcurrentNavigableMap<LocalDate, NavigableSet<String>> listasPorDia;
+
+	/**
+	 * Contadores, indexados pelo id do item, da quantidade de listas de compras que
+	 * possuem uma compra do item e da soma das quantidades compradas do item em
+	 * todas as listas. Os dois valores de um item ficam no mesmo contador, a
+	 * quantidade de listas nos 32 bits mais altos e a soma das quantidades nos
+	 * mais baixos, de forma que sao alterados e lidos juntos sem trava. Sao
+	 * atualizados a cada compra adicionada ou removida e reconstruidos quando o
+	 * servico e carregado.
+	 */
+	private transient Map<Integer, AtomicLong> contadoresPorItem;
+
+	/**
+	 * Quantidade de compras de uma lista a partir da qual o calculo dos
+	 * estabelecimentos e feito em paralelo.
+	 */
+	private transient volatile int limiarParalelo;
+
+	/**
+	 * O dicionario dos locais de compra do sistema, usado para somar os valores
+	 * dos estabelecimentos e para compartilhar os nomes dos locais das listas
+	 * finalizadas.
+	 */
+	private transient EstabelecimentoRegistry estabelecimentos;
+
+	/**
+	 * O historico onde ficam as listas finalizadas, ou null caso todas as listas
+	 * fiquem na memoria.
+	 */
+	private transient volatile HistoricoListas historico;
+
+	/**
+	 * A data de criacao de cada lista que esta no historico, indexada pelo
+	 * descritor.
+	 */
+	private transient Map<String, Date> datasHistorico;
+
+	/**
+	 * As listas do historico consultadas mais recentemente. O cache e acessado
+	 * sincronizado nele.
+	 */
+	private transient ListasRecentes recentes;
+
+	/**
+	 * Trava que ordena as listas que entram e saem do historico. A leitura e a
+	 * gravacao no historico sao feitas com esta trava, fora do mapa de listas e do
+	 * cache, que sao sincronizados apenas para atualizar os indices. A ordem das
+	 * travas e: esta trava, a lista, o mapa de listas e o cache.
+	 */
+	private transient Object travaHistorico;
+
+	/**
+	 * Os itens cadastrados no sistema, indexados pelo id, usados para recriar as
+	 * listas lidas do historico.
+	 */
+	private transient Map<Integer, Item> itensHistorico;
+
+	/**
+	 * Os descritores de todas as listas de compras, na memoria e no historico.
+	 * O indice e alterado sincronizado nele mesmo e lido sem trava.
+	 */
+	private transient IndiceOrdenado<String> descritores;
+
+	/**
+	 * As copias do sistema em andamento, avisadas antes de cada alteracao em uma
+	 * lista.
+	 */
+	private transient List<CapturaSistema> capturas;
+
+	/**
+	 * A ordem dos descritores no indice por dia, a mesma de
+	 * {@link ComparaDescritor}.
+	 */
+	private static final Comparator<String> ORDEM_DESCRITORES = new Comparator<String>() {
+		@Override
+		public int compare(String descritor1, String descritor2) {
+			int comparacao = descritor1.toLowerCase().compareTo(descritor2.toLowerCase());
+			if (comparacao == 0) {
+				return descritor1.compareTo(descritor2);
+			}
+			return comparacao;
+		}
+	};
+
+	/**
+	 * Mapa das listas do historico consultadas mais recentemente, que descarta a
+	 * lista consultada ha mais tempo quando a capacidade e excedida.
+	 */
+	private static final class ListasRecentes extends LinkedHashMap<String, ListaDeCompras> {
+
+		private static final long serialVersionUID = 6302741987260317429L;
+
+		private final int capacidade;
+
+		/**
+		 * Incrementada a cada lista que entra ou sai do historico, para que uma
+		 * lista lida antes da mudanca nao seja colocada no cache.
+		 */
+		long versao;
+
+		ListasRecentes(int capacidade) {
+			super(16, 0.75f, true);
+			this.capacidade = capacidade;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, ListaDeCompras> maisAntiga) {
+			return this.size() > this.capacidade;
+		}
+	}
+
 	/**
 	 * Metodo inicicializador do servico de sistema
 	 */
 	public ListaService() {
-		this.listas = new HashMap<>();
+		this(new EstabelecimentoRegistry());
+	}
+
+	/**
+	 * Metodo inicicializador do servico de sistema, usando um dicionario de
+	 * locais de compra ja existente, como o dos itens lidos de um catalogo.
+	 * 
+	 * @param estabelecimentos
+	 *            : O dicionario de locais de compra do sistema.
+	 */
+	public ListaService(EstabelecimentoRegistry estabelecimentos) {
+		this.listas = new ConcurrentHashMap<>();
+		this.listasPorItem = new ConcurrentHashMap<>();
+		this.listasPorDia = new ConcurrentSkipListMap<>();
+		this.contadoresPorItem = new ConcurrentHashMap<>();
+		this.limiarParalelo = LIMIAR_PARALELO_PADRAO;
+		this.estabelecimentos = estabelecimentos;
+		this.datasHistorico = new ConcurrentHashMap<>();
+		this.travaHistorico = new Object();
+		this.descritores = new IndiceOrdenado<>(ORDEM_DESCRITORES);
+		this.capturas = new CopyOnWriteArrayList<>();
+	}
+
+	/**
+	 * Metodo responsavel por retornar o dicionario de locais de compra do
+	 * sistema, onde os itens cadastrados registram os seus locais.
+	 * 
+	 * @return O dicionario de locais de compra.
+	 */
+	public EstabelecimentoRegistry getEstabelecimentos() {
+		return this.estabelecimentos;
+	}
+
+	/**
+	 * Metodo responsavel por passar a guardar as listas finalizadas em um
+	 * historico fora da memoria. As listas ja finalizadas sao guardadas
+	 * imediatamente, e as demais quando forem finalizadas.
+	 * 
+	 * @param historico
+	 *            : O armazenamento das listas finalizadas.
+	 * @param capacidade
+	 *            : A quantidade de listas do historico mantidas na memoria
+	 *            depois de consultadas.
+	 * @param itens
+	 *            : Os itens cadastrados no sistema, indexados pelo id, usados
+	 *            para recriar as listas lidas do historico.
+	 */
+	public void ativaHistorico(HistoricoListas historico, int capacidade, Map<Integer, Item> itens) {
+		synchronized (this.travaHistorico) {
+			synchronized (this.listas) {
+				if (this.historico != null) {
+					throw new IllegalStateException("O historico de listas ja esta ativo.");
+				}
+				this.itensHistorico = itens;
+				this.recentes = new ListasRecentes(capacidade);
+				this.historico = historico;
+			}
+			for (ListaDeCompras lista : new ArrayList<>(this.listas.values())) {
+				this.arquiva(lista);
+			}
+		}
+	}
+
+	/**
+	 * Metodo responsavel por retornar a quantidade de listas de compras que estao
+	 * no historico, fora da memoria.
+	 * 
+	 * @return A quantidade de listas do historico.
+	 */
+	public int getQuantidadeHistorico() {
+		return this.datasHistorico.size();
 	}
 
 	/**
@@ -51,11 +301,41 @@ public class ListaService implements Serializable {
 	 * @return representacao textual do nome do descritor
 	 */
 	public String adicionaListaDeCompras(String descritor) {
+		return this.adicionaListaDeCompras(descritor, new Date());
+	}
+
+	/**
+	 * Metodo responsavel por criar uma lista de compras com um nome e uma data de
+	 * criacao. Alem disso, nao permite que descritores de listas de compras sejam
+	 * repetidos.
+	 * 
+	 * @param descritor
+	 *            : descritor da lista de compras
+	 * @param dataCriacao
+	 *            : data/hora de criacao da lista de compras
+	 * @return representacao textual do nome do descritor
+	 */
+	public String adicionaListaDeCompras(String descritor, Date dataCriacao) {
 		ValidadorSistema.validaDescritor(descritor, Mensagem.MSG_EXCECAO_CRIACAO_COMPRA.get());
-		ValidadorSistema.validaExistenciaDeListaDeCompras(descritor, this.listas,
-				Mensagem.MSG_EXCECAO_CRIACAO_COMPRA.get());
 
-		this.listas.put(descritor, new ListaDeCompras(descritor));
+		ListaDeCompras listaDeCompras = new ListaDeCompras(descritor, dataCriacao);
+		synchronized (listaDeCompras) {
+			// O historico e consultado depois da lista ser publicada, ja que uma lista
+			// arquivada entra no historico antes de sair do mapa e uma lista lida do
+			// historico entra no mapa antes de sair dele.
+			if (this.listas.putIfAbsent(descritor, listaDeCompras) != null
+					|| this.datasHistorico.containsKey(descritor)) {
+				this.listas.remove(descritor, listaDeCompras);
+				ValidadorSistema.validaExistenciaDeListaDeCompras(descritor, this.listas,
+						Mensagem.MSG_EXCECAO_CRIACAO_COMPRA.get());
+				ValidadorSistema.validaExistenciaDeListaDeCompras(descritor, this.datasHistorico,
+						Mensagem.MSG_EXCECAO_CRIACAO_COMPRA.get());
+			}
+			synchronized (this.descritores) {
+				this.descritores.adiciona(descritor);
+			}
+			this.indexaLista(listaDeCompras);
+		}
 		return descritor;
 	}
 
@@ -71,8 +351,22 @@ public class ListaService implements Serializable {
 	 *            : O item que sera adicionado na lista de compras.
 	 */
 	public void adicionaCompraALista(String descritor, int quantidade, Item item) {
-		ListaDeCompras listaDeCompras = this.listas.get(descritor);
-		listaDeCompras.adicionaCompraALista(quantidade, item);
+		while (true) {
+			ListaDeCompras listaDeCompras = this.listaAtiva(descritor);
+			synchronized (listaDeCompras) {
+				if (this.listas.get(descritor) != listaDeCompras) {
+					continue;
+				}
+				this.preservaLista(listaDeCompras);
+				listaDeCompras.adicionaCompraALista(quantidade, item);
+				this.indexaCompra(item.getId(), descritor);
+				this.contaCompra(item.getId(), 1, quantidade);
+				// O item pode ter sido alterado depois de a compra ser ordenada e antes
+				// de a lista aparecer no indice, sem que a alteracao encontrasse a lista.
+				listaDeCompras.atualizaItem(item.getId());
+				return;
+			}
+		}
 	}
 
 	/**
@@ -86,8 +380,12 @@ public class ListaService implements Serializable {
 	 *            : Valor final da compra.
 	 */
 	public void finalizarListaDeCompras(String descritor, String localCompra, int valorFinalDaCompra) {
-		ListaDeCompras listaDeCompras = this.listas.get(descritor);
-		listaDeCompras.finalizar(localCompra, valorFinalDaCompra);
+		ListaDeCompras listaDeCompras = this.listaAtiva(descritor);
+		synchronized (listaDeCompras) {
+			this.preservaLista(listaDeCompras);
+			listaDeCompras.finalizar(localCompra, valorFinalDaCompra, this.estabelecimentos);
+		}
+		this.arquiva(listaDeCompras);
 	}
 
 	/**
@@ -100,7 +398,7 @@ public class ListaService implements Serializable {
 	 * @return Representacao textual do item que esta na lista.
 	 */
 	public String pesquisaCompraEmLista(String descritor, Integer idItem) {
-		ListaDeCompras listaDeCompras = this.listas.get(descritor);
+		ListaDeCompras listaDeCompras = this.buscaLista(descritor);
 		return listaDeCompras.pesquisaCompraEmLista(idItem);
 	}
 
@@ -117,8 +415,25 @@ public class ListaService implements Serializable {
 	 *            : nova quantidae de itens.
 	 */
 	public void atualizaCompraDeLista(String descritorLista, Integer idItem, String operacao, int quantidade) {
-		ListaDeCompras listaDeCompras = this.listas.get(descritorLista);
-		listaDeCompras.atualizaCompraDeLista(idItem, operacao, quantidade);
+		while (true) {
+			ListaDeCompras listaDeCompras = this.listaAtiva(descritorLista);
+			synchronized (listaDeCompras) {
+				if (this.listas.get(descritorLista) != listaDeCompras) {
+					continue;
+				}
+				Compra compra = listaDeCompras.getCompra(idItem);
+				int quantidadeAnterior = compra == null ? 0 : compra.getQuantidade();
+				this.preservaLista(listaDeCompras);
+				listaDeCompras.atualizaCompraDeLista(idItem, operacao, quantidade);
+				if (!listaDeCompras.possuiCompra(idItem)) {
+					this.removeCompraDoIndice(idItem, descritorLista);
+					this.contaCompra(idItem, -1, -quantidadeAnterior);
+				} else {
+					this.contaCompra(idItem, 0, compra.getQuantidade() - quantidadeAnterior);
+				}
+				return;
+			}
+		}
 	}
 
 	/**
@@ -132,7 +447,7 @@ public class ListaService implements Serializable {
 	 */
 
 	public String getItemLista(String descritor, int posicao) {
-		ListaDeCompras listaDeCompras = this.listas.get(descritor);
+		ListaDeCompras listaDeCompras = this.buscaLista(descritor);
 		return listaDeCompras.getItemLista(posicao);
 	}
 
@@ -145,9 +460,13 @@ public class ListaService implements Serializable {
 	 * @return String com o toString da compra pesquisada.
 	 */
 	public String pesquisaListaDeCompras(String descritor) {
-		ValidadorSistema.validaInexistenciaDeListaDeCompras(descritor, this.listas,
-				Mensagem.MSG_EXCECAO_PESQUISA_COMPRA.get());
-		return this.listas.get(descritor).toString();
+		ListaDeCompras lista = this.buscaLista(descritor);
+		if (lista == null) {
+			ValidadorSistema.validaInexistenciaDeListaDeCompras(descritor, this.listas,
+					Mensagem.MSG_EXCECAO_PESQUISA_COMPRA.get());
+			lista = this.listas.get(descritor);
+		}
+		return lista.toString();
 	}
 
 	/**
@@ -161,9 +480,20 @@ public class ListaService implements Serializable {
 	public void deletaCompraDeLista(String descritor, Integer idItem) {
 		ValidadorSistema.validaDescritor(descritor, Mensagem.MSG_EXCECAO_EXCLUSAO_COMPRA.get());
 
-		ListaDeCompras listaDeCompras = this.listas.get(descritor);
-		listaDeCompras.deletaCompraDeLista(idItem);
-
+		while (true) {
+			ListaDeCompras listaDeCompras = this.listaAtiva(descritor);
+			synchronized (listaDeCompras) {
+				if (this.listas.get(descritor) != listaDeCompras) {
+					continue;
+				}
+				Compra compra = listaDeCompras.getCompra(idItem);
+				this.preservaLista(listaDeCompras);
+				listaDeCompras.deletaCompraDeLista(idItem);
+				this.removeCompraDoIndice(idItem, descritor);
+				this.contaCompra(idItem, -1, -compra.getQuantidade());
+				return;
+			}
+		}
 	}
 
 	/**
@@ -180,13 +510,11 @@ public class ListaService implements Serializable {
 	public String getItemListaPorData(String dataString, int posicao) {
 		try {
 
-			Date data = formataData(dataString);
-			List<ListaDeCompras> lista = buscaPorData(data);
-			Collections.sort(lista);
-			return lista.get(posicao).getDescritor();
+			LocalDate dia = formataData(dataString);
+			return listaNaPosicao(buscaPorDia(dia), posicao);
 		} catch (
 
-		ParseException e) {
+		DateTimeParseException e) {
 			e.printStackTrace();
 		}
 		return null;
@@ -198,30 +526,47 @@ public class ListaService implements Serializable {
 	 * 
 	 * @param dataString
 	 *            Data a ser formatada
-	 * @return Data no formato de data dd/MM/yyyy
-	 * @throws ParseException
+	 * @return O dia representado pela data no formato dd/MM/yyyy
+	 * @throws DateTimeParseException
 	 */
-	private Date formataData(String dataString) throws ParseException {
-		SimpleDateFormat format = new SimpleDateFormat("dd/MM/yyyy");
-		Date date = format.parse(dataString);
-		return date;
+	private LocalDate formataData(String dataString) {
+		return FormatoData.converte(dataString);
 	}
 
 	/**
-	 * Metodo responsavel por buscar listas que possuem tal data
+	 * Metodo responsavel por buscar listas que foram criadas em um dia
 	 * 
-	 * @param data
-	 *            Lista com Todas as compras que foram efetuadas nessa data
-	 * @return Lista de lista de compras
+	 * @param dia
+	 *            Dia de criacao das listas
+	 * @return Conjunto dos descritores das listas de compras do dia, ordenados
 	 */
-	private List<ListaDeCompras> buscaPorData(Date data) {
-		List<ListaDeCompras> lista = new ArrayList<>();
-		for (ListaDeCompras list : this.listas.values()) {
-			if (list.getDataFormatada().equals(data)) {
-				lista.add(list);
-			}
+	private SortedSet<String> buscaPorDia(LocalDate dia) {
+		SortedSet<String> listasDoDia = this.listasPorDia.get(dia);
+		if (listasDoDia == null) {
+			return Collections.emptySortedSet();
 		}
-		return lista;
+		return listasDoDia;
+	}
+
+	/**
+	 * Metodo auxiliar que retorna o descritor que ocupa uma posicao de um
+	 * conjunto ordenado.
+	 * 
+	 * @param listasDoDia
+	 *            Conjunto ordenado de descritores de listas de compras
+	 * @param posicao
+	 *            Posicao da lista no conjunto
+	 * @return O descritor da lista de compras na posicao
+	 */
+	private String listaNaPosicao(SortedSet<String> listasDoDia, int posicao) {
+		if (posicao < 0 || posicao >= listasDoDia.size()) {
+			throw new IndexOutOfBoundsException("Index: " + posicao + ", Size: " + listasDoDia.size());
+		}
+		Iterator<String> iterador = listasDoDia.iterator();
+		for (int i = 0; i < posicao; i++) {
+			iterador.next();
+		}
+		return iterador.next();
 	}
 
 	/**
@@ -236,28 +581,36 @@ public class ListaService implements Serializable {
 	 * @return : Retorna a data de criacao e o descritor da lista de compras.
 	 */
 	public String getItemListaPorItem(Integer idItem, int posicao) {
-		List<ListaDeCompras> lista = buscaPorItem(idItem);
-		Collections.sort(lista);
-		ListaDeCompras listaCompra = lista.get(posicao);
-		String retorno = listaCompra.getDataTextual() + " - " + listaCompra.getDescritor();
+		List<String> lista = new ArrayList<>(this.descritoresComItem(idItem));
+		Collections.sort(lista, new Comparator<String>() {
+			@Override
+			public int compare(String descritor1, String descritor2) {
+				return descritor1.toLowerCase().compareTo(descritor2.toLowerCase());
+			}
+		});
+		String descritor = lista.get(posicao);
+		String retorno = this.getDataTextual(descritor) + " - " + descritor;
 		return retorno;
 	}
 
 	/**
-	 * Metodo auxiliar criado para retornar uma lista que tem um item dentro dela
+	 * Metodo auxiliar que retorna a representacao textual do dia de criacao de
+	 * uma lista de compras, sem ler do historico as listas que estao nele.
 	 * 
-	 * @param idItem
-	 *            Id do item que sera pesquisado
-	 * @return Lista de lista de compras
+	 * @param descritor
+	 *            Descritor da lista de compras
+	 * @return O dia de criacao da lista no formato dd/MM/yyyy
 	 */
-	private List<ListaDeCompras> buscaPorItem(Integer idItem) {
-		List<ListaDeCompras> lista = new ArrayList<>();
-		for (ListaDeCompras list : this.listas.values()) {
-			if (list.possuiCompra(idItem)) {
-				lista.add(list);
-			}
+	private String getDataTextual(String descritor) {
+		ListaDeCompras lista = this.listas.get(descritor);
+		if (lista != null) {
+			return lista.getDataTextual();
 		}
-		return lista;
+		Date data = this.datasHistorico.get(descritor);
+		if (data != null) {
+			return FormatoData.formata(data);
+		}
+		return this.buscaLista(descritor).getDataTextual();
 	}
 
 	/**
@@ -269,22 +622,102 @@ public class ListaService implements Serializable {
 	 * @return : Retorna a representacao textual das listas de compra.
 	 */
 	public String pesquisaListasDeComprasPorData(String dataString) {
+		StringBuilder volta = new StringBuilder();
+		try {
+			this.escreveListasDeComprasPorData(dataString, volta);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return volta.toString();
+	}
+
+	/**
+	 * Escreve a pesquisa de listas de compras por data em um destino de texto.
+	 * 
+	 * @param dataString
+	 *            : data a ser pesquisada.
+	 * @param saida
+	 *            : destino onde a pesquisa sera escrita.
+	 * @throws IOException
+	 *             : caso ocorra um erro ao escrever no destino.
+	 */
+	public void escreveListasDeComprasPorData(String dataString, Appendable saida) throws IOException {
 		try {
 			if (ValidadorSistema.validaData(dataString)) {
 
-				Date data = formataData(dataString);
-				for (ListaDeCompras lista : listas.values()) {
-					if (lista.getData().equals(data)) {
-						return lista.buscaTodosItens();
-					}
+				SortedSet<String> listasDoDia = buscaPorDia(formataData(dataString));
+				if (!listasDoDia.isEmpty()) {
+					this.buscaLista(listasDoDia.first()).escreveTodosItens(saida);
 				}
 			}
 		} catch (CampoInvalidoException e) {
 			throw new CampoInvalidoException(Mensagem.MSG_EXCECAO_PESQUISA_COMPRA.get() + e.getMessage());
-		} catch (ParseException e) {
+		} catch (DateTimeParseException e) {
 			e.printStackTrace();
 		}
-		return "";
+	}
+
+	/**
+	 * Retorna as listas de compras criadas entre duas datas, inclusive.
+	 * 
+	 * @param dataInicial
+	 *            : primeiro dia do periodo pesquisado.
+	 * @param dataFinal
+	 *            : ultimo dia do periodo pesquisado.
+	 * 
+	 * @return : Retorna a data de criacao e o descritor de cada lista, uma por
+	 *         linha, ordenadas pela data e pelo descritor.
+	 */
+	public String pesquisaListasDeComprasPorPeriodo(String dataInicial, String dataFinal) {
+		StringBuilder volta = new StringBuilder();
+		try {
+			this.escreveListasDeComprasPorPeriodo(dataInicial, dataFinal, volta);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return volta.toString();
+	}
+
+	/**
+	 * Escreve as listas de compras criadas entre duas datas, inclusive, em um
+	 * destino de texto.
+	 * 
+	 * @param dataInicial
+	 *            : primeiro dia do periodo pesquisado.
+	 * @param dataFinal
+	 *            : ultimo dia do periodo pesquisado.
+	 * @param saida
+	 *            : destino onde as listas serao escritas.
+	 * @throws IOException
+	 *             : caso ocorra um erro ao escrever no destino.
+	 */
+	public void escreveListasDeComprasPorPeriodo(String dataInicial, String dataFinal, Appendable saida)
+			throws IOException {
+		LocalDate inicio;
+		LocalDate fim;
+		try {
+			if (!ValidadorSistema.validaData(dataInicial) || !ValidadorSistema.validaData(dataFinal)) {
+				throw new CampoInvalidoException("data em formato invalido, tente dd/MM/yyyy");
+			}
+			inicio = formataData(dataInicial);
+			fim = formataData(dataFinal);
+		} catch (CampoInvalidoException e) {
+			throw new CampoInvalidoException(Mensagem.MSG_EXCECAO_PESQUISA_COMPRA.get() + e.getMessage());
+		} catch (DateTimeParseException e) {
+			throw new CampoInvalidoException(
+					Mensagem.MSG_EXCECAO_PESQUISA_COMPRA.get() + "data em formato invalido, tente dd/MM/yyyy");
+		}
+		if (fim.isBefore(inicio)) {
+			throw new CampoInvalidoException(
+					Mensagem.MSG_EXCECAO_PESQUISA_COMPRA.get() + "data final nao pode ser anterior a data inicial.");
+		}
+		for (Map.Entry<LocalDate, NavigableSet<String>> listasDoDia : this.listasPorDia.subMap(inicio, true, fim, true)
+				.entrySet()) {
+			String dataTextual = FormatoData.formata(listasDoDia.getKey());
+			for (String descritor : listasDoDia.getValue()) {
+				saida.append(dataTextual).append(" - ").append(descritor).append(System.lineSeparator());
+			}
+		}
 	}
 
 	/**
@@ -295,44 +728,81 @@ public class ListaService implements Serializable {
 	 * @return representacao textual das listas que contem o produto
 	 */
 	public String pesquisaListasDeComprasPorItem(int id) {
-		String volta = "";
-		for (ListaDeCompras lista : listas.values()) {
-			if (lista.possuiCompra(id)) {
-				volta += lista.getDescritor() + System.lineSeparator();
-			}
+		StringBuilder volta = new StringBuilder();
+		try {
+			this.escreveListasDeComprasPorItem(id, volta);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return volta.toString();
+	}
+
+	/**
+	 * Escreve os descritores das listas que possuem tal produto em um destino de
+	 * texto, um por linha. Nada e escrito caso nenhuma lista possua o produto.
+	 * 
+	 * @param id
+	 *            :indentificador do produto.
+	 * @param saida
+	 *            : destino onde os descritores serao escritos.
+	 * @throws IOException
+	 *             : caso ocorra um erro ao escrever no destino.
+	 */
+	public void escreveListasDeComprasPorItem(int id, Appendable saida) throws IOException {
+		Set<String> descritores = this.descritoresComItem(id);
+		if (descritores.isEmpty()) {
+			ValidadorSistema.validaSaidaVazia("");
+		}
+		for (String descritor : descritores) {
+			saida.append(descritor).append(System.lineSeparator());
 		}
-		ValidadorSistema.validaSaidaVazia(volta);
-		return volta;
 	}
 
 	/**
 	 * Metodo responsavel por gerar automaticamente o dia da ultima lista que foi
 	 * cadastrada.
 	 * 
-	 * @param dataAtual
-	 *            : data atual a ser utilizada como criterio para geracao das
-	 *            listas.
+	 * @param dataCriacao
+	 *            : data/hora de criacao da lista gerada, cujo dia faz parte do
+	 *            descritor.
 	 * 
 	 * @return : representacao textual do dia em que foi realizada a ultima compra.
 	 */
-	public String geraAutomaticaUltimaLista(String dataAtual) {
+	public String geraAutomaticaUltimaLista(Date dataCriacao) {
 		ListaDeCompras lista = getUltimaLista();
-		String descritor = Estrategia.ESTRATEGIA_1.get() + " " + dataAtual;
-		ListaDeCompras listaDeCompras = new ListaDeCompras(descritor);
-		listaDeCompras.setCompras(lista.getCompras());
+		String descritor = Estrategia.ESTRATEGIA_1.get() + " " + FormatoData.formata(dataCriacao);
+		ListaDeCompras listaDeCompras = new ListaDeCompras(descritor, dataCriacao);
+		listaDeCompras.copiaCompras(lista.getCompras());
 		listaDeCompras.setValorFinal(lista.getValorFinal());
-		this.listas.put(descritor, listaDeCompras);
+		this.guardaLista(listaDeCompras);
 		return descritor;
 	}
 
 	/**
-	 * Metodo responsavel por retornar a ultima lista de compra realizada.
+	 * Metodo responsavel por retornar a ultima lista de compra realizada. As
+	 * listas do historico sao comparadas pela data guardada nos indices, e so a
+	 * ultima e lida.
 	 * 
 	 * @return Lista de compra
 	 */
 	private ListaDeCompras getUltimaLista() {
 		List<ListaDeCompras> lista = new ArrayList<>(this.listas.values());
 		Collections.sort(lista, new ComparaData());
+		String ultimaHistorico = null;
+		Date dataHistorico = null;
+		for (Map.Entry<String, Date> entrada : this.datasHistorico.entrySet()) {
+			if (dataHistorico == null || entrada.getValue().compareTo(dataHistorico) >= 0) {
+				ultimaHistorico = entrada.getKey();
+				dataHistorico = entrada.getValue();
+			}
+		}
+		if (dataHistorico != null
+				&& (lista.isEmpty() || dataHistorico.after(lista.get(lista.size() - 1).getData()))) {
+			ListaDeCompras ultima = this.buscaLista(ultimaHistorico);
+			if (ultima != null) {
+				return ultima;
+			}
+		}
 		return lista.get(lista.size() - 1);
 	}
 
@@ -342,22 +812,23 @@ public class ListaService implements Serializable {
 	 * 
 	 * @param descritorItem
 	 *            : item a ser procurado.
-	 * @param dataAtual
-	 *            : data atual a ser utilizada como criterio para geracao do item.
+	 * @param dataCriacao
+	 *            : data/hora de criacao da lista gerada, cujo dia faz parte do
+	 *            descritor.
 	 * 
 	 * @return : Retorna a representacao textual do ultimo dia em que o item foi
 	 *         comprado.
 	 */
-	public String geraAutomaticaItem(String descritorItem, String dataAtual) {
+	public String geraAutomaticaItem(String descritorItem, Date dataCriacao) {
 		ListaDeCompras lista = getUltimaLista(descritorItem);
 		ValidadorSistema.validaListaDeCompra(lista);
 
-		String descritor = Estrategia.ESTRATEGIA_2.get() + " " + dataAtual;
+		String descritor = Estrategia.ESTRATEGIA_2.get() + " " + FormatoData.formata(dataCriacao);
 
-		ListaDeCompras listaDeCompras = new ListaDeCompras(descritor);
-		listaDeCompras.setCompras(lista.getCompras());
+		ListaDeCompras listaDeCompras = new ListaDeCompras(descritor, dataCriacao);
+		listaDeCompras.copiaCompras(lista.getCompras());
 		listaDeCompras.setValorFinal(lista.getValorFinal());
-		this.listas.put(descritor, listaDeCompras);
+		this.guardaLista(listaDeCompras);
 		return descritor;
 	}
 
@@ -372,10 +843,23 @@ public class ListaService implements Serializable {
 	private ListaDeCompras getUltimaLista(String nomeItem) {
 		List<ListaDeCompras> lista = new ArrayList<>(this.listas.values());
 		Collections.sort(lista, new ComparaData());
-		ListaDeCompras listaDeCompras = null;
-		for (int i = lista.size() - 1; i >= 0; i--) {
-			listaDeCompras = lista.get(i);
-			if (listaDeCompras.contemItem(nomeItem)) {
+		List<Map.Entry<String, Date>> historicas = new ArrayList<>(this.datasHistorico.entrySet());
+		Collections.sort(historicas, new Comparator<Map.Entry<String, Date>>() {
+			@Override
+			public int compare(Map.Entry<String, Date> entrada1, Map.Entry<String, Date> entrada2) {
+				return entrada1.getValue().compareTo(entrada2.getValue());
+			}
+		});
+		int i = lista.size() - 1;
+		int j = historicas.size() - 1;
+		while (i >= 0 || j >= 0) {
+			ListaDeCompras listaDeCompras;
+			if (j < 0 || (i >= 0 && lista.get(i).getData().compareTo(historicas.get(j).getValue()) >= 0)) {
+				listaDeCompras = lista.get(i--);
+			} else {
+				listaDeCompras = this.buscaLista(historicas.get(j--).getKey());
+			}
+			if (listaDeCompras != null && listaDeCompras.contemItem(nomeItem)) {
 				return listaDeCompras;
 			}
 		}
@@ -388,24 +872,25 @@ public class ListaService implements Serializable {
 	 * 
 	 * @param itens
 	 *            : colecao de itens compraveis.
-	 * @param dataAtual
-	 *            : data atual a ser utilizada como criterio para geracao da lista
-	 *            com os itens mais presentes.
+	 * @param dataCriacao
+	 *            : data/hora de criacao da lista gerada, cujo dia faz parte do
+	 *            descritor.
 	 * 
 	 * @return : Retorna a representacao textual do dia em que a lista ocorre.
 	 */
-	public String geraAutomaticaItensMaisPresentes(Collection<Item> itens, String dataAtual) {
+	public String geraAutomaticaItensMaisPresentes(Collection<Item> itens, Date dataCriacao) {
 		Map<Item, Integer> maisComprados = buscaMaisComprados(itens);
 
-		String descritor = Estrategia.ESTRATEGIA_3.get() + " " + dataAtual;
-		ListaDeCompras listaDeCompras = new ListaDeCompras(descritor);
+		String descritor = Estrategia.ESTRATEGIA_3.get() + " " + FormatoData.formata(dataCriacao);
+		ListaDeCompras listaDeCompras = new ListaDeCompras(descritor, dataCriacao);
 		listaDeCompras.adicionaCompras(maisComprados);
-		this.listas.put(descritor, listaDeCompras);
+		this.guardaLista(listaDeCompras);
 		return descritor;
 	}
 
 	/**
-	 * Metodo auxiliar responsavel por retornar os itens mais comprados
+	 * Metodo auxiliar responsavel por retornar os itens mais comprados. Usa os
+	 * contadores de presencas e quantidades de cada item, sem percorrer as listas.
 	 * 
 	 * @param itens : colecao de itens a serem pesquisados os mais comprados.
 	 * 
@@ -413,12 +898,14 @@ public class ListaService implements Serializable {
 	 */
 	private Map<Item, Integer> buscaMaisComprados(Collection<Item> itens) {
 		Map<Item, Integer> maisComprados = new HashMap<>();
+		int quantidadeListas = this.getQuantidadeListas();
 
 		for (Item item : itens) {
-			List<Compra> compraQuePossue = listasQuePossui(item);
-			if (compraQuePossue.size() >= (this.listas.size() / 2)) {
-				Integer quantidade = calculaTotal(compraQuePossue);
-				quantidade = (int) Math.floor(quantidade / compraQuePossue.size());
+			long contador = this.getContador(item.getId());
+			int presencas = (int) (contador >> 32);
+			int quantidade = (int) contador;
+			if (presencas >= (quantidadeListas / 2)) {
+				quantidade = (int) Math.floor(quantidade / presencas);
 				maisComprados.put(item, quantidade);
 			}
 		}
@@ -426,37 +913,38 @@ public class ListaService implements Serializable {
 	}
 
 	/**
-	 * Metodo auxiliar que serve para calcular o valor total das compras.
+	 * Metodo auxiliar que atualiza os contadores de um item.
 	 * 
-	 * @param compraQuePossue
-	 *            Lista que contem as compras.
-	 * @return inteiro representando a soma total.
+	 * @param idItem
+	 *            : O id do item.
+	 * @param presencas
+	 *            : A variacao na quantidade de listas que possuem o item.
+	 * @param quantidade
+	 *            : A variacao na quantidade comprada do item.
 	 */
-	private int calculaTotal(List<Compra> compraQuePossue) {
-		int quantidade = 0;
-		for (Compra compra : compraQuePossue) {
-			quantidade += compra.getQuantidade();
+	private void contaCompra(int idItem, int presencas, int quantidade) {
+		AtomicLong contador = this.contadoresPorItem.get(idItem);
+		if (contador == null) {
+			AtomicLong novo = new AtomicLong();
+			contador = this.contadoresPorItem.putIfAbsent(idItem, novo);
+			if (contador == null) {
+				contador = novo;
+			}
 		}
-		return quantidade;
+		contador.addAndGet(((long) presencas << 32) + quantidade);
 	}
 
 	/**
-	 * Metodo responsavel por verificar se um item existe nas listas de compras.
+	 * Metodo auxiliar que retorna o contador de um item, com a quantidade de
+	 * listas nos 32 bits mais altos e a soma das quantidades nos mais baixos.
 	 * 
-	 * @param item
-	 *            :Item a ser pesquisado.
-	 * @return Lista contendo as compras que possuem tal item.
+	 * @param idItem
+	 *            : O id do item.
+	 * @return O valor do contador, ou zero caso o item nunca tenha sido comprado.
 	 */
-	private List<Compra> listasQuePossui(Item item) {
-		List<Compra> compras = new ArrayList<>();
-
-		for (ListaDeCompras lista : this.listas.values()) {
-			Compra compra = lista.getCompra(item.getId());
-			if (compra != null) {
-				compras.add(compra);
-			}
-		}
-		return compras;
+	private long getContador(int idItem) {
+		AtomicLong contador = this.contadoresPorItem.get(idItem);
+		return contador == null ? 0 : contador.get();
 	}
 
 	/**
@@ -468,13 +956,11 @@ public class ListaService implements Serializable {
 	 */
 	public String sugereMelhorEstabelecimento(String descritor, int posicaoEstabelecimento, int posicaoLista) {
 
-		if (!this.listas.containsKey(descritor)) {
+		ListaDeCompras lista = this.buscaLista(descritor);
+		if (lista == null) {
 			throw new CampoInvalidoException(Mensagem.MSG_EXCECAO_DADOS_INSUFICIENTES.get());
 		}
-		ListaDeCompras lista = this.listas.get(descritor);
-		Map<String, Estabelecimento> estabelecimentos = buscaLocais(lista);
-		List<Estabelecimento> listaEstabelecimentos = new ArrayList<>(estabelecimentos.values());
-		Collections.sort(listaEstabelecimentos);
+		List<Estabelecimento> listaEstabelecimentos = getRanking(lista);
 		if (posicaoLista == 0) {
 			if (posicaoEstabelecimento >= listaEstabelecimentos.size()) {
 				throw new CampoInvalidoException(Mensagem.MSG_EXCECAO_DADOS_INSUFICIENTES.get());
@@ -482,35 +968,654 @@ public class ListaService implements Serializable {
 			return listaEstabelecimentos.get(posicaoEstabelecimento).toString();
 		} else {
 			Estabelecimento estabelecimento = listaEstabelecimentos.get(posicaoEstabelecimento);
-			Collections.sort(estabelecimento.getCompras());
-			if (posicaoLista - 1 >= estabelecimento.getCompras().size()) {
+			Compra compra = estabelecimento.getCompra(posicaoLista - 1);
+			if (compra == null) {
 				return "";
 			}
-			return "- " + estabelecimento.getCompras().get(posicaoLista - 1).toString();
+			return "- " + compra.toString();
+		}
+	}
+
+	/**
+	 * Metodo auxiliar que retorna o ranking de estabelecimentos de uma lista de compras, ordenado
+	 * pelo valor. O ranking e calculado apenas quando a lista nao possui um ranking guardado, e as
+	 * compras de cada estabelecimento sao ordenadas uma unica vez, na primeira consulta. O calculo e
+	 * sincronizado na lista, assim como as alteracoes das compras e o descarte do ranking depois de
+	 * uma alteracao de precos, para que uma alteracao feita ao mesmo tempo nao seja perdida.
+	 * @param lista : a lista de compras
+	 * @return A lista de estabelecimentos ordenada
+	 */
+	private List<Estabelecimento> getRanking(ListaDeCompras lista) {
+		List<Estabelecimento> ranking = lista.getRankingEstabelecimentos();
+		if (ranking != null) {
+			return ranking;
+		}
+		synchronized (lista) {
+			ranking = lista.getRankingEstabelecimentos();
+			if (ranking == null) {
+				ranking = new ArrayList<>(buscaLocais(lista).values());
+				Collections.sort(ranking);
+				lista.setRankingEstabelecimentos(ranking);
+			}
+			return ranking;
+		}
+	}
+
+	/**
+	 * Metodo responsavel por descartar os rankings de estabelecimentos das listas de compras que
+	 * possuem um item, que deve ser chamado depois que o item ou os seus precos mudarem. As listas
+	 * do historico que nao estao no cache nao possuem ranking. O ranking e descartado sincronizado
+	 * na lista, de forma que um ranking calculado com os precos anteriores ao mesmo tempo e
+	 * descartado depois de guardado.
+	 * @param idItem : o id do item alterado
+	 */
+	public void invalidaRankings(Integer idItem) {
+		for (String descritor : this.descritoresComItem(idItem)) {
+			ListaDeCompras lista = this.listaNaMemoria(descritor);
+			if (lista != null) {
+				synchronized (lista) {
+					lista.invalidaRanking();
+				}
+			}
 		}
 	}
 
 	/**
-	 * Metodo responsavel por realizar um mapeamento associando um local de compra com estabelecimentos
+	 * Metodo responsavel por realizar um mapeamento associando um local de compra com estabelecimentos.
+	 * Os valores sao somados em vetores indexados pelo identificador do local no
+	 * {@link EstabelecimentoRegistry} do sistema; listas com mais compras que o limiar paralelo tem a soma
+	 * dividida entre as threads do ForkJoinPool.
 	 * @param lista : uma lista de compra que sera utilizada como base para o mapeamento
 	 * @return
 	 */
 	private Map<String, Estabelecimento> buscaLocais(ListaDeCompras lista) {
+		Compra[] compras = lista.getCompras().values().toArray(new Compra[0]);
+		SomaEstabelecimentos.Resultado soma = new SomaEstabelecimentos(compras, this.estabelecimentos, 0,
+				compras.length, this.limiarParalelo).invoke();
+
 		Map<String, Estabelecimento> locais = new HashMap<>();
+		for (int idLocal = 0; idLocal < soma.totais.length; idLocal++) {
+			if (soma.compras[idLocal] == null) {
+				continue;
+			}
+			String nome = this.estabelecimentos.getNome(idLocal);
+			locais.put(nome, new Estabelecimento(nome, soma.totais[idLocal], soma.compras[idLocal]));
+		}
+		return locais;
+	}
 
-		for (Compra c : lista.getCompras().values()) {
-			Item item = c.getItem();
-			Map<String, Double> precos = item.getPrecos();
-			for (String key : precos.keySet()) {
-				if (locais.containsKey(key)) {
-					locais.get(key).add(c, precos.get(key) * c.getQuantidade());
-				} else {
-					locais.put(key, new Estabelecimento(key));
-					locais.get(key).add(c, precos.get(key) * c.getQuantidade());
+	/**
+	 * Metodo responsavel por alterar a quantidade de compras de uma lista a partir da qual
+	 * o calculo dos estabelecimentos e feito em paralelo.
+	 * @param limiarParalelo : a quantidade minima de compras para o calculo paralelo
+	 */
+	public void setLimiarParalelo(int limiarParalelo) {
+		this.limiarParalelo = limiarParalelo;
+	}
+
+	/**
+	 * Metodo responsavel por atualizar as listas de compras que possuem um item
+	 * depois que ele foi alterado. As listas do historico que nao estao no cache
+	 * ja usam o item alterado quando forem lidas. Uma compra adicionada ao mesmo
+	 * tempo em uma lista que ainda nao aparece no indice e corrigida pela propria
+	 * lista, ao ser indexada.
+	 * 
+	 * @param idItem
+	 *            : O id do item alterado.
+	 */
+	public void atualizaItem(Integer idItem) {
+		for (String descritor : this.descritoresComItem(idItem)) {
+			ListaDeCompras lista = this.listaNaMemoria(descritor);
+			if (lista != null) {
+				lista.atualizaItem(idItem);
+			}
+		}
+	}
+
+	/**
+	 * Metodo auxiliar que retorna a quantidade de listas de compras do sistema,
+	 * na memoria e no historico.
+	 * 
+	 * @return A quantidade de listas.
+	 */
+	private int getQuantidadeListas() {
+		synchronized (this.listas) {
+			return this.listas.size() + this.datasHistorico.size();
+		}
+	}
+
+	/**
+	 * Metodo auxiliar que retorna a lista de compras com um descritor, lendo-a do
+	 * historico caso ela nao esteja na memoria.
+	 * 
+	 * @param descritor
+	 *            : O descritor da lista de compras.
+	 * @return A lista de compras, ou null caso ela nao exista.
+	 */
+	private ListaDeCompras buscaLista(String descritor) {
+		ListaDeCompras lista = this.listas.get(descritor);
+		if (lista == null && this.historico != null && this.datasHistorico.containsKey(descritor)) {
+			lista = this.listaHistorica(descritor);
+		}
+		return lista != null ? lista : this.listas.get(descritor);
+	}
+
+	/**
+	 * Metodo auxiliar que retorna a lista de compras com um descritor apenas caso
+	 * ela esteja na memoria ou no cache do historico, sem ler o historico.
+	 * 
+	 * @param descritor
+	 *            : O descritor da lista de compras.
+	 * @return A lista de compras, ou null caso ela nao esteja na memoria.
+	 */
+	private ListaDeCompras listaNaMemoria(String descritor) {
+		ListaDeCompras lista = this.listas.get(descritor);
+		if (lista == null && this.historico != null) {
+			synchronized (this.recentes) {
+				lista = this.recentes.get(descritor);
+			}
+		}
+		return lista;
+	}
+
+	/**
+	 * Metodo auxiliar que le uma lista do historico, passando pelo cache. A
+	 * leitura e feita fora do cache; a lista lida so e colocada no cache caso
+	 * nenhuma lista tenha entrado ou saido do historico durante a leitura, para
+	 * que uma copia antiga nao fique no cache depois que a lista voltou para a
+	 * memoria.
+	 * 
+	 * @param descritor
+	 *            : O descritor da lista de compras.
+	 * @return A lista de compras, ou null caso ela nao esteja no historico.
+	 */
+	private ListaDeCompras listaHistorica(String descritor) {
+		long versao;
+		synchronized (this.recentes) {
+			ListaDeCompras lista = this.recentes.get(descritor);
+			if (lista != null) {
+				return lista;
+			}
+			versao = this.recentes.versao;
+		}
+		ListaDeCompras lista;
+		try {
+			lista = this.historico.le(descritor, this.itensHistorico);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		if (lista != null) {
+			synchronized (this.recentes) {
+				if (this.recentes.versao == versao) {
+					this.recentes.put(descritor, lista);
 				}
 			}
 		}
-		return locais;
+		return lista;
+	}
+
+	/**
+	 * Metodo auxiliar que retorna a lista de compras com um descritor para ser
+	 * alterada. Uma lista do historico volta para a memoria e deixa o historico;
+	 * a leitura e a remocao do registro sao feitas com a trava do historico, fora
+	 * do mapa de listas.
+	 * 
+	 * @param descritor
+	 *            : O descritor da lista de compras.
+	 * @return A lista de compras, ou null caso ela nao exista.
+	 */
+	private ListaDeCompras listaAtiva(String descritor) {
+		ListaDeCompras lista = this.listas.get(descritor);
+		if (lista != null || this.historico == null) {
+			return lista;
+		}
+		synchronized (this.travaHistorico) {
+			lista = this.listas.get(descritor);
+			if (lista != null || !this.datasHistorico.containsKey(descritor)) {
+				return lista;
+			}
+			lista = this.listaHistorica(descritor);
+			synchronized (this.listas) {
+				this.listas.put(descritor, lista);
+				this.retiraDoHistorico(descritor);
+			}
+			this.apagaDoHistorico(descritor);
+			return lista;
+		}
+	}
+
+	/**
+	 * Metodo auxiliar que guarda uma lista finalizada no historico e a retira da
+	 * memoria, caso o historico esteja ativo. A lista continua no cache. Se a
+	 * lista nao puder ser guardada, ela continua na memoria e o erro e lancado
+	 * como UncheckedIOException. A gravacao e feita
+	 * com a trava do historico e sincronizada apenas na lista, e o mapa de listas
+	 * so e sincronizado depois, para trocar a lista de lugar.
+	 * 
+	 * @param lista
+	 *            : A lista de compras.
+	 */
+	private void arquiva(ListaDeCompras lista) {
+		if (this.historico == null) {
+			return;
+		}
+		String descritor = lista.getDescritor();
+		synchronized (this.travaHistorico) {
+			synchronized (lista) {
+				if (this.listas.get(descritor) != lista || !lista.isFinalizada()) {
+					return;
+				}
+				try {
+					this.historico.guarda(lista);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				synchronized (this.listas) {
+					this.datasHistorico.put(descritor, lista.getData());
+					synchronized (this.recentes) {
+						this.recentes.put(descritor, lista);
+						this.recentes.versao++;
+					}
+					this.listas.remove(descritor);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Metodo auxiliar que retira a lista com um descritor das datas do historico
+	 * e do cache. Deve ser chamado com a trava do historico e sincronizado no
+	 * mapa de listas, depois que a lista voltou para a memoria ou foi substituida.
+	 * 
+	 * @param descritor
+	 *            : O descritor da lista de compras.
+	 */
+	private void retiraDoHistorico(String descritor) {
+		this.datasHistorico.remove(descritor);
+		synchronized (this.recentes) {
+			this.recentes.remove(descritor);
+			this.recentes.versao++;
+		}
+	}
+
+	/**
+	 * Metodo auxiliar que apaga do historico o registro de uma lista retirada
+	 * dele. Deve ser chamado com a trava do historico, fora do mapa de listas.
+	 * Caso o registro nao possa ser apagado, ele fica sem uso, e substituido se
+	 * a lista voltar para o historico, e o erro e lancado como
+	 * UncheckedIOException.
+	 * 
+	 * @param descritor
+	 *            : O descritor da lista de compras.
+	 */
+	private void apagaDoHistorico(String descritor) {
+		try {
+			this.historico.remove(descritor);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Metodo auxiliar que guarda uma lista gerada automaticamente, retirando dos
+	 * indices uma lista anterior com o mesmo descritor. A lista nova fica travada
+	 * ate ser indexada, e a anterior enquanto e retirada dos indices; quem estiver
+	 * esperando para alterar a anterior passa a alterar a nova. Uma lista
+	 * anterior que esteja no historico e lida, com a trava do historico e fora do
+	 * mapa de listas, para ser retirada dos indices, e a lista nova vai para o
+	 * historico caso ja esteja finalizada.
+	 * 
+	 * @param lista
+	 *            : A lista de compras que sera guardada.
+	 */
+	private void guardaLista(ListaDeCompras lista) {
+		String descritor = lista.getDescritor();
+		synchronized (this.travaHistorico) {
+			boolean noHistorico = this.historico != null && this.datasHistorico.containsKey(descritor);
+			ListaDeCompras historica = noHistorico ? this.listaHistorica(descritor) : null;
+			synchronized (lista) {
+				ListaDeCompras anterior;
+				synchronized (this.listas) {
+					anterior = this.listas.put(descritor, lista);
+					if (noHistorico) {
+						anterior = historica;
+						this.retiraDoHistorico(descritor);
+					} else if (anterior == null) {
+						synchronized (this.descritores) {
+							if (!this.descritores.contem(descritor)) {
+								this.descritores.adiciona(descritor);
+							}
+						}
+					}
+				}
+				if (anterior != null) {
+					synchronized (anterior) {
+						this.preservaLista(anterior);
+						this.removeDosIndices(anterior);
+					}
+				}
+				this.indexaLista(lista);
+			}
+			if (noHistorico) {
+				this.apagaDoHistorico(descritor);
+			}
+			this.arquiva(lista);
+		}
+	}
+
+	/**
+	 * Metodo auxiliar que adiciona uma lista ao indice por dia e todas as suas
+	 * compras ao indice invertido. Depois de indexada, cada compra e reordenada na
+	 * lista caso o seu item tenha sido alterado sem encontrar a lista no indice.
+	 * 
+	 * @param lista
+	 *            : A lista de compras que sera indexada.
+	 */
+	private void indexaLista(ListaDeCompras lista) {
+		NavigableSet<String> listasDoDia = this.listasPorDia.get(lista.getDia());
+		if (listasDoDia == null) {
+			NavigableSet<String> novas = new ConcurrentSkipListSet<>(ORDEM_DESCRITORES);
+			listasDoDia = this.listasPorDia.putIfAbsent(lista.getDia(), novas);
+			if (listasDoDia == null) {
+				listasDoDia = novas;
+			}
+		}
+		listasDoDia.add(lista.getDescritor());
+		for (Compra compra : lista.getCompras().values()) {
+			this.indexaCompra(compra.getItem().getId(), lista.getDescritor());
+			this.contaCompra(compra.getItem().getId(), 1, compra.getQuantidade());
+			lista.atualizaItem(compra.getItem().getId());
+		}
+	}
+
+	/**
+	 * Metodo auxiliar que retira uma lista e todas as suas compras dos indices. O
+	 * conjunto do dia e mantido mesmo que fique vazio, assim como no indice
+	 * invertido.
+	 * 
+	 * @param lista
+	 *            : A lista de compras que sera retirada.
+	 */
+	private void removeDosIndices(ListaDeCompras lista) {
+		NavigableSet<String> listasDoDia = this.listasPorDia.get(lista.getDia());
+		if (listasDoDia != null) {
+			listasDoDia.remove(lista.getDescritor());
+		}
+		for (Compra compra : lista.getCompras().values()) {
+			this.removeCompraDoIndice(compra.getItem().getId(), lista.getDescritor());
+			this.contaCompra(compra.getItem().getId(), -1, -compra.getQuantidade());
+		}
+	}
+
+	/**
+	 * Metodo auxiliar que registra no indice invertido que uma lista possui uma
+	 * compra de um item.
+	 * 
+	 * @param idItem
+	 *            : O id do item comprado.
+	 * @param descritor
+	 *            : O descritor da lista de compras.
+	 */
+	private void indexaCompra(Integer idItem, String descritor) {
+		Set<String> descritores = this.listasPorItem.get(idItem);
+		if (descritores == null) {
+			Set<String> novos = Collections.synchronizedSet(new LinkedHashSet<String>());
+			descritores = this.listasPorItem.putIfAbsent(idItem, novos);
+			if (descritores == null) {
+				descritores = novos;
+			}
+		}
+		descritores.add(descritor);
+	}
+
+	/**
+	 * Metodo auxiliar que retira do indice invertido a compra de um item em uma
+	 * lista.
+	 * 
+	 * @param idItem
+	 *            : O id do item comprado.
+	 * @param descritor
+	 *            : O descritor da lista de compras.
+	 */
+	private void removeCompraDoIndice(Integer idItem, String descritor) {
+		Set<String> descritores = this.listasPorItem.get(idItem);
+		if (descritores != null) {
+			descritores.remove(descritor);
+		}
+	}
+
+	/**
+	 * Metodo auxiliar que retorna os descritores das listas que possuem uma compra
+	 * de um item.
+	 * 
+	 * @param idItem
+	 *            : O id do item pesquisado.
+	 * @return Uma copia dos descritores das listas, na ordem em que o item foi adicionado a elas.
+	 */
+	private Set<String> descritoresComItem(Integer idItem) {
+		Set<String> descritores = this.listasPorItem.get(idItem);
+		if (descritores == null) {
+			return Collections.emptySet();
+		}
+		synchronized (descritores) {
+			return new LinkedHashSet<>(descritores);
+		}
+	}
+
+	/**
+	 * Metodo responsavel por carregar o servico de um arquivo, reconstruindo os
+	 * indices e contadores a partir das listas. As listas do historico gravadas
+	 * depois dos campos sao lidas uma a uma para o mapa de listas. Arquivos
+	 * antigos podem conter listas geradas automaticamente que compartilham o mapa
+	 * de compras com a lista de origem, por isso cada lista recebe uma copia das
+	 * suas compras. O mapa de listas dos arquivos antigos e trocado por um mapa
+	 * concorrente.
+	 * 
+	 * @param entrada
+	 *            : O fluxo de onde o servico sera lido.
+	 */
+	@SuppressWarnings("unchecked")
+	private void readObject(ObjectInputStream entrada) throws IOException, ClassNotFoundException {
+		ObjectInputStream.GetField campos = entrada.readFields();
+		this.listas = new ConcurrentHashMap<>((Map<String, ListaDeCompras>) campos.get("listas", null));
+		int quantidadeHistorico = campos.get("quantidadeHistorico", 0);
+		for (int i = 0; i < quantidadeHistorico; i++) {
+			ListaDeCompras lista = (ListaDeCompras) entrada.readUnshared();
+			if (lista != null) {
+				this.listas.put(lista.getDescritor(), lista);
+			}
+		}
+		this.listasPorItem = new ConcurrentHashMap<>();
+		this.listasPorDia = new ConcurrentSkipListMap<>();
+		this.contadoresPorItem = new ConcurrentHashMap<>();
+		this.limiarParalelo = LIMIAR_PARALELO_PADRAO;
+		this.estabelecimentos = new EstabelecimentoRegistry();
+		this.datasHistorico = new ConcurrentHashMap<>();
+		this.travaHistorico = new Object();
+		this.descritores = new IndiceOrdenado<>(ORDEM_DESCRITORES);
+		this.capturas = new CopyOnWriteArrayList<>();
+		for (ListaDeCompras lista : this.listas.values()) {
+			lista.copiaCompras(lista.getCompras());
+			this.descritores.adiciona(lista.getDescritor());
+			this.indexaLista(lista);
+		}
+	}
+
+	/**
+	 * Metodo responsavel por gravar o servico em um arquivo. As listas do
+	 * historico sao gravadas depois das listas da memoria, uma a uma, conforme
+	 * sao lidas do historico, e sem que o fluxo guarde referencia a elas; uma
+	 * lista apagada durante a gravacao e gravada como null.
+	 * 
+	 * @param saida
+	 *            : O fluxo onde o servico sera gravado.
+	 */
+	private void writeObject(ObjectOutputStream saida) throws IOException {
+		Map<String, ListaDeCompras> naMemoria = this.listas;
+		List<String> historicas = Collections.emptyList();
+		if (this.historico != null) {
+			synchronized (this.listas) {
+				naMemoria = new HashMap<>(this.listas);
+				historicas = new ArrayList<>(this.datasHistorico.keySet());
+			}
+			historicas.removeAll(naMemoria.keySet());
+		}
+		ObjectOutputStream.PutField campos = saida.putFields();
+		campos.put("listas", naMemoria);
+		campos.put("quantidadeHistorico", historicas.size());
+		saida.writeFields();
+		for (String descritor : historicas) {
+			saida.writeUnshared(this.leListaHistorica(descritor));
+		}
+	}
+
+	/**
+	 * Metodo responsavel por retornar todas as listas de compras do sistema. As
+	 * listas do historico sao lidas dele, sem passar pelo cache.
+	 * 
+	 * @return Uma colecao, que nao pode ser alterada, com as listas de compras.
+	 */
+	public Collection<ListaDeCompras> getListas() {
+		if (this.historico == null) {
+			return Collections.unmodifiableCollection(this.listas.values());
+		}
+		List<ListaDeCompras> todas;
+		List<String> historicas;
+		synchronized (this.listas) {
+			todas = new ArrayList<>(this.listas.values());
+			historicas = new ArrayList<>(this.datasHistorico.keySet());
+		}
+		for (String descritor : historicas) {
+			ListaDeCompras lista;
+			try {
+				lista = this.leListaHistorica(descritor);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			if (lista != null) {
+				todas.add(lista);
+			}
+		}
+		return Collections.unmodifiableCollection(todas);
+	}
+
+	/**
+	 * Metodo auxiliar que retorna uma lista do historico sem passar pelo cache:
+	 * a lista da memoria ou do cache, caso exista, ou a lista lida do historico.
+	 * 
+	 * @param descritor
+	 *            : O descritor da lista de compras.
+	 * @return A lista de compras, ou null caso ela tenha sido apagada.
+	 * @throws IOException
+	 *             Caso ocorra um erro ao ler o historico.
+	 */
+	private ListaDeCompras leListaHistorica(String descritor) throws IOException {
+		ListaDeCompras lista = this.listaNaMemoria(descritor);
+		if (lista == null) {
+			lista = this.historico.le(descritor, this.itensHistorico);
+		}
+		if (lista == null) {
+			lista = this.listas.get(descritor);
+		}
+		return lista;
+	}
+
+	/**
+	 * Metodo responsavel por retornar os descritores de todas as listas de
+	 * compras, em tempo constante. O indice retornado e uma copia da versao
+	 * atual e nao deve ser alterado.
+	 * 
+	 * @return O indice dos descritores.
+	 */
+	public IndiceOrdenado<String> getDescritores() {
+		return this.descritores.copia();
+	}
+
+	/**
+	 * Metodo responsavel por passar a avisar uma copia do sistema antes de cada
+	 * alteracao em uma lista.
+	 * 
+	 * @param captura
+	 *            : A copia em andamento.
+	 */
+	public void adicionaCaptura(CapturaSistema captura) {
+		this.capturas.add(captura);
+	}
+
+	/**
+	 * Metodo responsavel por deixar de avisar uma copia do sistema que foi
+	 * concluida.
+	 * 
+	 * @param captura
+	 *            : A copia concluida.
+	 */
+	public void removeCaptura(CapturaSistema captura) {
+		this.capturas.remove(captura);
+	}
+
+	/**
+	 * Metodo responsavel por copiar para uma copia do sistema as listas de
+	 * compras com os descritores informados. Cada lista e procurada na memoria
+	 * e, depois, no historico, sem nenhuma trava do servico; a copia e feita
+	 * sincronizada apenas na lista. Uma lista que mudou de lugar no meio da busca
+	 * e procurada de novo.
+	 * 
+	 * @param captura
+	 *            : A copia em andamento, que ja foi adicionada ao servico.
+	 * @param descritoresCopiados
+	 *            : Os descritores das listas que serao copiadas.
+	 * @param itens
+	 *            : Os itens da copia, indexados pelo id, usados para recriar as
+	 *            listas lidas do historico.
+	 */
+	public void copiaListas(CapturaSistema captura, Iterable<String> descritoresCopiados, Map<Integer, Item> itens) {
+		for (String descritor : descritoresCopiados) {
+			while (true) {
+				ListaDeCompras lista = this.listaNaMemoria(descritor);
+				if (lista == null && this.historico != null) {
+					try {
+						lista = this.historico.le(descritor, itens);
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				}
+				if (lista == null) {
+					if (captura.copiaLista(descritor, null)) {
+						break;
+					}
+					continue;
+				}
+				synchronized (lista) {
+					captura.copiaLista(descritor, lista);
+				}
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Metodo auxiliar que avisa as copias do sistema em andamento de que uma
+	 * lista sera alterada. Deve ser chamado sincronizado na lista.
+	 * 
+	 * @param lista
+	 *            : A lista de compras que sera alterada.
+	 */
+	private void preservaLista(ListaDeCompras lista) {
+		for (CapturaSistema captura : this.capturas) {
+			captura.preservaLista(lista);
+		}
+	}
+
+	/**
+	 * Metodo responsavel por guardar uma lista de compras recriada a partir de um
+	 * arquivo, indexando as suas compras. Uma lista com o mesmo descritor e
+	 * substituida.
+	 * 
+	 * @param lista
+	 *            : A lista de compras recriada.
+	 */
+	public void restauraLista(ListaDeCompras lista) {
+		this.guardaLista(lista);
 	}
 
 	/**
@@ -519,7 +1624,7 @@ public class ListaService implements Serializable {
 	 * @return Uma lista de itens
 	 */
 	public List<Item> getItens(String descritor) {
-		ListaDeCompras lista = this.listas.get(descritor);
+		ListaDeCompras lista = this.buscaLista(descritor);
 		return lista.getItens();
 	}
 
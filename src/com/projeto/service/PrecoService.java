@@ -1,6 +1,12 @@
 package com.projeto.service;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -13,21 +19,225 @@ public class PrecoService implements Serializable{
 	
 	
 	private static final long serialVersionUID = 2011540169977318247L;
+
 	/**
-	 * Uma mapa de precos onde estao guardados locais e respectivos precos do item compravel.
+	 * Campos gravados quando o controlador e salvo. O mapa de precos so existe nos
+	 * arquivos salvos antes da adocao dos vetores e e lido apenas por
+	 * compatibilidade.
 	 */
-	private Map<String, Double> mapaPrecos;
+	private static final ObjectStreamField[] serialPersistentFields = {
+			new ObjectStreamField("locais", String[].class), new ObjectStreamField("precos", double[].class),
+			new ObjectStreamField("mapaPrecos", Map.class) };
 
 	/**
-	 * Metodo responsavel por inicializar o controlador e seu mapeamento
-	 * de locais para precos
+	 * Tabela imutavel com os locais e precos de um item. Cada alteracao de preco
+	 * cria uma nova tabela, entao quem le uma tabela ve sempre locais, precos e
+	 * menor preco coerentes entre si, sem precisar de trava.
+	 */
+	public static final class TabelaPrecos {
+
+		/**
+		 * O dicionario onde os locais da tabela estao registrados. Os nomes dos
+		 * locais so sao guardados nele.
+		 */
+		private final EstabelecimentoRegistry registro;
+
+		/**
+		 * Os identificadores, no dicionario da tabela, dos locais de compra do
+		 * item. O preco de cada local fica na mesma posicao do vetor de precos.
+		 */
+		private final int[] locais;
+
+		/**
+		 * Os precos do item em cada local de compra, guardados como tipo primitivo.
+		 */
+		private final double[] precos;
+
+		/**
+		 * A posicao, nos vetores, do local de compra que oferece o menor preco. Vale
+		 * -1 enquanto o item nao possuir precos.
+		 */
+		private final int posicaoMenorPreco;
+
+		private TabelaPrecos(EstabelecimentoRegistry registro, int[] locais, double[] precos,
+				int posicaoMenorPreco) {
+			this.registro = registro;
+			this.locais = locais;
+			this.precos = precos;
+			this.posicaoMenorPreco = posicaoMenorPreco;
+		}
+
+		/**
+		 * Metodo responsavel por retornar o menor preco da tabela.
+		 * 
+		 * @return : o menor preco, ou zero caso a tabela nao possua precos.
+		 */
+		public double getMenorPreco() {
+			if (this.posicaoMenorPreco < 0) {
+				return 0;
+			}
+			return this.precos[this.posicaoMenorPreco];
+		}
+
+		/**
+		 * Metodo responsavel por retornar a quantidade de locais de compra da tabela.
+		 * 
+		 * @return : um inteiro com a quantidade de locais de compra.
+		 */
+		public int getQuantidadeLocais() {
+			return this.locais.length;
+		}
+
+		/**
+		 * Metodo responsavel por retornar o local de compra guardado em uma posicao.
+		 * 
+		 * @param posicao : a posicao do local, entre zero e a quantidade de locais.
+		 * @return : uma String com o nome canonico do local de compra.
+		 */
+		public String getLocal(int posicao) {
+			return this.registro.getNome(this.locais[posicao]);
+		}
+
+		/**
+		 * Metodo responsavel por retornar o identificador do local de compra
+		 * guardado em uma posicao, no dicionario da tabela.
+		 * 
+		 * @param posicao : a posicao do local, entre zero e a quantidade de locais.
+		 * @return : o identificador do local.
+		 */
+		public int getIdLocal(int posicao) {
+			return this.locais[posicao];
+		}
+
+		/**
+		 * Metodo responsavel por retornar o identificador do local de compra
+		 * guardado em uma posicao em outro dicionario. Quando o dicionario e o da
+		 * tabela, o identificador e lido direto do vetor; caso contrario, o local
+		 * e registrado no dicionario informado pelo nome.
+		 * 
+		 * @param posicao : a posicao do local, entre zero e a quantidade de locais.
+		 * @param outro : o dicionario de locais consultado.
+		 * @return : o identificador do local no dicionario informado.
+		 */
+		public int getIdLocal(int posicao, EstabelecimentoRegistry outro) {
+			if (outro == this.registro) {
+				return this.locais[posicao];
+			}
+			return outro.registra(this.getLocal(posicao));
+		}
+
+		/**
+		 * Metodo responsavel por retornar o preco do local de compra guardado em
+		 * uma posicao.
+		 * 
+		 * @param posicao : a posicao do local, entre zero e a quantidade de locais.
+		 * @return : o preco do item no local.
+		 */
+		public double getPreco(int posicao) {
+			return this.precos[posicao];
+		}
+
+		/**
+		 * Metodo auxiliar que procura a posicao de um local de compra na tabela.
+		 * 
+		 * @param idLocal : o identificador do local no dicionario da tabela.
+		 * @return : a posicao do local ou -1 caso ele nao esteja cadastrado.
+		 */
+		private int posicaoDoLocal(int idLocal) {
+			for (int i = 0; i < this.locais.length; i++) {
+				if (this.locais[i] == idLocal) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		/**
+		 * Metodo auxiliar que cria uma nova tabela com o preco de um local trocado
+		 * ou acrescentado, atualizando o menor preco. O local e registrado no
+		 * dicionario da tabela, caso ainda nao esteja.
+		 * 
+		 * @param local : o nome do local de compra.
+		 * @param preco : o preco do item no local.
+		 * @return : a nova tabela.
+		 */
+		private TabelaPrecos comPreco(String local, double preco) {
+			int idLocal = this.registro.registra(local);
+			int posicao = this.posicaoDoLocal(idLocal);
+			int[] novosLocais = this.locais;
+			if (posicao < 0) {
+				posicao = this.locais.length;
+				novosLocais = Arrays.copyOf(this.locais, posicao + 1);
+				novosLocais[posicao] = idLocal;
+			}
+			double[] novosPrecos = Arrays.copyOf(this.precos, novosLocais.length);
+			novosPrecos[posicao] = preco;
+			int menor = this.posicaoMenorPreco;
+			if (menor < 0 || preco < novosPrecos[menor]) {
+				menor = posicao;
+			} else if (posicao == menor && preco > this.precos[posicao]) {
+				menor = posicaoMenorPreco(novosPrecos);
+			}
+			return new TabelaPrecos(this.registro, novosLocais, novosPrecos, menor);
+		}
+
+		/**
+		 * Metodo auxiliar que cria uma copia da tabela com os locais registrados
+		 * em outro dicionario.
+		 * 
+		 * @param novoRegistro : o dicionario de locais.
+		 * @return : a nova tabela.
+		 */
+		private TabelaPrecos registradaEm(EstabelecimentoRegistry novoRegistro) {
+			int[] ids = new int[this.locais.length];
+			for (int i = 0; i < ids.length; i++) {
+				ids[i] = novoRegistro.registra(this.getLocal(i));
+			}
+			return new TabelaPrecos(novoRegistro, ids, this.precos, this.posicaoMenorPreco);
+		}
+
+		/**
+		 * Metodo auxiliar que percorre os precos para encontrar o menor preco.
+		 * So e necessario quando o preco do local mais barato aumenta.
+		 */
+		private static int posicaoMenorPreco(double[] precos) {
+			int menor = -1;
+			for (int i = 0; i < precos.length; i++) {
+				if (menor < 0 || precos[i] < precos[menor]) {
+					menor = i;
+				}
+			}
+			return menor;
+		}
+	}
+
+	/**
+	 * A tabela atual de locais e precos do item. E trocada inteira a cada
+	 * alteracao, nunca modificada, e lida sem trava.
+	 */
+	private transient volatile TabelaPrecos tabela;
+
+	/**
+	 * Metodo responsavel por inicializar o controlador com a tabela de
+	 * locais e precos vazia, usando um dicionario de locais proprio. E usado
+	 * pelos itens que nao pertencem a um sistema.
 	 */
 	public PrecoService() {
-		this.mapaPrecos = new HashMap<>();
+		this(new EstabelecimentoRegistry());
 	}
 
 	/**
-	 * Metodo responsavel por adicionar ao mapa de locais de compra um novo
+	 * Metodo responsavel por inicializar o controlador com a tabela de
+	 * locais e precos vazia, registrando os locais no dicionario do sistema.
+	 * 
+	 * @param estabelecimentos : o dicionario de locais do sistema.
+	 */
+	public PrecoService(EstabelecimentoRegistry estabelecimentos) {
+		this.tabela = tabelaVazia(estabelecimentos);
+	}
+
+	/**
+	 * Metodo responsavel por adicionar aos locais de compra um novo
 	 * local de compra com seu respectivo preco.
 	 * 
 	 * @param local : Uma String representando um nome de um local para compra.
@@ -35,44 +245,181 @@ public class PrecoService implements Serializable{
 	 */
 	public void adicionarLocalCompra(String local, Double preco) {
 		if (ValidadorSistema.validaLocalDeCompra(local, preco)) {
-			mapaPrecos.put(local, preco);
+			this.guardaPreco(local, preco);
 		}
 	}
 	
 	/**
-	 * Metodo responsavel por gerar uma String do mapa de precos.
+	 * Metodo responsavel por gerar uma String dos precos.
 	 * 
-	 * @return : uma String que representa o mapa de precos de um item.
+	 * @return : uma String que representa os precos de um item.
 	 */
 	public String getListaPrecos() {
-		String msg = "<";
-		for (String local : this.mapaPrecos.keySet()) {
-			msg += local + ", R$ " + String.format("%.2f;", this.mapaPrecos.get(local));
+		StringBuilder msg = new StringBuilder();
+		try {
+			this.escreveListaPrecos(msg);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return msg.toString();
+	}
+
+	/**
+	 * Metodo responsavel por escrever os precos em um destino de texto, no mesmo
+	 * formato de getListaPrecos, sem montar a String inteira em memoria.
+	 * 
+	 * @param saida : o destino onde os precos serao escritos.
+	 * @throws IOException : caso ocorra um erro ao escrever no destino.
+	 */
+	public void escreveListaPrecos(Appendable saida) throws IOException {
+		saida.append('<');
+		for (Map.Entry<String, Double> preco : getPrecos(this.tabela).entrySet()) {
+			saida.append(preco.getKey()).append(", R$ ").append(String.format("%.2f;", preco.getValue()));
 		}
-		msg += ">";
-		return msg;
+		saida.append('>');
 	}
 	
 	/**
 	 * Metodo criado para pegar o menor preco do item.
 	 * 
-	 * @return : numero em ponto flutuante correspondente ao menor preco.
+	 * @return : numero em ponto flutuante correspondente ao menor preco, ou zero
+	 *         caso o item nao possua precos.
 	 */
 	public double getMenorPreco() {
-		double menor = 0;
-		for (double valor : mapaPrecos.values()) {
-			if ((-1 * valor) < menor)
-				menor = valor * -1;
+		return this.tabela.getMenorPreco();
+	}
+
+	/**
+	 * Metodo responsavel por retornar o local de compra que oferece o menor preco.
+	 * 
+	 * @return : uma String com o local de compra, ou null caso o item nao possua
+	 *         precos.
+	 */
+	public String getLocalMenorPreco() {
+		TabelaPrecos atual = this.tabela;
+		if (atual.posicaoMenorPreco < 0) {
+			return null;
 		}
-		return menor * -1;
+		return atual.getLocal(atual.posicaoMenorPreco);
+	}
+
+	/**
+	 * Metodo responsavel por retornar a tabela atual de locais e precos do item.
+	 * A tabela nao muda depois de retornada; quem precisa ler varios locais e
+	 * precos deve usar uma unica tabela para ve-los coerentes entre si.
+	 * 
+	 * @return : a tabela de locais e precos.
+	 */
+	public TabelaPrecos getTabela() {
+		return this.tabela;
 	}
 
 	/**
-	 * Metodo responsavel por retornar um mapeamento de locais de compras e respectivos precos
+	 * Metodo responsavel por passar a registrar os locais do item no dicionario
+	 * de um sistema. Os locais ja cadastrados sao registrados nele uma unica vez,
+	 * quando o item e carregado em um sistema; nada muda caso o item ja use o
+	 * dicionario.
+	 * 
+	 * @param estabelecimentos : o dicionario de locais do sistema.
+	 */
+	public synchronized void usaEstabelecimentos(EstabelecimentoRegistry estabelecimentos) {
+		if (this.tabela.registro != estabelecimentos) {
+			this.tabela = this.tabela.registradaEm(estabelecimentos);
+		}
+	}
+
+	/**
+	 * Metodo responsavel por retornar um mapeamento de locais de compras e respectivos precos.
+	 * O mapa e uma copia montada a partir da tabela atual, e alteracoes nele nao afetam o
+	 * controlador.
 	 * @return
 	 */
 	public Map<String, Double> getPrecos() {
-		return this.mapaPrecos;
+		return getPrecos(this.tabela);
+	}
+
+	/**
+	 * Metodo auxiliar que monta o mapa de locais e precos de uma tabela.
+	 * 
+	 * @param tabela : a tabela de locais e precos.
+	 * @return : o mapa de locais e precos.
+	 */
+	private static Map<String, Double> getPrecos(TabelaPrecos tabela) {
+		Map<String, Double> mapaPrecos = new HashMap<>();
+		for (int i = 0; i < tabela.getQuantidadeLocais(); i++) {
+			mapaPrecos.put(tabela.getLocal(i), tabela.precos[i]);
+		}
+		return mapaPrecos;
+	}
+
+	/**
+	 * Metodo auxiliar que guarda o preco de um local, publicando uma nova tabela.
+	 * As alteracoes sao sincronizadas entre si para que nenhuma se perca; as
+	 * leituras nao usam a trava.
+	 * 
+	 * @param local : o nome do local de compra.
+	 * @param preco : o preco do item no local.
+	 */
+	private synchronized void guardaPreco(String local, double preco) {
+		this.tabela = this.tabela.comPreco(local, preco);
+	}
+
+	/**
+	 * Metodo auxiliar que cria uma tabela sem precos ligada a um dicionario.
+	 * 
+	 * @param estabelecimentos : o dicionario de locais.
+	 * @return : a tabela vazia.
+	 */
+	private static TabelaPrecos tabelaVazia(EstabelecimentoRegistry estabelecimentos) {
+		return new TabelaPrecos(estabelecimentos, new int[0], new double[0], -1);
+	}
+
+	/**
+	 * Metodo responsavel por salvar o controlador em um arquivo, gravando a tabela
+	 * atual de locais e precos. Os locais sao gravados pelo nome, ja que os
+	 * identificadores so valem durante a execucao.
+	 * 
+	 * @param saida
+	 *            : O fluxo onde o controlador sera gravado.
+	 */
+	private void writeObject(ObjectOutputStream saida) throws IOException {
+		ObjectOutputStream.PutField campos = saida.putFields();
+		TabelaPrecos atual = this.tabela;
+		String[] nomesLocais = new String[atual.getQuantidadeLocais()];
+		for (int i = 0; i < nomesLocais.length; i++) {
+			nomesLocais[i] = atual.getLocal(i);
+		}
+		campos.put("locais", nomesLocais);
+		campos.put("precos", atual.precos.clone());
+		saida.writeFields();
+	}
+
+	/**
+	 * Metodo responsavel por carregar o controlador de um arquivo, aceitando tanto
+	 * os vetores quanto o mapa de precos dos arquivos antigos. Os locais sao
+	 * registrados em um dicionario proprio, trocado pelo do sistema quando o item
+	 * e carregado nele.
+	 * 
+	 * @param entrada
+	 *            : O fluxo de onde o controlador sera lido.
+	 */
+	@SuppressWarnings("unchecked")
+	private void readObject(ObjectInputStream entrada) throws IOException, ClassNotFoundException {
+		ObjectInputStream.GetField campos = entrada.readFields();
+		String[] locaisSalvos = (String[]) campos.get("locais", null);
+		double[] precosSalvos = (double[]) campos.get("precos", null);
+		Map<String, Double> mapaPrecos = (Map<String, Double>) campos.get("mapaPrecos", null);
+
+		this.tabela = tabelaVazia(new EstabelecimentoRegistry());
+		if (mapaPrecos != null) {
+			for (Map.Entry<String, Double> preco : mapaPrecos.entrySet()) {
+				this.guardaPreco(preco.getKey(), preco.getValue());
+			}
+		} else if (locaisSalvos != null) {
+			for (int i = 0; i < locaisSalvos.length; i++) {
+				this.guardaPreco(locaisSalvos[i], precosSalvos[i]);
+			}
+		}
 	}
 	
 }
@@ -0,0 +1,146 @@
+package com.projeto.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+
+import com.projeto.model.Compra;
+
+/**
+ * Tarefa responsavel por somar o valor de um conjunto de compras em cada local
+ * de compra. As compras sao divididas ao meio enquanto o trecho for maior que o
+ * limiar informado, e cada metade e somada em paralelo em um ForkJoinPool. Cada
+ * tarefa acumula os totais em vetores proprios, indexados pelo identificador do
+ * local no {@link EstabelecimentoRegistry} do sistema, que sao juntados ao final.
+ *
+ * Quando as compras cabem no limiar nao ha divisao e a soma e feita na thread
+ * que chamou a tarefa, na mesma ordem de uma soma sequencial.
+ */
+class SomaEstabelecimentos extends RecursiveTask<SomaEstabelecimentos.Resultado> {
+
+	private static final long serialVersionUID = -2913544276089745133L;
+
+	/**
+	 * Totais acumulados por uma tarefa.
+	 */
+	static class Resultado {
+
+		/**
+		 * O valor total das compras em cada local.
+		 */
+		double[] totais;
+
+		/**
+		 * As compras que possuem preco em cada local, na ordem das compras.
+		 */
+		List<Compra>[] compras;
+
+		@SuppressWarnings("unchecked")
+		private Resultado(int quantidadeLocais) {
+			this.totais = new double[quantidadeLocais];
+			this.compras = (List<Compra>[]) new List<?>[quantidadeLocais];
+		}
+
+		/**
+		 * Metodo auxiliar que aumenta os vetores para comportar um local registrado
+		 * depois que a tarefa comecou.
+		 */
+		private void garanteLocal(int idLocal) {
+			if (idLocal >= this.totais.length) {
+				int tamanho = Math.max(idLocal + 1, this.totais.length * 2);
+				this.totais = Arrays.copyOf(this.totais, tamanho);
+				this.compras = Arrays.copyOf(this.compras, tamanho);
+			}
+		}
+
+		/**
+		 * Metodo auxiliar que junta a este resultado os totais de um trecho
+		 * posterior das compras.
+		 */
+		private Resultado junta(Resultado posterior) {
+			this.garanteLocal(posterior.totais.length - 1);
+			for (int i = 0; i < posterior.totais.length; i++) {
+				if (posterior.compras[i] == null) {
+					continue;
+				}
+				this.totais[i] += posterior.totais[i];
+				if (this.compras[i] == null) {
+					this.compras[i] = posterior.compras[i];
+				} else {
+					this.compras[i].addAll(posterior.compras[i]);
+				}
+			}
+			return this;
+		}
+	}
+
+	private final Compra[] compras;
+
+	private final EstabelecimentoRegistry registro;
+
+	private final int inicio;
+
+	private final int fim;
+
+	private final int limiar;
+
+	/**
+	 * Metodo responsavel por criar a tarefa que soma um trecho das compras.
+	 *
+	 * @param compras
+	 *            : Todas as compras da lista.
+	 * @param registro
+	 *            : O dicionario de locais do sistema.
+	 * @param inicio
+	 *            : A posicao da primeira compra do trecho.
+	 * @param fim
+	 *            : A posicao seguinte a ultima compra do trecho.
+	 * @param limiar
+	 *            : A maior quantidade de compras somada sem dividir a tarefa.
+	 */
+	SomaEstabelecimentos(Compra[] compras, EstabelecimentoRegistry registro, int inicio, int fim, int limiar) {
+		this.compras = compras;
+		this.registro = registro;
+		this.inicio = inicio;
+		this.fim = fim;
+		this.limiar = Math.max(1, limiar);
+	}
+
+	@Override
+	protected Resultado compute() {
+		if (this.fim - this.inicio <= this.limiar) {
+			return this.somaTrecho();
+		}
+		int meio = (this.inicio + this.fim) >>> 1;
+		SomaEstabelecimentos anterior = new SomaEstabelecimentos(this.compras, this.registro, this.inicio, meio,
+				this.limiar);
+		SomaEstabelecimentos posterior = new SomaEstabelecimentos(this.compras, this.registro, meio, this.fim,
+				this.limiar);
+		posterior.fork();
+		Resultado resultado = anterior.compute();
+		return resultado.junta(posterior.join());
+	}
+
+	/**
+	 * Metodo auxiliar que soma sequencialmente as compras do trecho.
+	 */
+	private Resultado somaTrecho() {
+		Resultado resultado = new Resultado(this.registro.quantidade());
+		for (int posicao = this.inicio; posicao < this.fim; posicao++) {
+			Compra compra = this.compras[posicao];
+			PrecoService.TabelaPrecos precos = compra.getItem().getTabelaPrecos();
+			for (int i = 0; i < precos.getQuantidadeLocais(); i++) {
+				int idLocal = precos.getIdLocal(i, this.registro);
+				resultado.garanteLocal(idLocal);
+				if (resultado.compras[idLocal] == null) {
+					resultado.compras[idLocal] = new ArrayList<>();
+				}
+				resultado.totais[idLocal] += precos.getPreco(i) * compra.getQuantidade();
+				resultado.compras[idLocal].add(compra);
+			}
+		}
+		return resultado;
+	}
+
+}
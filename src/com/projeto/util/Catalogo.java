@@ -0,0 +1,206 @@
+package com.projeto.util;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+import com.projeto.comparadores.ComparaNomeItem;
+import com.projeto.comparadores.ComparaValor;
+import com.projeto.model.Item;
+import com.projeto.service.PrecoService;
+
+/**
+ * Classe que representa uma versao dos indices de consulta do catalogo de
+ * itens: os itens ordenados pelo nome, por categoria e pelo menor preco, e os
+ * trigramas dos nomes usados na pesquisa por trechos do nome. O
+ * indice de precos guarda, junto com cada item, a tabela de precos usada para
+ * ordena-lo, entao uma versao continua ordenada depois que um preco muda.
+ *
+ * Uma versao nunca e alterada depois de publicada. Adicionar ou remover um item
+ * cria uma nova versao, que compartilha com a anterior tudo o que nao mudou, ao
+ * custo de O(log n). Assim quem consulta uma versao pode fazer varias consultas
+ * sobre ela sem trava, enquanto outra thread prepara a proxima.
+ */
+public final class Catalogo {
+
+	/**
+	 * Um item do indice de precos, com a tabela de precos que ele possuia quando
+	 * foi colocado no indice.
+	 */
+	public static final class PrecoItem {
+
+		private final Item item;
+
+		private final PrecoService.TabelaPrecos precos;
+
+		private PrecoItem(Item item, PrecoService.TabelaPrecos precos) {
+			this.item = item;
+			this.precos = precos;
+		}
+
+		/**
+		 * Metodo responsavel por retornar o item.
+		 *
+		 * @return O item.
+		 */
+		public Item getItem() {
+			return this.item;
+		}
+
+		/**
+		 * Metodo responsavel por retornar a tabela de precos do item nesta versao
+		 * do catalogo.
+		 *
+		 * @return A tabela de precos.
+		 */
+		public PrecoService.TabelaPrecos getPrecos() {
+			return this.precos;
+		}
+	}
+
+	/**
+	 * Os itens ordenados pelo nome.
+	 */
+	private final IndiceOrdenado<Item> porNome;
+
+	/**
+	 * Para cada categoria, os itens dela ordenados pelo nome.
+	 */
+	private final Map<Categoria, IndiceOrdenado<Item>> porCategoria;
+
+	/**
+	 * Os itens ordenados pelo menor preco.
+	 */
+	private final IndiceOrdenado<PrecoItem> porPreco;
+
+	/**
+	 * Os trigramas dos nomes dos itens.
+	 */
+	private final IndiceTrigrama pesquisa;
+
+	/**
+	 * Metodo responsavel por criar uma versao vazia do catalogo.
+	 */
+	public Catalogo() {
+		this.porNome = new IndiceOrdenado<>(new ComparaNomeItem());
+		Map<Categoria, IndiceOrdenado<Item>> categorias = new EnumMap<>(Categoria.class);
+		for (Categoria categoria : Categoria.values()) {
+			categorias.put(categoria, new IndiceOrdenado<>(new ComparaNomeItem()));
+		}
+		this.porCategoria = Collections.unmodifiableMap(categorias);
+		this.porPreco = new IndiceOrdenado<>(new ComparaValor());
+		this.pesquisa = new IndiceTrigrama();
+	}
+
+	/**
+	 * Metodo auxiliar que cria uma copia de uma versao, que pode ser alterada antes
+	 * de ser publicada.
+	 */
+	private Catalogo(Catalogo base) {
+		this.porNome = base.porNome.copia();
+		Map<Categoria, IndiceOrdenado<Item>> categorias = new EnumMap<>(Categoria.class);
+		for (Map.Entry<Categoria, IndiceOrdenado<Item>> categoria : base.porCategoria.entrySet()) {
+			categorias.put(categoria.getKey(), categoria.getValue().copia());
+		}
+		this.porCategoria = Collections.unmodifiableMap(categorias);
+		this.porPreco = base.porPreco.copia();
+		this.pesquisa = base.pesquisa.copia();
+	}
+
+	/**
+	 * Metodo responsavel por criar uma nova versao do catalogo com um item a mais.
+	 *
+	 * @param item
+	 *            : O item que sera adicionado.
+	 * @return A nova versao do catalogo.
+	 */
+	public Catalogo adiciona(Item item) {
+		Catalogo versao = new Catalogo(this);
+		versao.porNome.adiciona(item);
+		versao.porCategoria.get(item.getTipoCategoria()).adiciona(item);
+		versao.porPreco.adiciona(new PrecoItem(item, item.getTabelaPrecos()));
+		versao.pesquisa.adiciona(item);
+		return versao;
+	}
+
+	/**
+	 * Metodo responsavel por criar uma nova versao do catalogo sem um item. Deve
+	 * ser chamado antes de qualquer alteracao nos campos usados na ordenacao dos
+	 * indices.
+	 *
+	 * @param item
+	 *            : O item que sera retirado.
+	 * @return A nova versao do catalogo.
+	 */
+	public Catalogo remove(Item item) {
+		Catalogo versao = new Catalogo(this);
+		versao.porNome.remove(item);
+		versao.porCategoria.get(item.getTipoCategoria()).remove(item);
+		versao.porPreco.remove(new PrecoItem(item, item.getTabelaPrecos()));
+		versao.pesquisa.remove(item);
+		return versao;
+	}
+
+	/**
+	 * Metodo responsavel por criar uma nova versao do catalogo depois que os
+	 * precos de um item mudaram. Apenas o indice de precos muda; os indices pelo
+	 * nome e os trigramas sao compartilhados com esta versao.
+	 *
+	 * @param item
+	 *            : O item cujos precos mudaram.
+	 * @param anterior
+	 *            : A tabela de precos do item antes da alteracao.
+	 * @return A nova versao do catalogo.
+	 */
+	public Catalogo atualizaPrecos(Item item, PrecoService.TabelaPrecos anterior) {
+		Catalogo versao = new Catalogo(this);
+		versao.porPreco.remove(new PrecoItem(item, anterior));
+		versao.porPreco.adiciona(new PrecoItem(item, item.getTabelaPrecos()));
+		return versao;
+	}
+
+	/**
+	 * Metodo responsavel por retornar os itens da versao ordenados pelo nome. O
+	 * indice retornado nao deve ser alterado.
+	 *
+	 * @return O indice dos itens pelo nome.
+	 */
+	public IndiceOrdenado<Item> getPorNome() {
+		return this.porNome;
+	}
+
+	/**
+	 * Metodo responsavel por retornar os itens de uma categoria ordenados pelo
+	 * nome. O indice retornado nao deve ser alterado.
+	 *
+	 * @param categoria
+	 *            : A categoria dos itens.
+	 * @return O indice dos itens da categoria.
+	 */
+	public IndiceOrdenado<Item> getPorCategoria(Categoria categoria) {
+		return this.porCategoria.get(categoria);
+	}
+
+	/**
+	 * Metodo responsavel por retornar os itens da versao ordenados pelo menor
+	 * preco, cada um com a sua tabela de precos nesta versao. O indice retornado
+	 * nao deve ser alterado.
+	 *
+	 * @return O indice dos itens pelo preco.
+	 */
+	public IndiceOrdenado<PrecoItem> getPorPreco() {
+		return this.porPreco;
+	}
+
+	/**
+	 * Metodo responsavel por retornar o indice dos trigramas dos nomes dos itens
+	 * da versao, usado na pesquisa por trechos do nome. O indice retornado nao
+	 * deve ser alterado.
+	 *
+	 * @return O indice de pesquisa.
+	 */
+	public IndiceTrigrama getPesquisa() {
+		return this.pesquisa;
+	}
+
+}
@@ -1,5 +1,8 @@
 package com.projeto.util;
 
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * Enum responsavel por definir tipos de categorias
  *
@@ -30,6 +33,17 @@ public enum Categoria {
 	 * Uma string cotendo o valor de cada categoria
 	 */
 	private String valor;
+
+	/**
+	 * Mapa que associa o valor textual de cada categoria a sua respectiva categoria
+	 */
+	private static final Map<String, Categoria> CATEGORIAS = new HashMap<>();
+
+	static {
+		for (Categoria categoria : values()) {
+			CATEGORIAS.put(categoria.get(), categoria);
+		}
+	}
 	
 	/**
 	 * Construtor interno para a geracao dos valores
@@ -46,6 +60,24 @@ public enum Categoria {
 	public String get() {
 		return this.valor;
 	}
+
+	/**
+	 * Metodo responsavel por retornar a categoria correspondente a um valor
+	 * textual. Assim como na validacao do sistema, a categoria higiene pessoal e
+	 * aceita sem distincao entre letras maiusculas e minusculas.
+	 * 
+	 * @param valor
+	 *            : Uma String contendo o valor da categoria
+	 * @return A categoria correspondente ou null caso o valor nao pertenca a
+	 *         nenhuma categoria
+	 */
+	public static Categoria converte(String valor) {
+		Categoria categoria = CATEGORIAS.get(valor);
+		if (categoria == null && HIGIENE_PERSOAL.get().equalsIgnoreCase(valor)) {
+			return HIGIENE_PERSOAL;
+		}
+		return categoria;
+	}
 	
 
 }
@@ -1,6 +1,7 @@
 package com.projeto.util;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import com.projeto.model.Compra;
@@ -26,6 +27,12 @@ public class Estabelecimento implements Comparable<Estabelecimento>{
 	 * Uma lista contendo todas as compras de um local de compra
 	 */
 	private List<Compra> compras;
+
+	/**
+	 * Indica se a lista de compras ja esta ordenada. A lista e ordenada uma unica
+	 * vez, na primeira consulta depois de alterada.
+	 */
+	private boolean ordenada;
 	
 	/**
 	 * Metodo responsavel por inicializar o estabelecimento na memoria
@@ -35,6 +42,18 @@ public class Estabelecimento implements Comparable<Estabelecimento>{
 		this.nome = nome;
 		this.compras = new ArrayList<>();
 	}
+
+	/**
+	 * Metodo responsavel por inicializar o estabelecimento com compras e valor ja calculados
+	 * @param nome : Uma String representando o nome do estabelecimento
+	 * @param valor : O valor final de todas as compras do estabelecimento
+	 * @param compras : A lista com as compras do estabelecimento
+	 */
+	public Estabelecimento(String nome, double valor, List<Compra> compras) {
+		this.nome = nome;
+		this.valor = valor;
+		this.compras = compras;
+	}
 	
 	/**
 	 * Metodo responsavel por gerar uma representacao textual para o estabelecimento
@@ -50,9 +69,10 @@ public class Estabelecimento implements Comparable<Estabelecimento>{
 	 * @param compra : Um objeto do tipo compra que sera adicionado a colecao
 	 * @param valor : O valor da compra
 	 */
-	public void add(Compra compra,Double valor) {
+	public synchronized void add(Compra compra,double valor) {
 		this.compras.add(compra);
 		this.valor += valor;
+		this.ordenada = false;
 		
 	}
 
@@ -69,6 +89,14 @@ public class Estabelecimento implements Comparable<Estabelecimento>{
 		return 0;
 	}
 	
+	/**
+	 * Metodo responsavel por retornar o nome do estabelecimento
+	 * @return
+	 */
+	public String getNome() {
+		return nome;
+	}
+
 	/**
 	 * Metodo responsavel por retornar o valor do estabelecimento
 	 * @return
@@ -78,11 +106,29 @@ public class Estabelecimento implements Comparable<Estabelecimento>{
 	}
 
 	/**
-	 * Metodo responsavel por retornar a lista de compra do estabelecimento
+	 * Metodo responsavel por retornar a lista de compra do estabelecimento, ordenada
 	 * @return A lista de compra
 	 */
-	public List<Compra> getCompras() {
+	public synchronized List<Compra> getCompras() {
+		if (!this.ordenada) {
+			Collections.sort(this.compras);
+			this.ordenada = true;
+		}
 		return this.compras;
 	}
 
+	/**
+	 * Metodo responsavel por retornar a compra que ocupa uma posicao da lista ordenada
+	 * de compras do estabelecimento
+	 * @param posicao : a posicao da compra
+	 * @return A compra na posicao ou null caso a posicao seja maior que a ultima
+	 */
+	public Compra getCompra(int posicao) {
+		List<Compra> ordenadas = this.getCompras();
+		if (posicao >= ordenadas.size()) {
+			return null;
+		}
+		return ordenadas.get(posicao);
+	}
+
 }
@@ -0,0 +1,75 @@
+package com.projeto.util;
+
+import java.text.ParsePosition;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.DateTimeParseException;
+import java.time.format.ResolverStyle;
+import java.util.Date;
+
+/**
+ * Classe responsavel por converter as datas do sistema entre LocalDate e a sua
+ * representacao textual no formato dd/MM/yyyy. Os formatadores sao imutaveis e
+ * compartilhados por todo o sistema, de forma que nenhuma consulta precisa
+ * criar um formatador novo.
+ *
+ * A leitura aceita as mesmas datas que o antigo SimpleDateFormat: dias e meses
+ * com um ou dois digitos, anos com qualquer quantidade de digitos, valores fora
+ * do intervalo (como 32/01/2018, que vira 01/02/2018) e texto apos a data.
+ */
+public final class FormatoData {
+
+	/**
+	 * Formatador usado para escrever as datas.
+	 */
+	private static final DateTimeFormatter ESCRITA = DateTimeFormatter.ofPattern("dd/MM/uuuu");
+
+	/**
+	 * Formatador usado para ler as datas.
+	 */
+	private static final DateTimeFormatter LEITURA = new DateTimeFormatterBuilder().parseLenient()
+			.appendPattern("d/M/u").toFormatter().withResolverStyle(ResolverStyle.LENIENT);
+
+	private FormatoData() {
+	}
+
+	/**
+	 * Metodo responsavel por retornar a representacao textual de um dia.
+	 *
+	 * @param dia
+	 *            : O dia que sera formatado.
+	 * @return Uma String com o dia no formato dd/MM/yyyy.
+	 */
+	public static String formata(LocalDate dia) {
+		return ESCRITA.format(dia);
+	}
+
+	/**
+	 * Metodo responsavel por retornar a representacao textual do dia de um
+	 * instante, no fuso horario do sistema.
+	 *
+	 * @param data
+	 *            : O instante que sera formatado.
+	 * @return Uma String com o dia no formato dd/MM/yyyy.
+	 */
+	public static String formata(Date data) {
+		return formata(data.toInstant().atZone(ZoneId.systemDefault()).toLocalDate());
+	}
+
+	/**
+	 * Metodo responsavel por converter uma data no formato dd/MM/yyyy para o dia
+	 * que ela representa.
+	 *
+	 * @param data
+	 *            : A data que sera convertida.
+	 * @return O dia representado pela data.
+	 * @throws DateTimeParseException
+	 *             : caso a data nao possa ser lida.
+	 */
+	public static LocalDate converte(String data) {
+		return LocalDate.from(LEITURA.parse(data, new ParsePosition(0)));
+	}
+
+}
@@ -0,0 +1,328 @@
+package com.projeto.util;
+
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Classe responsavel por manter uma colecao de elementos sempre ordenada de
+ * acordo com um comparador, permitindo recuperar um elemento pela sua posicao
+ * sem que seja necessario reordenar a colecao a cada consulta.
+ *
+ * Internamente os elementos sao guardados em uma arvore binaria balanceada
+ * (treap) onde cada no conhece o tamanho da sua subarvore, de forma que a
+ * insercao, a remocao e a busca por posicao custam O(log n).
+ *
+ * Os nos da arvore nunca sao alterados: cada insercao ou remocao copia apenas
+ * os nos do caminho ate o elemento alterado e publica a nova raiz. Assim as
+ * consultas podem ser feitas por outras threads, sem trava, enquanto o indice e
+ * alterado, e cada consulta enxerga uma versao completa do indice. As
+ * alteracoes, por sua vez, devem ser feitas por uma thread de cada vez.
+ *
+ * @param <T>
+ *            : O tipo dos elementos indexados.
+ */
+public class IndiceOrdenado<T> implements Iterable<T> {
+
+	/**
+	 * No imutavel da arvore que guarda um elemento do indice.
+	 */
+	private static class No<T> {
+
+		/**
+		 * Elemento guardado no no.
+		 */
+		private final T valor;
+
+		/**
+		 * Prioridade aleatoria usada para manter a arvore balanceada.
+		 */
+		private final int prioridade;
+
+		/**
+		 * Quantidade de nos da subarvore que tem este no como raiz.
+		 */
+		private final int tamanho;
+
+		private final No<T> esquerda;
+
+		private final No<T> direita;
+
+		private No(T valor) {
+			this(valor, ThreadLocalRandom.current().nextInt(), null, null);
+		}
+
+		private No(T valor, int prioridade, No<T> esquerda, No<T> direita) {
+			this.valor = valor;
+			this.prioridade = prioridade;
+			this.esquerda = esquerda;
+			this.direita = direita;
+			this.tamanho = 1 + tamanho(esquerda) + tamanho(direita);
+		}
+
+		/**
+		 * Metodo que cria uma copia do no com outros filhos.
+		 */
+		private No<T> comFilhos(No<T> esquerda, No<T> direita) {
+			if (esquerda == this.esquerda && direita == this.direita) {
+				return this;
+			}
+			return new No<>(this.valor, this.prioridade, esquerda, direita);
+		}
+	}
+
+	/**
+	 * Comparador que define a ordem dos elementos. Ele deve ser total, ou seja,
+	 * so pode retornar zero para o mesmo elemento.
+	 */
+	private final Comparator<? super T> comparador;
+
+	/**
+	 * Raiz da versao atual da arvore.
+	 */
+	private volatile No<T> raiz;
+
+	/**
+	 * Metodo responsavel por inicializar um indice vazio.
+	 *
+	 * @param comparador
+	 *            : O comparador que define a ordem dos elementos.
+	 */
+	public IndiceOrdenado(Comparator<? super T> comparador) {
+		this(comparador, null);
+	}
+
+	private IndiceOrdenado(Comparator<? super T> comparador, No<T> raiz) {
+		this.comparador = comparador;
+		this.raiz = raiz;
+	}
+
+	/**
+	 * Metodo responsavel por retornar uma copia da versao atual do indice, em
+	 * tempo constante. Alteracoes feitas depois em um dos indices nao aparecem no
+	 * outro, de forma que a copia pode ser usada para fazer varias consultas sobre
+	 * a mesma versao.
+	 *
+	 * @return Um indice com os mesmos elementos deste.
+	 */
+	public IndiceOrdenado<T> copia() {
+		return new IndiceOrdenado<>(this.comparador, this.raiz);
+	}
+
+	/**
+	 * Metodo responsavel por adicionar um elemento ao indice na posicao
+	 * correspondente a sua ordem.
+	 *
+	 * @param valor
+	 *            : O elemento que sera adicionado.
+	 */
+	public void adiciona(T valor) {
+		No<T> novo = new No<>(valor);
+		No<T>[] partes = this.divide(this.raiz, valor);
+		this.raiz = this.junta(this.junta(partes[0], novo), partes[1]);
+	}
+
+	/**
+	 * Metodo responsavel por remover um elemento do indice, guiando-se pela ordem
+	 * do comparador. O criterio de ordenacao de um elemento nao pode mudar
+	 * enquanto ele esta no indice: quem altera o elemento deve retira-lo antes.
+	 *
+	 * @param valor
+	 *            : O elemento que sera removido.
+	 * @return Um valor boleano indicando se o elemento foi removido.
+	 */
+	public boolean remove(T valor) {
+		No<T> anterior = this.raiz;
+		No<T> atualizada = this.remove(anterior, valor);
+		if (atualizada == anterior) {
+			return false;
+		}
+		this.raiz = atualizada;
+		return true;
+	}
+
+	/**
+	 * Metodo responsavel por retornar o elemento que ocupa uma determinada
+	 * posicao do indice.
+	 *
+	 * @param posicao
+	 *            : A posicao do elemento na ordem do indice.
+	 * @return O elemento na posicao indicada.
+	 */
+	public T get(int posicao) {
+		No<T> atual = this.raiz;
+		if (posicao < 0 || posicao >= tamanho(atual)) {
+			throw new IndexOutOfBoundsException("Posicao: " + posicao + ", Tamanho: " + tamanho(atual));
+		}
+		while (true) {
+			int tamanhoEsquerda = tamanho(atual.esquerda);
+			if (posicao < tamanhoEsquerda) {
+				atual = atual.esquerda;
+			} else if (posicao == tamanhoEsquerda) {
+				return atual.valor;
+			} else {
+				posicao -= tamanhoEsquerda + 1;
+				atual = atual.direita;
+			}
+		}
+	}
+
+	/**
+	 * Metodo responsavel por verificar se um elemento esta no indice, guiando-se
+	 * pela ordem do comparador.
+	 *
+	 * @param valor
+	 *            : O elemento procurado.
+	 * @return Um valor boleano indicando se algum elemento do indice e igual ao
+	 *         valor pelo comparador.
+	 */
+	public boolean contem(T valor) {
+		return this.procura(valor) != null;
+	}
+
+	/**
+	 * Metodo responsavel por retornar o elemento do indice igual a um valor pelo
+	 * comparador, guiando-se pela ordem do comparador.
+	 *
+	 * @param valor
+	 *            : O valor procurado.
+	 * @return O elemento do indice, ou null caso nenhum elemento seja igual ao
+	 *         valor.
+	 */
+	public T procura(T valor) {
+		No<T> atual = this.raiz;
+		while (atual != null) {
+			int comparacao = this.comparador.compare(valor, atual.valor);
+			if (comparacao == 0) {
+				return atual.valor;
+			}
+			atual = comparacao < 0 ? atual.esquerda : atual.direita;
+		}
+		return null;
+	}
+
+	/**
+	 * Metodo responsavel por retornar a quantidade de elementos do indice.
+	 *
+	 * @return Um inteiro com a quantidade de elementos.
+	 */
+	public int tamanho() {
+		return tamanho(this.raiz);
+	}
+
+	/**
+	 * Metodo responsavel por verificar se o indice esta vazio.
+	 *
+	 * @return Um valor boleano indicando se o indice esta vazio.
+	 */
+	public boolean isEmpty() {
+		return this.raiz == null;
+	}
+
+	/**
+	 * Metodo responsavel por retornar um iterador que percorre os elementos na
+	 * ordem do indice. O iterador percorre a versao do indice existente quando ele
+	 * foi criado.
+	 */
+	@Override
+	public Iterator<T> iterator() {
+		return new Iterador<>(this.raiz);
+	}
+
+	/**
+	 * Metodo auxiliar que divide uma arvore em duas: a primeira com os elementos
+	 * menores que o valor e a segunda com os demais. Os nos do caminho sao
+	 * copiados.
+	 */
+	@SuppressWarnings("unchecked")
+	private No<T>[] divide(No<T> no, T valor) {
+		if (no == null) {
+			return (No<T>[]) new No<?>[] { null, null };
+		}
+		if (this.comparador.compare(no.valor, valor) < 0) {
+			No<T>[] partes = this.divide(no.direita, valor);
+			partes[0] = no.comFilhos(no.esquerda, partes[0]);
+			return partes;
+		}
+		No<T>[] partes = this.divide(no.esquerda, valor);
+		partes[1] = no.comFilhos(partes[1], no.direita);
+		return partes;
+	}
+
+	/**
+	 * Metodo auxiliar que junta duas arvores, sendo todos os elementos da primeira
+	 * menores que os da segunda.
+	 */
+	private No<T> junta(No<T> menores, No<T> maiores) {
+		if (menores == null) {
+			return maiores;
+		}
+		if (maiores == null) {
+			return menores;
+		}
+		if (menores.prioridade > maiores.prioridade) {
+			return menores.comFilhos(menores.esquerda, this.junta(menores.direita, maiores));
+		}
+		return maiores.comFilhos(this.junta(menores, maiores.esquerda), maiores.direita);
+	}
+
+	/**
+	 * Metodo auxiliar que remove um elemento da arvore guiando-se pela ordem do
+	 * comparador. Caso o elemento nao seja encontrado, o proprio no e retornado.
+	 */
+	private No<T> remove(No<T> no, T valor) {
+		if (no == null) {
+			return null;
+		}
+		int comparacao = this.comparador.compare(valor, no.valor);
+		if (comparacao == 0) {
+			return this.junta(no.esquerda, no.direita);
+		}
+		if (comparacao < 0) {
+			return no.comFilhos(this.remove(no.esquerda, valor), no.direita);
+		}
+		return no.comFilhos(no.esquerda, this.remove(no.direita, valor));
+	}
+
+	private static int tamanho(No<?> no) {
+		return no == null ? 0 : no.tamanho;
+	}
+
+	/**
+	 * Iterador que percorre a arvore em ordem.
+	 */
+	private static class Iterador<T> implements Iterator<T> {
+
+		private Deque<No<T>> pilha;
+
+		private Iterador(No<T> raiz) {
+			this.pilha = new ArrayDeque<>();
+			this.empilhaEsquerda(raiz);
+		}
+
+		private void empilhaEsquerda(No<T> no) {
+			while (no != null) {
+				this.pilha.push(no);
+				no = no.esquerda;
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			return !this.pilha.isEmpty();
+		}
+
+		@Override
+		public T next() {
+			if (this.pilha.isEmpty()) {
+				throw new NoSuchElementException();
+			}
+			No<T> no = this.pilha.pop();
+			this.empilhaEsquerda(no.direita);
+			return no.valor;
+		}
+	}
+}
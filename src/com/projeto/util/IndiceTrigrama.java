@@ -0,0 +1,284 @@
+package com.projeto.util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.projeto.comparadores.ComparaNomeItem;
+import com.projeto.model.Item;
+
+/**
+ * Classe responsavel por indexar os nomes dos itens para a pesquisa por
+ * trechos do nome. Cada nome, em letras minusculas, e quebrado em trigramas
+ * (sequencias de tres caracteres) e cada trigrama aponta para os itens que o
+ * possuem, ja ordenados pelo nome. Assim uma pesquisa so precisa percorrer os
+ * itens que possuem o trigrama mais raro do termo pesquisado, devolvendo os
+ * resultados na ordem sem precisar ordena-los.
+ *
+ * Assim como o {@link IndiceOrdenado}, o indice e persistente: uma copia e
+ * feita em tempo constante e compartilha com o original tudo o que nao mudou.
+ * O indice e publicado junto com cada versao do {@link Catalogo} e so e
+ * alterado antes de ser publicado, de forma que uma pesquisa enxerga sempre
+ * uma versao completa, com cada item e o nome que ele possuia nela.
+ *
+ * A pesquisa por posicao e feita uma posicao por vez, entao o indice guarda os
+ * resultados do ultimo termo pesquisado: percorrer as posicoes de um mesmo
+ * termo filtra os candidatos uma unica vez. Termos menores que um trigrama nao
+ * possuem postagem e filtram todos os itens, mas tambem so na primeira
+ * posicao.
+ */
+public class IndiceTrigrama {
+
+	/**
+	 * Quantidade de caracteres de um trigrama.
+	 */
+	private static final int TAMANHO_TRIGRAMA = 3;
+
+	/**
+	 * Um item indexado, com o seu nome em letras minusculas no momento em que
+	 * foi indexado.
+	 */
+	private static final class ItemIndexado {
+
+		private final Item item;
+
+		private final String nome;
+
+		private ItemIndexado(Item item, String nome) {
+			this.item = item;
+			this.nome = nome;
+		}
+	}
+
+	/**
+	 * Os itens, ordenados pelo nome, que contem um termo pesquisado.
+	 */
+	private static final class Resultado {
+
+		private final String termo;
+
+		private final List<Item> itens;
+
+		private Resultado(String termo, List<Item> itens) {
+			this.termo = termo;
+			this.itens = itens;
+		}
+	}
+
+	/**
+	 * Os itens que possuem um trigrama. O indice dos itens de uma postagem
+	 * compartilhada entre copias nunca e alterado; uma alteracao cria uma nova
+	 * postagem.
+	 */
+	private static final class Postagem {
+
+		private final String trigrama;
+
+		private final IndiceOrdenado<ItemIndexado> itens;
+
+		private Postagem(String trigrama, IndiceOrdenado<ItemIndexado> itens) {
+			this.trigrama = trigrama;
+			this.itens = itens;
+		}
+	}
+
+	/**
+	 * A ordem dos itens indexados, a mesma de {@link ComparaNomeItem}.
+	 */
+	private static final Comparator<ItemIndexado> ORDEM_ITENS = new Comparator<ItemIndexado>() {
+
+		private final ComparaNomeItem ordemNome = new ComparaNomeItem();
+
+		@Override
+		public int compare(ItemIndexado item1, ItemIndexado item2) {
+			return this.ordemNome.compare(item1.item, item2.item);
+		}
+	};
+
+	/**
+	 * A ordem das postagens, pelo trigrama.
+	 */
+	private static final Comparator<Postagem> ORDEM_TRIGRAMAS = new Comparator<Postagem>() {
+		@Override
+		public int compare(Postagem postagem1, Postagem postagem2) {
+			return postagem1.trigrama.compareTo(postagem2.trigrama);
+		}
+	};
+
+	/**
+	 * As postagens de cada trigrama presente nos nomes dos itens.
+	 */
+	private final IndiceOrdenado<Postagem> trigramas;
+
+	/**
+	 * Todos os itens indexados, ordenados pelo nome. Usado nas pesquisas com
+	 * termos menores que um trigrama.
+	 */
+	private final IndiceOrdenado<ItemIndexado> itens;
+
+	/**
+	 * O resultado do ultimo termo pesquisado nesta versao do indice, ou null.
+	 * Descartado a cada alteracao e nunca copiado.
+	 */
+	private volatile Resultado ultimoResultado;
+
+	/**
+	 * Metodo responsavel por inicializar um indice vazio.
+	 */
+	public IndiceTrigrama() {
+		this(new IndiceOrdenado<>(ORDEM_TRIGRAMAS), new IndiceOrdenado<>(ORDEM_ITENS));
+	}
+
+	private IndiceTrigrama(IndiceOrdenado<Postagem> trigramas, IndiceOrdenado<ItemIndexado> itens) {
+		this.trigramas = trigramas;
+		this.itens = itens;
+	}
+
+	/**
+	 * Metodo responsavel por retornar uma copia do indice, em tempo constante.
+	 * Alteracoes feitas depois em um dos indices nao aparecem no outro.
+	 *
+	 * @return Um indice com os mesmos itens deste.
+	 */
+	public IndiceTrigrama copia() {
+		return new IndiceTrigrama(this.trigramas.copia(), this.itens.copia());
+	}
+
+	/**
+	 * Metodo responsavel por adicionar um item ao indice.
+	 *
+	 * @param item
+	 *            : O item que sera indexado.
+	 */
+	public void adiciona(Item item) {
+		ItemIndexado indexado = new ItemIndexado(item, item.getNome().toLowerCase());
+		this.ultimoResultado = null;
+		this.itens.adiciona(indexado);
+		for (String trigrama : extraiTrigramas(indexado.nome)) {
+			Postagem anterior = this.trigramas.procura(new Postagem(trigrama, null));
+			IndiceOrdenado<ItemIndexado> postagem;
+			if (anterior == null) {
+				postagem = new IndiceOrdenado<>(ORDEM_ITENS);
+			} else {
+				postagem = anterior.itens.copia();
+				this.trigramas.remove(anterior);
+			}
+			postagem.adiciona(indexado);
+			this.trigramas.adiciona(new Postagem(trigrama, postagem));
+		}
+	}
+
+	/**
+	 * Metodo responsavel por remover um item do indice. Deve ser chamado antes de
+	 * qualquer alteracao no nome do item. Os trigramas retirados sao os do nome
+	 * que o item possuia quando foi indexado.
+	 *
+	 * @param item
+	 *            : O item que sera retirado do indice.
+	 */
+	public void remove(Item item) {
+		ItemIndexado indexado = this.itens.procura(new ItemIndexado(item, null));
+		if (indexado == null) {
+			return;
+		}
+		this.ultimoResultado = null;
+		this.itens.remove(indexado);
+		for (String trigrama : extraiTrigramas(indexado.nome)) {
+			Postagem anterior = this.trigramas.procura(new Postagem(trigrama, null));
+			this.trigramas.remove(anterior);
+			IndiceOrdenado<ItemIndexado> postagem = anterior.itens.copia();
+			postagem.remove(indexado);
+			if (!postagem.isEmpty()) {
+				this.trigramas.adiciona(new Postagem(trigrama, postagem));
+			}
+		}
+	}
+
+	/**
+	 * Metodo responsavel por buscar o item que ocupa uma determinada posicao entre
+	 * os itens, ordenados pelo nome, que contem o termo pesquisado.
+	 *
+	 * @param pesquisa
+	 *            : O termo pesquisado. A pesquisa nao diferencia letras maiusculas
+	 *            de minusculas.
+	 * @param posicao
+	 *            : A posicao do item entre os resultados.
+	 * @return O item encontrado ou null caso nao exista item na posicao.
+	 */
+	public Item busca(String pesquisa, int posicao) {
+		String termo = pesquisa.toLowerCase();
+		Resultado resultado = this.ultimoResultado;
+		if (resultado == null || !resultado.termo.equals(termo)) {
+			resultado = new Resultado(termo, this.filtra(termo));
+			this.ultimoResultado = resultado;
+		}
+		if (posicao < 0 || posicao >= resultado.itens.size()) {
+			return null;
+		}
+		return resultado.itens.get(posicao);
+	}
+
+	/**
+	 * Metodo auxiliar que retorna os itens, ordenados pelo nome, que contem o
+	 * termo pesquisado.
+	 *
+	 * @param termo
+	 *            : O termo pesquisado, em letras minusculas.
+	 * @return Os itens encontrados.
+	 */
+	private List<Item> filtra(String termo) {
+		List<Item> encontrados = new ArrayList<>();
+		IndiceOrdenado<ItemIndexado> candidatos = this.candidatos(termo);
+		if (candidatos != null) {
+			for (ItemIndexado indexado : candidatos) {
+				if (indexado.nome.contains(termo)) {
+					encontrados.add(indexado.item);
+				}
+			}
+		}
+		return encontrados;
+	}
+
+	/**
+	 * Metodo auxiliar que escolhe o menor conjunto de itens que pode conter o
+	 * termo pesquisado.
+	 *
+	 * @param termo
+	 *            : O termo pesquisado, em letras minusculas.
+	 * @return Os itens candidatos ou null caso nenhum item possa conter o termo.
+	 */
+	private IndiceOrdenado<ItemIndexado> candidatos(String termo) {
+		if (termo.length() < TAMANHO_TRIGRAMA) {
+			return this.itens;
+		}
+		IndiceOrdenado<ItemIndexado> menor = null;
+		for (String trigrama : extraiTrigramas(termo)) {
+			Postagem postagem = this.trigramas.procura(new Postagem(trigrama, null));
+			if (postagem == null) {
+				return null;
+			}
+			if (menor == null || postagem.itens.tamanho() < menor.tamanho()) {
+				menor = postagem.itens;
+			}
+		}
+		return menor;
+	}
+
+	/**
+	 * Metodo auxiliar que retorna os trigramas distintos de um texto.
+	 *
+	 * @param texto
+	 *            : O texto que sera quebrado em trigramas.
+	 * @return Um conjunto com os trigramas do texto.
+	 */
+	private static Set<String> extraiTrigramas(String texto) {
+		Set<String> trigramas = new HashSet<>();
+		for (int i = 0; i + TAMANHO_TRIGRAMA <= texto.length(); i++) {
+			trigramas.add(texto.substring(i, i + TAMANHO_TRIGRAMA));
+		}
+		return trigramas;
+	}
+
+}
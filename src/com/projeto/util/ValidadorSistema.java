@@ -50,6 +50,28 @@ public class ValidadorSistema {
 		return true;
 	}
 
+	/**
+	 * Metodo responsavel por Validar uma chave e o item ja buscado com ela, para
+	 * que o item validado seja o mesmo usado depois mesmo que ele seja removido
+	 * ao mesmo tempo.
+	 * 
+	 * @param key
+	 *            : indentificacao do intem
+	 * @param item
+	 *            : O item buscado com a chave, ou null caso ele nao exista.
+	 * @param msgExcecaoMetodo
+	 *            : mensagem de excecao para o metodo caso ocorram erros.
+	 * 
+	 * @return true se o key for valido.
+	 */
+	public static boolean validaChave(Integer key, Item item, String msgExcecaoMetodo) {
+		if (key <= 0)
+			throw new CampoInvalidoException(msgExcecaoMetodo + "id invalido.");
+		if (item == null)
+			throw new ItemInexistenteException(msgExcecaoMetodo + "item nao existe.");
+		return true;
+	}
+
 	/**
 	 * Metodo responsavel por validar os campos de um produto nao industrializado
 	 * por quilo.
@@ -145,10 +167,7 @@ public class ValidadorSistema {
 			throw new CampoInvalidoException("categoria nao pode ser vazia ou nula.");
 		}
 
-		if (!(categoria.equals(Categoria.ALIMENTO_INDUSTRIALIZADO.get())
-				|| categoria.equals(Categoria.ALIMENTO_NAO_INDUSTRIALIZADO.get())
-				|| categoria.equals(Categoria.LIMPEZA.get())
-				|| categoria.equalsIgnoreCase(Categoria.HIGIENE_PERSOAL.get()))) {
+		if (Categoria.converte(categoria) == null) {
 			throw new CategoriaInexistenteException();
 		}
 		return true;
@@ -332,6 +351,24 @@ public class ValidadorSistema {
 		return true;
 	}
 
+	/**
+	 * Metodo que valida a inexistencia de um produto ja buscado no mapa de
+	 * produtos, para que o item validado seja o mesmo usado depois.
+	 * 
+	 * @param item
+	 *            O item buscado no mapa de produtos, ou null caso ele nao exista.
+	 * @param msgExcecaoMetodo
+	 *            String com a mensagem especifica de cada metodo que ira usar este
+	 *            validador.
+	 * @return true se o produto existe.
+	 */
+	public static boolean validaInexistenciaDeProduto(Item item, String msgExcecaoMetodo) {
+		if (item == null) {
+			throw new ItemInexistenteException(msgExcecaoMetodo + "item nao existe no sistema.");
+		}
+		return true;
+	}
+
 	/**
 	 * Metodo que valida a existencia de uma lista de compras um mapa de lista de
 	 * compras.
@@ -345,7 +382,7 @@ public class ValidadorSistema {
 	 *            validador.
 	 * @return true se a lista de compras nao pertence ao mapa de lista de compras.
 	 */
-	public static boolean validaExistenciaDeListaDeCompras(String descritor, Map<String, ListaDeCompras> listaCompras,
+	public static boolean validaExistenciaDeListaDeCompras(String descritor, Map<String, ?> listaCompras,
 			String msgExcecaoMetodo) {
 		if (listaCompras.containsKey(descritor)) {
 			throw new CampoInvalidoException(msgExcecaoMetodo + "lista de compras ja existe.");
@@ -3,6 +3,13 @@ package com.project.controller;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import org.junit.Before;
 import org.junit.Test;
 
@@ -524,6 +531,27 @@ public class SistemaControllertest {
 				sistemaController.getItem(0));
 	}
 
+	/**
+	 * Metodo responsavel por verificar que o indice por nome continua com cada
+	 * item uma unica vez, na ordem dos nomes atualizados, depois de renomear e
+	 * remover itens.
+	 */
+	@Test
+	public void testGetItemAposRenomear() {
+		sistemaController.adicionaItemPorUnidade("arroz", "alimento industrializado", 1, "ideal", 4.0);
+		sistemaController.adicionaItemPorUnidade("batata", "alimento nao industrializado", 1, "feira", 2.0);
+		sistemaController.adicionaItemPorUnidade("cenoura", "alimento nao industrializado", 1, "feira", 3.0);
+
+		sistemaController.atualizaItem(1, "nome", "zimbro");
+		sistemaController.atualizaItem(3, "nome", "abobora");
+		sistemaController.atualizaItem(1, "categoria", "alimento nao industrializado");
+		sistemaController.deletaItem(2);
+
+		assertEquals("3. abobora, alimento nao industrializado, Preco: <feira, R$ 3,00;>", sistemaController.getItem(0));
+		assertEquals("1. zimbro, alimento nao industrializado, Preco: <ideal, R$ 4,00;>", sistemaController.getItem(1));
+		assertEquals("", sistemaController.getItem(2));
+	}
+
 	/**
 	 * Metodo responsavel por retornar uma representacao textual vazia " "" "
 	 * indicando que nao existe um item nessa posicao.
@@ -547,6 +575,22 @@ public class SistemaControllertest {
 				sistemaController.getItemPorCategoria("alimento nao industrializado", 2));
 	}
 
+	/**
+	 * Metodo responsavel por testar que a categoria higiene pessoal escrita com
+	 * letras maiusculas e exibida como foi informada e encontrada pela categoria.
+	 */
+	@Test
+	public void testCategoriaExibidaComoInformada() {
+		sistemaController.adicionaItemPorUnidade("sabonete", "Higiene Pessoal", 1, "ideal", 2.5);
+		sistemaController.adicionaItemPorUnidade("escova", "alimento industrializado", 1, "ideal", 6.0);
+		sistemaController.atualizaItem(2, "categoria", "HIGIENE PESSOAL");
+		assertEquals("1. sabonete, Higiene Pessoal, Preco: <ideal, R$ 2,50;>", sistemaController.exibeItem(1));
+		assertEquals("2. escova, HIGIENE PESSOAL, Preco: <ideal, R$ 6,00;>",
+				sistemaController.getItemPorCategoria("higiene pessoal", 0));
+		assertEquals("1. sabonete, Higiene Pessoal, Preco: <ideal, R$ 2,50;>",
+				sistemaController.getItemPorCategoria("higiene pessoal", 1));
+	}
+
 	/**
 	 * Metodo responsavel por retornar uma representacao textual vazia " "" "
 	 * indicando que nao existe um item nessa posicao.
@@ -591,6 +635,21 @@ public class SistemaControllertest {
 
 	}
 
+	/**
+	 * Testa o metodo getItemPorMenorPreco apos a adicao de um preco menor a um
+	 * item.
+	 */
+	@Test
+	public void testGetItemPorMenorPrecoAposNovoPreco() {
+		sistemaController.adicionaItemPorUnidade("sabonete", "limpeza", 1, "carrefuor", 92.3);
+		sistemaController.adicionaItemPorUnidade("mais sabonete", "limpeza", 2, "uau mart", 50.1);
+		sistemaController.adicionaPrecoItem(1, "uau mart", 10.5);
+
+		assertEquals("1. sabonete, limpeza, Preco: <carrefuor, R$ 92,30;uau mart, R$ 10,50;>",
+				sistemaController.getItemPorMenorPreco(0));
+		assertEquals("2. mais sabonete, limpeza, Preco: <uau mart, R$ 50,10;>", sistemaController.getItemPorMenorPreco(1));
+	}
+
 	/**
 	 * Testa o metodo getItemPorMenorPreco com posicao invalida(negativa)
 	 */
@@ -680,6 +739,25 @@ public class SistemaControllertest {
 
 	}
 
+	/**
+	 * Testa o metodo getItemPorPesquisa apos a atualizacao e a remocao de itens.
+	 */
+	@Test
+	public void testGetItemPorPesquisaAposAtualizacao() {
+		sistemaController.adicionaItemPorQuilo("carne moida", "alimento nao industrializado", 2, "atacadao", 12.30);
+		sistemaController.adicionaItemPorQuilo("carne seca", "alimento nao industrializado", 3, "hiper", 11.30);
+		sistemaController.adicionaItemPorQuilo("carne rosa", "alimento nao industrializado", 2, "assai", 10.30);
+
+		sistemaController.atualizaItem(1, "nome", "Frango Moido");
+		sistemaController.deletaItem(3);
+
+		assertEquals("2. carne seca, alimento nao industrializado, Preco por quilo: <hiper, R$ 11,30;>",
+				sistemaController.getItemPorPesquisa("carne", 0));
+		assertEquals("", sistemaController.getItemPorPesquisa("carne", 1));
+		assertEquals("1. Frango Moido, alimento nao industrializado, Preco por quilo: <atacadao, R$ 12,30;>",
+				sistemaController.getItemPorPesquisa("moido", 0));
+	}
+
 	/**
 	 * Testa o metodo que adiciona uma lista de compras com um descritor invalido.
 	 */
@@ -1065,6 +1143,33 @@ public class SistemaControllertest {
 		assertEquals("", this.sistemaController.pesquisaListasDeComprasPorData("27/07/2018"));
 	}
 
+	/**
+	 * Metodo responsavel por pesquisar as listas de compras criadas em um periodo
+	 */
+	@Test
+	public void testPesquisaListasDeComprasPorPeriodo() {
+		this.sistemaController.adicionaListaDeCompras("feira semana");
+		this.sistemaController.adicionaListaDeCompras("Extra");
+		String hoje = this.sistemaController.dataAtual();
+		assertEquals(hoje + " - Extra\n" + hoje + " - feira semana\n",
+				this.sistemaController.pesquisaListasDeComprasPorPeriodo("01/01/2000", hoje));
+		assertEquals("", this.sistemaController.pesquisaListasDeComprasPorPeriodo("01/01/2000", "31/12/2000"));
+	}
+
+	@Test(expected = CampoInvalidoException.class)
+	public void testPesquisaListasDeComprasPorPeriodoInvertido() {
+		this.sistemaController.pesquisaListasDeComprasPorPeriodo("31/12/2000", "01/01/2000");
+	}
+
+	/**
+	 * Metodo responsavel por verificar que uma data que nao pode ser lida no
+	 * periodo e informada como invalida.
+	 */
+	@Test(expected = CampoInvalidoException.class)
+	public void testPesquisaListasDeComprasPorPeriodoDataIlegivel() {
+		this.sistemaController.pesquisaListasDeComprasPorPeriodo("01/01/2000", "aa/bb/cccc");
+	}
+
 	/**
 	 * Metodo responsavel por pesquisar listas de compras que contem tal item
 	 */
@@ -1078,6 +1183,23 @@ public class SistemaControllertest {
 		assertEquals("feira semana\nfeira da outra semana\n", this.sistemaController.pesquisaListasDeComprasPorItem(1));
 	}
 
+	/**
+	 * Metodo responsavel por verificar que a pesquisa por item acompanha as
+	 * compras removidas e as listas geradas automaticamente.
+	 */
+	@Test
+	public void testPesquisaListasDeComprasPorItemAposRemocao() {
+		this.sistemaController.adicionaListaDeCompras("feira semana");
+		this.sistemaController.adicionaListaDeCompras("feira da outra semana");
+		this.sistemaController.adicionaItemPorUnidade("creme dental", "higiene pessoal", 5, "super market", 2.90);
+		this.sistemaController.adicionaCompraALista("feira semana", 2, 1);
+		this.sistemaController.adicionaCompraALista("feira da outra semana", 2, 1);
+		String automatica = this.sistemaController.geraAutomaticaUltimaLista();
+		this.sistemaController.deletaCompraDeLista("feira semana", 1);
+		this.sistemaController.atualizaCompraDeLista("feira da outra semana", 1, "diminui", 2);
+		assertEquals(automatica + "\n", this.sistemaController.pesquisaListasDeComprasPorItem(1));
+	}
+
 	/**
 	 * Metodo responsavel por geracao automatica da ultima lista cadastrada.
 	 */
@@ -1105,6 +1227,19 @@ public class SistemaControllertest {
 		assertEquals("Lista automatica 2 "+this.sistemaController.dataAtual(), this.sistemaController.geraAutomaticaItem("creme dental"));
 	}
 
+	/**
+	 * Metodo responsavel por verificar que a geracao automatica por item encontra
+	 * o item pelo nome atualizado.
+	 */
+	@Test
+	public void testGeraAutomaticaItemAposRenomear() {
+		this.sistemaController.adicionaListaDeCompras("feira semana");
+		this.sistemaController.adicionaItemPorUnidade("creme dental", "higiene pessoal", 5, "super market", 2.90);
+		this.sistemaController.adicionaCompraALista("feira semana", 2, 1);
+		this.sistemaController.atualizaItem(1, "nome", "pasta de dente");
+		assertEquals("Lista automatica 2 "+this.sistemaController.dataAtual(), this.sistemaController.geraAutomaticaItem("pasta de dente"));
+	}
+
 	/**
 	 * Metodo responsavel por gerar automaticamente a lista com os itens mais
 	 * presentes.
@@ -1129,6 +1264,23 @@ public class SistemaControllertest {
 		assertEquals("Lista automatica 3 "+this.sistemaController.dataAtual(), this.sistemaController.geraAutomaticaItensMaisPresentes());
 	}
 
+	/**
+	 * Metodo responsavel por verificar que a lista com os itens mais presentes usa
+	 * as quantidades atualizadas das compras.
+	 */
+	@Test
+	public void testGeraAutomaticaItensMaisPresenteAposAtualizacao() {
+		this.sistemaController.adicionaListaDeCompras("feira semana");
+		this.sistemaController.adicionaListaDeCompras("feira da outra semana");
+		this.sistemaController.adicionaItemPorUnidade("creme dental", "higiene pessoal", 5, "super market", 2.90);
+		this.sistemaController.adicionaCompraALista("feira semana", 2, 1);
+		this.sistemaController.adicionaCompraALista("feira da outra semana", 5, 1);
+		this.sistemaController.atualizaCompraDeLista("feira da outra semana", 1, "diminui", 1);
+
+		String automatica = this.sistemaController.geraAutomaticaItensMaisPresentes();
+		assertEquals("3 creme dental, higiene pessoal", this.sistemaController.pesquisaCompraEmLista(automatica, 1));
+	}
+
 	/**
 	 * Metodo responsavel por testar o metodo que sugere o melhor estabelecimento..
 	 */
@@ -1154,6 +1306,288 @@ public class SistemaControllertest {
 		assertEquals("Compre bem: R$ 8,40", this.sistemaController.sugereMelhorEstabelecimento("feira semana", 0, 0));
 	}
 
+	/**
+	 * Metodo responsavel por verificar que a sugestao de melhor estabelecimento
+	 * acompanha os novos precos e compras depois de ja ter sido calculada.
+	 */
+	@Test
+	public void testSugereMelhorEstabelecimentoAposAlteracoes() {
+		this.sistemaController.adicionaListaDeCompras("feira semana");
+		this.sistemaController.adicionaItemPorUnidade("creme dental", "higiene pessoal", 5, "super market", 2.90);
+		this.sistemaController.adicionaPrecoItem(1, "Compre bem", 2.80);
+		this.sistemaController.adicionaCompraALista("feira semana", 3, 1);
+		assertEquals("Compre bem: R$ 8,40", this.sistemaController.sugereMelhorEstabelecimento("feira semana", 0, 0));
+
+		this.sistemaController.adicionaPrecoItem(1, "super market", 1.00);
+		assertEquals("super market: R$ 3,00", this.sistemaController.sugereMelhorEstabelecimento("feira semana", 0, 0));
+
+		this.sistemaController.atualizaCompraDeLista("feira semana", 1, "adiciona", 1);
+		assertEquals("super market: R$ 4,00", this.sistemaController.sugereMelhorEstabelecimento("feira semana", 0, 0));
+	}
+
+	/**
+	 * Metodo responsavel por verificar que o calculo paralelo dos estabelecimentos
+	 * chega ao mesmo resultado do calculo sequencial.
+	 */
+	@Test
+	public void testSugereMelhorEstabelecimentoParalelo() {
+		this.sistemaController.setLimiarParalelo(1);
+		this.sistemaController.adicionaListaDeCompras("feira semana");
+		this.sistemaController.adicionaItemPorUnidade("creme dental", "higiene pessoal", 5, "super market", 2.90);
+		this.sistemaController.adicionaPrecoItem(1, "Compre bem", 2.80);
+		this.sistemaController.adicionaItemPorQuilo("Frango", "alimento nao industrializado", 5.0, "churrascaria",
+				99.0);
+		this.sistemaController.adicionaPrecoItem(2, "Compre bem", 10.0);
+		this.sistemaController.adicionaItemPorUnidade("sabonete", "higiene pessoal", 1, "super market", 1.50);
+
+		this.sistemaController.adicionaCompraALista("feira semana", 3, 1);
+		this.sistemaController.adicionaCompraALista("feira semana", 4, 2);
+		this.sistemaController.adicionaCompraALista("feira semana", 2, 3);
+
+		assertEquals("super market: R$ 11,70", this.sistemaController.sugereMelhorEstabelecimento("feira semana", 0, 0));
+		assertEquals("Compre bem: R$ 48,40", this.sistemaController.sugereMelhorEstabelecimento("feira semana", 1, 0));
+		assertEquals("churrascaria: R$ 396,00", this.sistemaController.sugereMelhorEstabelecimento("feira semana", 2, 0));
+	}
+
+	/**
+	 * Verifica que um ranking de estabelecimentos calculado durante uma alteracao
+	 * de precos nao fica guardado com os precos anteriores. Antes de cada novo
+	 * preco, uma compra e alterada para que a leitora comece um novo calculo.
+	 */
+	@Test
+	public void testSugereMelhorEstabelecimentoDuranteAlteracoes() throws InterruptedException {
+		this.sistemaController.adicionaListaDeCompras("feira semana");
+		this.sistemaController.adicionaItemPorUnidade("creme dental", "higiene pessoal", 5, "super market", 20.0);
+		this.sistemaController.adicionaCompraALista("feira semana", 1, 1);
+		for (int i = 0; i < 500; i++) {
+			int id = this.sistemaController.adicionaItemPorUnidade("sabonete " + i, "higiene pessoal", 1, "loja",
+					100.0);
+			this.sistemaController.adicionaCompraALista("feira semana", 1, id);
+		}
+		final List<Throwable> erros = Collections.synchronizedList(new ArrayList<Throwable>());
+		final AtomicBoolean terminou = new AtomicBoolean(false);
+
+		Thread leitora = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					while (!terminou.get()) {
+						sistemaController.sugereMelhorEstabelecimento("feira semana", 0, 0);
+					}
+				} catch (Throwable e) {
+					erros.add(e);
+				}
+			}
+		});
+		leitora.start();
+		List<String> perdidas = new ArrayList<>();
+		for (int i = 0; i < 500; i++) {
+			this.sistemaController.atualizaCompraDeLista("feira semana", 2, "adiciona", 1);
+			this.sistemaController.adicionaPrecoItem(1, "mercado " + i, 10.0 - i * 0.01);
+			String melhor = this.sistemaController.sugereMelhorEstabelecimento("feira semana", 0, 0);
+			if (!melhor.startsWith("mercado " + i + ":")) {
+				perdidas.add(melhor);
+			}
+		}
+		terminou.set(true);
+		leitora.join();
+
+		assertEquals(new ArrayList<Throwable>(), erros);
+		assertEquals(new ArrayList<String>(), perdidas);
+	}
+
+	/**
+	 * Verifica o cadastro de itens e de compras feito por varias threads ao mesmo
+	 * tempo: cada item recebe um identificador diferente e todas as compras sao
+	 * indexadas.
+	 */
+	@Test
+	public void testOperacoesConcorrentes() throws InterruptedException {
+		final int quantidadeThreads = 4;
+		final int itensPorThread = 50;
+		final List<Throwable> erros = Collections.synchronizedList(new ArrayList<Throwable>());
+		final Set<Integer> ids = Collections.synchronizedSet(new HashSet<Integer>());
+		this.sistemaController.adicionaListaDeCompras("feira compartilhada");
+
+		Thread[] threads = new Thread[quantidadeThreads];
+		for (int t = 0; t < quantidadeThreads; t++) {
+			final int numero = t;
+			threads[t] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						for (int i = 0; i < itensPorThread; i++) {
+							int id = sistemaController.adicionaItemPorUnidade("item " + numero + "-" + i,
+									"higiene pessoal", 1, "super market", 1.0 + i);
+							ids.add(id);
+							sistemaController.adicionaCompraALista("feira compartilhada", 1, id);
+							sistemaController.adicionaListaDeCompras("lista " + numero + "-" + i);
+							sistemaController.adicionaCompraALista("lista " + numero + "-" + i, 2, id);
+						}
+					} catch (Throwable e) {
+						erros.add(e);
+					}
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertEquals(new ArrayList<Throwable>(), erros);
+		assertEquals(quantidadeThreads * itensPorThread, ids.size());
+		for (int id = 1; id <= quantidadeThreads * itensPorThread; id++) {
+			assertEquals(true, ids.contains(id));
+			assertEquals("1 item", this.sistemaController.pesquisaCompraEmLista("feira compartilhada", id)
+					.substring(0, 6));
+			assertEquals(2, this.sistemaController.pesquisaListasDeComprasPorItem(id)
+					.split(System.lineSeparator()).length);
+		}
+		assertNotEquals("", this.sistemaController.getItem(quantidadeThreads * itensPorThread - 1));
+	}
+
+	/**
+	 * Verifica que listas criadas ao mesmo tempo com os mesmos descritores sao
+	 * criadas uma unica vez e que os contadores dos itens mais presentes somam
+	 * as compras feitas em paralelo.
+	 */
+	@Test
+	public void testCriacaoConcorrenteDeListas() throws InterruptedException {
+		final int quantidadeThreads = 4;
+		final int listas = 50;
+		final List<Throwable> erros = Collections.synchronizedList(new ArrayList<Throwable>());
+		final List<String> criadas = Collections.synchronizedList(new ArrayList<String>());
+		this.sistemaController.adicionaItemPorUnidade("creme dental", "higiene pessoal", 1, "super market", 3.0);
+
+		Thread[] threads = new Thread[quantidadeThreads];
+		for (int t = 0; t < quantidadeThreads; t++) {
+			threads[t] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int i = 0; i < listas; i++) {
+						try {
+							sistemaController.adicionaListaDeCompras("lista " + i);
+						} catch (CampoInvalidoException e) {
+							continue;
+						} catch (Throwable e) {
+							erros.add(e);
+							continue;
+						}
+						criadas.add("lista " + i);
+						try {
+							sistemaController.adicionaCompraALista("lista " + i, 3, 1);
+						} catch (Throwable e) {
+							erros.add(e);
+						}
+					}
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertEquals(new ArrayList<Throwable>(), erros);
+		assertEquals(listas, criadas.size());
+		assertEquals(listas, new HashSet<String>(criadas).size());
+		assertEquals(listas, this.sistemaController.pesquisaListasDeComprasPorItem(1)
+				.split(System.lineSeparator()).length);
+		String automatica = this.sistemaController.geraAutomaticaItensMaisPresentes();
+		assertEquals("3 creme dental, higiene pessoal", this.sistemaController.pesquisaCompraEmLista(automatica, 1));
+	}
+
+	/**
+	 * Verifica que as compras de uma lista alterada enquanto os seus itens sao
+	 * renomeados continuam ordenadas pelo nome atual dos itens.
+	 */
+	@Test
+	public void testOrdemDaListaDuranteRenomeacoes() throws InterruptedException {
+		for (int i = 0; i < 20; i++) {
+			this.sistemaController.adicionaItemPorUnidade("item " + (char) ('a' + i), "higiene pessoal", 1,
+					"super market", 1.0);
+		}
+		this.sistemaController.adicionaListaDeCompras("feira renomeada");
+		for (int id = 2; id <= 20; id++) {
+			this.sistemaController.adicionaCompraALista("feira renomeada", 1, id);
+		}
+		final List<Throwable> erros = Collections.synchronizedList(new ArrayList<Throwable>());
+		final AtomicBoolean terminou = new AtomicBoolean(false);
+
+		Thread escritora = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					while (!terminou.get()) {
+						sistemaController.adicionaCompraALista("feira renomeada", 1, 1);
+						sistemaController.deletaCompraDeLista("feira renomeada", 1);
+					}
+				} catch (Throwable e) {
+					erros.add(e);
+				}
+			}
+		});
+		escritora.start();
+		for (int i = 0; i < 500; i++) {
+			this.sistemaController.atualizaItem(1, "nome", "item " + (char) ('a' + i % 26));
+			this.sistemaController.atualizaItem(10, "nome", "item " + (char) ('z' - i % 26));
+		}
+		terminou.set(true);
+		escritora.join();
+		this.sistemaController.adicionaCompraALista("feira renomeada", 1, 1);
+
+		assertEquals(new ArrayList<Throwable>(), erros);
+		String anterior = "";
+		for (int posicao = 0; posicao < 20; posicao++) {
+			String compra = this.sistemaController.getItemLista("feira renomeada", posicao);
+			assertEquals(true, compra.compareTo(anterior) >= 0);
+			anterior = compra;
+		}
+		assertEquals("", this.sistemaController.getItemLista("feira renomeada", 20));
+	}
+
+	/**
+	 * Verifica que as consultas ao catalogo feitas durante alteracoes de precos e
+	 * de nomes, inclusive a pesquisa por trechos do nome, sempre encontram os
+	 * itens, ja que leem uma versao completa dos indices.
+	 */
+	@Test
+	public void testConsultasDuranteAlteracoes() throws InterruptedException {
+		this.sistemaController.adicionaItemPorUnidade("arroz", "alimento industrializado", 1, "super market", 5.0);
+		this.sistemaController.adicionaItemPorUnidade("feijao", "alimento industrializado", 1, "super market", 7.0);
+		final List<String> erros = Collections.synchronizedList(new ArrayList<String>());
+		final AtomicBoolean terminou = new AtomicBoolean(false);
+
+		Thread leitora = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				while (!terminou.get()) {
+					if (sistemaController.getItem(1).isEmpty() || sistemaController.getItemPorMenorPreco(1).isEmpty()
+							|| sistemaController.getItemPorCategoria("alimento industrializado", 1).isEmpty()) {
+						erros.add("item nao encontrado");
+					}
+					if (!sistemaController.getItemPorPesquisa("feijao", 0).startsWith("2. feijao")
+							|| !sistemaController.getItemPorPesquisa("arroz", 0).startsWith("1. arroz")
+							|| !sistemaController.getItemPorPesquisa("feijao", 1).isEmpty()) {
+						erros.add("pesquisa incorreta");
+					}
+				}
+			}
+		});
+		leitora.start();
+		for (int i = 0; i < 500; i++) {
+			this.sistemaController.adicionaPrecoItem(1, "mercado " + i, 10.0 - i * 0.01);
+			this.sistemaController.atualizaItem(2, "nome", "feijao " + i);
+		}
+		terminou.set(true);
+		leitora.join();
+
+		assertEquals(new ArrayList<String>(), erros);
+		assertEquals("2. feijao 499, alimento industrializado, Preco: <super market, R$ 7,00;>",
+				this.sistemaController.exibeItem(2));
+	}
+
 	/**
 	 * Metodo responsavel por verificar o metodo que fecha o sistema.
 	 */
@@ -92,4 +92,21 @@ public class ComprasTest {
 		assertEquals("4 Cotonete, higiene pessoal", compras.toString());
 	}
 
+	/**
+	 * Testa a comparacao de compras pela categoria do item, inclusive depois que a
+	 * categoria do item e alterada.
+	 */
+	@Test
+	public void testCompareTo() {
+		Item sabao = new ProdutoPorUnidade(2, "Sabao", "limpeza", 1, "Valmart", 3.5);
+		Compra outra = new Compra(sabao, 1);
+		assertTrue(compras.compareTo(outra) < 0);
+		assertTrue(outra.compareTo(compras) > 0);
+		sabao.setCategoria("higiene pessoal");
+		assertTrue(compras.compareTo(outra) < 0);
+		assertTrue(outra.compareTo(compras) > 0);
+		sabao.setCategoria("alimento nao industrializado");
+		assertTrue(compras.compareTo(outra) < 0);
+	}
+
 }
@@ -4,11 +4,14 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.io.IOException;
+
 import org.junit.Before;
 import org.junit.Test;
 
 import com.projeto.excecoes.CampoInvalidoException;
 import com.projeto.excecoes.CompraNaoCadastradaException;
+import com.projeto.service.EstabelecimentoRegistry;
 
 /**
  * Classe de teste que testa todas as funcionalidades da classe ListaDeCompras.
@@ -145,6 +148,18 @@ public class ListaDeCompraTest {
 		assertEquals("", lista.buscaTodosItens());
 	}
 
+	/**
+	 * Testa o metodo que escreve todos os itens de uma lista de compras em um
+	 * destino de texto
+	 */
+	@Test
+	public void testEscreveTodosItens() throws IOException {
+		lista.adicionaCompraALista(3, sabonete);
+		StringBuilder saida = new StringBuilder("itens:");
+		lista.escreveTodosItens(saida);
+		assertEquals("itens:" + lista.buscaTodosItens(), saida.toString());
+	}
+
 	/**
 	 * Testa a pesquisa de uma compra nao cadatrada na lista de compra 
 	 */
@@ -256,5 +271,80 @@ public class ListaDeCompraTest {
 		assertEquals("hiper", lista.getLocal());
 	}
 
+	/**
+	 * Testa que o local da lista finalizada com um dicionario de locais e a
+	 * instancia canonica do dicionario, e que dicionarios diferentes nao
+	 * compartilham identificadores.
+	 */
+	@Test
+	public void testGetLocalCanonico() {
+		EstabelecimentoRegistry estabelecimentos = new EstabelecimentoRegistry();
+		assertEquals(0, estabelecimentos.registra("dias"));
+		String hiper = estabelecimentos.canonico("hiper");
+		lista.finalizar(new String("hiper"), 1000, estabelecimentos);
+		assertTrue(hiper == lista.getLocal());
+		assertEquals(2, estabelecimentos.quantidade());
+		assertEquals(0, new EstabelecimentoRegistry().registra("hiper"));
+	}
+
+	/**
+	 * Testa a ordem das compras da lista, pela categoria e pelo nome do item,
+	 * inclusive depois que um item e renomeado.
+	 */
+	@Test
+	public void testGetItemListaOrdenada() {
+		Item detergente = new ProdutoPorUnidade(2, "detergente", "limpeza", 1, "dias", 1.95);
+		Item escova = new ProdutoPorUnidade(3, "escova", "higiene pessoal", 1, "dias", 4.50);
+		lista.adicionaCompraALista(1, detergente);
+		lista.adicionaCompraALista(2, escova);
+		lista.adicionaCompraALista(3, cremeDental);
+		assertEquals("3 creme dental, higiene pessoal", lista.getItemLista(0));
+		assertEquals("2 escova, higiene pessoal", lista.getItemLista(1));
+		assertEquals("1 detergente, limpeza", lista.getItemLista(2));
+
+		escova.setNome("adesivo");
+		lista.atualizaItem(3);
+		assertEquals("2 adesivo, higiene pessoal", lista.getItemLista(0));
+
+		lista.deletaCompraDeLista(1);
+		String ordem = "";
+		for (Compra compra : lista.getComprasOrdenadas()) {
+			ordem += compra.getItem().getNome() + ";";
+		}
+		assertEquals("adesivo;detergente;", ordem);
+	}
+
+	/**
+	 * Testa que a ordem das compras continua correta quando um item e renomeado
+	 * e a lista so e avisada depois: a compra pode ser retirada e outras compras
+	 * podem ser adicionadas enquanto isso.
+	 */
+	@Test
+	public void testOrdemComItemAlteradoForaDaLista() {
+		Item escova = new ProdutoPorUnidade(2, "escova", "higiene pessoal", 1, "dias", 4.50);
+		Item fio = new ProdutoPorUnidade(3, "fio dental", "higiene pessoal", 1, "dias", 2.50);
+		Item sabonete = new ProdutoPorUnidade(4, "sabonete", "higiene pessoal", 1, "dias", 1.50);
+		lista.adicionaCompraALista(1, cremeDental);
+		lista.adicionaCompraALista(2, escova);
+		lista.adicionaCompraALista(3, sabonete);
+
+		sabonete.setNome("absorvente");
+		lista.adicionaCompraALista(4, fio);
+		assertEquals("4 fio dental, higiene pessoal", lista.getItemLista(2));
+		lista.atualizaItem(4);
+		assertEquals("3 absorvente, higiene pessoal", lista.getItemLista(0));
+		assertEquals(true, lista.contemItem("absorvente"));
+		assertEquals(false, lista.contemItem("sabonete"));
+
+		escova.setNome("algodao");
+		lista.deletaCompraDeLista(2);
+		String ordem = "";
+		for (Compra compra : lista.getComprasOrdenadas()) {
+			ordem += compra.getItem().getNome() + ";";
+		}
+		assertEquals("absorvente;creme dental;fio dental;", ordem);
+		assertEquals(false, lista.contemItem("escova"));
+	}
+
 
 }
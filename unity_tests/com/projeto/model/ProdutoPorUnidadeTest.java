@@ -2,11 +2,17 @@ package com.projeto.model;
 
 import static org.junit.Assert.*;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import org.junit.Before;
 import org.junit.Test;
 
 import com.projeto.excecoes.AtribultoInexistenteException;
 import com.projeto.excecoes.CampoInvalidoException;
+import com.projeto.service.EstabelecimentoRegistry;
+import com.projeto.service.PrecoService;
+import com.projeto.util.Categoria;
 
 /**
  * Classe responsavel por testar a classe Produto por Unidade.
@@ -207,4 +213,109 @@ public class ProdutoPorUnidadeTest {
 		
 	}
 
+	/**
+	 * Testa a categoria do produto, guardada como enum e exibida como foi
+	 * informada.
+	 */
+	@Test
+	public void testCategoria() {
+		assertEquals(Categoria.HIGIENE_PERSOAL, produtoPorUnidade.getTipoCategoria());
+		produtoPorUnidade.atualiza("categoria", "limpeza");
+		assertEquals(Categoria.LIMPEZA, produtoPorUnidade.getTipoCategoria());
+		assertEquals("limpeza", produtoPorUnidade.getCategoria());
+		produtoPorUnidade.atualiza("categoria", "Higiene Pessoal");
+		assertEquals(Categoria.HIGIENE_PERSOAL, produtoPorUnidade.getTipoCategoria());
+		assertEquals("Higiene Pessoal", produtoPorUnidade.getCategoria());
+		assertEquals("1. Pasta Dental, Higiene Pessoal, Preco: <Rede pharma, R$ 13,95;>", produtoPorUnidade.toString());
+	}
+
+	/**
+	 * Testa que itens com o mesmo nome e a categoria higiene pessoal escrita com
+	 * letras maiusculas ou minusculas sao iguais e possuem o mesmo hashCode.
+	 */
+	@Test
+	public void testIgualdadeComCategoriaMaiuscula() {
+		ProdutoPorUnidade maiuscula = new ProdutoPorUnidade(2, "Pasta Dental", "Higiene Pessoal", 1, "Rede pharma",
+				13.95);
+		assertEquals(produtoPorUnidade, maiuscula);
+		assertEquals(produtoPorUnidade.hashCode(), maiuscula.hashCode());
+		assertFalse(produtoPorUnidade.equals(
+				new ProdutoPorUnidade(3, "Pasta Dental", "limpeza", 1, "Rede pharma", 13.95)));
+	}
+
+	/**
+	 * Testa que a tabela de precos retornada nao muda quando um preco e alterado
+	 * ou acrescentado depois.
+	 */
+	@Test
+	public void testTabelaPrecosImutavel() {
+		PrecoService.TabelaPrecos anterior = produtoPorUnidade.getTabelaPrecos();
+		produtoPorUnidade.adicionarLocalCompra("Rede pharma", 15.0);
+		produtoPorUnidade.adicionarLocalCompra("Drogasil", 12.5);
+
+		assertEquals(1, anterior.getQuantidadeLocais());
+		assertEquals(13.95, anterior.getPreco(0), 0.001);
+		PrecoService.TabelaPrecos atual = produtoPorUnidade.getTabelaPrecos();
+		assertEquals(2, atual.getQuantidadeLocais());
+		assertEquals(15.0, atual.getPreco(0), 0.001);
+		assertEquals("Drogasil", atual.getLocal(1));
+		assertEquals(12.5, produtoPorUnidade.getMenorPreco(), 0.001);
+	}
+
+	/**
+	 * Testa que dois itens com preco no mesmo local compartilham o nome canonico
+	 * e o identificador do local no dicionario do sistema, que os identificadores
+	 * sao sequenciais, e que o mapa de precos continua o mesmo.
+	 */
+	@Test
+	public void testLocaisNoDicionario() {
+		EstabelecimentoRegistry estabelecimentos = new EstabelecimentoRegistry();
+		ProdutoPorUnidade escova = new ProdutoPorUnidade(2, "Escova", "higiene pessoal", 1, new String("Drogasil"),
+				4.5, estabelecimentos);
+		ProdutoPorUnidade fio = new ProdutoPorUnidade(3, "Fio Dental", "higiene pessoal", 1, "Rede pharma", 6.0,
+				estabelecimentos);
+		fio.adicionarLocalCompra(new String("Drogasil"), 5.5);
+
+		PrecoService.TabelaPrecos precosEscova = escova.getTabelaPrecos();
+		PrecoService.TabelaPrecos precosFio = fio.getTabelaPrecos();
+		assertEquals(0, precosEscova.getIdLocal(0));
+		assertEquals(1, precosFio.getIdLocal(0));
+		assertEquals(0, precosFio.getIdLocal(1));
+		assertEquals(2, estabelecimentos.quantidade());
+		assertTrue(precosEscova.getLocal(0) == precosFio.getLocal(1));
+		assertTrue(estabelecimentos.getNome(0) == precosFio.getLocal(1));
+
+		Map<String, Double> esperado = new HashMap<>();
+		esperado.put("Rede pharma", 6.0);
+		esperado.put("Drogasil", 5.5);
+		assertEquals(esperado, fio.getPrecos());
+		fio.getPrecos().clear();
+		assertEquals(esperado, fio.getPrecos());
+		assertEquals(5.5, fio.getMenorPreco(), 0.001);
+	}
+
+	/**
+	 * Testa que um item criado fora do sistema, ao passar a usar o dicionario do
+	 * sistema, recebe os identificadores do dicionario e mantem os precos.
+	 */
+	@Test
+	public void testUsaEstabelecimentos() {
+		EstabelecimentoRegistry estabelecimentos = new EstabelecimentoRegistry();
+		assertEquals(0, estabelecimentos.registra("Drogasil"));
+		produtoPorUnidade.adicionarLocalCompra("Drogasil", 12.5);
+		PrecoService.TabelaPrecos anterior = produtoPorUnidade.getTabelaPrecos();
+		assertEquals(0, anterior.getIdLocal(1, estabelecimentos));
+		assertEquals(1, estabelecimentos.quantidade());
+
+		produtoPorUnidade.usaEstabelecimentos(estabelecimentos);
+		PrecoService.TabelaPrecos atual = produtoPorUnidade.getTabelaPrecos();
+		assertEquals(1, atual.getIdLocal(0));
+		assertEquals(0, atual.getIdLocal(1));
+		assertTrue(estabelecimentos.getNome(0) == atual.getLocal(1));
+		assertEquals(2, estabelecimentos.quantidade());
+		assertEquals(Double.valueOf(13.95), produtoPorUnidade.getPrecos().get("Rede pharma"));
+		assertEquals(Double.valueOf(12.5), produtoPorUnidade.getPrecos().get("Drogasil"));
+		assertEquals(12.5, produtoPorUnidade.getMenorPreco(), 0.001);
+	}
+
 }
\ No newline at end of file
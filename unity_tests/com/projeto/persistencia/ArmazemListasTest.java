@@ -0,0 +1,325 @@
+package com.projeto.persistencia;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.projeto.controller.SistemaController;
+import com.projeto.model.Item;
+import com.projeto.model.ListaDeCompras;
+import com.projeto.model.ProdutoPorUnidade;
+import com.projeto.service.HistoricoListas;
+
+/**
+ * Classe de teste que verifica o armazem de listas finalizadas e o historico
+ * em disco do servico de listas.
+ */
+public class ArmazemListasTest {
+
+	private File diretorio;
+
+	private ArmazemListas armazem;
+
+	private SistemaController sistemaController;
+
+	private SistemaController referencia;
+
+	/**
+	 * Inicializando um armazem vazio e dois sistemas iguais, apenas o primeiro
+	 * com o historico em disco e um cache de uma lista.
+	 */
+	@Before
+	public void inicializar() throws IOException {
+		diretorio = Files.createTempDirectory("historico").toFile();
+		armazem = new ArmazemListas(diretorio);
+		sistemaController = new SistemaController();
+		referencia = new SistemaController();
+		sistemaController.ativaHistorico(armazem, 1);
+		for (SistemaController sistema : new SistemaController[] { sistemaController, referencia }) {
+			sistema.adicionaItemPorQtd("sabonete", "higiene pessoal", 90, "gramas", "ideal", 1.5);
+			sistema.adicionaItemPorUnidade("esponja", "limpeza", 3, "ideal", 2.0);
+			sistema.adicionaItemPorQuilo("batata", "alimento nao industrializado", 1.0, "feira", 3.2);
+			sistema.adicionaListaDeCompras("feira semanal", new Date(1000L));
+			sistema.adicionaCompraALista("feira semanal", 2, 1);
+			sistema.adicionaCompraALista("feira semanal", 1, 2);
+			sistema.adicionaListaDeCompras("limpeza", new Date(2000L));
+			sistema.adicionaCompraALista("limpeza", 4, 2);
+			sistema.adicionaListaDeCompras("Churrasco", new Date(3000L));
+			sistema.adicionaCompraALista("Churrasco", 3, 3);
+			sistema.finalizarListaDeCompras("feira semanal", "ideal", 10);
+			sistema.finalizarListaDeCompras("limpeza", "ideal", 8);
+		}
+	}
+
+	@After
+	public void finalizar() throws IOException {
+		armazem.close();
+		diretorio.delete();
+	}
+
+	/**
+	 * Testa que as listas finalizadas saem da memoria e continuam sendo
+	 * consultadas como antes.
+	 */
+	@Test
+	public void testListasFinalizadasNoHistorico() {
+		assertEquals(2, sistemaController.getListaService().getQuantidadeHistorico());
+		assertEquals(2, armazem.quantidade());
+		assertEquals(3, sistemaController.getListaService().getListas().size());
+		for (String descritor : new String[] { "feira semanal", "limpeza", "Churrasco" }) {
+			assertEquals(referencia.pesquisaListaDeCompras(descritor),
+					sistemaController.pesquisaListaDeCompras(descritor));
+			assertEquals(referencia.getItemLista(descritor, 0), sistemaController.getItemLista(descritor, 0));
+		}
+		assertEquals(referencia.getItemLista("feira semanal", 1), sistemaController.getItemLista("feira semanal", 1));
+		assertEquals(referencia.getItemListaPorItem(2, 1), sistemaController.getItemListaPorItem(2, 1));
+		assertEquals(referencia.pesquisaListasDeComprasPorData(referencia.dataAtual()),
+				sistemaController.pesquisaListasDeComprasPorData(sistemaController.dataAtual()));
+		assertEquals(referencia.sugereMelhorEstabelecimento("limpeza", 0, 0),
+				sistemaController.sugereMelhorEstabelecimento("limpeza", 0, 0));
+	}
+
+	/**
+	 * Testa que uma lista do historico volta para a memoria quando e alterada.
+	 */
+	@Test
+	public void testListaAlteradaVoltaParaMemoria() {
+		sistemaController.adicionaCompraALista("feira semanal", 5, 3);
+		referencia.adicionaCompraALista("feira semanal", 5, 3);
+
+		assertEquals(1, sistemaController.getListaService().getQuantidadeHistorico());
+		assertEquals(1, armazem.quantidade());
+		assertEquals(referencia.getItemLista("feira semanal", 0), sistemaController.getItemLista("feira semanal", 0));
+		assertEquals(referencia.pesquisaListasDeComprasPorItem(3), sistemaController.pesquisaListasDeComprasPorItem(3));
+
+		sistemaController.finalizarListaDeCompras("feira semanal", "feira", 20);
+		assertEquals(2, armazem.quantidade());
+		assertTrue(sistemaController.pesquisaCompraEmLista("feira semanal", 3).startsWith("5 batata"));
+	}
+
+	/**
+	 * Testa que as listas lidas do historico usam o item alterado e recriam os
+	 * itens removidos do sistema.
+	 */
+	@Test
+	public void testItensAlteradosERemovidos() {
+		for (SistemaController sistema : new SistemaController[] { sistemaController, referencia }) {
+			sistema.atualizaItem(1, "nome", "sabonete liquido");
+			sistema.deletaItem(2);
+			sistema.pesquisaListaDeCompras("Churrasco");
+		}
+		assertEquals(referencia.getItemLista("feira semanal", 0), sistemaController.getItemLista("feira semanal", 0));
+		assertEquals(referencia.getItemLista("feira semanal", 1), sistemaController.getItemLista("feira semanal", 1));
+		assertEquals(referencia.getItemLista("limpeza", 0), sistemaController.getItemLista("limpeza", 0));
+	}
+
+	/**
+	 * Testa a geracao automatica e a gravacao do sistema com as listas do
+	 * historico.
+	 */
+	@Test
+	public void testGeracaoEGravacaoComHistorico() {
+		referencia.finalizarListaDeCompras("Churrasco", "feira", 9);
+		sistemaController.finalizarListaDeCompras("Churrasco", "feira", 9);
+		assertEquals(0, sistemaController.getListaService().getListas().size()
+				- sistemaController.getListaService().getQuantidadeHistorico());
+
+		Date criacao = new Date(4000L);
+		String descritor = sistemaController.geraAutomaticaItem("esponja", criacao);
+		assertEquals(referencia.geraAutomaticaItem("esponja", criacao), descritor);
+		assertEquals(referencia.getItemLista(descritor, 0), sistemaController.getItemLista(descritor, 0));
+
+		SistemaController recriado = sistemaController.retrata().recria();
+		assertEquals(4, recriado.getListaService().getListas().size());
+		assertEquals(referencia.pesquisaListaDeCompras("limpeza"), recriado.pesquisaListaDeCompras("limpeza"));
+		assertEquals(referencia.getItemLista("feira semanal", 1), recriado.getItemLista("feira semanal", 1));
+	}
+
+	/**
+	 * Testa que uma falha ao guardar uma lista finalizada no historico e lancada,
+	 * e que a lista continua na memoria.
+	 */
+	@Test
+	public void testFalhaAoGuardarNoHistorico() {
+		SistemaController sistema = new SistemaController();
+		sistema.ativaHistorico(new HistoricoListas() {
+			@Override
+			public void guarda(ListaDeCompras lista) throws IOException {
+				throw new IOException("Disco cheio.");
+			}
+
+			@Override
+			public ListaDeCompras le(String descritor, Map<Integer, Item> itens) {
+				return null;
+			}
+
+			@Override
+			public boolean remove(String descritor) {
+				return false;
+			}
+
+			@Override
+			public void close() {
+			}
+		}, 1);
+		sistema.adicionaItemPorUnidade("esponja", "limpeza", 3, "ideal", 2.0);
+		sistema.adicionaListaDeCompras("limpeza", new Date(2000L));
+		sistema.adicionaCompraALista("limpeza", 4, 1);
+		try {
+			sistema.finalizarListaDeCompras("limpeza", "ideal", 8);
+			fail("A falha do historico deveria ser lancada.");
+		} catch (UncheckedIOException e) {
+			assertEquals("Disco cheio.", e.getCause().getMessage());
+		}
+
+		assertEquals(0, sistema.getListaService().getQuantidadeHistorico());
+		assertEquals(1, sistema.getListaService().getListas().size());
+		assertTrue(sistema.pesquisaCompraEmLista("limpeza", 1).startsWith("4 esponja"));
+	}
+
+	/**
+	 * Testa que o sistema com o historico ativo e serializado com as listas do
+	 * historico, que sao carregadas de volta junto com as da memoria.
+	 */
+	@Test
+	public void testSerializacaoComHistorico() throws IOException, ClassNotFoundException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream saida = new ObjectOutputStream(bytes)) {
+			saida.writeObject(sistemaController);
+		}
+		SistemaController carregado;
+		try (ObjectInputStream entrada = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+			carregado = (SistemaController) entrada.readObject();
+		}
+
+		assertEquals(2, armazem.quantidade());
+		assertEquals(3, carregado.getListaService().getListas().size());
+		for (String descritor : new String[] { "feira semanal", "limpeza", "Churrasco" }) {
+			assertEquals(referencia.pesquisaListaDeCompras(descritor), carregado.pesquisaListaDeCompras(descritor));
+			assertEquals(referencia.getItemLista(descritor, 0), carregado.getItemLista(descritor, 0));
+		}
+		assertEquals(referencia.sugereMelhorEstabelecimento("limpeza", 0, 0),
+				carregado.sugereMelhorEstabelecimento("limpeza", 0, 0));
+	}
+
+	/**
+	 * Testa que as alteracoes feitas depois de marcado o momento de uma copia do
+	 * sistema, inclusive nas listas do historico, nao aparecem no retrato.
+	 */
+	@Test
+	public void testCapturaIgnoraAlteracoesPosteriores() {
+		RetratoSistema.Captura captura = sistemaController.iniciaRetrato();
+		sistemaController.atualizaItem(1, "nome", "sabonete liquido");
+		sistemaController.adicionaPrecoItem(2, "ideal", 0.5);
+		sistemaController.adicionaCompraALista("feira semanal", 5, 3);
+		sistemaController.deletaCompraDeLista("Churrasco", 3);
+		sistemaController.finalizarListaDeCompras("Churrasco", "feira", 9);
+		sistemaController.adicionaItemPorUnidade("rodo", "limpeza", 1, "ideal", 9.9);
+		sistemaController.adicionaListaDeCompras("mercado", new Date(5000L));
+		sistemaController.adicionaCompraALista("limpeza", 1, 4);
+		sistemaController.deletaItem(3);
+
+		SistemaController recriado = captura.conclui().recria();
+		assertEquals(3, recriado.getListaService().getListas().size());
+		assertEquals(4, recriado.getIdentificadorBase());
+		for (int id = 1; id <= 3; id++) {
+			assertEquals(referencia.exibeItem(id), recriado.exibeItem(id));
+		}
+		for (String descritor : new String[] { "feira semanal", "limpeza", "Churrasco" }) {
+			assertEquals(referencia.pesquisaListaDeCompras(descritor), recriado.pesquisaListaDeCompras(descritor));
+			assertEquals(referencia.getItemLista(descritor, 0), recriado.getItemLista(descritor, 0));
+		}
+		assertEquals(referencia.getItemLista("feira semanal", 1), recriado.getItemLista("feira semanal", 1));
+		assertEquals("", recriado.getItemLista("limpeza", 1));
+	}
+
+	/**
+	 * Testa que os segmentos com registros sem uso sao apagados ou compactados.
+	 */
+	@Test
+	public void testSegmentosCompactados() throws IOException {
+		ArmazemListas pequeno = new ArmazemListas(new File(diretorio, "pequeno"), 400);
+		try {
+			Item item = new ProdutoPorUnidade(1, "esponja", "limpeza", 3, "ideal", 2.0);
+			Map<Integer, Item> itens = Collections.singletonMap(1, item);
+			for (int i = 0; i < 20; i++) {
+				ListaDeCompras lista = new ListaDeCompras("lista " + i, new Date(i));
+				lista.adicionaCompraALista(i + 1, item);
+				lista.finalizar("ideal", i);
+				pequeno.guarda(lista);
+			}
+			int segmentos = pequeno.quantidadeSegmentos();
+			assertTrue(segmentos > 1);
+			for (int i = 0; i < 20; i++) {
+				if (i % 3 != 0) {
+					assertTrue(pequeno.remove("lista " + i));
+				}
+			}
+			assertFalse(pequeno.remove("lista 1"));
+			assertTrue(pequeno.quantidadeSegmentos() < segmentos);
+			assertEquals(7, pequeno.quantidade());
+
+			ListaDeCompras lida = pequeno.le("lista 9", itens);
+			assertTrue(lida.getItemLista(0).startsWith("10 esponja"));
+			assertTrue(lida.isFinalizada());
+			assertTrue(lida.getCompra(1).getItem() == item);
+			assertNull(pequeno.le("lista 8", itens));
+			assertTrue(pequeno.le("lista 6", new HashMap<Integer, Item>()).getCompra(1).getItem() != item);
+		} finally {
+			pequeno.close();
+			new File(diretorio, "pequeno").delete();
+		}
+	}
+
+	/**
+	 * Testa que um armazem aberto no mesmo diretorio nao apaga os segmentos de
+	 * outro armazem aberto, mas apaga os diretorios de armazens que nao foram
+	 * fechados.
+	 */
+	@Test
+	public void testDiretorioCompartilhado() throws IOException {
+		File abandonado = new File(diretorio, "armazem-abandonado");
+		assertTrue(abandonado.mkdir());
+		assertTrue(new File(abandonado, "armazem.trava").createNewFile());
+		assertTrue(new File(abandonado, "segmento-0.lpm").createNewFile());
+		File semTrava = new File(diretorio, "armazem-sem-trava");
+		assertTrue(semTrava.mkdir());
+
+		ArmazemListas outro = new ArmazemListas(diretorio);
+		try {
+			assertFalse(abandonado.exists());
+			assertTrue(semTrava.exists());
+			assertEquals(3, diretorio.listFiles().length);
+			ListaDeCompras lida = armazem.le("feira semanal", new HashMap<Integer, Item>());
+			assertEquals(referencia.pesquisaListaDeCompras("feira semanal"), lida.toString());
+			assertEquals(0, outro.quantidade());
+		} finally {
+			outro.close();
+			semTrava.delete();
+		}
+		assertEquals(1, diretorio.listFiles().length);
+		assertEquals(2, armazem.quantidade());
+		assertEquals(referencia.pesquisaListaDeCompras("limpeza"),
+				armazem.le("limpeza", new HashMap<Integer, Item>()).toString());
+	}
+
+}
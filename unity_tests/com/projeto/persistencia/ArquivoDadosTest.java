@@ -0,0 +1,184 @@
+package com.projeto.persistencia;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.io.StreamCorruptedException;
+import java.io.UncheckedIOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.projeto.controller.SistemaController;
+
+/**
+ * Classe de teste que verifica a gravacao e a leitura do arquivo de dados do
+ * sistema nos formatos disponiveis.
+ */
+public class ArquivoDadosTest {
+
+	private SistemaController sistemaController;
+
+	private File arquivo;
+
+	/**
+	 * Inicializando um sistema com itens, uma lista finalizada e um item removido
+	 * que continua em uma lista.
+	 */
+	@Before
+	public void inicializar() throws IOException {
+		sistemaController = new SistemaController();
+		sistemaController.adicionaItemPorQtd("sabonete", "higiene pessoal", 90, "gramas", "ideal", 1.5);
+		sistemaController.adicionaItemPorQuilo("batata", "alimento nao industrializado", 1.0, "feira", 3.2);
+		sistemaController.adicionaItemPorUnidade("esponja", "limpeza", 3, "ideal", 2.0);
+		sistemaController.adicionaPrecoItem(2, "ideal", 2.9);
+		sistemaController.adicionaListaDeCompras("feira semanal");
+		sistemaController.adicionaCompraALista("feira semanal", 2, 1);
+		sistemaController.adicionaCompraALista("feira semanal", 4, 2);
+		sistemaController.adicionaCompraALista("feira semanal", 1, 3);
+		sistemaController.finalizarListaDeCompras("feira semanal", "ideal", 20);
+		sistemaController.deletaItem(3);
+
+		arquivo = File.createTempFile("dados", ".bin");
+	}
+
+	@After
+	public void finalizar() {
+		arquivo.delete();
+	}
+
+	/**
+	 * Testa a gravacao e a leitura no formato binario.
+	 */
+	@Test
+	public void testFormatoBinario() throws IOException {
+		verificaLeitura(FormatoArmazenamento.BINARIO);
+	}
+
+	/**
+	 * Testa a gravacao e a leitura com a serializacao do Java.
+	 */
+	@Test
+	public void testFormatoSerializacao() throws IOException {
+		verificaLeitura(FormatoArmazenamento.SERIALIZACAO);
+	}
+
+	/**
+	 * Testa a gravacao e a leitura no formato mapeado em memoria.
+	 */
+	@Test
+	public void testFormatoMapeado() throws IOException {
+		verificaLeitura(FormatoArmazenamento.MAPEADO);
+	}
+
+	/**
+	 * Testa a leitura de um arquivo salvo antes da adocao dos formatos, com o
+	 * proprio sistema serializado.
+	 */
+	@Test
+	public void testArquivoAntigo() throws IOException {
+		try (ObjectOutputStream objetos = new ObjectOutputStream(new FileOutputStream(arquivo))) {
+			objetos.writeObject(sistemaController);
+		}
+		SistemaController lido = ArquivoDados.carrega(arquivo);
+
+		assertEquals(sistemaController.exibeItem(1), lido.exibeItem(1));
+		assertEquals(sistemaController.getItemLista("feira semanal", 2), lido.getItemLista("feira semanal", 2));
+		assertEquals(4, lido.adicionaItemPorUnidade("rodo", "limpeza", 1, "ideal", 9.9));
+	}
+
+	/**
+	 * Testa a leitura de um arquivo alterado depois de gravado.
+	 */
+	@Test(expected = StreamCorruptedException.class)
+	public void testArquivoCorrompido() throws IOException {
+		ArquivoDados.grava(sistemaController, FormatoArmazenamento.BINARIO, arquivo);
+		try (RandomAccessFile dados = new RandomAccessFile(arquivo, "rw")) {
+			dados.seek(12);
+			int valor = dados.read();
+			dados.seek(12);
+			dados.write(valor ^ 0x01);
+		}
+		ArquivoDados.carrega(arquivo);
+	}
+
+	/**
+	 * Testa que um bloco corrompido de um arquivo mapeado e informado apenas na
+	 * leitura de um trecho do bloco, sem impedir a leitura dos demais blocos.
+	 */
+	@Test
+	public void testArquivoMapeadoCorrompido() throws IOException {
+		ArquivoDados.grava(sistemaController.retrata(), FormatoArmazenamento.MAPEADO, arquivo, 0, 0, 64);
+		try (RandomAccessFile dados = new RandomAccessFile(arquivo, "rw")) {
+			dados.seek(arquivo.length() - 12);
+			int quantidadeBlocos = dados.readInt();
+			long posicao = arquivo.length() - 16 - 4L * quantidadeBlocos - 1;
+			dados.seek(posicao);
+			int valor = dados.read();
+			dados.seek(posicao);
+			dados.write(valor ^ 0x01);
+		}
+		SistemaController lido = ArquivoDados.carrega(arquivo);
+		assertEquals(sistemaController.exibeItem(1), lido.exibeItem(1));
+		try {
+			lido.getItemLista("feira semanal", 0);
+			fail("O arquivo corrompido deveria ter sido informado.");
+		} catch (UncheckedIOException e) {
+			assertTrue(e.getCause() instanceof StreamCorruptedException);
+		}
+	}
+
+	/**
+	 * Testa a leitura de um arquivo mapeado com o cabecalho corrompido, que e
+	 * informada ja na abertura.
+	 */
+	@Test(expected = StreamCorruptedException.class)
+	public void testCabecalhoMapeadoCorrompido() throws IOException {
+		ArquivoDados.grava(sistemaController.retrata(), FormatoArmazenamento.MAPEADO, arquivo, 0, 0, 64);
+		try (RandomAccessFile dados = new RandomAccessFile(arquivo, "rw")) {
+			dados.seek(20);
+			int valor = dados.read();
+			dados.seek(20);
+			dados.write(valor ^ 0x01);
+		}
+		ArquivoDados.carrega(arquivo);
+	}
+
+	/**
+	 * Testa a conversao do nome de um formato.
+	 */
+	@Test
+	public void testConverteFormato() {
+		assertEquals(FormatoArmazenamento.BINARIO, FormatoArmazenamento.converte("binario"));
+		assertEquals(FormatoArmazenamento.SERIALIZACAO, FormatoArmazenamento.converte("Serializacao"));
+		assertEquals(FormatoArmazenamento.MAPEADO, FormatoArmazenamento.converte("mapeado"));
+	}
+
+	/**
+	 * Metodo auxiliar que grava o sistema em um formato, le o arquivo e compara o
+	 * sistema lido com o original.
+	 */
+	private void verificaLeitura(FormatoArmazenamento formato) throws IOException {
+		ArquivoDados.grava(sistemaController, formato, arquivo);
+		SistemaController lido = ArquivoDados.carrega(arquivo);
+
+		assertEquals(sistemaController.exibeItem(1), lido.exibeItem(1));
+		assertEquals(sistemaController.exibeItem(2), lido.exibeItem(2));
+		assertEquals(sistemaController.getItem(0), lido.getItem(0));
+		assertEquals(sistemaController.getItemLista("feira semanal", 2), lido.getItemLista("feira semanal", 2));
+		assertEquals(sistemaController.pesquisaListasDeComprasPorItem(1), lido.pesquisaListasDeComprasPorItem(1));
+		assertEquals(sistemaController.getItemListaPorData(sistemaController.dataAtual(), 0),
+				lido.getItemListaPorData(lido.dataAtual(), 0));
+		assertEquals(sistemaController.sugereMelhorEstabelecimento("feira semanal", 0, 0),
+				lido.sugereMelhorEstabelecimento("feira semanal", 0, 0));
+		assertEquals(4, lido.adicionaItemPorUnidade("rodo", "limpeza", 1, "ideal", 9.9));
+	}
+
+}
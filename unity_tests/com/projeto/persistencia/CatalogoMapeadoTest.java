@@ -0,0 +1,164 @@
+package com.projeto.persistencia;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.projeto.controller.SistemaController;
+import com.projeto.model.Item;
+
+/**
+ * Classe de teste que verifica a gravacao do catalogo mapeado e a criacao dos
+ * itens sob demanda.
+ */
+public class CatalogoMapeadoTest {
+
+	private SistemaController sistemaController;
+
+	private byte[] dados;
+
+	/**
+	 * Inicializando um sistema com um id removido entre os itens e gravando o seu
+	 * catalogo.
+	 */
+	@Before
+	public void inicializar() throws IOException {
+		sistemaController = new SistemaController();
+		sistemaController.adicionaItemPorQtd("sabonete", "higiene pessoal", 90, "gramas", "ideal", 1.5);
+		sistemaController.adicionaItemPorUnidade("esponja", "limpeza", 3, "ideal", 2.0);
+		sistemaController.adicionaItemPorQuilo("batata", "alimento nao industrializado", 1.0, "feira", 3.2);
+		sistemaController.adicionaPrecoItem(3, "ideal", 2.9);
+		sistemaController.adicionaListaDeCompras("feira semanal");
+		sistemaController.adicionaCompraALista("feira semanal", 2, 2);
+		sistemaController.deletaItem(2);
+
+		ByteArrayOutputStream saida = new ByteArrayOutputStream();
+		CatalogoMapeado.escreve(sistemaController.retrata(), new DataOutputStream(saida));
+		dados = saida.toByteArray();
+	}
+
+	/**
+	 * Testa a busca dos produtos pelo id, sem os itens removidos.
+	 */
+	@Test
+	public void testProdutosPeloId() throws IOException {
+		Map<Integer, Item> produtos = CatalogoMapeado.abre(ByteBuffer.wrap(dados)).getProdutos();
+		assertEquals(2, produtos.size());
+		assertTrue(produtos.containsKey(1));
+		assertFalse(produtos.containsKey(2));
+		assertTrue(produtos.containsKey(3));
+		assertNull(produtos.get(4));
+		assertEquals(sistemaController.exibeItem(3), produtos.get(3).toString());
+		assertTrue(produtos.get(3) == produtos.get(3));
+	}
+
+	/**
+	 * Testa que apenas o item consultado e lido: um registro corrompido so e
+	 * percebido quando e consultado.
+	 */
+	@Test
+	public void testItensCriadosSobDemanda() throws IOException {
+		int tipoSegundoRegistro = 40 + CatalogoMapeado.TAMANHO_REGISTRO + 4;
+		dados[tipoSegundoRegistro] = 9;
+		SistemaController aberto = new SistemaController(CatalogoMapeado.abre(ByteBuffer.wrap(dados)));
+
+		assertEquals(sistemaController.exibeItem(1), aberto.exibeItem(1));
+		try {
+			aberto.exibeItem(3);
+		} catch (UncheckedIOException e) {
+			assertTrue(e.getCause() instanceof StreamCorruptedException);
+			return;
+		}
+		throw new AssertionError("O registro corrompido deveria ser percebido.");
+	}
+
+	/**
+	 * Testa as consultas pelo nome, pela categoria e pelo menor preco feitas nos
+	 * registros: o registro corrompido do item removido so e percebido quando as
+	 * listas de compras sao criadas.
+	 */
+	@Test
+	public void testConsultasNosRegistros() throws IOException {
+		int tipoTerceiroRegistro = 40 + 2 * CatalogoMapeado.TAMANHO_REGISTRO + 4;
+		dados[tipoTerceiroRegistro] = 9;
+		SistemaController aberto = new SistemaController(CatalogoMapeado.abre(ByteBuffer.wrap(dados)));
+
+		for (int posicao = 0; posicao < 3; posicao++) {
+			assertEquals(sistemaController.getItem(posicao), aberto.getItem(posicao));
+			assertEquals(sistemaController.getItemPorMenorPreco(posicao), aberto.getItemPorMenorPreco(posicao));
+		}
+		assertEquals(sistemaController.getItemPorCategoria("higiene pessoal", 0),
+				aberto.getItemPorCategoria("higiene pessoal", 0));
+		assertEquals("", aberto.getItemPorCategoria("limpeza", 0));
+		assertEquals(sistemaController.exibeItem(3), aberto.exibeItem(3));
+		try {
+			aberto.getItemLista("feira semanal", 0);
+		} catch (UncheckedIOException e) {
+			assertTrue(e.getCause() instanceof StreamCorruptedException);
+			return;
+		}
+		throw new AssertionError("O registro corrompido deveria ser percebido ao criar as listas.");
+	}
+
+	/**
+	 * Testa que as ordens lidas dos registros desempatam os nomes e os precos
+	 * iguais pelo id, como os indices do sistema.
+	 */
+	@Test
+	public void testOrdensComEmpates() throws IOException {
+		SistemaController sistema = new SistemaController();
+		sistema.adicionaItemPorUnidade("sabao", "limpeza", 1, "ideal", 3.0);
+		sistema.adicionaItemPorUnidade("arroz", "alimento industrializado", 1, "ideal", 2.0);
+		sistema.adicionaItemPorUnidade("sabao", "Higiene Pessoal", 2, "feira", 2.0);
+		sistema.adicionaItemPorUnidade("feijao", "alimento industrializado", 1, "feira", 3.0);
+		sistema.adicionaPrecoItem(1, "feira", 1.0);
+		ByteArrayOutputStream saida = new ByteArrayOutputStream();
+		CatalogoMapeado.escreve(sistema.retrata(), new DataOutputStream(saida));
+		SistemaController aberto = new SistemaController(CatalogoMapeado.abre(ByteBuffer.wrap(saida.toByteArray())));
+
+		for (int posicao = 0; posicao < 5; posicao++) {
+			assertEquals(sistema.getItem(posicao), aberto.getItem(posicao));
+			assertEquals(sistema.getItemPorMenorPreco(posicao), aberto.getItemPorMenorPreco(posicao));
+			assertEquals(sistema.getItemPorCategoria("alimento industrializado", posicao),
+					aberto.getItemPorCategoria("alimento industrializado", posicao));
+			assertEquals(sistema.getItemPorCategoria("higiene pessoal", posicao),
+					aberto.getItemPorCategoria("higiene pessoal", posicao));
+		}
+	}
+
+	/**
+	 * Testa a criacao de todo o sistema na primeira operacao que usa os indices,
+	 * mantendo o item removido na lista de compras.
+	 */
+	@Test
+	public void testMaterializaSistema() throws IOException {
+		SistemaController aberto = new SistemaController(CatalogoMapeado.abre(ByteBuffer.wrap(dados)));
+
+		assertEquals(sistemaController.getItem(0), aberto.getItem(0));
+		assertEquals(sistemaController.getItemPorMenorPreco(1), aberto.getItemPorMenorPreco(1));
+		assertEquals(sistemaController.getItemLista("feira semanal", 0), aberto.getItemLista("feira semanal", 0));
+		assertEquals(4, aberto.adicionaItemPorUnidade("rodo", "limpeza", 1, "ideal", 9.9));
+	}
+
+	/**
+	 * Testa a abertura de dados que nao sao um catalogo.
+	 */
+	@Test(expected = StreamCorruptedException.class)
+	public void testCatalogoInvalido() throws IOException {
+		dados[0] = 0;
+		CatalogoMapeado.abre(ByteBuffer.wrap(dados));
+	}
+
+}
@@ -0,0 +1,311 @@
+package com.projeto.persistencia;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StreamCorruptedException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.projeto.controller.SistemaController;
+import com.projeto.excecoes.CampoInvalidoException;
+
+/**
+ * Classe de teste que verifica o registro das operacoes no diario e a
+ * recuperacao do sistema a partir dele.
+ */
+public class DiarioTest {
+
+	private File dados;
+
+	private File arquivoDiario;
+
+	private Diario diario;
+
+	private SistemaController sistemaController;
+
+	/**
+	 * Inicializando um diario vazio e um sistema novo.
+	 */
+	@Before
+	public void inicializar() throws IOException {
+		dados = File.createTempFile("dados", ".bin");
+		dados.delete();
+		arquivoDiario = File.createTempFile("dados", ".diario");
+		arquivoDiario.delete();
+		diario = new Diario(arquivoDiario);
+		sistemaController = new SistemaController();
+	}
+
+	@After
+	public void finalizar() throws IOException {
+		diario.close();
+		dados.delete();
+		arquivoDiario.delete();
+	}
+
+	/**
+	 * Testa a recuperacao de um sistema novo apenas com o diario.
+	 */
+	@Test
+	public void testRecuperaSistemaNovo() throws IOException {
+		Date criacao = new Date(1530000000000L);
+		diario.executa(sistemaController, new Alteracao.AdicionaItemPorQtd("sabonete", "higiene pessoal", 90, "gramas",
+				"ideal", 1.5));
+		diario.executa(sistemaController,
+				new Alteracao.AdicionaItemPorQuilo("batata", "alimento nao industrializado", 1.0, "feira", 3.2));
+		diario.executa(sistemaController, new Alteracao.AdicionaPrecoItem(2, "ideal", 2.9));
+		diario.executa(sistemaController, new Alteracao.AdicionaListaDeCompras("feira semanal", criacao));
+		diario.executa(sistemaController, new Alteracao.AdicionaCompraALista("feira semanal", 2, 1));
+		diario.executa(sistemaController, new Alteracao.AtualizaItem(1, "nome", "sabonete liquido"));
+
+		SistemaController recuperado = recupera();
+		assertEquals(sistemaController.exibeItem(1), recuperado.exibeItem(1));
+		assertEquals(sistemaController.exibeItem(2), recuperado.exibeItem(2));
+		assertEquals("feira semanal", recuperado.getItemListaPorData("26/06/2018", 0));
+		assertEquals(sistemaController.getItemLista("feira semanal", 0), recuperado.getItemLista("feira semanal", 0));
+	}
+
+	/**
+	 * Testa a recuperacao a partir do arquivo de dados e das operacoes feitas
+	 * depois da sua gravacao.
+	 */
+	@Test
+	public void testRecuperaDepoisDeSalvar() throws IOException {
+		diario.executa(sistemaController, new Alteracao.AdicionaItemPorUnidade("esponja", "limpeza", 3, "ideal", 2.0));
+		diario.salva(sistemaController, FormatoArmazenamento.BINARIO, dados);
+		diario.executa(sistemaController, new Alteracao.AdicionaItemPorUnidade("rodo", "limpeza", 1, "ideal", 9.9));
+		diario.executa(sistemaController, new Alteracao.DeletaItem(1));
+
+		SistemaController recuperado = recupera();
+		assertEquals("", recuperado.getItem(1));
+		assertEquals(sistemaController.getItem(0), recuperado.getItem(0));
+		assertEquals(3, recuperado.adicionaItemPorUnidade("balde", "limpeza", 1, "ideal", 5.0));
+	}
+
+	/**
+	 * Testa que uma operacao que lanca excecao nao e registrada.
+	 */
+	@Test
+	public void testOperacaoInvalidaNaoRegistrada() throws IOException {
+		diario.executa(sistemaController, new Alteracao.AdicionaListaDeCompras("feira", new Date()));
+		try {
+			diario.executa(sistemaController, new Alteracao.AdicionaListaDeCompras("feira", new Date()));
+		} catch (CampoInvalidoException e) {
+		}
+		diario.executa(sistemaController, new Alteracao.AdicionaListaDeCompras("mercado", new Date()));
+
+		SistemaController recuperado = recupera();
+		assertEquals("mercado", recuperado.pesquisaListaDeCompras("mercado"));
+	}
+
+	/**
+	 * Testa que um registro gravado pela metade e descartado na recuperacao.
+	 */
+	@Test
+	public void testRegistroIncompleto() throws IOException {
+		diario.executa(sistemaController, new Alteracao.AdicionaListaDeCompras("feira", new Date()));
+		diario.close();
+		try (FileOutputStream saida = new FileOutputStream(arquivoDiario, true)) {
+			saida.write(new byte[] { 0, 0, 0, 40, 7, 2 });
+		}
+
+		SistemaController recuperado = recupera();
+		assertEquals("feira", recuperado.pesquisaListaDeCompras("feira"));
+		diario.executa(recuperado, new Alteracao.AdicionaListaDeCompras("mercado", new Date()));
+		assertEquals("mercado", recupera().pesquisaListaDeCompras("mercado"));
+	}
+
+	/**
+	 * Testa que um diario que nao pode ser recuperado nao e sobrescrito pelas
+	 * operacoes seguintes.
+	 */
+	@Test
+	public void testFalhaNaRecuperacao() throws IOException {
+		diario.executa(sistemaController, new Alteracao.AdicionaListaDeCompras("feira", new Date()));
+		diario.close();
+		try (RandomAccessFile arquivo = new RandomAccessFile(arquivoDiario, "rw")) {
+			arquivo.write(0);
+		}
+		byte[] conteudo = Files.readAllBytes(arquivoDiario.toPath());
+
+		try {
+			recupera();
+			fail();
+		} catch (StreamCorruptedException e) {
+		}
+		try {
+			diario.executa(new SistemaController(), new Alteracao.AdicionaListaDeCompras("mercado", new Date()));
+			fail();
+		} catch (UncheckedIOException e) {
+		}
+		try {
+			diario.salva(new SistemaController(), FormatoArmazenamento.SERIALIZACAO, dados);
+			fail();
+		} catch (IOException e) {
+		}
+		assertFalse(dados.exists());
+		assertTrue(Arrays.equals(conteudo, Files.readAllBytes(arquivoDiario.toPath())));
+	}
+
+	/**
+	 * Testa que as operacoes de um diario que nao foi recuperado nao sao
+	 * descartadas por uma operacao feita sem recuperar o sistema.
+	 */
+	@Test
+	public void testDiarioNaoRecuperadoNaoDescartado() throws IOException {
+		diario.executa(sistemaController, new Alteracao.AdicionaItemPorUnidade("sabao", "limpeza", 1, "ideal", 3.0));
+		diario.close();
+		byte[] conteudo = Files.readAllBytes(arquivoDiario.toPath());
+
+		diario = new Diario(arquivoDiario);
+		try {
+			diario.executa(new SistemaController(),
+					new Alteracao.AdicionaItemPorUnidade("arroz", "alimento industrializado", 1, "ideal", 4.0));
+			fail();
+		} catch (UncheckedIOException e) {
+		}
+		assertTrue(Arrays.equals(conteudo, Files.readAllBytes(arquivoDiario.toPath())));
+
+		SistemaController recuperado = recupera();
+		assertEquals(sistemaController.exibeItem(1), recuperado.exibeItem(1));
+		diario.executa(recuperado,
+				new Alteracao.AdicionaItemPorUnidade("arroz", "alimento industrializado", 1, "ideal", 4.0));
+		assertEquals(recuperado.exibeItem(2), recupera().exibeItem(2));
+	}
+
+	/**
+	 * Testa que nao ha o que recuperar sem arquivo de dados nem diario.
+	 */
+	@Test
+	public void testRecuperaSemDados() throws IOException {
+		assertNull(diario.recupera(dados));
+	}
+
+	/**
+	 * Testa o registro de operacoes feitas por varias threads ao mesmo tempo.
+	 */
+	@Test
+	public void testOperacoesConcorrentes() throws Exception {
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < 4; t++) {
+			final int numero = t;
+			threads.add(new Thread() {
+				@Override
+				public void run() {
+					for (int i = 0; i < 25; i++) {
+						diario.executa(sistemaController, new Alteracao.AdicionaItemPorUnidade(
+								"item " + numero + " " + i, "limpeza", 1, "ideal", 1.0 + i));
+					}
+				}
+			});
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		SistemaController recuperado = recupera();
+		for (int id = 1; id <= 100; id++) {
+			assertEquals(sistemaController.exibeItem(id), recuperado.exibeItem(id));
+		}
+	}
+
+	/**
+	 * Testa a gravacao do sistema em segundo plano, que encurta o diario sem perder
+	 * operacoes.
+	 */
+	@Test
+	public void testCompactacaoEmSegundoPlano() throws IOException {
+		diario.ativaCompactacao(FormatoArmazenamento.BINARIO, dados, 10);
+		for (int i = 0; i < 25; i++) {
+			diario.executa(sistemaController,
+					new Alteracao.AdicionaItemPorUnidade("item " + i, "limpeza", 1, "ideal", 1.0 + i));
+		}
+
+		SistemaController recuperado = recupera();
+		assertTrue(dados.exists());
+		assertTrue(arquivoDiario.length() < 25 * 40);
+		for (int id = 1; id <= 25; id++) {
+			assertEquals(sistemaController.exibeItem(id), recuperado.exibeItem(id));
+		}
+		assertEquals(26, recuperado.adicionaItemPorUnidade("balde", "limpeza", 1, "ideal", 5.0));
+	}
+
+	/**
+	 * Testa que o erro de uma compactacao em segundo plano e lancado pelo
+	 * fechamento do diario, uma unica vez.
+	 */
+	@Test
+	public void testFalhaNaCompactacao() throws IOException {
+		File inexistente = new File(new File(dados.getPath() + ".pasta"), "dados.bin");
+		diario.ativaCompactacao(FormatoArmazenamento.BINARIO, inexistente, 10);
+		for (int i = 0; i < 10; i++) {
+			diario.executa(sistemaController,
+					new Alteracao.AdicionaItemPorUnidade("item " + i, "limpeza", 1, "ideal", 1.0 + i));
+		}
+		try {
+			diario.close();
+			fail("O erro da compactacao deveria ter sido lancado.");
+		} catch (IOException e) {
+			assertFalse(inexistente.exists());
+		}
+		diario.close();
+
+		SistemaController recuperado = recupera();
+		assertEquals(sistemaController.exibeItem(10), recuperado.exibeItem(10));
+	}
+
+	/**
+	 * Testa a recuperacao apos uma queda entre a gravacao do sistema e o
+	 * encurtamento do diario: as operacoes ja incluidas no arquivo de dados nao
+	 * sao reaplicadas.
+	 */
+	@Test
+	public void testQuedaAntesDeEncurtarDiario() throws IOException {
+		diario.executa(sistemaController, new Alteracao.AdicionaItemPorUnidade("esponja", "limpeza", 3, "ideal", 2.0));
+		diario.executa(sistemaController, new Alteracao.AdicionaListaDeCompras("feira", new Date()));
+		File copia = File.createTempFile("copia", ".diario");
+		try {
+			Files.copy(arquivoDiario.toPath(), copia.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			diario.salva(sistemaController, FormatoArmazenamento.SERIALIZACAO, dados);
+			diario.close();
+			Files.copy(copia.toPath(), arquivoDiario.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			copia.delete();
+		}
+
+		SistemaController recuperado = recupera();
+		assertEquals("feira", recuperado.pesquisaListaDeCompras("feira"));
+		assertEquals(2, recuperado.adicionaItemPorUnidade("rodo", "limpeza", 1, "ideal", 9.9));
+	}
+
+	/**
+	 * Metodo auxiliar que recupera o sistema com um novo diario sobre o mesmo
+	 * arquivo, como em uma nova execucao do programa.
+	 */
+	private SistemaController recupera() throws IOException {
+		diario.close();
+		diario = new Diario(arquivoDiario);
+		return diario.recupera(dados);
+	}
+
+}
@@ -0,0 +1,86 @@
+package com.projeto.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.projeto.model.Item;
+import com.projeto.model.ProdutoPorUnidade;
+import com.projeto.service.PrecoService;
+
+/**
+ * Classe de teste responsavel por testar as versoes da classe Catalogo.
+ */
+public class CatalogoTest {
+
+	private Item sabonete;
+
+	private Item esponja;
+
+	private Catalogo catalogo;
+
+	/**
+	 * Inicializa um catalogo com dois itens.
+	 */
+	@Before
+	public void inicializa() {
+		sabonete = new ProdutoPorUnidade(1, "sabonete", "higiene pessoal", 1, "ideal", 1.5);
+		esponja = new ProdutoPorUnidade(2, "esponja", "limpeza", 1, "ideal", 2.0);
+		catalogo = new Catalogo().adiciona(sabonete).adiciona(esponja);
+	}
+
+	/**
+	 * Testa que a versao anterior a uma alteracao de preco continua ordenada pelos
+	 * precos que possuia, e que a nova versao usa o novo preco.
+	 */
+	@Test
+	public void testAtualizaPrecos() {
+		PrecoService.TabelaPrecos anterior = sabonete.getTabelaPrecos();
+		sabonete.adicionarLocalCompra("ideal", 3.0);
+		Catalogo atual = catalogo.atualizaPrecos(sabonete, anterior);
+
+		assertTrue(catalogo.getPorPreco().get(0).getItem() == sabonete);
+		assertEquals(1.5, catalogo.getPorPreco().get(0).getPrecos().getMenorPreco(), 0.001);
+		assertTrue(atual.getPorPreco().get(0).getItem() == esponja);
+		assertEquals(3.0, atual.getPorPreco().get(1).getPrecos().getMenorPreco(), 0.001);
+		assertEquals(2, atual.getPorPreco().tamanho());
+		assertTrue(atual.getPorNome().get(0) == esponja);
+	}
+
+	/**
+	 * Testa que um item e retirado do indice de precos com a tabela de precos
+	 * atual.
+	 */
+	@Test
+	public void testRemove() {
+		Catalogo semSabonete = catalogo.remove(sabonete);
+		assertEquals(1, semSabonete.getPorPreco().tamanho());
+		assertEquals(1, semSabonete.getPorNome().tamanho());
+		assertEquals(2, catalogo.getPorPreco().tamanho());
+	}
+
+	/**
+	 * Testa que percorrer as posicoes de um termo menor que um trigrama devolve os
+	 * itens na ordem do nome, e que uma nova versao do catalogo nao usa os
+	 * resultados guardados pela versao anterior.
+	 */
+	@Test
+	public void testPaginaPesquisaCurta() {
+		IndiceTrigrama pesquisa = catalogo.getPesquisa();
+		assertTrue(pesquisa.busca("E", 0) == esponja);
+		assertTrue(pesquisa.busca("e", 1) == sabonete);
+		assertNull(pesquisa.busca("e", 2));
+		assertNull(pesquisa.busca("e", -1));
+
+		Item sabao = new ProdutoPorUnidade(3, "sabao", "limpeza", 1, "ideal", 1.0);
+		Catalogo atual = catalogo.adiciona(sabao);
+		assertTrue(atual.getPesquisa().busca("sa", 0) == sabao);
+		assertTrue(atual.getPesquisa().busca("sa", 1) == sabonete);
+		assertTrue(pesquisa.busca("sa", 0) == sabonete);
+		assertNull(pesquisa.busca("sa", 1));
+	}
+
+}
@@ -0,0 +1,49 @@
+package com.projeto.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+
+import org.junit.Test;
+
+/**
+ * Classe de teste responsavel por testar a classe FormatoData.
+ */
+public class FormatoDataTest {
+
+	/**
+	 * Testa a formatacao de um dia.
+	 */
+	@Test
+	public void testFormata() {
+		assertEquals("05/03/2018", FormatoData.formata(LocalDate.of(2018, 3, 5)));
+	}
+
+	/**
+	 * Testa a conversao de datas no formato dd/MM/yyyy.
+	 */
+	@Test
+	public void testConverte() {
+		assertEquals(LocalDate.of(2018, 3, 5), FormatoData.converte("05/03/2018"));
+		assertEquals(LocalDate.of(2018, 3, 5), FormatoData.converte("5/3/2018"));
+	}
+
+	/**
+	 * Testa a conversao de datas com valores fora do intervalo, que sao ajustadas
+	 * para o dia correspondente.
+	 */
+	@Test
+	public void testConverteForaDoIntervalo() {
+		assertEquals(LocalDate.of(2018, 2, 1), FormatoData.converte("32/01/2018"));
+	}
+
+	/**
+	 * Testa a conversao de uma data invalida.
+	 */
+	@Test(expected = DateTimeParseException.class)
+	public void testConverteInvalida() {
+		FormatoData.converte("ab/cd/efgh");
+	}
+
+}
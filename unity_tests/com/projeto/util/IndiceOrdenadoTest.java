@@ -0,0 +1,118 @@
+package com.projeto.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Comparator;
+import java.util.Iterator;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Classe de teste responsavel por testar a classe IndiceOrdenado.
+ */
+public class IndiceOrdenadoTest {
+
+	/**
+	 * Indice que sera usado nos testes.
+	 */
+	private IndiceOrdenado<String> indice;
+
+	/**
+	 * Inicializa o indice com alguns valores fora de ordem.
+	 */
+	@Before
+	public void inicializa() {
+		indice = new IndiceOrdenado<>(Comparator.naturalOrder());
+		indice.adiciona("pera");
+		indice.adiciona("abacaxi");
+		indice.adiciona("uva");
+		indice.adiciona("laranja");
+	}
+
+	/**
+	 * Testa a recuperacao dos elementos por posicao.
+	 */
+	@Test
+	public void testGet() {
+		assertEquals(4, indice.tamanho());
+		assertEquals("abacaxi", indice.get(0));
+		assertEquals("laranja", indice.get(1));
+		assertEquals("pera", indice.get(2));
+		assertEquals("uva", indice.get(3));
+	}
+
+	/**
+	 * Testa a recuperacao de um elemento em uma posicao invalida.
+	 */
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testGetPosicaoInvalida() {
+		indice.get(4);
+	}
+
+	/**
+	 * Testa a remocao de elementos do indice.
+	 */
+	@Test
+	public void testRemove() {
+		assertTrue(indice.remove("laranja"));
+		assertFalse(indice.remove("melancia"));
+		assertEquals(3, indice.tamanho());
+		assertEquals("pera", indice.get(1));
+	}
+
+	/**
+	 * Testa se o iterador percorre os elementos em ordem.
+	 */
+	@Test
+	public void testIterator() {
+		Iterator<String> iterador = indice.iterator();
+		assertEquals("abacaxi", iterador.next());
+		assertEquals("laranja", iterador.next());
+		assertEquals("pera", iterador.next());
+		assertEquals("uva", iterador.next());
+		assertFalse(iterador.hasNext());
+	}
+
+	/**
+	 * Testa se a copia do indice e o iterador continuam enxergando a versao em que
+	 * foram criados depois que o indice e alterado.
+	 */
+	@Test
+	public void testCopia() {
+		IndiceOrdenado<String> copia = indice.copia();
+		Iterator<String> iterador = indice.iterator();
+		indice.remove("abacaxi");
+		indice.adiciona("banana");
+		copia.adiciona("caju");
+
+		assertEquals(4, indice.tamanho());
+		assertEquals("banana", indice.get(0));
+		assertEquals(5, copia.tamanho());
+		assertEquals("abacaxi", copia.get(0));
+		assertEquals("caju", copia.get(1));
+		assertEquals("abacaxi", iterador.next());
+		assertEquals("laranja", iterador.next());
+	}
+
+	/**
+	 * Testa a ordem do indice com uma grande quantidade de elementos.
+	 */
+	@Test
+	public void testMuitosElementos() {
+		IndiceOrdenado<Integer> numeros = new IndiceOrdenado<>(Comparator.naturalOrder());
+		for (int i = 999; i >= 0; i--) {
+			numeros.adiciona(i);
+		}
+		for (int i = 0; i < 1000; i += 2) {
+			numeros.remove(i);
+		}
+		assertEquals(500, numeros.tamanho());
+		for (int i = 0; i < 500; i++) {
+			assertEquals(Integer.valueOf(2 * i + 1), numeros.get(i));
+		}
+	}
+
+}